@@ -0,0 +1,67 @@
+package de.tuebingen.sfs.cldfjava.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import de.tuebingen.sfs.cldfjava.io.CLDFWordlistGenerator;
+
+/**
+ * The generated wordlists the benchmarks run on, see
+ * {@link CLDFWordlistGenerator}.
+ *
+ * Each size is written once, to the directory in the system property
+ * cldf.benchmarks.data (target/benchmark-data by default), and reused by later
+ * runs and forks.
+ */
+public class BenchmarkData {
+    static final String TERMS = "http://cldf.clld.org/v1.0/terms.rdf#";
+
+    /**
+     * @return the metadata file of a wordlist with the given number of forms,
+     *         written if it does not exist yet
+     */
+    public static synchronized File dataset(int forms) throws IOException {
+        Path dir = Paths.get(System.getProperty("cldf.benchmarks.data", "target/benchmark-data"), "forms-" + forms);
+        Path json = dir.resolve("Wordlist-metadata.json");
+        // The metadata is written last, so a dataset is complete if it exists.
+        if (!Files.exists(json)) {
+            new CLDFWordlistGenerator(forms).write(dir);
+        }
+        return json.toFile();
+    }
+
+    /**
+     * @return the description of a table of a dataset, by its CLDF type
+     */
+    public static JsonNode table(File json, String type) throws IOException {
+        for (JsonNode table : new ObjectMapper().readTree(json).get("tables")) {
+            if (table.get("dc:conformsTo").asText().equals(TERMS + type)) {
+                return table;
+            }
+        }
+        throw new IllegalArgumentException("No " + type + " in " + json);
+    }
+
+    /**
+     * @return a copy of a table description with only the named columns
+     */
+    public static JsonNode project(JsonNode table, String... names) {
+        ObjectNode projected = table.deepCopy();
+        ArrayNode columns = (ArrayNode) projected.get("tableSchema").get("columns");
+        for (int i = columns.size() - 1; i >= 0; i--) {
+            if (!List.of(names).contains(columns.get(i).get("name").asText())) {
+                columns.remove(i);
+            }
+        }
+        return projected;
+    }
+}
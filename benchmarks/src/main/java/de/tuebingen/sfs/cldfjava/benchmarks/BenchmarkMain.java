@@ -0,0 +1,21 @@
+package de.tuebingen.sfs.cldfjava.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the usual JMH command line, and always with the GC
+ * profiler, which reports the bytes allocated per operation next to the
+ * throughput.
+ *
+ * For example, to run the queries on the smallest dataset only:
+ * java -jar target/benchmarks.jar QueryBenchmark -p forms=10000
+ */
+public class BenchmarkMain {
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions options = new CommandLineOptions(args);
+        new Runner(new OptionsBuilder().parent(options).addProfiler(GCProfiler.class).build()).run();
+    }
+}
@@ -0,0 +1,79 @@
+package de.tuebingen.sfs.cldfjava.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.tuebingen.sfs.cldfjava.data.CLDFWordlistDatabase;
+import de.tuebingen.sfs.cldfjava.io.CLDFImport;
+
+/**
+ * Loading dozens of wordlists with one importer, one after another or from
+ * several threads at once. The score is in wordlists loaded per second, so
+ * the two settings of threads compare directly: with 8 threads, it should be
+ * several times that of 1 on a machine with as many cores.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class ConcurrentImportBenchmark {
+    static final int DATASETS = 24;
+
+    @Param({ "1", "8" })
+    public int threads;
+
+    @Param({ "10000", "100000" })
+    public int forms;
+
+    private File json;
+    private CLDFImport importer;
+    private ExecutorService executor;
+
+    @Setup
+    public void setUp() throws IOException {
+        json = BenchmarkData.dataset(forms);
+        importer = new CLDFImport();
+        executor = Executors.newFixedThreadPool(threads);
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DATASETS)
+    public int loadDatasets() throws Exception {
+        List<Future<CLDFWordlistDatabase<Integer, String, String>>> loads = new ArrayList<>();
+        for (int d = 0; d < DATASETS; d++) {
+            loads.add(executor.submit(() -> importer.load(json)));
+        }
+        int loaded = 0;
+        for (Future<CLDFWordlistDatabase<Integer, String, String>> load : loads) {
+            loaded += load.get().getFormsMap().size();
+        }
+        return loaded;
+    }
+}
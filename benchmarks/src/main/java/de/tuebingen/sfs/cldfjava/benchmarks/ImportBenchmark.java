@@ -0,0 +1,117 @@
+package de.tuebingen.sfs.cldfjava.benchmarks;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import de.tuebingen.sfs.cldfjava.data.CLDFCognateJudgement;
+import de.tuebingen.sfs.cldfjava.data.CLDFCognateSet;
+import de.tuebingen.sfs.cldfjava.data.CLDFForm;
+import de.tuebingen.sfs.cldfjava.data.CLDFLanguage;
+import de.tuebingen.sfs.cldfjava.data.CLDFParameter;
+import de.tuebingen.sfs.cldfjava.data.CLDFWordlistDatabase;
+import de.tuebingen.sfs.cldfjava.io.CLDFImport;
+import de.tuebingen.sfs.cldfjava.io.PString;
+
+/**
+ * Loading whole wordlists, and reading each of their tables on its own.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class ImportBenchmark {
+    @Param({ "10000", "1000000", "10000000" })
+    public int forms;
+
+    private File json;
+    private File directory;
+    private JsonNode formTable;
+    private JsonNode languageTable;
+    private JsonNode parameterTable;
+    private JsonNode cognateTable;
+    private JsonNode cognatesetTable;
+
+    @Setup
+    public void setUp() throws IOException {
+        json = BenchmarkData.dataset(forms);
+        directory = json.getParentFile();
+        formTable = BenchmarkData.table(json, "FormTable");
+        languageTable = BenchmarkData.table(json, "LanguageTable");
+        parameterTable = BenchmarkData.table(json, "ParameterTable");
+        cognateTable = BenchmarkData.table(json, "CognateTable");
+        cognatesetTable = BenchmarkData.table(json, "CognatesetTable");
+    }
+
+    private InputStream open(JsonNode table) throws IOException {
+        return new BufferedInputStream(new FileInputStream(new File(directory, table.get("url").asText())));
+    }
+
+    @Benchmark
+    public CLDFWordlistDatabase<Integer, String, String> loadDatabaseMetadata() throws Exception {
+        return CLDFImport.loadDatabaseMetadata(json);
+    }
+
+    @Benchmark
+    public List<Map<String, PString>> readTable() throws IOException {
+        try (InputStream stream = open(formTable)) {
+            return CLDFImport.readTable(stream, formTable);
+        }
+    }
+
+    @Benchmark
+    public Map<Integer, CLDFForm<Integer>> readFormCsv() throws IOException {
+        try (InputStream stream = open(formTable)) {
+            return CLDFImport.readFormCsv(stream, formTable);
+        }
+    }
+
+    @Benchmark
+    public Map<String, CLDFLanguage> readLanguageCsv() throws IOException {
+        try (InputStream stream = open(languageTable)) {
+            return CLDFImport.readLanguageCsv(stream, languageTable);
+        }
+    }
+
+    @Benchmark
+    public Map<String, CLDFParameter> readParameterCsv() throws IOException {
+        try (InputStream stream = open(parameterTable)) {
+            return CLDFImport.readParameterCsv(stream, parameterTable);
+        }
+    }
+
+    @Benchmark
+    public Map<String, CLDFCognateJudgement<Integer, String, String>> readCognateCsv() throws IOException {
+        try (InputStream stream = open(cognateTable)) {
+            return CLDFImport.readCognateCsv(stream, cognateTable);
+        }
+    }
+
+    @Benchmark
+    public Map<String, CLDFCognateSet<String>> readCognatesetCsv() throws IOException {
+        try (InputStream stream = open(cognatesetTable)) {
+            return CLDFImport.readCognatesetCsv(stream, cognatesetTable);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package de.tuebingen.sfs.cldfjava.benchmarks;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import de.tuebingen.sfs.cldfjava.data.CLDFForm;
+import de.tuebingen.sfs.cldfjava.data.CLDFWordlistDatabase;
+import de.tuebingen.sfs.cldfjava.io.CLDFImport;
+import de.tuebingen.sfs.cldfjava.io.PString;
+
+/**
+ * Lookups on a loaded wordlist, and the caches behind them.
+ *
+ * The lookups cycle through all language, concept and cognate set IDs, so that
+ * no single answer stays in the CPU caches.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class QueryBenchmark {
+    // The number of list cells toStringList runs over.
+    static final int CELLS = 10000;
+
+    @Param({ "10000", "1000000", "10000000" })
+    public int forms;
+
+    private CLDFWordlistDatabase<Integer, String, String> database;
+    private String[] langIDs;
+    private String[] paramIDs;
+    private String[] cogsetIDs;
+    private PString[] cells;
+    private int next = 0;
+
+    @Setup
+    public void setUp() throws Exception {
+        File json = BenchmarkData.dataset(forms);
+        database = CLDFImport.loadDatabaseMetadata(json);
+        langIDs = database.getLanguageMap().keySet().toArray(new String[0]);
+        paramIDs = database.getConceptMap().keySet().toArray(new String[0]);
+        cogsetIDs = database.getCognatesetMap().keySet().toArray(new String[0]);
+        JsonNode formTable = BenchmarkData.table(json, "FormTable");
+        try (InputStream stream = new BufferedInputStream(
+                new FileInputStream(new File(json.getParentFile(), formTable.get("url").asText())));
+                Stream<Map<String, PString>> rows = CLDFImport.streamTable(stream, formTable)) {
+            cells = rows.limit(CELLS).map(row -> row.get("segments")).toArray(PString[]::new);
+        }
+    }
+
+    /**
+     * Throws the caches of the database away before each call, so that
+     * cacheFormsByLanguage measures building them.
+     */
+    @State(Scope.Benchmark)
+    public static class ColdCaches {
+        @Setup(Level.Invocation)
+        public void dropCaches(QueryBenchmark benchmark) {
+            benchmark.database.rebuildIndex();
+        }
+    }
+
+    private int next(int bound) {
+        next = next + 1 < bound ? next + 1 : 0;
+        return next;
+    }
+
+    @Benchmark
+    public void toStringList(Blackhole blackhole) {
+        for (PString cell : cells) {
+            List<String> items = cell.toStringList();
+            for (int i = 0; i < items.size(); i++) {
+                blackhole.consume(items.get(i));
+            }
+        }
+    }
+
+    @Benchmark
+    public CLDFWordlistDatabase<Integer, String, String> cacheFormsByLanguage(ColdCaches cold) {
+        database.cacheFormsByLanguage();
+        return database;
+    }
+
+    @Benchmark
+    public Map<String, List<CLDFForm<Integer>>> getFormsByLanguageByParamID() {
+        return database.getFormsByLanguageByParamID(paramIDs[next(paramIDs.length)]);
+    }
+
+    @Benchmark
+    public Set<Integer> getCogsetToCognates() {
+        return database.getCogsetToCognates().get(cogsetIDs[next(cogsetIDs.length)]);
+    }
+
+    @Benchmark
+    public int listFormIdsForLangId() {
+        // Walk the list, since it may be a lazy view.
+        List<Integer> ids = database.listFormIdsForLangId(langIDs[next(langIDs.length)]);
+        int sum = 0;
+        for (Integer id : ids) {
+            sum += id;
+        }
+        return sum;
+    }
+}
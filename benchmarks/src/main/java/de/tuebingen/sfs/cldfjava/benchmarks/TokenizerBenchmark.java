@@ -0,0 +1,99 @@
+package de.tuebingen.sfs.cldfjava.benchmarks;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import de.tuebingen.sfs.cldfjava.data.CLDFForm;
+import de.tuebingen.sfs.cldfjava.io.CLDFImport;
+import de.tuebingen.sfs.cldfjava.io.PString;
+
+/**
+ * The byte-level tokenizer against commons-csv, on the FormTable; "mapped" is
+ * the byte-level tokenizer on a memory-mapped file, "bytes" on a stream.
+ *
+ * countRows only tokenizes, reading nothing but the ID of each row, which is
+ * where skipping the decoding of unread cells shows most; readTable and
+ * readFormCsv decode every cell.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class TokenizerBenchmark {
+    @Param({ "100000", "1000000" })
+    public int forms;
+
+    @Param({ "mapped", "bytes", "commons" })
+    public String tokenizer;
+
+    private File directory;
+    private JsonNode formTable;
+    private JsonNode idOnly;
+
+    @Setup
+    public void setUp() throws IOException {
+        File json = BenchmarkData.dataset(forms);
+        directory = json.getParentFile();
+        formTable = BenchmarkData.table(json, "FormTable");
+        idOnly = BenchmarkData.project(formTable, "ID");
+        CLDFImport.setByteTokenizer(!tokenizer.equals("commons"));
+    }
+
+    @TearDown
+    public void tearDown() {
+        CLDFImport.setByteTokenizer(true);
+    }
+
+    private InputStream open(JsonNode table) throws IOException {
+        File file = new File(directory, table.get("url").asText());
+        if (tokenizer.equals("mapped")) {
+            return new FileInputStream(file);
+        }
+        return new BufferedInputStream(new FileInputStream(file));
+    }
+
+    @Benchmark
+    public long countRows() throws IOException {
+        try (Stream<Map<String, PString>> rows = CLDFImport.streamTable(open(idOnly), idOnly)) {
+            return rows.count();
+        }
+    }
+
+    @Benchmark
+    public List<Map<String, PString>> readTable() throws IOException {
+        try (InputStream stream = open(formTable)) {
+            return CLDFImport.readTable(stream, formTable);
+        }
+    }
+
+    @Benchmark
+    public Map<Integer, CLDFForm<Integer>> readFormCsv() throws IOException {
+        try (InputStream stream = open(formTable)) {
+            return CLDFImport.readFormCsv(stream, formTable);
+        }
+    }
+}
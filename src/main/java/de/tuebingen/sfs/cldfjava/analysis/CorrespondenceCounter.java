@@ -0,0 +1,204 @@
+package de.tuebingen.sfs.cldfjava.analysis;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import de.tuebingen.sfs.cldfjava.data.CLDFIndex;
+import de.tuebingen.sfs.cldfjava.data.CLDFWordlistDatabase;
+
+/**
+ * Counts sound correspondences between languages over the cognate sets of a
+ * database.
+ *
+ * Within each cognate set, every two segmented forms of different languages
+ * are aligned by minimal edit cost (Needleman-Wunsch with {@link SegmentCosts},
+ * preferring substitutions over gaps on ties), and every aligned column counts
+ * as one correspondence between the two languages.
+ *
+ * The cognate sets are divided among fork/join tasks; each task counts into its
+ * own primitive hash map, and the maps are merged as the tasks join, so the
+ * counting threads share nothing.
+ */
+public class CorrespondenceCounter {
+    // Ranges of more cognate sets than this are split into two tasks.
+    static final int COGSETS_PER_TASK = 32;
+
+    private final FormSegments forms;
+    private final CLDFIndex<?, ?> index;
+    private final SegmentCosts costs;
+
+    public CorrespondenceCounter(CLDFWordlistDatabase<?, ?, ?> database, SegmentCosts costs) {
+        this.forms = new FormSegments(database);
+        this.index = forms.index;
+        this.costs = costs;
+    }
+
+    /**
+     * Count the correspondences of all cognate sets on the current thread.
+     */
+    public SoundCorrespondences count() {
+        checkLanguages();
+        CountMap counts = new CountMap();
+        new Workspace().count(0, index.countCognatesets(), counts);
+        return new SoundCorrespondences(forms.symbols, counts);
+    }
+
+    /**
+     * Count the correspondences of all cognate sets on a pool.
+     */
+    public SoundCorrespondences count(ForkJoinPool pool) {
+        checkLanguages();
+        CountMap counts = pool.invoke(new RangeTask(0, index.countCognatesets()));
+        return new SoundCorrespondences(forms.symbols, counts);
+    }
+
+    private void checkLanguages() {
+        if (forms.symbols.languages().size() > SoundCorrespondences.MAX_CODE + 1) {
+            throw new IllegalStateException("Too many languages to count correspondences: "
+                    + forms.symbols.languages().size());
+        }
+    }
+
+    /**
+     * The members of the cognate set at hand and the alignment matrix, reused
+     * for every cognate set one task counts.
+     */
+    private class Workspace {
+        int size;
+        int[] langCodes = new int[16];
+        int[] offsets = new int[17]; // member i has the segments codes[offsets[i]:offsets[i+1]]
+        int[] codes = new int[128];
+        double[] matrix = new double[256];
+
+        void count(int from, int to, CountMap counts) {
+            for (int cogset = from; cogset < to; cogset++) {
+                gather(cogset);
+                for (int i = 0; i < size; i++) {
+                    for (int j = i + 1; j < size; j++) {
+                        if (langCodes[i] < langCodes[j]) {
+                            align(i, j, counts);
+                        } else if (langCodes[i] > langCodes[j]) {
+                            align(j, i, counts);
+                        }
+                    }
+                }
+            }
+        }
+
+        private void gather(int cogset) {
+            int n = index.countFormsOfCognateset(cogset);
+            if (n >= langCodes.length) {
+                langCodes = new int[2 * n];
+                offsets = Arrays.copyOf(offsets, 2 * n + 1);
+            }
+            size = 0;
+            for (int i = 0; i < n; i++) {
+                int row = index.formOfCognateset(cogset, i);
+                int length = forms.length(row);
+                if (length < 0) {
+                    continue;
+                }
+                int start = offsets[size];
+                if (start + length > codes.length) {
+                    codes = Arrays.copyOf(codes, Math.max(start + length, 2 * codes.length));
+                }
+                forms.read(row, codes, start);
+                langCodes[size] = forms.language(row);
+                offsets[size + 1] = start + length;
+                size++;
+            }
+        }
+
+        /**
+         * Align member a with member b, whose language has the larger code, and
+         * count the columns of the alignment.
+         */
+        private void align(int a, int b, CountMap counts) {
+            int aStart = offsets[a];
+            int aLength = offsets[a + 1] - aStart;
+            int bStart = offsets[b];
+            int bLength = offsets[b + 1] - bStart;
+            int width = bLength + 1;
+            if ((aLength + 1) * width > matrix.length) {
+                matrix = new double[Math.max((aLength + 1) * width, 2 * matrix.length)];
+            }
+            double[] d = matrix;
+            double indel = costs.indel();
+            d[0] = 0;
+            for (int j = 1; j <= bLength; j++) {
+                d[j] = d[j - 1] + indel;
+            }
+            for (int i = 1; i <= aLength; i++) {
+                int row = i * width;
+                int segment = codes[aStart + i - 1];
+                d[row] = d[row - width] + indel;
+                for (int j = 1; j <= bLength; j++) {
+                    double substitute = d[row - width + j - 1] + costs.substitution(segment, codes[bStart + j - 1]);
+                    double delete = d[row - width + j] + indel;
+                    double insert = d[row + j - 1] + indel;
+                    d[row + j] = Math.min(substitute, Math.min(delete, insert));
+                }
+            }
+
+            int langA = langCodes[a];
+            int langB = langCodes[b];
+            int i = aLength;
+            int j = bLength;
+            while (i > 0 || j > 0) {
+                int segmentA = SoundCorrespondences.GAP;
+                int segmentB = SoundCorrespondences.GAP;
+                double here = d[i * width + j];
+                if (i > 0 && j > 0 && here == d[(i - 1) * width + j - 1]
+                        + costs.substitution(codes[aStart + i - 1], codes[bStart + j - 1])) {
+                    segmentA = codes[aStart + --i];
+                    segmentB = codes[bStart + --j];
+                } else if (i > 0 && here == d[(i - 1) * width + j] + indel) {
+                    segmentA = codes[aStart + --i];
+                } else {
+                    segmentB = codes[bStart + --j];
+                }
+                if (segmentA > SoundCorrespondences.MAX_CODE || segmentB > SoundCorrespondences.MAX_CODE) {
+                    throw new IllegalStateException("Too many segments to count correspondences");
+                }
+                counts.add(SoundCorrespondences.key(langA, langB, segmentA, segmentB), 1);
+            }
+        }
+    }
+
+    /**
+     * Counts a range of cognate sets, splitting it in halves while it is large,
+     * and merges the counts of the halves.
+     */
+    private class RangeTask extends RecursiveTask<CountMap> {
+        private static final long serialVersionUID = 1L;
+        final int from;
+        final int to;
+
+        RangeTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected CountMap compute() {
+            if (to - from <= COGSETS_PER_TASK) {
+                CountMap counts = new CountMap();
+                new Workspace().count(from, to, counts);
+                return counts;
+            }
+            int middle = (from + to) >>> 1;
+            RangeTask second = new RangeTask(middle, to);
+            second.fork();
+            CountMap first = new RangeTask(from, middle).compute();
+            CountMap rest = second.join();
+            // Merge the smaller map into the larger.
+            if (first.size() < rest.size()) {
+                rest.addAll(first);
+                return rest;
+            }
+            first.addAll(rest);
+            return first;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package de.tuebingen.sfs.cldfjava.analysis;
+
+/**
+ * An open addressing hash map from non-zero long keys to counts, for one
+ * thread. Slots with a count of 0 are empty.
+ */
+final class CountMap {
+    long[] keys;
+    long[] counts;
+    private int size = 0;
+    private int shift;
+
+    CountMap() {
+        this(64);
+    }
+
+    CountMap(int expected) {
+        allocate(Integer.highestOneBit(Math.max(16, 2 * expected - 1)) << 1);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        counts = new long[capacity];
+        shift = 64 - Integer.numberOfTrailingZeros(capacity);
+    }
+
+    private int slot(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+    }
+
+    /**
+     * @param count a positive count
+     */
+    void add(long key, long count) {
+        int mask = keys.length - 1;
+        for (int i = slot(key);; i = (i + 1) & mask) {
+            if (counts[i] == 0) {
+                if (2 * (size + 1) > keys.length) {
+                    grow();
+                    add(key, count);
+                    return;
+                }
+                keys[i] = key;
+                counts[i] = count;
+                size++;
+                return;
+            }
+            if (keys[i] == key) {
+                counts[i] += count;
+                return;
+            }
+        }
+    }
+
+    long get(long key) {
+        int mask = keys.length - 1;
+        for (int i = slot(key);; i = (i + 1) & mask) {
+            if (counts[i] == 0 || keys[i] == key) {
+                return counts[i];
+            }
+        }
+    }
+
+    /**
+     * Add all counts of another map to this one.
+     */
+    void addAll(CountMap other) {
+        for (int i = 0; i < other.keys.length; i++) {
+            if (other.counts[i] != 0) {
+                add(other.keys[i], other.counts[i]);
+            }
+        }
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        long[] oldCounts = counts;
+        allocate(2 * keys.length);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldCounts[i] != 0) {
+                add(oldKeys[i], oldCounts[i]);
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+}
@@ -0,0 +1,286 @@
+package de.tuebingen.sfs.cldfjava.analysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import de.tuebingen.sfs.cldfjava.data.CLDFIndex;
+import de.tuebingen.sfs.cldfjava.data.CLDFWordlistDatabase;
+
+/**
+ * Computes the edit distances between the segments of all pairs of forms that
+ * express the same concept in different languages.
+ *
+ * For each concept, the segment codes of its forms are gathered into one flat
+ * array, and pairs are compared with a two-row dynamic program whose rows are
+ * allocated once per task and reused for every pair. With a cutoff, pairs whose
+ * lengths alone rule them out are skipped, and the dynamic program stops as
+ * soon as a whole row exceeds the cutoff. Distances are handed to a sink as
+ * they are computed, and only pairs within the cutoff are reported.
+ *
+ * Forms without a Segments cell are left out. An empty Segments cell makes an
+ * empty form, which takes part in pairs like any other: two empty forms are at
+ * distance 0, and an empty form is at the cost of inserting all segments from
+ * any other.
+ */
+public class FormDistanceEngine {
+    // Concepts with more pairs than this are split into several tasks.
+    static final int PAIRS_PER_TASK = 4096;
+
+    private final FormSegments forms;
+    private final CLDFIndex<?, ?> index;
+    private final SegmentCosts costs;
+    private double cutoff = Double.POSITIVE_INFINITY;
+    private boolean normalized = false;
+
+    public FormDistanceEngine(CLDFWordlistDatabase<?, ?, ?> database, SegmentCosts costs) {
+        this.forms = new FormSegments(database);
+        this.index = forms.index;
+        this.costs = costs;
+    }
+
+    /**
+     * Only report pairs with at most this distance, and stop computing any other
+     * pair as early as possible.
+     */
+    public void setCutoff(double cutoff) {
+        this.cutoff = cutoff;
+    }
+
+    /**
+     * Divide each distance by the length of the longer form, so that it lies
+     * between 0 and the largest edit cost. The cutoff applies to the normalized
+     * distance.
+     */
+    public void setNormalized(boolean normalized) {
+        this.normalized = normalized;
+    }
+
+    /**
+     * Compare the forms of one concept on the current thread.
+     */
+    public void compare(int paramCode, FormPairSink sink) {
+        Concept concept = gather(paramCode);
+        concept.compare(0, concept.size(), new Workspace(concept.maxLength), sink);
+    }
+
+    /**
+     * Compare the forms of every concept, on a pool.
+     */
+    public void compareAll(ForkJoinPool pool, FormPairSink sink) {
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                List<ConceptTask> tasks = new ArrayList<>();
+                for (int paramCode = 0; paramCode < forms.symbols.parameters().size(); paramCode++) {
+                    if (index.countFormsOfParameter(paramCode) > 1) {
+                        tasks.add(new ConceptTask(paramCode, sink));
+                    }
+                }
+                invokeAll(tasks);
+            }
+        });
+    }
+
+    /**
+     * Collect the language and segment codes of the segmented forms of a concept.
+     */
+    private Concept gather(int paramCode) {
+        int n = index.countFormsOfParameter(paramCode);
+        Concept concept = new Concept(paramCode, n);
+        for (int i = 0; i < n; i++) {
+            int row = index.formOfParameter(paramCode, i);
+            int length = forms.length(row);
+            if (length >= 0) {
+                concept.add(row, forms.language(row), length);
+            }
+        }
+        return concept;
+    }
+
+    /**
+     * The segmented forms of one concept, with their segments in one array.
+     */
+    private class Concept {
+        final int paramCode;
+        int size = 0;
+        int[] rows;
+        int[] langCodes;
+        int[] offsets; // form i has the segments codes[offsets[i]:offsets[i+1]]
+        int[] codes = new int[64];
+        int maxLength = 0;
+
+        Concept(int paramCode, int capacity) {
+            this.paramCode = paramCode;
+            rows = new int[capacity];
+            langCodes = new int[capacity];
+            offsets = new int[capacity + 1];
+        }
+
+        int size() {
+            return size;
+        }
+
+        void add(int row, int langCode, int length) {
+            int start = offsets[size];
+            if (start + length > codes.length) {
+                codes = Arrays.copyOf(codes, Math.max(start + length, 2 * codes.length));
+            }
+            forms.read(row, codes, start);
+            rows[size] = row;
+            langCodes[size] = langCode;
+            offsets[size + 1] = start + length;
+            maxLength = Math.max(maxLength, length);
+            size++;
+        }
+
+        /**
+         * @return the number of pairs whose first form is in [from, to)
+         */
+        long pairs(int from, int to) {
+            long pairs = 0;
+            for (int i = from; i < to; i++) {
+                pairs += size - 1 - i;
+            }
+            return pairs;
+        }
+
+        /**
+         * Compare every form in [from, to) with every later form of another
+         * language.
+         */
+        void compare(int from, int to, Workspace workspace, FormPairSink sink) {
+            for (int i = from; i < to; i++) {
+                int aStart = offsets[i];
+                int aLength = offsets[i + 1] - aStart;
+                for (int j = i + 1; j < size; j++) {
+                    if (langCodes[i] == langCodes[j]) {
+                        continue;
+                    }
+                    int bStart = offsets[j];
+                    int bLength = offsets[j + 1] - bStart;
+                    int longer = Math.max(aLength, bLength);
+                    // Two empty forms are at distance 0 whatever the cutoff, and an
+                    // infinite cutoff times 0 would be NaN.
+                    double limit = normalized && longer > 0 ? cutoff * longer : cutoff;
+                    double distance = workspace.distance(codes, aStart, aLength, bStart, bLength, limit);
+                    if (distance <= limit) {
+                        sink.accept(paramCode, rows[i], rows[j],
+                                normalized ? (longer == 0 ? 0 : distance / longer) : distance);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The two rows of the dynamic program, reused for every pair one task
+     * compares.
+     */
+    private class Workspace {
+        double[] previous;
+        double[] current;
+
+        Workspace(int maxLength) {
+            previous = new double[maxLength + 1];
+            current = new double[maxLength + 1];
+        }
+
+        /**
+         * @return the edit distance, or infinity if it exceeds the limit
+         */
+        double distance(int[] codes, int aStart, int aLength, int bStart, int bLength, double limit) {
+            double indel = costs.indel();
+            if (Math.abs(aLength - bLength) * indel > limit) {
+                return Double.POSITIVE_INFINITY;
+            }
+            double[] previous = this.previous;
+            double[] current = this.current;
+            previous[0] = 0;
+            for (int j = 1; j <= bLength; j++) {
+                previous[j] = previous[j - 1] + indel;
+            }
+            for (int i = 1; i <= aLength; i++) {
+                int a = codes[aStart + i - 1];
+                current[0] = previous[0] + indel;
+                double rowMinimum = current[0];
+                for (int j = 1; j <= bLength; j++) {
+                    double substitute = previous[j - 1] + costs.substitution(a, codes[bStart + j - 1]);
+                    double delete = previous[j] + indel;
+                    double insert = current[j - 1] + indel;
+                    double best = Math.min(substitute, Math.min(delete, insert));
+                    current[j] = best;
+                    if (best < rowMinimum) {
+                        rowMinimum = best;
+                    }
+                }
+                if (rowMinimum > limit) {
+                    // Every later row only grows from this one.
+                    return Double.POSITIVE_INFINITY;
+                }
+                double[] swap = previous;
+                previous = current;
+                current = swap;
+            }
+            return previous[bLength];
+        }
+    }
+
+    /**
+     * Gathers one concept, and compares its pairs in one or more subtasks.
+     */
+    private class ConceptTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        final int paramCode;
+        final FormPairSink sink;
+
+        ConceptTask(int paramCode, FormPairSink sink) {
+            this.paramCode = paramCode;
+            this.sink = sink;
+        }
+
+        @Override
+        protected void compute() {
+            Concept concept = gather(paramCode);
+            new RangeTask(concept, 0, concept.size(), sink).compute();
+        }
+    }
+
+    /**
+     * Compares the pairs whose first form is in a range, splitting the range in
+     * two halves of about as many pairs while it is too large.
+     */
+    private class RangeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        final Concept concept;
+        final int from;
+        final int to;
+        final FormPairSink sink;
+
+        RangeTask(Concept concept, int from, int to, FormPairSink sink) {
+            this.concept = concept;
+            this.from = from;
+            this.to = to;
+            this.sink = sink;
+        }
+
+        @Override
+        protected void compute() {
+            long pairs = concept.pairs(from, to);
+            if (pairs <= PAIRS_PER_TASK || to - from < 2) {
+                concept.compare(from, to, new Workspace(concept.maxLength), sink);
+                return;
+            }
+            // Earlier forms have more partners, so the split is before the middle.
+            int split = from + 1;
+            long first = concept.size - 1 - from;
+            while (split < to - 1 && 2 * first < pairs) {
+                first += concept.size - 1 - split;
+                split++;
+            }
+            invokeAll(new RangeTask(concept, from, split, sink), new RangeTask(concept, split, to, sink));
+        }
+    }
+}
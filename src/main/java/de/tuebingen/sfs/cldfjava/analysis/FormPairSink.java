@@ -0,0 +1,20 @@
+package de.tuebingen.sfs.cldfjava.analysis;
+
+/**
+ * Receives the distances computed by a {@link FormDistanceEngine}, one pair of
+ * forms at a time.
+ *
+ * When the engine runs on a pool, the sink is called from several threads at
+ * once, so it must be thread-safe, eg. by accumulating into thread-confined
+ * state or concurrent structures.
+ */
+@FunctionalInterface
+public interface FormPairSink {
+    /**
+     * @param paramCode the concept both forms express
+     * @param rowA      the index row of one form
+     * @param rowB      the index row of the other form, in another language
+     * @param distance  their distance
+     */
+    void accept(int paramCode, int rowA, int rowB, double distance);
+}
@@ -0,0 +1,63 @@
+package de.tuebingen.sfs.cldfjava.analysis;
+
+import java.util.Arrays;
+
+import de.tuebingen.sfs.cldfjava.data.CLDFForm;
+import de.tuebingen.sfs.cldfjava.data.CLDFFormStore;
+import de.tuebingen.sfs.cldfjava.data.CLDFIndex;
+import de.tuebingen.sfs.cldfjava.data.CLDFSymbols;
+import de.tuebingen.sfs.cldfjava.data.CLDFWordlistDatabase;
+
+/**
+ * Reads the language and segment codes of the forms of a database by index
+ * row, from its form store or from its form objects, in the codes of the
+ * database's symbol tables.
+ */
+final class FormSegments {
+    final CLDFIndex<?, ?> index;
+    final CLDFSymbols symbols;
+    private final CLDFFormStore store;
+
+    FormSegments(CLDFWordlistDatabase<?, ?, ?> database) {
+        this.index = database.getIndex();
+        this.store = index.getFormStore();
+        this.symbols = database.getSymbols();
+    }
+
+    int language(int row) {
+        if (store != null) {
+            return store.getLangCode(row);
+        }
+        CLDFForm<?> form = index.form(row);
+        return form.getSymbols() == symbols ? form.getLangCode() : symbols.languages().intern(form.getLangID());
+    }
+
+    /**
+     * @return the number of segments of a form, or -1 if it has none
+     */
+    int length(int row) {
+        if (store != null) {
+            return store.isSegmented(row) ? store.getSegmentCount(row) : -1;
+        }
+        CLDFForm<?> form = index.form(row);
+        if (form.getSymbols() == symbols) {
+            return form.getSegmentCodes() == null ? -1 : form.getSegmentCodes().length;
+        }
+        return form.getSegments() == null ? -1 : form.getSegments().length;
+    }
+
+    /**
+     * Copy the segment codes of a segmented form into target, which must have
+     * room for {@link #length(int)} codes from offset.
+     */
+    void read(int row, int[] target, int offset) {
+        if (store != null) {
+            store.getSegmentCodes(row, target, offset);
+            return;
+        }
+        CLDFForm<?> form = index.form(row);
+        int[] codes = form.getSymbols() == symbols ? form.getSegmentCodes()
+                : symbols.segments().intern(Arrays.asList(form.getSegments()));
+        System.arraycopy(codes, 0, target, offset, codes.length);
+    }
+}
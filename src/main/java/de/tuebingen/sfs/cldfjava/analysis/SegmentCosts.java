@@ -0,0 +1,107 @@
+package de.tuebingen.sfs.cldfjava.analysis;
+
+import java.text.Normalizer;
+import java.util.function.ToIntFunction;
+
+import de.tuebingen.sfs.cldfjava.data.CLDFSymbolTable;
+
+/**
+ * The edit costs between segments, by segment code.
+ *
+ * Each segment of the inventory belongs to a class, eg. vowel or consonant.
+ * Substituting a segment by itself costs nothing, substituting it by another
+ * segment costs what the class matrix says for the two classes, and inserting
+ * or deleting any segment costs the same. This is plain Levenshtein distance
+ * with a single class and unit costs.
+ */
+public final class SegmentCosts {
+    public static final int VOWEL = 0;
+    public static final int CONSONANT = 1;
+    public static final int OTHER = 2;
+
+    // The first letters of vowels, after decomposing diacritics.
+    private static final String VOWELS = "aeiouy\u00e6\u00f8\u0153\u0250\u0251\u0252\u0254\u0258\u0259\u025a\u025b"
+            + "\u025c\u025e\u0264\u0268\u026a\u026f\u0275\u0276\u0289\u028a\u028c\u028f";
+
+    private final int[] classes; // the class of each segment code
+    private final double[][] substitution; // the cost between two classes
+    private final double indel;
+
+    /**
+     * @param classes      the class of each segment code; codes past the end are
+     *                     in the last class
+     * @param substitution the cost of substituting a segment of one class by a
+     *                     different segment of another (or the same) class
+     * @param indel        the cost of inserting or deleting a segment
+     */
+    public SegmentCosts(int[] classes, double[][] substitution, double indel) {
+        this.classes = classes;
+        this.substitution = substitution;
+        this.indel = indel;
+    }
+
+    /**
+     * @return costs of 1 for every edit
+     */
+    public static SegmentCosts unit() {
+        return new SegmentCosts(new int[0], new double[][] { { 1 } }, 1);
+    }
+
+    /**
+     * Costs by sound class: a substitution within the vowels or the consonants
+     * costs sameClass, any other substitution and every insertion and deletion
+     * costs 1.
+     *
+     * @param inventory the segment inventory of a database
+     */
+    public static SegmentCosts bySoundClass(CLDFSymbolTable inventory, double sameClass) {
+        return new SegmentCosts(classify(inventory, SegmentCosts::soundClass), new double[][] {
+                { sameClass, 1, 1 },
+                { 1, sameClass, 1 },
+                { 1, 1, 1 } }, 1);
+    }
+
+    /**
+     * Assign every segment of an inventory to a class.
+     *
+     * @return the class of each segment code
+     */
+    public static int[] classify(CLDFSymbolTable inventory, ToIntFunction<String> classOf) {
+        int[] classes = new int[inventory.size()];
+        for (int code = 0; code < classes.length; code++) {
+            classes[code] = classOf.applyAsInt(inventory.name(code));
+        }
+        return classes;
+    }
+
+    /**
+     * A coarse sound class by the first letter of a segment: {@link #VOWEL},
+     * {@link #CONSONANT}, or {@link #OTHER} for tones, boundaries and anything
+     * else that is not a letter.
+     */
+    public static int soundClass(String segment) {
+        if (segment == null || segment.isEmpty()) {
+            return OTHER;
+        }
+        char first = Character.toLowerCase(Normalizer.normalize(segment, Normalizer.Form.NFD).charAt(0));
+        if (VOWELS.indexOf(first) >= 0) {
+            return VOWEL;
+        }
+        return Character.isLetter(first) ? CONSONANT : OTHER;
+    }
+
+    double substitution(int a, int b) {
+        if (a == b) {
+            return 0;
+        }
+        return substitution[classOf(a)][classOf(b)];
+    }
+
+    private int classOf(int code) {
+        return code < classes.length ? classes[code] : substitution.length - 1;
+    }
+
+    double indel() {
+        return indel;
+    }
+}
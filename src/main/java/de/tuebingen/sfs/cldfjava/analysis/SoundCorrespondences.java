@@ -0,0 +1,89 @@
+package de.tuebingen.sfs.cldfjava.analysis;
+
+import de.tuebingen.sfs.cldfjava.data.CLDFSymbols;
+
+/**
+ * How often each segment of one language corresponds to each segment of
+ * another, in the aligned forms of their cognate sets, as counted by a
+ * {@link CorrespondenceCounter}.
+ *
+ * Languages and segments are given by their codes in the symbol tables of the
+ * database, and a segment aligned with nothing by {@link #GAP}. Each language
+ * pair is stored once, with the smaller language code first; the lookups take
+ * either order.
+ */
+public class SoundCorrespondences {
+    public static final int GAP = -1;
+
+    // Codes are stored in 16 bits each, segments shifted by one for the gap.
+    static final int MAX_CODE = 0xFFFE;
+
+    private final CLDFSymbols symbols;
+    private final CountMap counts;
+
+    SoundCorrespondences(CLDFSymbols symbols, CountMap counts) {
+        this.symbols = symbols;
+        this.counts = counts;
+    }
+
+    /**
+     * Receives the counts of a {@link SoundCorrespondences}, one correspondence
+     * at a time.
+     */
+    @FunctionalInterface
+    public interface Visitor {
+        void accept(int langA, int langB, int segmentA, int segmentB, long count);
+    }
+
+    static long key(int langA, int langB, int segmentA, int segmentB) {
+        return (long) langA << 48 | (long) langB << 32 | (long) (segmentA + 1) << 16 | (segmentB + 1);
+    }
+
+    /**
+     * @return how often segmentA in langA was aligned with segmentB in langB
+     */
+    public long count(int langA, int langB, int segmentA, int segmentB) {
+        if (langA < 0 || langB < 0 || langA == langB) {
+            return 0;
+        }
+        return langA < langB ? counts.get(key(langA, langB, segmentA, segmentB))
+                : counts.get(key(langB, langA, segmentB, segmentA));
+    }
+
+    /**
+     * The count by language IDs and segments, with null for a gap.
+     */
+    public long count(String langA, String langB, String segmentA, String segmentB) {
+        int a = symbols.segments().code(segmentA);
+        int b = symbols.segments().code(segmentB);
+        if (a < 0 && segmentA != null || b < 0 && segmentB != null) {
+            return 0;
+        }
+        return count(symbols.languages().code(langA), symbols.languages().code(langB), a, b);
+    }
+
+    /**
+     * Visit every correspondence with a positive count, in no particular order.
+     */
+    public void forEach(Visitor visitor) {
+        for (int i = 0; i < counts.keys.length; i++) {
+            long count = counts.counts[i];
+            if (count != 0) {
+                long key = counts.keys[i];
+                visitor.accept((int) (key >>> 48), (int) (key >>> 32) & 0xFFFF, ((int) (key >>> 16) & 0xFFFF) - 1,
+                        ((int) key & 0xFFFF) - 1, count);
+            }
+        }
+    }
+
+    /**
+     * @return the number of distinct correspondences
+     */
+    public int size() {
+        return counts.size();
+    }
+
+    public CLDFSymbols getSymbols() {
+        return symbols;
+    }
+}
@@ -0,0 +1,221 @@
+package de.tuebingen.sfs.cldfjava.data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A batch of edits to a database: forms, languages, cognate judgements and
+ * cognate sets to add or remove. Create one with
+ * {@link CLDFWordlistDatabase#edit()}, collect the edits, and {@link #apply()}
+ * them at once.
+ *
+ * Applying a batch builds a new index of the database from the old one and
+ * publishes it when the batch is done. The new index shares the structures of
+ * the old one, and copies only the pages of them the batch changes (see
+ * {@link CLDFIndex}), so applying a batch costs about its size rather than the
+ * size of the database. The exceptions are removing a form, which costs the
+ * length of the postings lists it is removed from, adding forms while
+ * judgements wait for a form of their ID, which takes a pass over the
+ * judgements, and the first edit of a database, which counts its judgements. The old index, and the views
+ * and groupings of forms it handed out, do not change. Removals are applied before additions,
+ * so removing and adding the same ID replaces a row; adding a row with an
+ * existing ID replaces it too.
+ *
+ * A removed form keeps its cognate judgements, which are left out of the index
+ * like the judgements of any unknown form, until a form with that ID is added
+ * again. The forms of a columnar store can only be added, with the IDs that
+ * continue its numbering.
+ *
+ * The maps of the database itself (eg. {@link CLDFWordlistDatabase#getFormsMap()})
+ * are changed in place, so applying a batch must not overlap with other
+ * threads reading them, or with another batch. A columnar store is the
+ * exception: the new rows go to an extension of the store (see
+ * {@link CLDFFormStore#extend()}), which replaces the store and the forms map
+ * of the database before the new index is published, while the old index, the
+ * old store and the forms map taken from it keep the rows they had. Databases
+ * derived with {@link CLDFWordlistDatabase#withTables} have maps and stores of
+ * their own, so an edit of one never shows in another.
+ *
+ * @param <F> the type of form IDs
+ * @param <J> the type of cognate judgement IDs
+ * @param <C> the type of cognate set IDs
+ */
+public class CLDFEdit<F, J, C> {
+    private final CLDFWordlistDatabase<F, J, C> database;
+    private final List<F> removedForms = new ArrayList<>();
+    private final List<J> removedJudgements = new ArrayList<>();
+    private final List<C> removedCogsets = new ArrayList<>();
+    private final List<CLDFForm<F>> forms = new ArrayList<>();
+    private final List<CLDFLanguage> languages = new ArrayList<>();
+    private final List<CLDFCognateJudgement<F, J, C>> judgements = new ArrayList<>();
+    private final List<CLDFCognateSet<C>> cogsets = new ArrayList<>();
+
+    CLDFEdit(CLDFWordlistDatabase<F, J, C> database) {
+        this.database = database;
+    }
+
+    /**
+     * Add a form under its ID, replacing any form with the same ID.
+     */
+    public CLDFEdit<F, J, C> addForm(CLDFForm<F> form) {
+        forms.add(form);
+        return this;
+    }
+
+    public CLDFEdit<F, J, C> removeForm(F formID) {
+        removedForms.add(formID);
+        return this;
+    }
+
+    /**
+     * Add a language, replacing any language with the same ID.
+     */
+    public CLDFEdit<F, J, C> putLanguage(CLDFLanguage language) {
+        languages.add(language);
+        return this;
+    }
+
+    /**
+     * Add a cognate judgement, replacing any judgement with the same ID.
+     */
+    public CLDFEdit<F, J, C> addJudgement(CLDFCognateJudgement<F, J, C> judgement) {
+        judgements.add(judgement);
+        return this;
+    }
+
+    public CLDFEdit<F, J, C> removeJudgement(J judgementID) {
+        removedJudgements.add(judgementID);
+        return this;
+    }
+
+    /**
+     * Add a row of the CognatesetTable, replacing any with the same ID. Which
+     * forms belong to a cognate set is up to the judgements alone.
+     */
+    public CLDFEdit<F, J, C> addCognateset(CLDFCognateSet<C> cogset) {
+        cogsets.add(cogset);
+        return this;
+    }
+
+    public CLDFEdit<F, J, C> removeCognateset(C cogsetID) {
+        removedCogsets.add(cogsetID);
+        return this;
+    }
+
+    /**
+     * @return the number of edits collected
+     */
+    public int size() {
+        return removedForms.size() + removedJudgements.size() + removedCogsets.size() + forms.size()
+                + languages.size() + judgements.size() + cogsets.size();
+    }
+
+    /**
+     * Apply the edits to the database. The batch is empty afterwards, and can
+     * collect the next edits.
+     *
+     * @throws UnsupportedOperationException if the batch removes forms of a
+     *                                       columnar store, or adds forms to it
+     *                                       out of order; nothing is changed then
+     */
+    public void apply() {
+        CLDFFormStore store = database.formStore;
+        if (store != null) {
+            if (!removedForms.isEmpty()) {
+                throw new UnsupportedOperationException("The forms of a columnar store cannot be removed");
+            }
+            for (int i = 0; i < forms.size(); i++) {
+                if (!Integer.valueOf(store.size() + i).equals(forms.get(i).getId())) {
+                    throw new UnsupportedOperationException("Form " + forms.get(i).getId()
+                            + " does not continue the IDs of the columnar store at " + (store.size() + i));
+                }
+            }
+        }
+        if (store != null && !forms.isEmpty()) {
+            store = store.extend();
+        }
+        // The index must count the judgements as they are before any map changes.
+        CLDFIndex<F, C> index = database.getIndex().forEdit(store);
+        index.prepareEdit(database);
+
+        if (database.cognateIDToCognate != null) {
+            for (J judgementID : removedJudgements) {
+                CLDFCognateJudgement<F, J, C> old = database.cognateIDToCognate.remove(judgementID);
+                if (old != null) {
+                    index.unlink(old.getFormReference(), old.getCognatesetReference());
+                }
+            }
+        }
+        for (F formID : removedForms) {
+            if (database.idToForm.remove(formID) != null) {
+                index.deleteForm(formID);
+            }
+        }
+        if (database.cogsetIDToCogset != null) {
+            for (C cogsetID : removedCogsets) {
+                database.cogsetIDToCogset.remove(cogsetID);
+            }
+        }
+
+        for (CLDFLanguage language : languages) {
+            CLDFLanguage old = database.langIDToLang.put(language.getLangID(), language);
+            if (old == null) {
+                database.langIDs.add(language.getLangID());
+            }
+            index.updateLanguage(database, old, language);
+        }
+        if (!cogsets.isEmpty() && database.cogsetIDToCogset == null) {
+            database.cogsetIDToCogset = new HashMap<>();
+        }
+        for (CLDFCognateSet<C> cogset : cogsets) {
+            database.cogsetIDToCogset.put(cogset.getCogsetID(), cogset);
+        }
+        Set<F> added = new HashSet<>();
+        for (CLDFForm<F> form : forms) {
+            F formID = form.getId();
+            added.add(formID);
+            if (store != null) {
+                store.add(form);
+                index.insertForm(formID, null);
+            } else {
+                if (database.idToForm.remove(formID) != null) {
+                    index.deleteForm(formID);
+                }
+                database.idToForm.put(formID, form);
+                index.insertForm(formID, form);
+            }
+        }
+        index.linkAddedForms(database, added);
+        if (!judgements.isEmpty() && database.cognateIDToCognate == null) {
+            database.cognateIDToCognate = new HashMap<>();
+        }
+        for (CLDFCognateJudgement<F, J, C> judgement : judgements) {
+            CLDFCognateJudgement<F, J, C> old = database.cognateIDToCognate.put(judgement.getCognateID(),
+                    judgement);
+            if (old != null) {
+                index.unlink(old.getFormReference(), old.getCognatesetReference());
+            }
+            index.link(judgement.getFormReference(), judgement.getCognatesetReference());
+        }
+        if (store != database.formStore) {
+            // F is Integer with a columnar store.
+            @SuppressWarnings("unchecked")
+            Map<F, CLDFForm<F>> formsMap = (Map<F, CLDFForm<F>>) (Map<?, ?>) store.asMap();
+            database.formStore = store;
+            database.idToForm = formsMap;
+        }
+        database.index = index;
+
+        removedForms.clear();
+        removedJudgements.clear();
+        removedCogsets.clear();
+        forms.clear();
+        languages.clear();
+        judgements.clear();
+        cogsets.clear();
+    }
+}
@@ -1,6 +1,8 @@
 package de.tuebingen.sfs.cldfjava.data;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -11,8 +13,9 @@ import de.tuebingen.sfs.cldfjava.io.PString;
 public class CLDFForm<FormID> {
     FormID id; // the id used to reference forms in other tables (e.g. cognates.csv or
                // borrowings.csv)
-    String langID; // Language_ID
-    List<String> paramID; // Parameter_ID
+    CLDFSymbols symbols; // the symbol tables the codes below refer to
+    int langCode; // Language_ID, as code in symbols.languages()
+    int[] paramCodes; // Parameter_ID, as codes in symbols.parameters()
     String form;
     String origValue; // Value
     String comment;
@@ -20,12 +23,46 @@ public class CLDFForm<FormID> {
     String orthography;
     Map<String, PString> properties; // to store additional info, e.g. the original orthography, under their column
                                      // name
-    String[] segments;
-
+    int[] segmentCodes; // Segments, as codes in symbols.segments(), or null
+    private Detached detached; // the IDs of a form without symbols, until a database adopts it
+
+    /**
+     * The language, parameter and segment IDs of a form created without symbols.
+     */
+    private static final class Detached {
+        String langID;
+        List<String> paramIDs;
+        String[] segments;
+    }
+
+    private static final int[] NO_CODES = new int[0];
+
+    /**
+     * Create a form without symbols, which keeps its IDs as strings until the
+     * first database that indexes it adopts it, interning the IDs in the
+     * database's symbols. Until then, the form has no codes: its symbols are
+     * null, its language code -1, and its parameter and segment codes empty
+     * and null.
+     * 
+     * Forms that belong to a database should share the database's symbols, see
+     * {@link #CLDFForm(Object, CLDFSymbols, String, List, String)}.
+     */
     public CLDFForm(FormID id, String language, List<String> concepts, String form) {
+        this(id, null, -1, NO_CODES, form);
+        detached = new Detached();
+        detached.langID = language;
+        detached.paramIDs = Collections.unmodifiableList(new ArrayList<>(concepts));
+    }
+
+    public CLDFForm(FormID id, CLDFSymbols symbols, String language, List<String> concepts, String form) {
+        this(id, symbols, symbols.languages().intern(language), symbols.parameters().intern(concepts), form);
+    }
+
+    public CLDFForm(FormID id, CLDFSymbols symbols, int langCode, int[] paramCodes, String form) {
         this.id = id;
-        this.langID = language;
-        this.paramID = concepts;
+        this.symbols = symbols;
+        this.langCode = langCode;
+        this.paramCodes = paramCodes;
         this.form = form;
         origValue = "";
         comment = "";
@@ -33,13 +70,42 @@ public class CLDFForm<FormID> {
         orthography = "";
     }
 
+    /**
+     * @return a new array of the segments, or null if the form has none
+     */
     public String[] getSegments() {
+        if (detached != null) {
+            return detached.segments == null ? null : detached.segments.clone();
+        }
+        if (segmentCodes == null) {
+            return null;
+        }
+        CLDFSymbolTable inventory = symbols.segments();
+        String[] segments = new String[segmentCodes.length];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = inventory.name(segmentCodes[i]);
+        }
         return segments;
     }
 
     public void setSegments(List<String> segments) {
-        this.segments = new String[segments.size()];
-        segments.toArray(this.segments);
+        if (detached != null) {
+            detached.segments = segments.toArray(new String[0]);
+            return;
+        }
+        this.segmentCodes = symbols.segments().intern(segments);
+    }
+
+    /**
+     * @return the segments as codes in the segment inventory of the symbols, or
+     *         null; do not modify the array
+     */
+    public int[] getSegmentCodes() {
+        return segmentCodes;
+    }
+
+    public void setSegmentCodes(int[] segmentCodes) {
+        this.segmentCodes = segmentCodes;
     }
 
     public String getOrthography() {
@@ -91,23 +157,69 @@ public class CLDFForm<FormID> {
     }
 
     public String getLangID() {
-        return langID;
+        return detached != null ? detached.langID : symbols.languages().name(langCode);
     }
 
     public void setLangID(String langID) {
-        this.langID = langID;
+        if (detached != null) {
+            detached.langID = langID;
+            return;
+        }
+        this.langCode = symbols.languages().intern(langID);
+    }
+
+    public int getLangCode() {
+        return langCode;
     }
 
+    /**
+     * @return a read-only view of the parameter IDs
+     */
     public List<String> getParamID() {
-        return paramID;
+        return detached != null ? detached.paramIDs : symbols.parameters().names(paramCodes);
     }
 
     public void setParamID(List<String> list) {
-        this.paramID = list;
+        if (detached != null) {
+            detached.paramIDs = Collections.unmodifiableList(new ArrayList<>(list));
+            return;
+        }
+        this.paramCodes = symbols.parameters().intern(list);
+    }
+
+    /**
+     * @return the parameter codes; do not modify the array
+     */
+    public int[] getParamCodes() {
+        return paramCodes;
+    }
+
+    /**
+     * @return the symbol tables the codes of this form refer to, or null for a
+     *         form created without symbols that no database adopted yet
+     */
+    public CLDFSymbols getSymbols() {
+        return symbols;
+    }
+
+    /**
+     * Intern the IDs of a form created without symbols in a database's symbols,
+     * and drop the strings. Forms with symbols are left as they are.
+     */
+    void adopt(CLDFSymbols symbols) {
+        Detached ids = detached;
+        if (ids == null) {
+            return;
+        }
+        langCode = symbols.languages().intern(ids.langID);
+        paramCodes = symbols.parameters().intern(ids.paramIDs);
+        segmentCodes = ids.segments == null ? null : symbols.segments().intern(Arrays.asList(ids.segments));
+        this.symbols = symbols;
+        detached = null;
     }
 
     public String toString() {
-        return id + "\t" + form + "\t" + langID + "\t" + paramID + "\t" + properties;
+        return id + "\t" + form + "\t" + getLangID() + "\t" + getParamID() + "\t" + properties;
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,428 @@
+package de.tuebingen.sfs.cldfjava.data;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.tuebingen.sfs.cldfjava.io.PString;
+
+/**
+ * A columnar store for the forms of a database, as an alternative to one
+ * CLDFForm object per form.
+ *
+ * Forms are numbered consecutively from 0, like the integer IDs CLDFImport
+ * assigns, and every field is kept in an array indexed by that number. Lists
+ * (parameters, segments) are flattened into one array with offsets. CLDFForm
+ * objects are only created on demand, as read-only snapshots of one row, so
+ * full scans over e.g. the language codes sweep a single int array.
+ *
+ * Segments are codes in the segment inventory of the symbols, packed into a
+ * short array as long as the inventory has at most 65536 sounds, which covers
+ * any real inventory, and widened to an int array otherwise.
+ *
+ * Rows are only ever appended, and a row never changes once it is written.
+ * {@link #extend()} makes a store that shares the arrays of this one and
+ * appends past its rows, so this store, and the map views it handed out, keep
+ * their rows while the extension grows; that is how edits of a database add
+ * forms (see {@link CLDFEdit}). The stores sharing arrays take rows in turn, and
+ * a store that finds its next row taken by another copies its arrays first, so
+ * no store ever writes a row another one reads.
+ */
+public class CLDFFormStore {
+    private final CLDFSymbols symbols;
+    private int size = 0;
+
+    private int[] langCodes;
+    private int[] paramOffsets; // form i has the parameters paramCodes[paramOffsets[i]:paramOffsets[i+1]]
+    private int[] paramCodes;
+    private String[] forms;
+    private String[] origValues;
+    private String[] comments;
+    private String[] orthographies;
+    private int[] segmentOffsets; // like paramOffsets
+    private long[] unsegmented; // bit set of the forms without a segments cell
+    private short[] segments; // the segment codes of all forms, unsigned
+    private int[] wideSegments; // replaces segments once a code exceeds 0xFFFF
+    private int segmentCount = 0;
+    // Additional columns, filled lazily. Rows without the property hold null.
+    // Plain string cells, the most common by far, are kept as their content, and
+    // only typed or list cells as the PString with their parsed values.
+    private Map<String, Object[]> properties = new HashMap<>();
+    // The rows of the arrays taken, by this store or by the others sharing them.
+    private AtomicInteger taken = new AtomicInteger();
+
+    public CLDFFormStore(CLDFSymbols symbols) {
+        this(symbols, 1024);
+    }
+
+    public CLDFFormStore(CLDFSymbols symbols, int capacity) {
+        this.symbols = symbols;
+        capacity = Math.max(capacity, 16);
+        langCodes = new int[capacity];
+        paramOffsets = new int[capacity + 1];
+        paramCodes = new int[capacity];
+        forms = new String[capacity];
+        origValues = new String[capacity];
+        comments = new String[capacity];
+        orthographies = new String[capacity];
+        segmentOffsets = new int[capacity + 1];
+        unsegmented = new long[(capacity >> 6) + 1];
+        segments = new short[4 * capacity];
+    }
+
+    /**
+     * Start a store that shares the rows and the arrays of another one.
+     */
+    private CLDFFormStore(CLDFFormStore shared) {
+        symbols = shared.symbols;
+        size = shared.size;
+        langCodes = shared.langCodes;
+        paramOffsets = shared.paramOffsets;
+        paramCodes = shared.paramCodes;
+        forms = shared.forms;
+        origValues = shared.origValues;
+        comments = shared.comments;
+        orthographies = shared.orthographies;
+        segmentOffsets = shared.segmentOffsets;
+        unsegmented = shared.unsegmented;
+        segments = shared.segments;
+        wideSegments = shared.wideSegments;
+        segmentCount = shared.segmentCount;
+        properties = new HashMap<>(shared.properties);
+        taken = shared.taken;
+    }
+
+    /**
+     * @return a store with the same rows, which grows independently of this one
+     */
+    CLDFFormStore copy() {
+        CLDFFormStore copy = new CLDFFormStore(this);
+        copy.unshare();
+        return copy;
+    }
+
+    /**
+     * @return a store with the same rows, to which the rows added go, while this
+     *         store keeps the ones it has; it costs no copy, as long as no other
+     *         store was appended to past the rows of this one
+     */
+    CLDFFormStore extend() {
+        return new CLDFFormStore(this);
+    }
+
+    /**
+     * Copy the arrays shared with other stores, so this one can append freely.
+     */
+    private void unshare() {
+        int capacity = Math.max(size, 16);
+        langCodes = Arrays.copyOf(langCodes, capacity);
+        paramOffsets = Arrays.copyOf(paramOffsets, capacity + 1);
+        paramCodes = Arrays.copyOf(paramCodes, Math.max(paramOffsets[size], 16));
+        forms = Arrays.copyOf(forms, capacity);
+        origValues = Arrays.copyOf(origValues, capacity);
+        comments = Arrays.copyOf(comments, capacity);
+        orthographies = Arrays.copyOf(orthographies, capacity);
+        segmentOffsets = Arrays.copyOf(segmentOffsets, capacity + 1);
+        unsegmented = Arrays.copyOf(unsegmented, (capacity >> 6) + 1);
+        if (wideSegments != null) {
+            wideSegments = Arrays.copyOf(wideSegments, Math.max(segmentCount, 16));
+        } else {
+            segments = Arrays.copyOf(segments, Math.max(segmentCount, 16));
+        }
+        // Bits and cells past the rows may belong to another store.
+        int words = (size + 63) >> 6;
+        if ((size & 63) != 0) {
+            unsegmented[words - 1] &= (1L << (size & 63)) - 1;
+        }
+        Arrays.fill(unsegmented, words, unsegmented.length, 0L);
+        for (Map.Entry<String, Object[]> column : properties.entrySet()) {
+            Object[] cells = Arrays.copyOf(column.getValue(), capacity);
+            Arrays.fill(cells, size, capacity, null);
+            column.setValue(cells);
+        }
+        taken = new AtomicInteger(size);
+    }
+
+    private void ensureCapacity(int rows) {
+        if (rows <= langCodes.length) {
+            return;
+        }
+        int capacity = Math.max(rows, 2 * langCodes.length);
+        langCodes = Arrays.copyOf(langCodes, capacity);
+        paramOffsets = Arrays.copyOf(paramOffsets, capacity + 1);
+        forms = Arrays.copyOf(forms, capacity);
+        origValues = Arrays.copyOf(origValues, capacity);
+        comments = Arrays.copyOf(comments, capacity);
+        orthographies = Arrays.copyOf(orthographies, capacity);
+        segmentOffsets = Arrays.copyOf(segmentOffsets, capacity + 1);
+        unsegmented = Arrays.copyOf(unsegmented, (capacity >> 6) + 1);
+        for (Map.Entry<String, Object[]> column : properties.entrySet()) {
+            column.setValue(Arrays.copyOf(column.getValue(), capacity));
+        }
+    }
+
+    /**
+     * Append a form as the next row.
+     *
+     * @return the number of the new row, which is its form ID
+     */
+    public int add(int langCode, int[] paramCodes, String form, String origValue, String comment,
+            String orthography, List<String> segments, Map<String, PString> properties) {
+        return add(langCode, paramCodes, form, origValue, comment, orthography,
+                segments == null ? null : symbols.segments().intern(segments), properties);
+    }
+
+    /**
+     * Append a form as the next row, with segments given as codes in the segment
+     * inventory of the symbols.
+     *
+     * @return the number of the new row, which is its form ID
+     */
+    public int add(int langCode, int[] paramCodes, String form, String origValue, String comment,
+            String orthography, int[] segmentCodes, Map<String, PString> properties) {
+        int row = size;
+        if (!taken.compareAndSet(row, row + 1)) {
+            // A store sharing the arrays appended past the rows of this one.
+            unshare();
+            taken.set(row + 1);
+        }
+        ensureCapacity(row + 1);
+        langCodes[row] = langCode;
+
+        int paramStart = paramOffsets[row];
+        if (paramStart + paramCodes.length > this.paramCodes.length) {
+            this.paramCodes = Arrays.copyOf(this.paramCodes,
+                    Math.max(paramStart + paramCodes.length, 2 * this.paramCodes.length));
+        }
+        System.arraycopy(paramCodes, 0, this.paramCodes, paramStart, paramCodes.length);
+        paramOffsets[row + 1] = paramStart + paramCodes.length;
+
+        forms[row] = form;
+        origValues[row] = origValue;
+        comments[row] = comment;
+        orthographies[row] = orthography;
+
+        if (segmentCodes == null) {
+            unsegmented[row >> 6] |= 1L << row;
+        } else {
+            addSegments(segmentCodes);
+        }
+        segmentOffsets[row + 1] = segmentCount;
+
+        if (properties != null) {
+            for (Map.Entry<String, PString> property : properties.entrySet()) {
+                Object[] column = this.properties.computeIfAbsent(property.getKey(),
+                        k -> new Object[langCodes.length]);
+                PString cell = property.getValue();
+                boolean plain = cell != null && cell.getDatatype() == PString.Datatype.STRING && !cell.isList()
+                        && cell.toString() != null;
+                column[row] = plain ? cell.toString() : cell;
+            }
+        }
+        size = row + 1;
+        return row;
+    }
+
+    private void addSegments(int[] codes) {
+        int capacity = wideSegments != null ? wideSegments.length : segments.length;
+        if (segmentCount + codes.length > capacity) {
+            capacity = Math.max(segmentCount + codes.length, 2 * capacity);
+            if (wideSegments != null) {
+                wideSegments = Arrays.copyOf(wideSegments, capacity);
+            } else {
+                segments = Arrays.copyOf(segments, capacity);
+            }
+        }
+        for (int code : codes) {
+            if (wideSegments == null && code > 0xFFFF) {
+                wideSegments = new int[segments.length];
+                for (int i = 0; i < segmentCount; i++) {
+                    wideSegments[i] = segments[i] & 0xFFFF;
+                }
+                segments = null;
+            }
+            if (wideSegments != null) {
+                wideSegments[segmentCount++] = code;
+            } else {
+                segments[segmentCount++] = (short) code;
+            }
+        }
+    }
+
+    /**
+     * Append a copy of a form object, interning its IDs in this store's symbols.
+     *
+     * @return the number of the new row, which is its form ID
+     */
+    public int add(CLDFForm<?> form) {
+        boolean shared = form.symbols == symbols;
+        String[] segments = shared ? null : form.getSegments();
+        return add(symbols.languages().intern(form.getLangID()),
+                shared ? form.getParamCodes() : symbols.parameters().intern(form.getParamID()), form.getForm(),
+                form.getOrigValue(), form.getComment(), form.getOrthography(),
+                shared ? form.getSegmentCodes()
+                        : segments == null ? null : symbols.segments().intern(Arrays.asList(segments)),
+                form.getProperties());
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public CLDFSymbols getSymbols() {
+        return symbols;
+    }
+
+    public int getLangCode(int row) {
+        return langCodes[row];
+    }
+
+    public int getParamCount(int row) {
+        return paramOffsets[row + 1] - paramOffsets[row];
+    }
+
+    public int getParamCode(int row, int i) {
+        return paramCodes[paramOffsets[row] + i];
+    }
+
+    public String getForm(int row) {
+        return forms[row];
+    }
+
+    public boolean isSegmented(int row) {
+        return (unsegmented[row >> 6] & 1L << row) == 0;
+    }
+
+    /**
+     * @return the number of segments of a form, 0 if it has none
+     */
+    public int getSegmentCount(int row) {
+        return segmentOffsets[row + 1] - segmentOffsets[row];
+    }
+
+    /**
+     * @return the code of the i-th segment of a form in the segment inventory
+     */
+    public int getSegmentCode(int row, int i) {
+        int position = segmentOffsets[row] + i;
+        return wideSegments != null ? wideSegments[position] : segments[position] & 0xFFFF;
+    }
+
+    /**
+     * Copy the segment codes of a form into an array, eg. a buffer reused across
+     * forms.
+     *
+     * @return the number of segments copied
+     */
+    public int getSegmentCodes(int row, int[] target, int offset) {
+        int start = segmentOffsets[row];
+        int n = segmentOffsets[row + 1] - start;
+        if (wideSegments != null) {
+            System.arraycopy(wideSegments, start, target, offset, n);
+        } else {
+            for (int i = 0; i < n; i++) {
+                target[offset + i] = segments[start + i] & 0xFFFF;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Create a CLDFForm with the content of one row. Changes to the form object
+     * are not written back to the store.
+     */
+    public CLDFForm<Integer> get(int row) {
+        if (row < 0 || row >= size) {
+            return null;
+        }
+        CLDFForm<Integer> form = new CLDFForm<Integer>(row, symbols, langCodes[row],
+                Arrays.copyOfRange(paramCodes, paramOffsets[row], paramOffsets[row + 1]), forms[row]);
+        form.setOrigValue(origValues[row]);
+        form.setComment(comments[row]);
+        form.setOrthography(orthographies[row]);
+        if (isSegmented(row)) {
+            form.segmentCodes = new int[getSegmentCount(row)];
+            getSegmentCodes(row, form.segmentCodes, 0);
+        }
+        Map<String, PString> rowProperties = new HashMap<>();
+        for (Map.Entry<String, Object[]> column : properties.entrySet()) {
+            Object value = column.getValue()[row];
+            if (value != null) {
+                rowProperties.put(column.getKey(),
+                        value instanceof String ? new PString((String) value) : (PString) value);
+            }
+        }
+        form.setProperties(rowProperties);
+        return form;
+    }
+
+    /**
+     * @return a read-only map view of the store, from form IDs to CLDFForm
+     *         snapshots, which can serve as the forms map of a database
+     */
+    public Map<Integer, CLDFForm<Integer>> asMap() {
+        return new FormMap();
+    }
+
+    /**
+     * A read-only map view of a store, whose forms are created on demand.
+     */
+    class FormMap extends AbstractMap<Integer, CLDFForm<Integer>> {
+        CLDFFormStore store() {
+            return CLDFFormStore.this;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof Integer && (Integer) key >= 0 && (Integer) key < size;
+        }
+
+        @Override
+        public CLDFForm<Integer> get(Object key) {
+            return containsKey(key) ? CLDFFormStore.this.get((Integer) key) : null;
+        }
+
+        @Override
+        public Set<Entry<Integer, CLDFForm<Integer>>> entrySet() {
+            return new AbstractSet<Entry<Integer, CLDFForm<Integer>>>() {
+                @Override
+                public int size() {
+                    return size;
+                }
+
+                @Override
+                public Iterator<Entry<Integer, CLDFForm<Integer>>> iterator() {
+                    return new Iterator<Entry<Integer, CLDFForm<Integer>>>() {
+                        int row = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return row < size;
+                        }
+
+                        @Override
+                        public Entry<Integer, CLDFForm<Integer>> next() {
+                            if (row >= size) {
+                                throw new NoSuchElementException();
+                            }
+                            CLDFForm<Integer> form = CLDFFormStore.this.get(row);
+                            return new SimpleImmutableEntry<>(row++, form);
+                        }
+                    };
+                }
+            };
+        }
+    }
+}
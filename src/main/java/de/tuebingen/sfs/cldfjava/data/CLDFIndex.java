@@ -0,0 +1,965 @@
+package de.tuebingen.sfs.cldfjava.data;
+
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Lookup structures over the forms, languages and cognate judgements of a
+ * database, built in a single pass over each table.
+ *
+ * Every form gets a row number: for a columnar store that is its ID, otherwise
+ * its position in the forms map at the time the index was built, with added
+ * forms appended and the last row moved into the place of a removed one. The forms of a
+ * language, a parameter, a (language, parameter) pair and a cognate set, as well
+ * as the cognate sets of a form, are kept as int arrays of rows, keyed by the
+ * symbol codes of the database (cognate sets get codes of their own, since their
+ * IDs need not be strings).
+ *
+ * The methods taking and returning codes and rows do not allocate. The methods
+ * taking IDs return read-only views backed by the index.
+ *
+ * An index is never changed once it is published (the database does so
+ * through a volatile field), so it can be read from any number of threads, and
+ * the views and groupings it hands out stay as they are. An edit of the
+ * database (see {@link CLDFEdit}) builds a new index that starts out sharing
+ * all structures with the old one. The arrays and hash maps over the forms and
+ * cognate sets are kept in pages of 1024 entries (see {@link IntPages}), and
+ * the new index copies a page before it first changes it, besides the page
+ * tables, a thousandth of the structure; postings lists are appended to in
+ * place, past the rows the old index sees, and only copied to remove or
+ * replace rows. So a batch costs about its size, not that of the database.
+ * Only the maps of ISO codes and Glottocodes are copied whole, as there are
+ * few languages. When only the languages or the cognate judgements of a
+ * database are replaced, the new index shares the structures over the forms
+ * with the old one in the same way.
+ *
+ * @param <F> the type of form IDs
+ * @param <C> the type of cognate set IDs
+ */
+public class CLDFIndex<F, C> {
+    private final CLDFSymbols symbols;
+    private final CLDFFormStore store;
+    // Without a store: the ID and form at every row, and the row of every ID.
+    private ObjectPages<F> rowIDs;
+    private ObjectPages<CLDFForm<F>> rowForms;
+    private ObjectIntMap<F> rows;
+    private int rowCount = 0;
+
+    private IntPostings formsByLanguage;
+    private IntPostings formsByParameter;
+    private LongIntMap pairs; // (language, parameter) -> pair number
+    private IntPages pairLanguages;
+    private IntPages pairParameters;
+    private int pairCount = 0;
+    private IntPostings formsByPair;
+    private Map<String, String> langIDByIso;
+    private Map<String, String> langIDByGlottocode;
+    private ObjectIntMap<C> cogsetCodes;
+    private ObjectPages<C> cogsets;
+    private int cogsetCount = 0;
+    private IntPostings formsByCogset;
+    private IntPostings cogsetsByForm;
+    // Which groups of structures this index may change in place; the others are
+    // shared with the index it was made from, and copied before a change.
+    private boolean ownsRows = true;
+    private boolean ownsFormPostings = true;
+    private boolean ownsPairs = true;
+    private boolean ownsLanguages = true;
+    private boolean ownsCogsets = true;
+    private boolean ownsCogsetPostings = true;
+    private boolean ownsCounts = true;
+    // Groupings of forms made on first use. They are immutable once built and
+    // published through a volatile write, so readers never lock; threads racing
+    // on first use may each build one, and any of them is as good as the others.
+    private volatile Map<String, List<CLDFForm<F>>> formsByLanguageCache;
+    private volatile Map<String, Map<String, List<CLDFForm<F>>>> formsByLanguageByParameterCache;
+    // Cognate sets whose forms were all removed by edits keep their codes.
+    private int emptyCogsets = 0;
+    // For edits: the number of judgements linking each (row, cognate set code),
+    // so a link only goes with the last judgement making it, and the number of
+    // judgements of unknown forms, which an added form may pick up. Both are
+    // counted on the first edit.
+    private LongIntMap judgementCounts;
+    private int danglingJudgements;
+
+    CLDFIndex(CLDFWordlistDatabase<F, ?, C> database) {
+        this.symbols = database.symbols;
+        this.store = database.formStore;
+        int n = database.idToForm.size();
+        formsByLanguage = new IntPostings();
+        formsByParameter = new IntPostings();
+        pairs = new LongIntMap();
+        pairLanguages = new IntPages(0);
+        pairParameters = new IntPages(0);
+        formsByPair = new IntPostings();
+
+        if (store != null) {
+            for (int row = 0; row < store.size(); row++) {
+                int langCode = store.getLangCode(row);
+                addForm(row, langCode);
+                for (int i = 0; i < store.getParamCount(row); i++) {
+                    addFormOfParameter(row, langCode, store.getParamCode(row, i));
+                }
+            }
+            rowCount = store.size();
+        } else {
+            rowIDs = new ObjectPages<>();
+            rowForms = new ObjectPages<>();
+            rows = new ObjectIntMap<>(n);
+            for (Map.Entry<F, CLDFForm<F>> entry : database.idToForm.entrySet()) {
+                int row = rowCount++;
+                CLDFForm<F> form = entry.getValue();
+                form.adopt(symbols);
+                rowIDs.set(row, entry.getKey());
+                rowForms.set(row, form);
+                rows.put(entry.getKey(), row);
+                boolean ownCodes = form.getSymbols() == symbols;
+                int langCode = ownCodes ? form.getLangCode() : symbols.languages().intern(form.getLangID());
+                addForm(row, langCode);
+                int[] paramCodes = ownCodes ? form.getParamCodes() : symbols.parameters().intern(form.getParamID());
+                for (int paramCode : paramCodes) {
+                    addFormOfParameter(row, langCode, paramCode);
+                }
+            }
+        }
+
+        langIDByIso = new HashMap<>();
+        langIDByGlottocode = new HashMap<>();
+        addLanguages(database);
+        cogsetCodes = new ObjectIntMap<>(16);
+        cogsets = new ObjectPages<>();
+        formsByCogset = new IntPostings();
+        cogsetsByForm = new IntPostings();
+        addJudgements(database);
+    }
+
+    /**
+     * Start an index with the content of a previous one, sharing all of its
+     * structures until they change.
+     */
+    private CLDFIndex(CLDFIndex<F, C> previous, CLDFFormStore store) {
+        this.symbols = previous.symbols;
+        this.store = store;
+        rowIDs = previous.rowIDs;
+        rowForms = previous.rowForms;
+        rows = previous.rows;
+        rowCount = previous.rowCount;
+        formsByLanguage = previous.formsByLanguage;
+        formsByParameter = previous.formsByParameter;
+        pairs = previous.pairs;
+        pairLanguages = previous.pairLanguages;
+        pairParameters = previous.pairParameters;
+        pairCount = previous.pairCount;
+        formsByPair = previous.formsByPair;
+        langIDByIso = previous.langIDByIso;
+        langIDByGlottocode = previous.langIDByGlottocode;
+        cogsetCodes = previous.cogsetCodes;
+        cogsets = previous.cogsets;
+        cogsetCount = previous.cogsetCount;
+        formsByCogset = previous.formsByCogset;
+        cogsetsByForm = previous.cogsetsByForm;
+        emptyCogsets = previous.emptyCogsets;
+        judgementCounts = previous.judgementCounts;
+        danglingJudgements = previous.danglingJudgements;
+        ownsRows = false;
+        ownsFormPostings = false;
+        ownsPairs = false;
+        ownsLanguages = false;
+        ownsCogsets = false;
+        ownsCogsetPostings = false;
+        ownsCounts = false;
+        if (store == previous.store) {
+            // The groupings read the forms through the previous index, which is
+            // as good as this one until the forms change. Over another store,
+            // they would keep the previous one alive.
+            formsByLanguageCache = previous.formsByLanguageCache;
+            formsByLanguageByParameterCache = previous.formsByLanguageByParameterCache;
+        }
+    }
+
+    /**
+     * Index a database whose forms are those of a previous index (or a copy of
+     * its columnar store), sharing the structures over the forms with that
+     * index until they change.
+     *
+     * @param previous          the index of a database with the same forms
+     * @param languagesChanged  whether the languages have to be indexed again
+     * @param judgementsChanged whether the cognate judgements have to be indexed
+     *                          again
+     */
+    CLDFIndex(CLDFIndex<F, C> previous, CLDFWordlistDatabase<F, ?, C> database, boolean languagesChanged,
+            boolean judgementsChanged) {
+        this(previous, database.formStore);
+        // The judgements may differ, so they are counted again on the first edit.
+        judgementCounts = null;
+        danglingJudgements = 0;
+        if (languagesChanged) {
+            langIDByIso = new HashMap<>();
+            langIDByGlottocode = new HashMap<>();
+            ownsLanguages = true;
+            addLanguages(database);
+        }
+        if (judgementsChanged) {
+            cogsetCodes = new ObjectIntMap<>(16);
+            cogsets = new ObjectPages<>();
+            cogsetCount = 0;
+            formsByCogset = new IntPostings();
+            cogsetsByForm = new IntPostings();
+            emptyCogsets = 0;
+            ownsCogsets = true;
+            ownsCogsetPostings = true;
+            addJudgements(database);
+        }
+    }
+
+    /**
+     * @param store the columnar store of the database after the batch, an
+     *              extension of the store of this index, or null
+     * @return a new index for a batch of edits to the database, which leaves
+     *         this one as it is
+     */
+    CLDFIndex<F, C> forEdit(CLDFFormStore store) {
+        return new CLDFIndex<>(this, store);
+    }
+
+    private void ownRows() {
+        if (!ownsRows) {
+            rowIDs = new ObjectPages<>(rowIDs);
+            rowForms = new ObjectPages<>(rowForms);
+            rows = new ObjectIntMap<>(rows);
+            ownsRows = true;
+        }
+    }
+
+    /**
+     * Make the postings over the forms this index's own. The groupings made
+     * from the shared ones are dropped, since they would not see the changes.
+     */
+    private void ownFormPostings() {
+        if (!ownsFormPostings) {
+            formsByLanguage = new IntPostings(formsByLanguage);
+            formsByParameter = new IntPostings(formsByParameter);
+            formsByPair = new IntPostings(formsByPair);
+            ownsFormPostings = true;
+        }
+        formsByLanguageCache = null;
+        formsByLanguageByParameterCache = null;
+    }
+
+    private void ownPairs() {
+        if (!ownsPairs) {
+            pairs = new LongIntMap(pairs);
+            pairLanguages = new IntPages(pairLanguages);
+            pairParameters = new IntPages(pairParameters);
+            ownsPairs = true;
+        }
+    }
+
+    private void ownLanguages() {
+        if (!ownsLanguages) {
+            langIDByIso = new HashMap<>(langIDByIso);
+            langIDByGlottocode = new HashMap<>(langIDByGlottocode);
+            ownsLanguages = true;
+        }
+    }
+
+    private void ownCogsets() {
+        if (!ownsCogsets) {
+            cogsetCodes = new ObjectIntMap<>(cogsetCodes);
+            cogsets = new ObjectPages<>(cogsets);
+            ownsCogsets = true;
+        }
+    }
+
+    private void ownCogsetPostings() {
+        if (!ownsCogsetPostings) {
+            formsByCogset = new IntPostings(formsByCogset);
+            cogsetsByForm = new IntPostings(cogsetsByForm);
+            ownsCogsetPostings = true;
+        }
+    }
+
+    private void ownCounts() {
+        if (!ownsCounts) {
+            judgementCounts = new LongIntMap(judgementCounts);
+            ownsCounts = true;
+        }
+    }
+
+    private void addLanguages(CLDFWordlistDatabase<F, ?, C> database) {
+        for (CLDFLanguage language : database.langIDToLang.values()) {
+            if (language.iso != null && !language.iso.isEmpty()) {
+                langIDByIso.putIfAbsent(language.iso, language.langID);
+            }
+            if (language.glottocode != null && !language.glottocode.isEmpty()) {
+                langIDByGlottocode.putIfAbsent(language.glottocode, language.langID);
+            }
+        }
+    }
+
+    private void addJudgements(CLDFWordlistDatabase<F, ?, C> database) {
+        if (database.cognateIDToCognate != null) {
+            for (CLDFCognateJudgement<F, ?, C> judgement : database.cognateIDToCognate.values()) {
+                addJudgement(judgement.getFormReference(), judgement.getCognatesetReference());
+            }
+        }
+    }
+
+    private void addForm(int row, int langCode) {
+        if (langCode >= 0) {
+            formsByLanguage.add(langCode, row);
+        }
+    }
+
+    private void addFormOfParameter(int row, int langCode, int paramCode) {
+        if (paramCode < 0) {
+            return;
+        }
+        formsByParameter.add(paramCode, row);
+        if (langCode < 0) {
+            return;
+        }
+        long key = LongIntMap.pair(langCode, paramCode);
+        int pair = pairs.get(key);
+        if (pair < 0) {
+            ownPairs();
+            pair = pairCount++;
+            pairLanguages.set(pair, langCode);
+            pairParameters.set(pair, paramCode);
+            pairs.put(key, pair);
+        }
+        formsByPair.add(pair, row);
+    }
+
+    /**
+     * Record a cognate judgement. Judgements of unknown forms, or without a
+     * cognate set, are left out, and a form is only listed once per cognate set.
+     */
+    private void addJudgement(F formID, C cogsetID) {
+        int row = row(formID);
+        if (row < 0 || cogsetID == null) {
+            return;
+        }
+        int code = cogsetCodes.get(cogsetID);
+        if (code < 0) {
+            ownCogsets();
+            code = cogsetCount++;
+            cogsets.set(code, cogsetID);
+            cogsetCodes.put(cogsetID, code);
+        }
+        if (!cogsetsByForm.contains(row, code)) {
+            cogsetsByForm.add(row, code);
+            formsByCogset.add(code, row);
+        }
+    }
+
+    private int langCode(CLDFForm<F> form) {
+        return form.getSymbols() == symbols ? form.getLangCode() : symbols.languages().intern(form.getLangID());
+    }
+
+    private int[] paramCodes(CLDFForm<F> form) {
+        return form.getSymbols() == symbols ? form.getParamCodes() : symbols.parameters().intern(form.getParamID());
+    }
+
+    /**
+     * Count the links between forms and cognate sets, before the first edit of
+     * the database changes any of its maps.
+     */
+    void prepareEdit(CLDFWordlistDatabase<F, ?, C> database) {
+        if (judgementCounts != null) {
+            return;
+        }
+        LongIntMap counts = new LongIntMap(database.cognateIDToCognate == null ? 16
+                : database.cognateIDToCognate.size());
+        int dangling = 0;
+        if (database.cognateIDToCognate != null) {
+            for (CLDFCognateJudgement<F, ?, C> judgement : database.cognateIDToCognate.values()) {
+                if (judgement.getCognatesetReference() == null) {
+                    continue;
+                }
+                int row = row(judgement.getFormReference());
+                if (row < 0) {
+                    dangling++;
+                    continue;
+                }
+                long key = LongIntMap.pair(row, cogsetCodes.get(judgement.getCognatesetReference()));
+                counts.put(key, Math.max(counts.get(key), 0) + 1);
+            }
+        }
+        judgementCounts = counts;
+        ownsCounts = true;
+        danglingJudgements = dangling;
+    }
+
+    /**
+     * Index a form added to the forms map, or, for a columnar store, the row just
+     * appended to the store. The cognate judgements of its ID that were already
+     * in the database are linked to it by {@link #linkAddedForms}.
+     */
+    void insertForm(F formID, CLDFForm<F> form) {
+        ownFormPostings();
+        int row;
+        int langCode;
+        int[] paramCodes;
+        if (store != null) {
+            row = rowCount;
+            langCode = store.getLangCode(row);
+            paramCodes = new int[store.getParamCount(row)];
+            for (int i = 0; i < paramCodes.length; i++) {
+                paramCodes[i] = store.getParamCode(row, i);
+            }
+        } else {
+            ownRows();
+            form.adopt(symbols);
+            row = rowCount;
+            rowIDs.set(row, formID);
+            rowForms.set(row, form);
+            rows.put(formID, row);
+            langCode = langCode(form);
+            paramCodes = paramCodes(form);
+        }
+        rowCount++;
+
+        addForm(row, langCode);
+        for (int paramCode : paramCodes) {
+            addFormOfParameter(row, langCode, paramCode);
+        }
+    }
+
+    /**
+     * Link the cognate judgements already in the database to the forms a batch
+     * added. This takes a pass over the judgements, but only while some of them
+     * wait for a form of their ID.
+     */
+    void linkAddedForms(CLDFWordlistDatabase<F, ?, C> database, Set<F> formIDs) {
+        if (danglingJudgements == 0 || formIDs.isEmpty() || database.cognateIDToCognate == null) {
+            return;
+        }
+        for (CLDFCognateJudgement<F, ?, C> judgement : database.cognateIDToCognate.values()) {
+            F formID = judgement.getFormReference();
+            if (judgement.getCognatesetReference() != null && formIDs.contains(formID) && row(formID) >= 0) {
+                danglingJudgements--;
+                link(formID, judgement.getCognatesetReference());
+            }
+        }
+    }
+
+    /**
+     * Drop a form removed from the forms map. The last row takes its place, and
+     * its cognate judgements stay in the database, unlinked, like those of any
+     * unknown form.
+     */
+    void deleteForm(F formID) {
+        if (store != null) {
+            throw new UnsupportedOperationException("The forms of a columnar store cannot be removed");
+        }
+        if (row(formID) < 0) {
+            return;
+        }
+        ownRows();
+        int row = rows.remove(formID);
+        ownFormPostings();
+        ownCogsetPostings();
+        ownCounts();
+        CLDFForm<F> form = rowForms.get(row);
+        unindexForm(row, langCode(form), paramCodes(form));
+        for (int i = 0; i < cogsetsByForm.size(row); i++) {
+            int code = cogsetsByForm.get(row, i);
+            long key = LongIntMap.pair(row, code);
+            danglingJudgements += judgementCounts.get(key);
+            judgementCounts.put(key, 0);
+            formsByCogset.remove(code, row);
+            if (formsByCogset.size(code) == 0) {
+                emptyCogsets++;
+            }
+        }
+        cogsetsByForm.clear(row);
+
+        int last = rowCount - 1;
+        if (row != last) {
+            CLDFForm<F> moved = rowForms.get(last);
+            rowIDs.set(row, rowIDs.get(last));
+            rowForms.set(row, moved);
+            rows.put(formID(row), row);
+            int langCode = langCode(moved);
+            if (langCode >= 0) {
+                formsByLanguage.replace(langCode, last, row);
+            }
+            for (int paramCode : paramCodes(moved)) {
+                if (paramCode >= 0) {
+                    formsByParameter.replace(paramCode, last, row);
+                    int pair = pair(langCode, paramCode);
+                    if (pair >= 0) {
+                        formsByPair.replace(pair, last, row);
+                    }
+                }
+            }
+            for (int i = 0; i < cogsetsByForm.size(last); i++) {
+                int code = cogsetsByForm.get(last, i);
+                formsByCogset.replace(code, last, row);
+                judgementCounts.put(LongIntMap.pair(row, code),
+                        judgementCounts.get(LongIntMap.pair(last, code)));
+                judgementCounts.put(LongIntMap.pair(last, code), 0);
+            }
+            cogsetsByForm.move(last, row);
+        }
+        rowIDs.set(last, null);
+        rowForms.set(last, null);
+        rowCount--;
+    }
+
+    private void unindexForm(int row, int langCode, int[] paramCodes) {
+        if (langCode >= 0) {
+            formsByLanguage.remove(langCode, row);
+        }
+        for (int paramCode : paramCodes) {
+            if (paramCode < 0) {
+                continue;
+            }
+            formsByParameter.remove(paramCode, row);
+            int pair = pair(langCode, paramCode);
+            if (pair >= 0) {
+                formsByPair.remove(pair, row);
+            }
+        }
+    }
+
+    /**
+     * Count a judgement added to the database.
+     */
+    void link(F formID, C cogsetID) {
+        if (cogsetID == null) {
+            return;
+        }
+        int row = row(formID);
+        if (row < 0) {
+            danglingJudgements++;
+            return;
+        }
+        ownCogsetPostings();
+        ownCounts();
+        int code = cogsetCodes.get(cogsetID);
+        if (code < 0) {
+            addJudgement(formID, cogsetID);
+            code = cogsetCodes.get(cogsetID);
+        } else if (!cogsetsByForm.contains(row, code)) {
+            if (formsByCogset.size(code) == 0) {
+                emptyCogsets--;
+            }
+            cogsetsByForm.add(row, code);
+            formsByCogset.add(code, row);
+        }
+        long key = LongIntMap.pair(row, code);
+        judgementCounts.put(key, Math.max(judgementCounts.get(key), 0) + 1);
+    }
+
+    /**
+     * Uncount a judgement removed from the database. The form leaves the
+     * cognate set with the last judgement putting it there.
+     */
+    void unlink(F formID, C cogsetID) {
+        if (cogsetID == null) {
+            return;
+        }
+        int row = row(formID);
+        if (row < 0) {
+            danglingJudgements--;
+            return;
+        }
+        ownCogsetPostings();
+        ownCounts();
+        int code = cogsetCodes.get(cogsetID);
+        if (code < 0) {
+            return;
+        }
+        long key = LongIntMap.pair(row, code);
+        int count = judgementCounts.get(key);
+        if (count > 1) {
+            judgementCounts.put(key, count - 1);
+            return;
+        }
+        judgementCounts.put(key, 0);
+        if (cogsetsByForm.remove(row, code)) {
+            formsByCogset.remove(code, row);
+            if (formsByCogset.size(code) == 0) {
+                emptyCogsets++;
+            }
+        }
+    }
+
+    /**
+     * Index a language put into the languages map, which replaced another one
+     * with the same ID, or null.
+     */
+    void updateLanguage(CLDFWordlistDatabase<F, ?, C> database, CLDFLanguage old, CLDFLanguage language) {
+        ownLanguages();
+        if (old != null) {
+            unmapLanguage(langIDByIso, old.iso, old.langID, database, l -> l.iso);
+            unmapLanguage(langIDByGlottocode, old.glottocode, old.langID, database, l -> l.glottocode);
+        }
+        if (language.iso != null && !language.iso.isEmpty()) {
+            langIDByIso.putIfAbsent(language.iso, language.langID);
+        }
+        if (language.glottocode != null && !language.glottocode.isEmpty()) {
+            langIDByGlottocode.putIfAbsent(language.glottocode, language.langID);
+        }
+    }
+
+    /**
+     * Drop a code of a language that was replaced, handing it to another
+     * language with the same code, if there is one.
+     */
+    private static void unmapLanguage(Map<String, String> byCode, String code, String langID,
+            CLDFWordlistDatabase<?, ?, ?> database, Function<CLDFLanguage, String> codeOf) {
+        if (code == null || !langID.equals(byCode.get(code))) {
+            return;
+        }
+        byCode.remove(code);
+        for (CLDFLanguage other : database.langIDToLang.values()) {
+            if (code.equals(codeOf.apply(other))) {
+                byCode.put(code, other.langID);
+                return;
+            }
+        }
+    }
+
+    CLDFSymbols symbols() {
+        return symbols;
+    }
+
+    /**
+     * @return the columnar store of the forms, or null if they are kept as
+     *         CLDFForm objects; the store has the rows of this index, whatever
+     *         edits of the database added since
+     */
+    public CLDFFormStore getFormStore() {
+        return store;
+    }
+
+    /**
+     * @return the number of form rows
+     */
+    public int rowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @return the row of a form, or -1 if there is no form with that ID
+     */
+    public int row(Object formID) {
+        if (store != null) {
+            if (formID instanceof Integer) {
+                int row = (Integer) formID;
+                return row >= 0 && row < rowCount ? row : -1;
+            }
+            return -1;
+        }
+        return rows.get(formID);
+    }
+
+    @SuppressWarnings("unchecked")
+    public F formID(int row) {
+        return store != null ? (F) (Integer) row : rowIDs.get(row);
+    }
+
+    /**
+     * @return the form at a row; for a columnar store, a new snapshot of it
+     */
+    @SuppressWarnings("unchecked")
+    public CLDFForm<F> form(int row) {
+        return store != null ? (CLDFForm<F>) store.get(row) : rowForms.get(row);
+    }
+
+    public int countFormsOfLanguage(int langCode) {
+        return formsByLanguage.size(langCode);
+    }
+
+    /**
+     * @return the row of the i-th form of a language, in row order
+     */
+    public int formOfLanguage(int langCode, int i) {
+        return formsByLanguage.get(langCode, i);
+    }
+
+    public int countFormsOfParameter(int paramCode) {
+        return formsByParameter.size(paramCode);
+    }
+
+    public int formOfParameter(int paramCode, int i) {
+        return formsByParameter.get(paramCode, i);
+    }
+
+    /**
+     * @return the number of forms of a language for a parameter
+     */
+    public int countFormsOfPair(int langCode, int paramCode) {
+        return formsByPair.size(pair(langCode, paramCode));
+    }
+
+    public int formOfPair(int langCode, int paramCode, int i) {
+        return formsByPair.get(pair(langCode, paramCode), i);
+    }
+
+    private int pair(int langCode, int paramCode) {
+        return langCode < 0 || paramCode < 0 ? -1 : pairs.get(LongIntMap.pair(langCode, paramCode));
+    }
+
+    /**
+     * @return the number of distinct cognate sets, ie. one more than the largest
+     *         cognate set code, including sets left without forms by edits
+     */
+    public int countCognatesets() {
+        return cogsetCount;
+    }
+
+    /**
+     * @return the code of a cognate set, or -1 if no form belongs to it
+     */
+    public int cognatesetCode(Object cogsetID) {
+        int code = cogsetCodes.get(cogsetID);
+        return code < 0 || formsByCogset.size(code) == 0 ? -1 : code;
+    }
+
+    public C cognateset(int code) {
+        return cogsets.get(code);
+    }
+
+    public int countFormsOfCognateset(int code) {
+        return formsByCogset.size(code);
+    }
+
+    public int formOfCognateset(int code, int i) {
+        return formsByCogset.get(code, i);
+    }
+
+    public int countCognatesetsOfForm(int row) {
+        return cogsetsByForm.size(row);
+    }
+
+    public int cognatesetOfForm(int row, int i) {
+        return cogsetsByForm.get(row, i);
+    }
+
+    /**
+     * @return the ID of the first language with an ISO 639-3 code, or null
+     */
+    public String languageForIso(String iso) {
+        return langIDByIso.get(iso);
+    }
+
+    /**
+     * @return the ID of the first language with a Glottocode, or null
+     */
+    public String languageForGlottocode(String glottocode) {
+        return langIDByGlottocode.get(glottocode);
+    }
+
+    public List<F> formIDsOfLanguage(String langID) {
+        return new IDList(formsByLanguage, symbols.languages().code(langID));
+    }
+
+    public List<CLDFForm<F>> formsOfLanguage(String langID) {
+        return new FormList(formsByLanguage, symbols.languages().code(langID));
+    }
+
+    public List<CLDFForm<F>> formsOfParameter(String paramID) {
+        return new FormList(formsByParameter, symbols.parameters().code(paramID));
+    }
+
+    public List<CLDFForm<F>> formsOfPair(String langID, String paramID) {
+        return new FormList(formsByPair,
+                pair(symbols.languages().code(langID), symbols.parameters().code(paramID)));
+    }
+
+    /**
+     * @return the IDs of the forms judged to belong to a cognate set
+     */
+    public Set<F> formIDsOfCognateset(Object cogsetID) {
+        return new IDSet(cognatesetCode(cogsetID));
+    }
+
+    /**
+     * Group the forms by language, leaving out forms without one.
+     *
+     * @return a read-only map, shared by all callers
+     */
+    Map<String, List<CLDFForm<F>>> formsByLanguage() {
+        Map<String, List<CLDFForm<F>>> result = formsByLanguageCache;
+        if (result == null) {
+            Map<String, List<CLDFForm<F>>> grouped = new HashMap<>();
+            for (int code = 0; code < formsByLanguage.keys(); code++) {
+                if (formsByLanguage.size(code) > 0) {
+                    grouped.put(symbols.languages().name(code), new FormList(formsByLanguage, code));
+                }
+            }
+            result = Collections.unmodifiableMap(grouped);
+            formsByLanguageCache = result;
+        }
+        return result;
+    }
+
+    /**
+     * Group the forms by parameter and language, leaving out forms without a
+     * language.
+     *
+     * @return a read-only map, shared by all callers
+     */
+    Map<String, Map<String, List<CLDFForm<F>>>> formsByLanguageByParameter() {
+        Map<String, Map<String, List<CLDFForm<F>>>> result = formsByLanguageByParameterCache;
+        if (result == null) {
+            Map<String, Map<String, List<CLDFForm<F>>>> grouped = new HashMap<>();
+            for (int pair = 0; pair < pairCount; pair++) {
+                if (formsByPair.size(pair) == 0) {
+                    continue;
+                }
+                grouped.computeIfAbsent(symbols.parameters().name(pairParameters.get(pair)), p -> new HashMap<>())
+                        .put(symbols.languages().name(pairLanguages.get(pair)), new FormList(formsByPair, pair));
+            }
+            grouped.replaceAll((paramID, byLanguage) -> Collections.unmodifiableMap(byLanguage));
+            result = Collections.unmodifiableMap(grouped);
+            formsByLanguageByParameterCache = result;
+        }
+        return result;
+    }
+
+    /**
+     * @return a read-only map from cognate set IDs to the IDs of their forms
+     */
+    public Map<C, Set<F>> cognatesetMap() {
+        return new AbstractMap<C, Set<F>>() {
+            @Override
+            public int size() {
+                return cogsetCount - emptyCogsets;
+            }
+
+            @Override
+            public boolean containsKey(Object key) {
+                return cognatesetCode(key) >= 0;
+            }
+
+            @Override
+            public Set<F> get(Object key) {
+                int code = cognatesetCode(key);
+                return code < 0 ? null : new IDSet(code);
+            }
+
+            @Override
+            public Set<Entry<C, Set<F>>> entrySet() {
+                return new AbstractSet<Entry<C, Set<F>>>() {
+                    @Override
+                    public int size() {
+                        return cogsetCount - emptyCogsets;
+                    }
+
+                    @Override
+                    public Iterator<Entry<C, Set<F>>> iterator() {
+                        return new Iterator<Entry<C, Set<F>>>() {
+                            int code = 0;
+
+                            @Override
+                            public boolean hasNext() {
+                                while (code < cogsetCount && formsByCogset.size(code) == 0) {
+                                    code++;
+                                }
+                                return code < cogsetCount;
+                            }
+
+                            @Override
+                            public Entry<C, Set<F>> next() {
+                                if (!hasNext()) {
+                                    throw new NoSuchElementException();
+                                }
+                                Entry<C, Set<F>> entry = new SimpleImmutableEntry<>(cogsets.get(code),
+                                        new IDSet(code));
+                                code++;
+                                return entry;
+                            }
+                        };
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * The form IDs of one key of a postings list.
+     */
+    private class IDList extends AbstractList<F> {
+        private final IntPostings postings;
+        private final int key;
+
+        IDList(IntPostings postings, int key) {
+            this.postings = postings;
+            this.key = key;
+        }
+
+        @Override
+        public F get(int index) {
+            return formID(postings.get(key, index));
+        }
+
+        @Override
+        public int size() {
+            return postings.size(key);
+        }
+    }
+
+    /**
+     * The forms of one key of a postings list.
+     */
+    private class FormList extends AbstractList<CLDFForm<F>> {
+        private final IntPostings postings;
+        private final int key;
+
+        FormList(IntPostings postings, int key) {
+            this.postings = postings;
+            this.key = key;
+        }
+
+        @Override
+        public CLDFForm<F> get(int index) {
+            return form(postings.get(key, index));
+        }
+
+        @Override
+        public int size() {
+            return postings.size(key);
+        }
+    }
+
+    /**
+     * The form IDs of a cognate set, which are distinct.
+     */
+    private class IDSet extends AbstractSet<F> {
+        private final int code;
+
+        IDSet(int code) {
+            this.code = code;
+        }
+
+        @Override
+        public boolean contains(Object formID) {
+            int row = row(formID);
+            return row >= 0 && cogsetsByForm.contains(row, code);
+        }
+
+        @Override
+        public Iterator<F> iterator() {
+            return new IDList(formsByCogset, code).iterator();
+        }
+
+        @Override
+        public int size() {
+            return formsByCogset.size(code);
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package de.tuebingen.sfs.cldfjava.data;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What loading a database took: the tables read, with their sizes and reading
+ * times, the time spent in each phase of the load, and a rough estimate of the
+ * heap the loaded database retains.
+ *
+ * Phases are named by the importer, eg. "metadata" for parsing the metadata
+ * JSON, "tables" for reading all tables, "index" for building the index, and
+ * "snapshot" for reading or writing a snapshot. Phases with the same name are
+ * added up.
+ */
+public class CLDFLoadReport {
+    /**
+     * One table that was read during the load.
+     */
+    public static class Table {
+        private final String type;
+        private final String url;
+        private final long bytes;
+        private final int rows;
+        private final int invalidCells;
+        private final long nanos;
+        private final long tokenizeNanos;
+        private final long buildNanos;
+        private final long cellBytes;
+        private final long rejectedRows;
+
+        /**
+         * A table that was not read record by record, such as a snapshot, whose
+         * bytes all count as kept.
+         *
+         * @param type         the CLDF type of the table, eg. FormTable
+         * @param url          the url of the table, as in the metadata
+         * @param bytes        the bytes read from the table file
+         * @param rows         the rows read into the database
+         * @param invalidCells the cells that did not fit their datatype
+         * @param nanos        the time it took to read the table
+         */
+        public Table(String type, String url, long bytes, int rows, int invalidCells, long nanos) {
+            this(type, url, bytes, rows, invalidCells, nanos, 0, 0, bytes, 0);
+        }
+
+        /**
+         * @param type          the CLDF type of the table, eg. FormTable
+         * @param url           the url of the table, as in the metadata
+         * @param bytes         the bytes read from the table file
+         * @param rows          the rows read into the database
+         * @param invalidCells  the cells that did not fit their datatype
+         * @param nanos         the time it took to read the table
+         * @param tokenizeNanos the time spent splitting the file into records and
+         *                      cells
+         * @param buildNanos    the time spent turning records into objects
+         * @param cellBytes     the bytes of the cells that were decoded
+         * @param rejectedRows  the rows a filter skipped while reading
+         */
+        public Table(String type, String url, long bytes, int rows, int invalidCells, long nanos,
+                long tokenizeNanos, long buildNanos, long cellBytes, long rejectedRows) {
+            this.type = type;
+            this.url = url;
+            this.bytes = bytes;
+            this.rows = rows;
+            this.invalidCells = invalidCells;
+            this.nanos = nanos;
+            this.tokenizeNanos = tokenizeNanos;
+            this.buildNanos = buildNanos;
+            this.cellBytes = cellBytes;
+            this.rejectedRows = rejectedRows;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public int getRows() {
+            return rows;
+        }
+
+        public int getInvalidCells() {
+            return invalidCells;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * @return the time spent splitting the table into records and cells,
+         *         summed over the threads that read it, so with a pool it can be
+         *         more than {@link #getNanos()}
+         */
+        public long getTokenizeNanos() {
+            return tokenizeNanos;
+        }
+
+        /**
+         * @return the time spent turning records into forms and other objects,
+         *         summed over the threads that read the table
+         */
+        public long getBuildNanos() {
+            return buildNanos;
+        }
+
+        /**
+         * @return the bytes of the cells that were decoded into the database,
+         *         which leaves out the columns a projection drops
+         */
+        public long getCellBytes() {
+            return cellBytes;
+        }
+
+        /**
+         * @return the rows a {@link de.tuebingen.sfs.cldfjava.io.CLDFFilter} skipped
+         *         while reading, which are not among {@link #getRows()}; only the
+         *         FormTable is filtered row by row, the other tables are read whole
+         *         and narrowed afterwards
+         */
+        public long getRejectedRows() {
+            return rejectedRows;
+        }
+
+        @Override
+        public String toString() {
+            return type + " " + url + ": " + rows + " rows, " + (rejectedRows > 0 ? rejectedRows + " rejected, " : "")
+                    + bytes + " bytes, " + invalidCells + " invalid cells, "
+                    + nanos / 1000000 + " ms (" + tokenizeNanos / 1000000 + " ms tokenizing, " + buildNanos / 1000000
+                    + " ms building)";
+        }
+    }
+
+    private final String path;
+    private final boolean fromSnapshot;
+    private final List<Table> tables;
+    private final Map<String, Long> phaseNanos;
+    private final long totalNanos;
+    private final long estimatedHeapBytes;
+
+    /**
+     * @param path               the metadata file that was loaded
+     * @param fromSnapshot       whether the database was read from a snapshot
+     *                           instead of the CSV files
+     * @param tables             the tables read, in the order they finished
+     * @param phaseNanos         the time spent in each phase, in order
+     * @param totalNanos         the time the whole load took
+     * @param estimatedHeapBytes a rough estimate of the heap the database retains
+     */
+    public CLDFLoadReport(String path, boolean fromSnapshot, List<Table> tables, Map<String, Long> phaseNanos,
+            long totalNanos, long estimatedHeapBytes) {
+        this.path = path;
+        this.fromSnapshot = fromSnapshot;
+        this.tables = Collections.unmodifiableList(tables);
+        this.phaseNanos = Collections.unmodifiableMap(new LinkedHashMap<>(phaseNanos));
+        this.totalNanos = totalNanos;
+        this.estimatedHeapBytes = estimatedHeapBytes;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public boolean isFromSnapshot() {
+        return fromSnapshot;
+    }
+
+    public List<Table> getTables() {
+        return tables;
+    }
+
+    /**
+     * @param type a CLDF table type, eg. FormTable
+     * @return the report of that table, or null if it was not read
+     */
+    public Table getTable(String type) {
+        for (Table table : tables) {
+            if (table.getType().equals(type)) {
+                return table;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the time spent in each phase, by phase name, in the order the
+     *         phases started
+     */
+    public Map<String, Long> getPhaseNanos() {
+        return phaseNanos;
+    }
+
+    /**
+     * @return the time spent in a phase, or 0 if there was no such phase
+     */
+    public long getPhaseNanos(String phase) {
+        return phaseNanos.getOrDefault(phase, 0L);
+    }
+
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    public long getBytesRead() {
+        long bytes = 0;
+        for (Table table : tables) {
+            bytes += table.getBytes();
+        }
+        return bytes;
+    }
+
+    public int getInvalidCells() {
+        int cells = 0;
+        for (Table table : tables) {
+            cells += table.getInvalidCells();
+        }
+        return cells;
+    }
+
+    /**
+     * An estimate of the heap the loaded database retains, from the text of the
+     * cells kept and typical object sizes per row. It is meant for comparing loads, not for
+     * sizing a heap.
+     */
+    public long getEstimatedHeapBytes() {
+        return estimatedHeapBytes;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder("Loaded " + path + (fromSnapshot ? " from a snapshot" : "") + " in "
+                + totalNanos / 1000000 + " ms, about " + estimatedHeapBytes / (1024 * 1024) + " MB\n");
+        for (Table table : tables) {
+            report.append("  ").append(table).append('\n');
+        }
+        for (Map.Entry<String, Long> phase : phaseNanos.entrySet()) {
+            report.append("  ").append(phase.getKey()).append(": ").append(phase.getValue() / 1000000).append(" ms\n");
+        }
+        return report.toString();
+    }
+}
@@ -0,0 +1,284 @@
+package de.tuebingen.sfs.cldfjava.data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.stream.IntStream;
+
+/**
+ * Draws random forms of a database, with replacement, in batches.
+ *
+ * Draws are written as form rows of the database index into arrays owned by the
+ * caller; {@link CLDFIndex#formID(int)} and {@link CLDFIndex#form(int)} turn
+ * them into forms. A sampler holds one {@link SplittableRandom} and must not be
+ * shared between threads. Give each thread its own with {@link #split()}, or,
+ * where results must not depend on how work is divided between threads, with
+ * {@link #stream(long)}, whose draws only depend on the seed and the stream
+ * number.
+ *
+ * A sampler is a snapshot: it draws from the database as it was when the
+ * sampler was made, and edits of the database after that do not show in it.
+ *
+ * For a given seed, a sampler over the same data draws the same forms. Strata
+ * are ordered by their IDs, not by symbol codes, since the latter follow the
+ * order in which the IDs first occur in the tables, which reordering the rows
+ * changes.
+ *
+ * @param <F> the type of form IDs
+ */
+public class CLDFSampler<F> {
+    private final CLDFIndex<F, ?> index;
+    private final Map<String, CLDFLanguage> languages;
+    private final long seed;
+    private final SplittableRandom random;
+
+    /**
+     * What to group forms by for stratified sampling.
+     */
+    public enum Stratification {
+        LANGUAGE, CONCEPT, FAMILY
+    }
+
+    /**
+     * A partition of the forms into strata, eg. one per language family. Each
+     * stratum is a union of the forms of one or more languages or concepts.
+     */
+    public static final class Strata {
+        private final Stratification by;
+        private final String[] names;
+        private final int[][] keys; // the language or parameter codes of each stratum
+        private final int[][] ends; // running totals of the forms of those keys
+
+        private Strata(Stratification by, String[] names, int[][] keys, int[][] ends) {
+            this.by = by;
+            this.names = names;
+            this.keys = keys;
+            this.ends = ends;
+        }
+
+        public Stratification getStratification() {
+            return by;
+        }
+
+        public int size() {
+            return names.length;
+        }
+
+        /**
+         * @return the language ID, concept ID or family of a stratum
+         */
+        public String name(int stratum) {
+            return names[stratum];
+        }
+
+        /**
+         * @return the number of forms in a stratum
+         */
+        public int count(int stratum) {
+            int[] stratumEnds = ends[stratum];
+            return stratumEnds[stratumEnds.length - 1];
+        }
+    }
+
+    CLDFSampler(CLDFIndex<F, ?> index, Map<String, CLDFLanguage> languages, long seed) {
+        this(index, languages, seed, new SplittableRandom(seed));
+    }
+
+    private CLDFSampler(CLDFIndex<F, ?> index, Map<String, CLDFLanguage> languages, long seed,
+            SplittableRandom random) {
+        this.index = index;
+        this.languages = languages;
+        this.seed = seed;
+        this.random = random;
+    }
+
+    /**
+     * @return a sampler with a new generator split off from this one, for use in
+     *         another thread
+     */
+    public CLDFSampler<F> split() {
+        return new CLDFSampler<>(index, languages, seed, random.split());
+    }
+
+    /**
+     * @return a sampler whose draws only depend on the seed of this sampler and
+     *         the stream number, not on any draws made so far
+     */
+    public CLDFSampler<F> stream(long stream) {
+        long streamSeed = mix(seed + 0x9E3779B97F4A7C15L * (stream + 1));
+        return new CLDFSampler<>(index, languages, seed, new SplittableRandom(streamSeed));
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * @return the index whose rows this sampler draws, which is the index of the
+     *         database when the sampler was made, whatever edits followed
+     */
+    public CLDFIndex<F, ?> getIndex() {
+        return index;
+    }
+
+    /**
+     * Draw forms uniformly from all forms.
+     *
+     * @return the number of forms drawn: count, or 0 if there are no forms
+     */
+    public int sampleForms(int[] rows, int offset, int count) {
+        int n = index.rowCount();
+        if (n == 0) {
+            return 0;
+        }
+        for (int i = offset; i < offset + count; i++) {
+            rows[i] = random.nextInt(n);
+        }
+        return count;
+    }
+
+    /**
+     * Draw forms uniformly from the forms of a language.
+     *
+     * @return the number of forms drawn: count, or 0 if the language has none
+     */
+    public int sampleLanguage(int langCode, int[] rows, int offset, int count) {
+        int n = index.countFormsOfLanguage(langCode);
+        if (n == 0) {
+            return 0;
+        }
+        for (int i = offset; i < offset + count; i++) {
+            rows[i] = index.formOfLanguage(langCode, random.nextInt(n));
+        }
+        return count;
+    }
+
+    public int sampleLanguage(String langID, int[] rows, int offset, int count) {
+        return sampleLanguage(index.symbols().languages().code(langID), rows, offset, count);
+    }
+
+    /**
+     * Draw forms uniformly from the forms of a concept.
+     *
+     * @return the number of forms drawn: count, or 0 if the concept has none
+     */
+    public int sampleConcept(int paramCode, int[] rows, int offset, int count) {
+        int n = index.countFormsOfParameter(paramCode);
+        if (n == 0) {
+            return 0;
+        }
+        for (int i = offset; i < offset + count; i++) {
+            rows[i] = index.formOfParameter(paramCode, random.nextInt(n));
+        }
+        return count;
+    }
+
+    public int sampleConcept(String paramID, int[] rows, int offset, int count) {
+        return sampleConcept(index.symbols().parameters().code(paramID), rows, offset, count);
+    }
+
+    /**
+     * @return a single form of a language, or -1 if it has none
+     */
+    public int sampleLanguage(int langCode) {
+        int n = index.countFormsOfLanguage(langCode);
+        return n == 0 ? -1 : index.formOfLanguage(langCode, random.nextInt(n));
+    }
+
+    /**
+     * Partition the forms into strata. Forms of languages without a family are
+     * left out of family strata, as are forms without a language or concept of
+     * the other kinds.
+     */
+    public Strata strata(Stratification by) {
+        CLDFSymbolTable symbols = by == Stratification.CONCEPT ? index.symbols().parameters()
+                : index.symbols().languages();
+        TreeMap<String, List<Integer>> groups = new TreeMap<>();
+        for (int code = 0; code < symbols.size(); code++) {
+            int n = by == Stratification.CONCEPT ? index.countFormsOfParameter(code)
+                    : index.countFormsOfLanguage(code);
+            if (n == 0) {
+                continue;
+            }
+            String name = symbols.name(code);
+            if (by == Stratification.FAMILY) {
+                CLDFLanguage language = languages.get(name);
+                name = language == null ? null : language.getFamily();
+                if (name == null || name.isEmpty()) {
+                    continue;
+                }
+            }
+            groups.computeIfAbsent(name, g -> new ArrayList<>()).add(code);
+        }
+
+        String[] names = groups.keySet().toArray(new String[0]);
+        int[][] keys = new int[names.length][];
+        int[][] ends = new int[names.length][];
+        int s = 0;
+        for (List<Integer> codes : groups.values()) {
+            // Within a family, languages are ordered by ID as well.
+            codes.sort((a, b) -> symbols.name(a).compareTo(symbols.name(b)));
+            keys[s] = new int[codes.size()];
+            ends[s] = new int[codes.size()];
+            int total = 0;
+            for (int k = 0; k < codes.size(); k++) {
+                keys[s][k] = codes.get(k);
+                total += by == Stratification.CONCEPT ? index.countFormsOfParameter(codes.get(k))
+                        : index.countFormsOfLanguage(codes.get(k));
+                ends[s][k] = total;
+            }
+            s++;
+        }
+        return new Strata(by, names, keys, ends);
+    }
+
+    /**
+     * Draw forms uniformly from one stratum, with the generator of this sampler.
+     */
+    public void sampleStratum(Strata strata, int stratum, int[] rows, int offset, int count) {
+        int[] keys = strata.keys[stratum];
+        int[] ends = strata.ends[stratum];
+        int n = ends[ends.length - 1];
+        boolean concepts = strata.by == Stratification.CONCEPT;
+        for (int i = offset; i < offset + count; i++) {
+            int draw = random.nextInt(n);
+            int k = 0;
+            if (keys.length > 1) {
+                // The first key whose running total exceeds the draw.
+                int lo = 0;
+                int hi = keys.length - 1;
+                while (lo < hi) {
+                    int mid = (lo + hi) >>> 1;
+                    if (ends[mid] > draw) {
+                        hi = mid;
+                    } else {
+                        lo = mid + 1;
+                    }
+                }
+                k = lo;
+                draw -= k == 0 ? 0 : ends[k - 1];
+            }
+            rows[i] = concepts ? index.formOfParameter(keys[k], draw) : index.formOfLanguage(keys[k], draw);
+        }
+    }
+
+    /**
+     * Draw the same number of forms from every stratum. The draws of stratum s
+     * go to rows[s * perStratum] onwards and come from {@link #stream(long)
+     * stream(s)}, so the result is the same whether or not it is computed in
+     * parallel.
+     *
+     * @param rows an array of at least strata.size() * perStratum elements
+     */
+    public void sampleStratified(Strata strata, int perStratum, int[] rows, boolean parallel) {
+        IntStream stratumNumbers = IntStream.range(0, strata.size());
+        if (parallel) {
+            stratumNumbers = stratumNumbers.parallel();
+        }
+        stratumNumbers.forEach(s -> stream(s).sampleStratum(strata, s, rows, s * perStratum, perStratum));
+    }
+}
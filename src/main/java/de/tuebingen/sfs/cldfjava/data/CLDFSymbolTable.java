@@ -0,0 +1,137 @@
+package de.tuebingen.sfs.cldfjava.data;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A dictionary of IDs (of languages, parameters, cognate sets), which maps each
+ * distinct ID to a dense int code, starting at 0, in order of first appearance.
+ *
+ * Codes can be looked up from any thread. New IDs are added under a lock, but
+ * since a database has few distinct languages or concepts compared to its
+ * forms, nearly all calls to {@link #intern(String)} take the lock-free path.
+ */
+public class CLDFSymbolTable {
+    private final ConcurrentHashMap<String, Integer> codes = new ConcurrentHashMap<>();
+    private volatile String[] names = new String[16];
+    private volatile int size = 0;
+
+    /**
+     * Get the code of an ID, adding the ID to the table if it is new.
+     *
+     * @param name the ID
+     * @return its code, or -1 if the ID is null
+     */
+    public int intern(String name) {
+        if (name == null) {
+            return -1;
+        }
+        Integer code = codes.get(name);
+        if (code != null) {
+            return code;
+        }
+        synchronized (this) {
+            code = codes.get(name);
+            if (code != null) {
+                return code;
+            }
+            int next = size;
+            String[] grown = names;
+            if (next == grown.length) {
+                grown = Arrays.copyOf(grown, 2 * next);
+            }
+            grown[next] = name;
+            // Publish the name before the code, so whoever sees the code sees the name.
+            names = grown;
+            size = next + 1;
+            codes.put(name, next);
+            return next;
+        }
+    }
+
+    /**
+     * @param name an ID
+     * @return the code of the ID, or -1 if it is not in the table
+     */
+    public int code(String name) {
+        if (name == null) {
+            return -1;
+        }
+        Integer code = codes.get(name);
+        return code == null ? -1 : code;
+    }
+
+    /**
+     * @param code a code handed out by this table, or -1
+     * @return the ID with that code, or null for -1
+     */
+    public String name(int code) {
+        if (code < 0) {
+            return null;
+        }
+        return names[code];
+    }
+
+    /**
+     * @return the number of distinct IDs, ie. one more than the largest code
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return a read-only list of all IDs, indexed by their codes
+     */
+    public List<String> names() {
+        // Read the size before the names, the reverse of the order intern writes
+        // them in, so the array read holds at least size names.
+        int n = size;
+        String[] snapshot = names;
+        return new AbstractList<String>() {
+            @Override
+            public String get(int index) {
+                if (index >= n) {
+                    throw new IndexOutOfBoundsException(index);
+                }
+                return snapshot[index];
+            }
+
+            @Override
+            public int size() {
+                return n;
+            }
+        };
+    }
+
+    /**
+     * Look up the IDs of several codes at once.
+     *
+     * @return a read-only list of the IDs, backed by the array of codes
+     */
+    public List<String> names(int[] codes) {
+        return new AbstractList<String>() {
+            @Override
+            public String get(int index) {
+                return name(codes[index]);
+            }
+
+            @Override
+            public int size() {
+                return codes.length;
+            }
+        };
+    }
+
+    /**
+     * Get the codes of several IDs, adding new ones to the table.
+     */
+    public int[] intern(List<String> names) {
+        int[] result = new int[names.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = intern(names.get(i));
+        }
+        return result;
+    }
+}
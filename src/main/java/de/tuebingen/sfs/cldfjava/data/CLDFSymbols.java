@@ -0,0 +1,77 @@
+package de.tuebingen.sfs.cldfjava.data;
+
+import java.util.List;
+
+/**
+ * The symbol tables of one database: dense int codes for the language,
+ * parameter and cognate set IDs used throughout its tables, and for the
+ * segments of its forms, which makes the segment table its sound inventory.
+ *
+ * Forms store these codes instead of their own copies of the ID strings, and
+ * per-language or per-concept groupings can be kept in arrays indexed by code.
+ */
+public class CLDFSymbols {
+    private final CLDFSymbolTable languages = new CLDFSymbolTable();
+    private final CLDFSymbolTable parameters = new CLDFSymbolTable();
+    private final CLDFSymbolTable cognatesets = new CLDFSymbolTable();
+    private final CLDFSymbolTable segments = new CLDFSymbolTable();
+
+    public CLDFSymbolTable languages() {
+        return languages;
+    }
+
+    public CLDFSymbolTable parameters() {
+        return parameters;
+    }
+
+    public CLDFSymbolTable cognatesets() {
+        return cognatesets;
+    }
+
+    /**
+     * @return the sound inventory: every distinct segment of the forms
+     */
+    public CLDFSymbolTable segments() {
+        return segments;
+    }
+
+    /**
+     * Move forms that were built against other symbol tables over to these. The
+     * IDs of the other tables are added here in the order of their codes, so
+     * merging the tables of consecutive parts of a FormTable in turn hands out
+     * the codes reading the whole table at once would have.
+     *
+     * @param other the symbols the codes of the forms refer to, which are not
+     *              used afterwards
+     * @param forms the forms to recode
+     */
+    public void merge(CLDFSymbols other, List<? extends CLDFForm<?>> forms) {
+        if (other == this) {
+            return;
+        }
+        int[] langCodes = languages.intern(other.languages.names());
+        int[] paramCodes = parameters.intern(other.parameters.names());
+        int[] segmentCodes = segments.intern(other.segments.names());
+        for (CLDFForm<?> form : forms) {
+            form.symbols = this;
+            form.langCode = recode(langCodes, form.langCode);
+            form.paramCodes = recode(paramCodes, form.paramCodes);
+            form.segmentCodes = recode(segmentCodes, form.segmentCodes);
+        }
+    }
+
+    private static int recode(int[] codes, int code) {
+        return code < 0 ? code : codes[code];
+    }
+
+    private static int[] recode(int[] codes, int[] old) {
+        if (old == null) {
+            return null;
+        }
+        int[] result = new int[old.length];
+        for (int i = 0; i < old.length; i++) {
+            result[i] = recode(codes, old[i]);
+        }
+        return result;
+    }
+}
@@ -1,8 +1,7 @@
 package de.tuebingen.sfs.cldfjava.data;
 
 import java.util.*;
-import java.util.Map.Entry;
-import java.util.stream.Collectors;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * Represents a CLDF database in an object-oriented fashion. Created using CLDFImport.
@@ -17,13 +16,17 @@ public class CLDFWordlistDatabase<F, J, C> {
 	Map<String, CLDFLanguage> langIDToLang; //from foreign key into language table
 	Map<String, CLDFParameter> paramIDToParam; //from foreign key (concept ID) into parameters table (typically concepts.csv)
 	List<String> langIDs; // store langIDs as ordered list to facilitate indexing
-	Map<String, Map<String, List<CLDFForm<F>>>> formsByLanguageByParamID;
-	Map<String, List<CLDFForm<F>>> formsByLanguage;
 
 	//TODO: is it really needed?
 	Map<J, CLDFCognateJudgement<F, J, C>> cognateIDToCognate; //cognateID to cognate object
 	Map<C, CLDFCognateSet<C>> cogsetIDToCogset; //only fill this if in separate table, store within CLDFForm if it's just cognate set IDs
 	List<String[]> exceptions;
+	CLDFLoadReport loadReport; // how the database was loaded, if it was
+	CLDFSymbols symbols; // codes for the language, parameter and cognate set IDs used by the forms
+	CLDFFormStore formStore; // the columnar backend of idToForm, if there is one (then F is Integer)
+	// Built from the maps in the constructor, or on first use. The index also
+	// holds the lazily grouped forms, so replacing it drops them all at once.
+	volatile CLDFIndex<F, C> index;
 
 	public CLDFWordlistDatabase() {
 		this.langIDToLang = new HashMap<>();
@@ -31,6 +34,7 @@ public class CLDFWordlistDatabase<F, J, C> {
 		this.idToForm = new HashMap<>();
 		this.cognateIDToCognate = new HashMap<>();
 		this.langIDs = new ArrayList<>();
+		this.symbols = new CLDFSymbols();
 	}
 
 	public CLDFWordlistDatabase(
@@ -39,14 +43,116 @@ public class CLDFWordlistDatabase<F, J, C> {
 	        Map<String, CLDFParameter> paramIDToParam,
 	        Map<J, CLDFCognateJudgement<F, J, C>> cognateIDToCognate,
 	        Map<C, CLDFCognateSet<C>> cogsetIDToCogset) {
+		this(idToForm, langIDToLang, paramIDToParam, cognateIDToCognate, cogsetIDToCogset, new CLDFSymbols());
+	}
+
+	public CLDFWordlistDatabase(
+	        Map<F, CLDFForm<F>> idToForm,
+	        Map<String, CLDFLanguage> langIDToLang,
+	        Map<String, CLDFParameter> paramIDToParam,
+	        Map<J, CLDFCognateJudgement<F, J, C>> cognateIDToCognate,
+	        Map<C, CLDFCognateSet<C>> cogsetIDToCogset,
+	        CLDFSymbols symbols) {
 		this.idToForm = idToForm;
 		this.langIDToLang = langIDToLang;
 		this.paramIDToParam = paramIDToParam;
 		this.cognateIDToCognate = cognateIDToCognate;
 		this.cogsetIDToCogset = cogsetIDToCogset;
 		this.langIDs = new ArrayList<>(langIDToLang.keySet());
+		this.symbols = symbols;
+		Object forms = idToForm;
+		if (forms instanceof CLDFFormStore.FormMap) {
+			this.formStore = ((CLDFFormStore.FormMap) forms).store();
+		}
+		this.index = new CLDFIndex<>(this);
 	}
 
+    /**
+     * @return the symbol tables whose codes the forms of this database use
+     */
+    public CLDFSymbols getSymbols() {
+        return symbols;
+    }
+
+    /**
+     * @return the lookup structures over the forms, languages and cognate
+     *         judgements; built now if the database was filled field by field
+     */
+    public CLDFIndex<F, C> getIndex() {
+        CLDFIndex<F, C> current = index;
+        if (current == null) {
+            current = new CLDFIndex<>(this);
+            index = current;
+        }
+        return current;
+    }
+
+    /**
+     * Start a batch of edits to this database, which keeps the index up to date
+     * as it is applied.
+     */
+    public CLDFEdit<F, J, C> edit() {
+        return new CLDFEdit<>(this);
+    }
+
+    /**
+     * Rebuild the index and drop the cached groupings of forms, after the maps
+     * of this database were changed directly rather than through
+     * {@link #edit()}.
+     */
+    public void rebuildIndex() {
+        index = new CLDFIndex<>(this);
+    }
+
+    /**
+     * Derive a database in which some tables are replaced, eg. because their
+     * files were edited. The derived database gets copies of the maps (and the
+     * columnar store) of this one for the tables it keeps, with the same form,
+     * language and other row objects, and shares the symbols. Its index shares
+     * the parts of this database's index that do not depend on the replaced
+     * tables, copying them before an edit changes them; only the languages and
+     * the cognate judgements are indexed again, and only if they were replaced.
+     * This database is not changed, and edits of either database do not show
+     * in the other.
+     *
+     * Pass the maps of this database for the tables to keep. The exceptions and
+     * load report are not carried over.
+     */
+    public CLDFWordlistDatabase<F, J, C> withTables(
+            Map<String, CLDFLanguage> langIDToLang,
+            Map<String, CLDFParameter> paramIDToParam,
+            Map<J, CLDFCognateJudgement<F, J, C>> cognateIDToCognate,
+            Map<C, CLDFCognateSet<C>> cogsetIDToCogset) {
+        CLDFWordlistDatabase<F, J, C> derived = new CLDFWordlistDatabase<>();
+        derived.currentPath = currentPath;
+        if (formStore != null) {
+            derived.formStore = formStore.copy();
+            // F is Integer with a columnar store.
+            @SuppressWarnings("unchecked")
+            Map<F, CLDFForm<F>> forms = (Map<F, CLDFForm<F>>) (Map<?, ?>) derived.formStore.asMap();
+            derived.idToForm = forms;
+        } else {
+            derived.idToForm = new HashMap<>(idToForm);
+        }
+        derived.langIDToLang = copyIfOwn(langIDToLang, this.langIDToLang);
+        derived.paramIDToParam = copyIfOwn(paramIDToParam, this.paramIDToParam);
+        derived.cognateIDToCognate = copyIfOwn(cognateIDToCognate, this.cognateIDToCognate);
+        derived.cogsetIDToCogset = copyIfOwn(cogsetIDToCogset, this.cogsetIDToCogset);
+        derived.langIDs = langIDToLang == this.langIDToLang ? new ArrayList<>(langIDs)
+                : new ArrayList<>(langIDToLang.keySet());
+        derived.symbols = symbols;
+        derived.index = new CLDFIndex<>(getIndex(), derived, langIDToLang != this.langIDToLang,
+                cognateIDToCognate != this.cognateIDToCognate);
+        return derived;
+    }
+
+    /**
+     * @return a copy of a map if it is the map of this database, else the map
+     */
+    private static <K, V> Map<K, V> copyIfOwn(Map<K, V> map, Map<K, V> own) {
+        return map != null && map == own ? new HashMap<>(map) : map;
+    }
+
     public List<String[]> getExceptions() {
         return this.exceptions;
     }
@@ -55,6 +161,18 @@ public class CLDFWordlistDatabase<F, J, C> {
         this.exceptions = exceptions;
     }
 
+    /**
+     * @return what loading this database took, or null if it was not loaded by
+     *         CLDFImport
+     */
+    public CLDFLoadReport getLoadReport() {
+        return loadReport;
+    }
+
+    public void setLoadReport(CLDFLoadReport loadReport) {
+        this.loadReport = loadReport;
+    }
+
     public String getCurrentPath() {
         return currentPath;
     }
@@ -67,6 +185,15 @@ public class CLDFWordlistDatabase<F, J, C> {
         return idToForm;
     }
 
+    /**
+     * @return the columnar store backing the forms map, or null if the forms are
+     *         kept as CLDFForm objects; edits replace it by an extension, and
+     *         leave the store returned here as it is
+     */
+    public CLDFFormStore getFormStore() {
+        return formStore;
+    }
+
     public Map<String, CLDFLanguage> getLanguageMap() {
         return langIDToLang;
     }
@@ -75,24 +202,24 @@ public class CLDFWordlistDatabase<F, J, C> {
         return paramIDToParam;
     }
 
+    public Map<J, CLDFCognateJudgement<F, J, C>> getCognateJudgementMap() {
+        return cognateIDToCognate;
+    }
+
+    public Map<C, CLDFCognateSet<C>> getCognatesetMap() {
+        return cogsetIDToCogset;
+    }
+
 	public List<String> getLangIDs() {
 		return langIDs;
 	}
 
 
+    /**
+     * @return a read-only view of the IDs of the forms in each cognate set
+     */
     public Map<C, Set<F>> getCogsetToCognates() {
-        Map<C, Set<F>> cognateSets = new HashMap<>();
-
-        for (Entry<J, CLDFCognateJudgement<F, J, C>> entry : cognateIDToCognate.entrySet()) {
-            J cognateID = entry.getKey();
-            C cogsetID = cognateIDToCognate.get(cognateID).getCognatesetReference();
-            F formID = entry.getValue().getFormReference();
-
-            cognateSets.putIfAbsent(cogsetID, new HashSet<>());
-            cognateSets.get(cogsetID).add(formID);
-        }
-
-        return cognateSets;
+        return getIndex().cognatesetMap();
     }
 
     public List<String> listLanguageISOs() {
@@ -103,93 +230,63 @@ public class CLDFWordlistDatabase<F, J, C> {
         return isoCodes;
     }
 
+    /**
+     * @return a read-only view of the IDs of the forms of a language
+     */
     public List<F> listFormIdsForLangId(String langID) {
-        List<F> formIDs = new LinkedList<F>();
-        for (F formID : idToForm.keySet()) {
-            if (langID.equals(idToForm.get(formID).getLangID()))
-                formIDs.add(formID);
-        }
-        return formIDs;
+        return getIndex().formIDsOfLanguage(langID);
     }
 
     public String searchLangIdForIsoCode(String isoCode) {
-        for (CLDFLanguage lang : langIDToLang.values()) {
-            if (isoCode.equals(lang.iso)) {
-                return lang.langID;
-            }
-        }
-        return null;
+        return getIndex().languageForIso(isoCode);
     }
 
+    public String searchLangIdForGlottocode(String glottocode) {
+        return getIndex().languageForGlottocode(glottocode);
+    }
 
+
+	/**
+	 * @return a random form of a language, or null if it has none
+	 * @deprecated draws one form per call, which cannot be seeded, so the draws
+	 *             do not reproduce; use {@link #sampler(long)} to draw batches
+	 *             for a seed
+	 */
+	@Deprecated
 	public CLDFForm<F> getRandomFormForLanguage(String langID) {
-		if (formsByLanguage == null) {
-			cacheFormsByLanguage();
-		}
-		List<CLDFForm<F>> allFormsOfTargetLanguage = formsByLanguage.get(langID);
-
-		CLDFForm<F> randomForm;
-		try {
-			int randomIndex = (int) (Math.random() * allFormsOfTargetLanguage.size());
-			randomForm = allFormsOfTargetLanguage.get(randomIndex);
-		} catch (Exception e) {
-			randomForm = null; // return null if something goes wrong
+		CLDFIndex<F, C> current = getIndex();
+		int langCode = symbols.languages().code(langID);
+		int n = current.countFormsOfLanguage(langCode);
+		if (n == 0) {
+			return null;
 		}
-		return randomForm;
+		return current.form(current.formOfLanguage(langCode, ThreadLocalRandom.current().nextInt(n)));
 	}
 
+	/**
+	 * Create a generator of random forms, with draws that reproduce for the same
+	 * seed. The sampler draws from the forms and languages of the database as
+	 * they are now: it keeps the current index, whose rows its draws are, and
+	 * does not see later edits, so make a new sampler after editing.
+	 */
+	public CLDFSampler<F> sampler(long seed) {
+		return new CLDFSampler<>(getIndex(), new HashMap<>(langIDToLang), seed);
+	}
+
+	/**
+	 * Group the forms by language now rather than on first use. The grouping is
+	 * immutable and safe to share between threads; an edit that changes the
+	 * forms leaves it as it is, and the forms are grouped again after it.
+	 */
 	public void cacheFormsByLanguage() {
-		formsByLanguage = new HashMap<>();
-		for (CLDFForm<F> form : idToForm.values()) {
-			String langID = form.getLangID();
-			if (formsByLanguage.containsKey(langID)) {
-				List<CLDFForm<F>> forms = formsByLanguage.get(langID);
-				forms.add(form);
-			} else {
-				List<CLDFForm<F>> forms = new ArrayList<>();
-				forms.add(form);
-				formsByLanguage.put(langID, forms);
-			}
-		}
+		getIndex().formsByLanguage();
 	}
 
         public Map<String, List<CLDFForm<F>>> getFormsByLanguageByParamID(String paramID) {
-            if (formsByLanguageByParamID == null) {
-                formsByLanguageByParamID = new HashMap<>();
-                for (CLDFForm<F> form : idToForm.values()) {
-                    String langID = form.getLangID();
-                    List<String> localParamIDs = form.getParamID();
-                    for (String localParamID : localParamIDs) {
-                        if (formsByLanguageByParamID.containsKey(localParamID)) {
-                            Map<String, List<CLDFForm<F>>> formsByLang = formsByLanguageByParamID.get(localParamID);
-                            if (formsByLang.containsKey(langID)) {
-                                List<CLDFForm<F>> forms = formsByLang.get(langID);
-                                forms.add(form);
-                            } else {
-                                List<CLDFForm<F>> forms = new ArrayList<>();
-                                forms.add(form);
-                                formsByLang.put(langID, forms);
-                            }
-                        } else {
-                            List<CLDFForm<F>> forms = new ArrayList<>();
-                            forms.add(form);
-                            Map<String, List<CLDFForm<F>>> formsByLang = new HashMap<>();
-                            formsByLang.put(langID, forms);
-                            formsByLanguageByParamID.put(localParamID, formsByLang);
-                        }
-                    }
-                }
-            }
-
-            return formsByLanguageByParamID.get(paramID);
+            return getIndex().formsByLanguageByParameter().get(paramID);
         }
 
 	public List<CLDFForm<F>> getFormsByParamID(String paramID) {
-		Map<String, List<CLDFForm<F>>> conceptMapByLanguage = getFormsByLanguageByParamID(paramID);
-		List<List<CLDFForm<F>>> conceptsByLanguage = new ArrayList<>(conceptMapByLanguage.values());
-		// "flatten" List of Lists to one List containing all values
-		return conceptsByLanguage.stream()
-				.flatMap(Collection::stream)
-				.collect(Collectors.toList());
+		return getIndex().formsOfParameter(paramID);
 	}
 }
\ No newline at end of file
@@ -0,0 +1,413 @@
+package de.tuebingen.sfs.cldfjava.data;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The Glottolog classification, parsed from its Newick trees, one per family,
+ * such as
+ *
+ * <pre>
+ * (('Child [chil1234]-l-':1)'Subfamily [subf1234]-f-':1)'Family [fami1234]-f-':1;
+ * </pre>
+ *
+ * Each node is a languoid, labelled with its name, its Glottocode in the first
+ * pair of brackets, and optionally its level: -f- for a family, -l- for a
+ * language, -d- for a dialect. Branch lengths are ignored.
+ *
+ * The nodes are numbered in the order their subtrees open, so a parent comes
+ * before its children, and kept in parallel arrays of parents, depths, names
+ * and Glottocodes. The index of Glottocodes packs the eight ASCII characters
+ * of a code into a long. Finding a node, its family, its subfamily, its
+ * ancestors and the lowest common ancestor of two nodes takes time in the
+ * depth of the tree, and none of it allocates. A tree is not changed once
+ * parsed, so it can be shared between threads.
+ */
+public final class GlottologTree {
+    /**
+     * Where {@link #glottolog()} looks for the trees on the class path.
+     */
+    public static final String RESOURCE = "/glottolog/trees.nwk";
+
+    // The levels of nodes, which are 0 if their labels do not give one.
+    private static final byte FAMILY = 1;
+    private static final byte LANGUAGE = 2;
+    private static final byte DIALECT = 3;
+
+    private static volatile GlottologTree glottolog = null;
+
+    private int size = 0;
+    private int[] parents = new int[256];
+    private int[] depths = new int[256];
+    private byte[] levels = new byte[256];
+    private String[] names = new String[256];
+    private String[] codes = new String[256];
+    private final LongIntMap index = new LongIntMap(256);
+    private long fingerprint = 0;
+
+    private GlottologTree() {
+    }
+
+    /**
+     * @return the trees of the resource {@value #RESOURCE}, parsed the first time
+     *         they are asked for and shared from then on; an empty tree if there
+     *         is no such resource
+     * @throws UncheckedIOException if the resource cannot be read or parsed
+     */
+    public static GlottologTree glottolog() {
+        GlottologTree tree = glottolog;
+        if (tree == null) {
+            synchronized (GlottologTree.class) {
+                tree = glottolog;
+                if (tree == null) {
+                    try (InputStream stream = GlottologTree.class.getResourceAsStream(RESOURCE)) {
+                        tree = stream == null ? new GlottologTree()
+                                : parse(new InputStreamReader(stream, StandardCharsets.UTF_8));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException("Cannot read the Glottolog trees at " + RESOURCE, e);
+                    }
+                    glottolog = tree;
+                }
+            }
+        }
+        return tree;
+    }
+
+    /**
+     * Parse trees in Newick format, each ended by a semicolon.
+     *
+     * @param reader the trees, which is not closed
+     * @throws IOException if the reader fails or the trees are malformed
+     */
+    public static GlottologTree parse(Reader reader) throws IOException {
+        GlottologTree tree = new GlottologTree();
+        Reader in = reader instanceof BufferedReader ? reader : new BufferedReader(reader);
+        // The open subtrees, innermost last.
+        int[] open = new int[64];
+        int depth = 0;
+        // The node a following label or branch length belongs to, or -1 if a label
+        // starts a new leaf.
+        int last = -1;
+        StringBuilder label = new StringBuilder();
+        int c = in.read();
+        while (c >= 0) {
+            switch (c) {
+            case '(':
+                if (depth == open.length) {
+                    open = Arrays.copyOf(open, 2 * depth);
+                }
+                open[depth] = tree.add(depth == 0 ? -1 : open[depth - 1]);
+                depth++;
+                last = -1;
+                c = in.read();
+                break;
+            case ',':
+                if (depth == 0) {
+                    throw new IOException("A comma outside of any subtree in tree " + tree.trees());
+                }
+                last = -1;
+                c = in.read();
+                break;
+            case ')':
+                if (depth == 0) {
+                    throw new IOException("Unbalanced parenthesis in tree " + tree.trees());
+                }
+                depth--;
+                last = open[depth];
+                c = in.read();
+                break;
+            case ';':
+                if (depth > 0) {
+                    throw new IOException("Tree " + tree.trees() + " ends with unclosed subtrees");
+                }
+                last = -1;
+                c = in.read();
+                break;
+            case ':':
+                // A branch length, which is of no use here.
+                do {
+                    c = in.read();
+                } while (c >= 0 && Character.isWhitespace(c));
+                while (c >= 0 && "(),:;".indexOf(c) < 0 && !Character.isWhitespace(c)) {
+                    c = in.read();
+                }
+                break;
+            default:
+                if (Character.isWhitespace(c)) {
+                    c = in.read();
+                    break;
+                }
+                label.setLength(0);
+                if (c == '\'') {
+                    while (true) {
+                        c = in.read();
+                        if (c < 0) {
+                            throw new IOException("A quoted label is not closed in tree " + tree.trees());
+                        }
+                        if (c == '\'') {
+                            c = in.read();
+                            if (c != '\'') {
+                                break;
+                            }
+                        }
+                        label.append((char) c);
+                    }
+                } else {
+                    do {
+                        label.append((char) c);
+                        c = in.read();
+                    } while (c >= 0 && "(),:;'".indexOf(c) < 0 && !Character.isWhitespace(c));
+                }
+                if (last < 0) {
+                    last = tree.add(depth == 0 ? -1 : open[depth - 1]);
+                } else if (tree.names[last] != null) {
+                    throw new IOException("Node " + tree.names[last] + " has two labels");
+                }
+                tree.label(last, label.toString());
+            }
+        }
+        if (depth > 0) {
+            throw new IOException("The last tree has unclosed subtrees");
+        }
+        tree.fingerprint = tree.hash();
+        return tree;
+    }
+
+    /**
+     * @return a hash of the shape and labels of all nodes
+     */
+    private long hash() {
+        long hash = 1125899906842597L;
+        for (int node = 0; node < size; node++) {
+            hash = 31 * hash + parents[node];
+            hash = 31 * hash + levels[node];
+            hash = 31 * hash + (names[node] == null ? 0 : names[node].hashCode());
+            hash = 31 * hash + (codes[node] == null ? 0 : codes[node].hashCode());
+        }
+        return hash;
+    }
+
+    private int add(int parent) {
+        if (size == parents.length) {
+            int capacity = 2 * size;
+            parents = Arrays.copyOf(parents, capacity);
+            depths = Arrays.copyOf(depths, capacity);
+            levels = Arrays.copyOf(levels, capacity);
+            names = Arrays.copyOf(names, capacity);
+            codes = Arrays.copyOf(codes, capacity);
+        }
+        parents[size] = parent;
+        depths[size] = parent < 0 ? 0 : depths[parent] + 1;
+        return size++;
+    }
+
+    /**
+     * Split a label such as "Name [abcd1234][iso]-l-" into its parts.
+     */
+    private void label(int node, String label) {
+        String name = label;
+        if (label.endsWith("-f-") || label.endsWith("-l-") || label.endsWith("-d-")) {
+            char level = label.charAt(label.length() - 2);
+            levels[node] = level == 'f' ? FAMILY : level == 'l' ? LANGUAGE : DIALECT;
+            name = label.substring(0, label.length() - 3);
+        }
+        int open = name.indexOf('[');
+        if (open >= 0) {
+            int close = name.indexOf(']', open);
+            if (close > open) {
+                String code = name.substring(open + 1, close);
+                long key = pack(code);
+                if (key >= 0) {
+                    codes[node] = code;
+                    index.put(key, node);
+                }
+            }
+            name = name.substring(0, open);
+        }
+        names[node] = name.strip();
+    }
+
+    /**
+     * @return the eight ASCII characters of a Glottocode as a long, or -1 if it
+     *         is no Glottocode
+     */
+    private static long pack(String code) {
+        if (code.length() != 8) {
+            return -1;
+        }
+        long key = 0;
+        for (int i = 0; i < 8; i++) {
+            char c = code.charAt(i);
+            if (c >= 128) {
+                return -1;
+            }
+            key = key << 8 | c;
+        }
+        return key;
+    }
+
+    private int trees() {
+        int trees = 0;
+        for (int node = 0; node < size; node++) {
+            if (parents[node] < 0) {
+                trees++;
+            }
+        }
+        return trees;
+    }
+
+    /**
+     * @return a hash of the whole classification, which is the same for trees
+     *         parsed from the same text, also in another JVM
+     */
+    public long fingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * @return the number of nodes in all trees
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the node of a Glottocode, or -1 if the trees do not have it
+     */
+    public int node(String glottocode) {
+        if (glottocode == null) {
+            return -1;
+        }
+        long key = pack(glottocode);
+        return key < 0 ? -1 : index.get(key);
+    }
+
+    /**
+     * @return the parent of a node, or -1 for the root of a tree
+     */
+    public int parent(int node) {
+        return parents[node];
+    }
+
+    /**
+     * @return the number of ancestors of a node
+     */
+    public int depth(int node) {
+        return depths[node];
+    }
+
+    public String name(int node) {
+        return names[node];
+    }
+
+    /**
+     * @return the Glottocode of a node, or null if its label has none
+     */
+    public String glottocode(int node) {
+        return codes[node];
+    }
+
+    /**
+     * @return the ancestor of a node at some depth, or the node itself at its
+     *         own depth
+     * @throws IllegalArgumentException if the node is not that deep
+     */
+    public int ancestor(int node, int depth) {
+        if (depth < 0 || depth > depths[node]) {
+            throw new IllegalArgumentException("Node " + node + " has no ancestor at depth " + depth);
+        }
+        while (depths[node] > depth) {
+            node = parents[node];
+        }
+        return node;
+    }
+
+    /**
+     * @return the root of the tree of a node, which is its family, or the node
+     *         itself for an isolate
+     */
+    public int family(int node) {
+        return ancestor(node, 0);
+    }
+
+    /**
+     * @return the top-level subgroup of its family a node belongs to, or -1 if
+     *         the node is a family, or a languoid right below one
+     */
+    public int subfamily(int node) {
+        if (depths[node] < 2) {
+            return -1;
+        }
+        int subfamily = ancestor(node, 1);
+        return levels[subfamily] == LANGUAGE || levels[subfamily] == DIALECT ? -1 : subfamily;
+    }
+
+    /**
+     * Write the path from the root of the tree of a node down to the node.
+     *
+     * @param path an array of at least {@link #depth(int)} + 1 elements
+     * @return the length of the path
+     */
+    public int path(int node, int[] path) {
+        int length = depths[node] + 1;
+        for (int i = length - 1; i >= 0; i--) {
+            path[i] = node;
+            node = parents[node];
+        }
+        return length;
+    }
+
+    /**
+     * @return the deepest node both nodes descend from, which may be one of
+     *         them, or -1 if they are in different trees
+     */
+    public int lowestCommonAncestor(int a, int b) {
+        while (depths[a] > depths[b]) {
+            a = parents[a];
+        }
+        while (depths[b] > depths[a]) {
+            b = parents[b];
+        }
+        while (a != b) {
+            a = parents[a];
+            b = parents[b];
+            if (a < 0) {
+                return -1;
+            }
+        }
+        return a;
+    }
+
+    /**
+     * @return whether a node is some ancestor of another, or the node itself
+     */
+    public boolean contains(int ancestor, int node) {
+        return depths[node] >= depths[ancestor] && ancestor(node, depths[ancestor]) == ancestor;
+    }
+
+    /**
+     * @return the name of the family of a Glottocode, or null if the trees do
+     *         not have it
+     */
+    public String family(String glottocode) {
+        int node = node(glottocode);
+        return node < 0 ? null : names[family(node)];
+    }
+
+    /**
+     * @return the name of the subfamily of a Glottocode (see
+     *         {@link #subfamily(int)}), or null if it has none or the trees do
+     *         not have it
+     */
+    public String subfamily(String glottocode) {
+        int node = node(glottocode);
+        int subfamily = node < 0 ? -1 : subfamily(node);
+        return subfamily < 0 ? null : names[subfamily];
+    }
+}
@@ -0,0 +1,67 @@
+package de.tuebingen.sfs.cldfjava.data;
+
+import java.util.Arrays;
+
+/**
+ * An int array of any length, kept in pages of 1024 values, for the structures
+ * of an index that edits change. Unset values read as the fill value.
+ *
+ * A copy shares the pages with the array it was made from, and copies a page
+ * before it first changes it, so copying costs the page table, a thousandth
+ * of the length, and a change at most one page. The original must not change
+ * once it is copied.
+ */
+final class IntPages {
+    static final int PAGE_BITS = 10;
+    private static final int PAGE_MASK = (1 << PAGE_BITS) - 1;
+
+    private final int fill;
+    private int[][] pages = new int[1][];
+    private boolean[] owned; // null if all pages are owned, ie. in the original
+
+    IntPages(int fill) {
+        this.fill = fill;
+    }
+
+    /**
+     * Copy an array, sharing the pages until they change.
+     */
+    IntPages(IntPages shared) {
+        fill = shared.fill;
+        pages = shared.pages.clone();
+        owned = new boolean[pages.length];
+    }
+
+    int get(int i) {
+        int p = i >>> PAGE_BITS;
+        int[] page = p < pages.length ? pages[p] : null;
+        return page == null ? fill : page[i & PAGE_MASK];
+    }
+
+    /**
+     * @param i a non-negative index
+     */
+    void set(int i, int value) {
+        int p = i >>> PAGE_BITS;
+        if (p >= pages.length) {
+            int length = Math.max(p + 1, 2 * pages.length);
+            pages = Arrays.copyOf(pages, length);
+            if (owned != null) {
+                owned = Arrays.copyOf(owned, length);
+            }
+        }
+        int[] page = pages[p];
+        if (page == null) {
+            page = pages[p] = new int[1 << PAGE_BITS];
+            if (fill != 0) {
+                Arrays.fill(page, fill);
+            }
+        } else if (owned != null && !owned[p]) {
+            page = pages[p] = page.clone();
+        }
+        if (owned != null) {
+            owned[p] = true;
+        }
+        page[i & PAGE_MASK] = value;
+    }
+}
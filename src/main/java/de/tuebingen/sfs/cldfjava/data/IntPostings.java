@@ -0,0 +1,193 @@
+package de.tuebingen.sfs.cldfjava.data;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Lists of ints keyed by non-negative ints, such as the rows of the forms of
+ * each language code. Every list is a plain int array with a length, which
+ * grows by doubling, so lookups never allocate. Lists are edited in place, by
+ * removing, replacing and moving values.
+ *
+ * A copy shares the lists, and the pages of the tables holding them (see
+ * {@link IntPages}), with the postings it was made from, which must not change
+ * once copied. It copies a list before it first removes or replaces a value,
+ * but appends to a shared list in place, past the values the original sees:
+ * each list array records how many of its slots are taken, and of the postings
+ * sharing it, only the one whose list is that long may take the next slot. The
+ * others copy the list first. So adding a row costs the same in a copy as in
+ * the original.
+ */
+final class IntPostings {
+    // Element 0 of a list array is the number of slots taken, the values follow.
+    private static final VarHandle TAKEN = MethodHandles.arrayElementVarHandle(int[].class);
+
+    private ObjectPages<int[]> lists;
+    private IntPages sizes;
+    private IntPages owned; // 1 for the lists no other postings reads; null if all are, ie. in the original
+    private int keys = 0;
+
+    IntPostings() {
+        lists = new ObjectPages<>();
+        sizes = new IntPages(0);
+    }
+
+    /**
+     * Copy postings, sharing the lists until they change.
+     */
+    IntPostings(IntPostings shared) {
+        lists = new ObjectPages<>(shared.lists);
+        sizes = new IntPages(shared.sizes);
+        owned = new IntPages(0);
+        keys = shared.keys;
+    }
+
+    private boolean owns(int key) {
+        return owned == null || owned.get(key) != 0;
+    }
+
+    /**
+     * Make the list of a key this object's own, before changing its values.
+     */
+    private int[] own(int key) {
+        int[] list = lists.get(key);
+        if (!owns(key)) {
+            if (list != null) {
+                list = list.clone();
+                list[0] = sizes.get(key);
+                lists.set(key, list);
+            }
+            owned.set(key, 1);
+        }
+        return list;
+    }
+
+    /**
+     * @param key a non-negative key
+     */
+    void add(int key, int value) {
+        int n = sizes.get(key);
+        int[] list = lists.get(key);
+        if (list == null || n + 1 == list.length || !take(key, list, n)) {
+            int[] grown = new int[Math.max(5, 2 * n + 1)];
+            if (list != null) {
+                System.arraycopy(list, 1, grown, 1, n);
+            }
+            grown[0] = n + 1;
+            list = grown;
+            lists.set(key, list);
+            if (owned != null) {
+                owned.set(key, 1);
+            }
+        }
+        list[n + 1] = value;
+        sizes.set(key, n + 1);
+        keys = Math.max(keys, key + 1);
+    }
+
+    /**
+     * Take the slot after the first n values of a list, if no other postings
+     * took it.
+     */
+    private boolean take(int key, int[] list, int n) {
+        if (owns(key)) {
+            list[0] = n + 1;
+            return true;
+        }
+        return TAKEN.compareAndSet(list, 0, n, n + 1);
+    }
+
+    /**
+     * Remove the first occurrence of a value from the list of a key, keeping the
+     * order of the others.
+     *
+     * @return whether the value was in the list
+     */
+    boolean remove(int key, int value) {
+        int n = size(key);
+        int[] list = n == 0 ? null : lists.get(key);
+        for (int i = 1; i <= n; i++) {
+            if (list[i] == value) {
+                list = own(key);
+                System.arraycopy(list, i + 1, list, i, n - i);
+                sizes.set(key, n - 1);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Replace the first occurrence of a value in the list of a key.
+     */
+    void replace(int key, int oldValue, int newValue) {
+        int n = size(key);
+        int[] list = n == 0 ? null : lists.get(key);
+        for (int i = 1; i <= n; i++) {
+            if (list[i] == oldValue) {
+                own(key)[i] = newValue;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Give the list of one key to another, whose list is dropped, and leave the
+     * first key without values.
+     *
+     * @param to a non-negative key
+     */
+    void move(int from, int to) {
+        if (from >= 0 && from < keys) {
+            lists.set(to, lists.get(from));
+            sizes.set(to, sizes.get(from));
+            if (owned != null) {
+                owned.set(to, owned.get(from));
+            }
+            clear(from);
+        } else {
+            clear(to);
+        }
+        keys = Math.max(keys, to + 1);
+    }
+
+    void clear(int key) {
+        if (key >= 0 && key < keys) {
+            lists.set(key, null);
+            sizes.set(key, 0);
+        }
+    }
+
+    boolean contains(int key, int value) {
+        int n = size(key);
+        int[] list = n == 0 ? null : lists.get(key);
+        for (int i = 1; i <= n; i++) {
+            if (list[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the length of the list of a key, 0 for keys that were never added
+     *         to, including negative ones
+     */
+    int size(int key) {
+        return key >= 0 ? sizes.get(key) : 0;
+    }
+
+    int get(int key, int i) {
+        if (i < 0 || i >= size(key)) {
+            throw new IndexOutOfBoundsException(i);
+        }
+        return lists.get(key)[i + 1];
+    }
+
+    /**
+     * @return one more than the largest key that may have a non-empty list
+     */
+    int keys() {
+        return keys;
+    }
+}
@@ -0,0 +1,128 @@
+package de.tuebingen.sfs.cldfjava.data;
+
+import java.util.Arrays;
+
+/**
+ * An open addressing hash map from longs to non-negative ints, for keys made of
+ * two codes, without boxing either.
+ *
+ * The slots are kept in pages of 1024, and a copy shares the pages with the
+ * map it was made from, copying a page before it first changes it, like
+ * {@link IntPages}. The original must not change once it is copied.
+ */
+final class LongIntMap {
+    private static final int EMPTY = -1;
+    private static final int PAGE_BITS = IntPages.PAGE_BITS;
+    private static final int PAGE_MASK = (1 << PAGE_BITS) - 1;
+
+    private long[][] keys;
+    private int[][] values;
+    private boolean[] owned; // null if all pages are owned, ie. in the original
+    private int capacity;
+    private int size = 0;
+    private int shift;
+
+    LongIntMap() {
+        this(16);
+    }
+
+    LongIntMap(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(16, 2 * expected - 1)) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * Copy a map, sharing its pages until they change.
+     */
+    LongIntMap(LongIntMap other) {
+        keys = other.keys.clone();
+        values = other.values.clone();
+        owned = new boolean[keys.length];
+        capacity = other.capacity;
+        size = other.size;
+        shift = other.shift;
+    }
+
+    private void allocate(int capacity) {
+        this.capacity = capacity;
+        int pageLength = Math.min(capacity, 1 << PAGE_BITS);
+        keys = new long[capacity / pageLength][pageLength];
+        values = new int[keys.length][pageLength];
+        for (int[] page : values) {
+            Arrays.fill(page, EMPTY);
+        }
+        owned = null;
+        shift = 64 - Integer.numberOfTrailingZeros(capacity);
+    }
+
+    private int slot(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+    }
+
+    /**
+     * @return the value of the key, or -1 if there is none
+     */
+    int get(long key) {
+        int mask = capacity - 1;
+        for (int i = slot(key);; i = (i + 1) & mask) {
+            int value = values[i >>> PAGE_BITS][i & PAGE_MASK];
+            if (value == EMPTY) {
+                return EMPTY;
+            }
+            if (keys[i >>> PAGE_BITS][i & PAGE_MASK] == key) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * @param value a non-negative value
+     */
+    void put(long key, int value) {
+        if (2 * (size + 1) > capacity) {
+            long[][] oldKeys = keys;
+            int[][] oldValues = values;
+            allocate(2 * capacity);
+            size = 0;
+            for (int p = 0; p < oldKeys.length; p++) {
+                for (int i = 0; i < oldKeys[p].length; i++) {
+                    if (oldValues[p][i] != EMPTY) {
+                        put(oldKeys[p][i], oldValues[p][i]);
+                    }
+                }
+            }
+        }
+        int mask = capacity - 1;
+        for (int i = slot(key);; i = (i + 1) & mask) {
+            int p = i >>> PAGE_BITS;
+            if (values[p][i & PAGE_MASK] == EMPTY) {
+                own(p);
+                keys[p][i & PAGE_MASK] = key;
+                values[p][i & PAGE_MASK] = value;
+                size++;
+                return;
+            }
+            if (keys[p][i & PAGE_MASK] == key) {
+                own(p);
+                values[p][i & PAGE_MASK] = value;
+                return;
+            }
+        }
+    }
+
+    private void own(int p) {
+        if (owned != null && !owned[p]) {
+            keys[p] = keys[p].clone();
+            values[p] = values[p].clone();
+            owned[p] = true;
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    static long pair(int a, int b) {
+        return ((long) a << 32) | (b & 0xFFFFFFFFL);
+    }
+}
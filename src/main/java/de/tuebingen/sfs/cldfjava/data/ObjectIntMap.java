@@ -0,0 +1,138 @@
+package de.tuebingen.sfs.cldfjava.data;
+
+/**
+ * An open addressing hash map from objects to non-negative ints, such as the
+ * rows of form IDs, kept in pages so that a copy shares them like
+ * {@link IntPages}. A removed key stays in its slot, without a value, until
+ * the map is rehashed, so the keys after it are still found.
+ *
+ * @param <K> the type of the keys
+ */
+final class ObjectIntMap<K> {
+    private static final int ABSENT = -1;
+
+    private ObjectPages<K> keys;
+    private IntPages values;
+    private int capacity;
+    private int shift;
+    private int size = 0;
+    private int used = 0; // slots with a key, removed or not
+
+    ObjectIntMap(int expected) {
+        allocate(Integer.highestOneBit(Math.max(16, 2 * expected - 1)) << 1);
+    }
+
+    /**
+     * Copy a map, sharing its pages until they change.
+     */
+    ObjectIntMap(ObjectIntMap<K> shared) {
+        keys = new ObjectPages<>(shared.keys);
+        values = new IntPages(shared.values);
+        capacity = shared.capacity;
+        shift = shared.shift;
+        size = shared.size;
+        used = shared.used;
+    }
+
+    private void allocate(int capacity) {
+        this.capacity = capacity;
+        shift = 32 - Integer.numberOfTrailingZeros(capacity);
+        keys = new ObjectPages<>();
+        values = new IntPages(ABSENT);
+        size = 0;
+        used = 0;
+    }
+
+    private int slot(Object key) {
+        return (key.hashCode() * 0x9E3779B9) >>> shift;
+    }
+
+    /**
+     * @return the value of the key, or -1 if there is none
+     */
+    int get(Object key) {
+        if (key == null) {
+            return ABSENT;
+        }
+        int mask = capacity - 1;
+        for (int i = slot(key);; i = (i + 1) & mask) {
+            K found = keys.get(i);
+            if (found == null) {
+                return ABSENT;
+            }
+            if (found.equals(key)) {
+                return values.get(i);
+            }
+        }
+    }
+
+    /**
+     * @param key   a key other than null
+     * @param value a non-negative value
+     */
+    void put(K key, int value) {
+        if (2 * (used + 1) > capacity) {
+            // Grow if the keys fill a quarter, else just drop the removed ones.
+            rehash(4 * (size + 1) > capacity ? 2 * capacity : capacity);
+        }
+        int mask = capacity - 1;
+        for (int i = slot(key);; i = (i + 1) & mask) {
+            K found = keys.get(i);
+            if (found == null) {
+                keys.set(i, key);
+                values.set(i, value);
+                size++;
+                used++;
+                return;
+            }
+            if (found.equals(key)) {
+                if (values.get(i) == ABSENT) {
+                    size++;
+                }
+                values.set(i, value);
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the value the key had, or -1 if there was none
+     */
+    int remove(Object key) {
+        if (key == null) {
+            return ABSENT;
+        }
+        int mask = capacity - 1;
+        for (int i = slot(key);; i = (i + 1) & mask) {
+            K found = keys.get(i);
+            if (found == null) {
+                return ABSENT;
+            }
+            if (found.equals(key)) {
+                int value = values.get(i);
+                if (value != ABSENT) {
+                    values.set(i, ABSENT);
+                    size--;
+                }
+                return value;
+            }
+        }
+    }
+
+    private void rehash(int newCapacity) {
+        ObjectPages<K> oldKeys = keys;
+        IntPages oldValues = values;
+        int oldCapacity = capacity;
+        allocate(newCapacity);
+        for (int i = 0; i < oldCapacity; i++) {
+            int value = oldValues.get(i);
+            if (value != ABSENT) {
+                put(oldKeys.get(i), value);
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+}
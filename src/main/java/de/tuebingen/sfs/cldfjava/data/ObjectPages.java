@@ -0,0 +1,59 @@
+package de.tuebingen.sfs.cldfjava.data;
+
+import java.util.Arrays;
+
+/**
+ * An array of objects of any length, in pages like {@link IntPages}. Unset
+ * elements read as null.
+ *
+ * @param <T> the type of the elements
+ */
+final class ObjectPages<T> {
+    private static final int PAGE_BITS = IntPages.PAGE_BITS;
+    private static final int PAGE_MASK = (1 << PAGE_BITS) - 1;
+
+    private Object[][] pages = new Object[1][];
+    private boolean[] owned; // null if all pages are owned, ie. in the original
+
+    ObjectPages() {
+    }
+
+    /**
+     * Copy an array, sharing the pages until they change.
+     */
+    ObjectPages(ObjectPages<T> shared) {
+        pages = shared.pages.clone();
+        owned = new boolean[pages.length];
+    }
+
+    @SuppressWarnings("unchecked")
+    T get(int i) {
+        int p = i >>> PAGE_BITS;
+        Object[] page = p < pages.length ? pages[p] : null;
+        return page == null ? null : (T) page[i & PAGE_MASK];
+    }
+
+    /**
+     * @param i a non-negative index
+     */
+    void set(int i, T value) {
+        int p = i >>> PAGE_BITS;
+        if (p >= pages.length) {
+            int length = Math.max(p + 1, 2 * pages.length);
+            pages = Arrays.copyOf(pages, length);
+            if (owned != null) {
+                owned = Arrays.copyOf(owned, length);
+            }
+        }
+        Object[] page = pages[p];
+        if (page == null) {
+            page = pages[p] = new Object[1 << PAGE_BITS];
+        } else if (owned != null && !owned[p]) {
+            page = pages[p] = page.clone();
+        }
+        if (owned != null) {
+            owned[p] = true;
+        }
+        page[i & PAGE_MASK] = value;
+    }
+}
@@ -0,0 +1,435 @@
+package de.tuebingen.sfs.cldfjava.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A CSV tokenizer working on the raw bytes of a table, for dialects in which
+ * the delimiter, quote character and comment prefix are single ASCII bytes
+ * that cannot occur inside other characters (see {@link CsvDialect#bytewise()}),
+ * as in UTF-8.
+ *
+ * Instead of decoding the input into characters and copying every cell into a
+ * StringBuilder, as commons-csv does, the tokenizer only notes where the cells
+ * of a record start and end in its buffer. A cell is decoded when it is asked
+ * for, straight from the buffer. That spares the columns the tableSchema does
+ * not declare or a projection drops, and the rest of the cells of rows a filter
+ * rejects; every declared column of a kept row is still decoded, since the
+ * columns without a field of their own become String properties (see
+ * {@link TableSchema#properties}). The row is reused for every record.
+ *
+ * The input is a stream read into a growing buffer, bytes that are all at
+ * hand, or a local file that is memory-mapped window by window, so that its
+ * bytes are tokenized where the page cache holds them, without being copied
+ * into the heap first.
+ *
+ * Like the default format of commons-csv, empty lines are skipped, lines end in
+ * LF, CRLF or CR, quotes inside unquoted cells are literal, and anything but a
+ * delimiter or line end after a closing quote is an error.
+ */
+final class ByteTableReader extends TableReader {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int WINDOW_SIZE = 1 << 28;
+    private static final int MAX_WINDOW_SIZE = Integer.MAX_VALUE - 8;
+    private static final byte PLAIN = 0;
+    private static final byte ESCAPED = 1; // quoted, with escaped quotes to drop
+
+    private final InputStream stream; // null unless the input is a stream
+    private final FileChannel channel; // null unless the input is mapped
+    private final CsvDialect dialect;
+    private final byte delimiter;
+    private final boolean quoting;
+    private final byte quote;
+    private final boolean doubleQuote;
+    private final byte[] comment; // null if there are no comment lines
+    private final Charset encoding;
+    private ByteBuffer buffer; // read by absolute position only
+    private byte[] array; // the array behind the buffer, unless it is mapped
+    private int position = 0; // the start of the next record
+    private int limit; // the end of the bytes read into the buffer
+    private long base = 0; // the offset in the input of the start of the buffer
+    private long size; // the size of a mapped file
+    private int window = WINDOW_SIZE;
+    private byte[] scratch = new byte[64]; // to decode cells of a mapped buffer
+    private boolean eof;
+    private boolean begun = false;
+    private long records = 0;
+    private final Row row = new Row();
+
+    /**
+     * Read a table from a stream, which is closed with the reader.
+     */
+    ByteTableReader(InputStream stream, CsvDialect dialect) {
+        this(stream, null, ByteBuffer.allocate(BUFFER_SIZE), 0, dialect);
+    }
+
+    /**
+     * Read a local file by mapping it, from the current position of the channel
+     * on. The channel is closed with the reader.
+     */
+    ByteTableReader(FileChannel channel, CsvDialect dialect) throws IOException {
+        this(channel, dialect, WINDOW_SIZE);
+    }
+
+    /**
+     * Map a local file in windows of the given size, which grow to hold records
+     * longer than them.
+     */
+    ByteTableReader(FileChannel channel, CsvDialect dialect, int window) throws IOException {
+        this(null, channel, ByteBuffer.allocate(0), 0, dialect);
+        this.array = null;
+        this.window = window;
+        this.base = channel.position();
+        this.size = channel.size();
+        this.eof = base >= size;
+    }
+
+    /**
+     * Read records from bytes that are all at hand, eg. a mapped chunk of a
+     * file. The header has to be set before reading.
+     */
+    ByteTableReader(ByteBuffer bytes, CsvDialect dialect) {
+        this(null, null, bytes, bytes.limit(), dialect);
+        begun = true;
+    }
+
+    private ByteTableReader(InputStream stream, FileChannel channel, ByteBuffer buffer, int limit,
+            CsvDialect dialect) {
+        this.stream = stream;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.array = buffer.hasArray() && buffer.arrayOffset() == 0 ? buffer.array() : null;
+        this.limit = limit;
+        this.eof = stream == null && channel == null;
+        this.dialect = dialect;
+        this.encoding = dialect.encoding;
+        this.delimiter = (byte) dialect.delimiter.charAt(0);
+        this.quoting = dialect.quoteChar != null;
+        this.quote = quoting ? (byte) dialect.quoteChar.charValue() : 0;
+        this.doubleQuote = dialect.doubleQuote;
+        this.comment = dialect.commentPrefix == null ? null
+                : dialect.commentPrefix.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * @return the offset in the input of the next record, ie. the number of
+     *         bytes skipped or read so far
+     */
+    long offset() {
+        return base + position;
+    }
+
+    /**
+     * Read more input into the buffer, first moving the unread part to its
+     * start, and growing it if it is full. A mapped file is mapped again from
+     * the start of the unread part on.
+     *
+     * @return false if there was nothing more to read
+     */
+    private boolean fill() throws IOException {
+        if (eof) {
+            return false;
+        }
+        if (channel != null) {
+            int before = limit - position;
+            if (position == 0 && limit == window) {
+                // A record longer than a window.
+                window = (int) Math.min(MAX_WINDOW_SIZE, 2L * window);
+            }
+            base += position;
+            limit = (int) Math.min(window, size - base);
+            position = 0;
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, base, limit);
+            array = null;
+            eof = base + limit >= size;
+            return limit > before;
+        }
+        if (position > 0) {
+            System.arraycopy(array, position, array, 0, limit - position);
+            base += position;
+            limit -= position;
+            position = 0;
+        }
+        if (limit == array.length) {
+            array = Arrays.copyOf(array, 2 * array.length);
+            buffer = ByteBuffer.wrap(array);
+        }
+        int before = limit;
+        while (limit < array.length) {
+            int n = stream.read(array, limit, array.length - limit);
+            if (n < 0) {
+                eof = true;
+                break;
+            }
+            limit += n;
+        }
+        return limit > before;
+    }
+
+    /**
+     * Skip the byte order mark a UTF-8 file may start with.
+     */
+    private void begin() throws IOException {
+        if (begun) {
+            return;
+        }
+        begun = true;
+        while (limit < 3 && fill()) {
+        }
+        if (encoding.equals(StandardCharsets.UTF_8) && base == 0 && limit >= 3 && buffer.get(0) == (byte) 0xEF
+                && buffer.get(1) == (byte) 0xBB && buffer.get(2) == (byte) 0xBF) {
+            position = 3;
+        }
+    }
+
+    @Override
+    boolean skipLine() throws IOException {
+        begin();
+        int scanned = 0;
+        while (true) {
+            for (int p = position + scanned; p < limit; p++) {
+                if (buffer.get(p) == '\n') {
+                    position = p + 1;
+                    return true;
+                }
+            }
+            scanned = limit - position;
+            if (!fill()) {
+                boolean rest = position < limit;
+                position = limit;
+                return rest;
+            }
+        }
+    }
+
+    private boolean atComment() throws IOException {
+        while (limit - position < comment.length && fill()) {
+        }
+        if (limit - position < comment.length) {
+            return false;
+        }
+        for (int i = 0; i < comment.length; i++) {
+            if (buffer.get(position + i) != comment[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    TableRow nextRow() throws IOException {
+        begin();
+        while (true) {
+            if (position == limit && !fill()) {
+                return null;
+            }
+            byte b = buffer.get(position);
+            if (b == '\n' || b == '\r') {
+                position++;
+            } else if (comment != null && b == comment[0] && atComment()) {
+                skipLine();
+            } else {
+                int end = scan(position);
+                if (end >= 0) {
+                    position = end;
+                    records++;
+                    return row;
+                }
+                // The record goes on beyond the buffer.
+                fill();
+            }
+        }
+    }
+
+    /**
+     * Find the cells of the record starting at a position in the buffer.
+     *
+     * @return the position after the end of the record, or -1 if the record is
+     *         not complete in the buffer yet
+     */
+    private int scan(int p) throws IOException {
+        ByteBuffer b = buffer;
+        int n = limit;
+        row.clear();
+        while (true) {
+            if (quoting && p < n && b.get(p) == quote) {
+                int start = ++p;
+                byte kind = PLAIN;
+                while (true) {
+                    if (p >= n) {
+                        if (eof) {
+                            throw new IOException("EOF reached before the quoted cell in record " + (records + 1)
+                                    + " was closed");
+                        }
+                        return -1;
+                    }
+                    byte c = b.get(p);
+                    if (c == quote) {
+                        if (!doubleQuote) {
+                            break;
+                        }
+                        if (p + 1 >= n && !eof) {
+                            return -1;
+                        }
+                        if (p + 1 < n && b.get(p + 1) == quote) {
+                            kind = ESCAPED;
+                            p += 2;
+                            continue;
+                        }
+                        break;
+                    } else if (c == '\\' && !doubleQuote) {
+                        kind = ESCAPED;
+                        p += 2;
+                        continue;
+                    }
+                    p++;
+                }
+                row.add(start, p, kind);
+                p++;
+                if (p >= n) {
+                    return eof ? p : -1;
+                }
+                byte c = b.get(p);
+                if (c == delimiter) {
+                    p++;
+                    continue;
+                } else if (c == '\n') {
+                    return p + 1;
+                } else if (c == '\r') {
+                    return endOfLine(p);
+                }
+                throw new IOException(
+                        "Invalid character between a quoted cell and the delimiter in record " + (records + 1));
+            }
+
+            int start = p;
+            while (p < n) {
+                byte c = b.get(p);
+                if (c == delimiter || c == '\n' || c == '\r') {
+                    break;
+                }
+                p++;
+            }
+            if (p >= n) {
+                if (!eof) {
+                    return -1;
+                }
+                row.add(start, p, PLAIN);
+                return p;
+            }
+            row.add(start, p, PLAIN);
+            if (b.get(p) == delimiter) {
+                p++;
+            } else if (b.get(p) == '\n') {
+                return p + 1;
+            } else {
+                return endOfLine(p);
+            }
+        }
+    }
+
+    /**
+     * @return the position after a line end starting with CR, or -1 if a LF
+     *         may follow beyond the buffer
+     */
+    private int endOfLine(int p) {
+        if (p + 1 < limit) {
+            return buffer.get(p + 1) == '\n' ? p + 2 : p + 1;
+        }
+        return eof ? p + 1 : -1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (stream != null) {
+            stream.close();
+        }
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    /**
+     * The cells of the current record, as ranges of the buffer.
+     */
+    private class Row implements TableRow {
+        int count = 0;
+        int[] starts = new int[16];
+        int[] ends = new int[16];
+        byte[] kinds = new byte[16];
+        String[] cells = new String[16];
+
+        void clear() {
+            Arrays.fill(cells, 0, count, null);
+            count = 0;
+        }
+
+        void add(int start, int end, byte kind) {
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, 2 * count);
+                ends = Arrays.copyOf(ends, 2 * count);
+                kinds = Arrays.copyOf(kinds, 2 * count);
+                cells = Arrays.copyOf(cells, 2 * count);
+            }
+            starts[count] = start;
+            ends[count] = end;
+            kinds[count] = kind;
+            count++;
+        }
+
+        @Override
+        public int size() {
+            return count;
+        }
+
+        @Override
+        public String get(int column) {
+            if (column < 0 || column >= count) {
+                throw new IndexOutOfBoundsException("Index " + column + " out of bounds for a record of " + count
+                        + " cells");
+            }
+            String cell = cells[column];
+            if (cell == null) {
+                int start = starts[column];
+                int end = ends[column];
+                cellBytes += end - start;
+                if (start == end) {
+                    cell = "";
+                } else if (kinds[column] == ESCAPED) {
+                    cell = unescape(start, end);
+                } else if (array != null) {
+                    cell = new String(array, start, end - start, encoding);
+                } else {
+                    if (scratch.length < end - start) {
+                        scratch = new byte[Math.max(end - start, 2 * scratch.length)];
+                    }
+                    buffer.get(start, scratch, 0, end - start);
+                    cell = new String(scratch, 0, end - start, encoding);
+                }
+                cell = dialect.trim(cell);
+                cells[column] = cell;
+            }
+            return cell;
+        }
+
+        private String unescape(int start, int end) {
+            byte[] bytes = new byte[end - start];
+            int n = 0;
+            for (int p = start; p < end; p++) {
+                byte c = buffer.get(p);
+                if (doubleQuote ? c == quote : c == '\\') {
+                    // Keep what the escape character escapes.
+                    p++;
+                    c = buffer.get(p);
+                }
+                bytes[n++] = c;
+            }
+            return new String(bytes, 0, n, encoding);
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package de.tuebingen.sfs.cldfjava.io;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import de.tuebingen.sfs.cldfjava.data.CLDFCognateJudgement;
+import de.tuebingen.sfs.cldfjava.data.CLDFCognateSet;
+import de.tuebingen.sfs.cldfjava.data.CLDFLanguage;
+import de.tuebingen.sfs.cldfjava.data.CLDFParameter;
+import de.tuebingen.sfs.cldfjava.data.GlottologTree;
+
+/**
+ * Which languages and concepts of a database to load, see
+ * {@link CLDFImport#setFilter(CLDFFilter)}.
+ *
+ * A language is kept if its ID or its Glottocode is listed, or if it belongs
+ * to a listed family, and a concept if its ID or its Concepticon ID is. A
+ * language belongs to a family if the LanguageTable gives it that family, or
+ * if the family, or any subgroup of the Glottolog classification (see
+ * {@link CLDFImport#setGlottolog}) it descends from, is listed by name or
+ * Glottocode. Without any language IDs, Glottocodes or families, all
+ * languages are kept, and likewise for concepts. A form is kept if its language
+ * is kept and one of its concepts is; it keeps all of its concept IDs. A
+ * cognate judgement is kept if its form is, and a cognate set if a kept
+ * judgement refers to it.
+ */
+public class CLDFFilter {
+    private final Set<String> languageIDs = new TreeSet<>();
+    private final Set<String> glottocodes = new TreeSet<>();
+    private final Set<String> families = new TreeSet<>();
+    private final Set<String> parameterIDs = new TreeSet<>();
+    private final Set<String> concepticonIDs = new TreeSet<>();
+
+    public CLDFFilter languages(Collection<String> ids) {
+        languageIDs.addAll(ids);
+        return this;
+    }
+
+    public CLDFFilter languages(String... ids) {
+        return languages(Arrays.asList(ids));
+    }
+
+    public CLDFFilter glottocodes(Collection<String> codes) {
+        glottocodes.addAll(codes);
+        return this;
+    }
+
+    public CLDFFilter glottocodes(String... codes) {
+        return glottocodes(Arrays.asList(codes));
+    }
+
+    /**
+     * @param families names or Glottocodes of families, or of subgroups in them
+     */
+    public CLDFFilter families(Collection<String> families) {
+        this.families.addAll(families);
+        return this;
+    }
+
+    public CLDFFilter families(String... families) {
+        return families(Arrays.asList(families));
+    }
+
+    public CLDFFilter parameters(Collection<String> ids) {
+        parameterIDs.addAll(ids);
+        return this;
+    }
+
+    public CLDFFilter parameters(String... ids) {
+        return parameters(Arrays.asList(ids));
+    }
+
+    public CLDFFilter concepticonIDs(Collection<String> ids) {
+        concepticonIDs.addAll(ids);
+        return this;
+    }
+
+    public CLDFFilter concepticonIDs(String... ids) {
+        return concepticonIDs(Arrays.asList(ids));
+    }
+
+    /**
+     * @return whether the FormTable can only be filtered once the LanguageTable
+     *         or ParameterTable are read
+     */
+    boolean needsTables() {
+        return !glottocodes.isEmpty() || !families.isEmpty() || !concepticonIDs.isEmpty();
+    }
+
+    /**
+     * Find the IDs of the languages and concepts to keep.
+     *
+     * @param languages  the LanguageTable, or an empty map if there is none
+     * @param parameters the ParameterTable, or an empty map if there is none
+     */
+    Keys keys(Map<String, CLDFLanguage> languages, Map<String, CLDFParameter> parameters) {
+        Set<String> languageKeys = null;
+        if (!languageIDs.isEmpty() || !glottocodes.isEmpty() || !families.isEmpty()) {
+            languageKeys = new HashSet<>(languageIDs);
+            GlottologTree tree = families.isEmpty() ? null : CLDFImport.glottolog();
+            for (CLDFLanguage language : languages.values()) {
+                if (language.getGlottocode() != null && glottocodes.contains(language.getGlottocode())
+                        || tree != null && inFamilies(language, tree)) {
+                    languageKeys.add(language.getLangID());
+                }
+            }
+        }
+        Set<String> parameterKeys = null;
+        if (!parameterIDs.isEmpty() || !concepticonIDs.isEmpty()) {
+            parameterKeys = new HashSet<>(parameterIDs);
+            for (CLDFParameter parameter : parameters.values()) {
+                if (parameter.getConcepticonID() != null && concepticonIDs.contains(parameter.getConcepticonID())) {
+                    parameterKeys.add(parameter.getParamID());
+                }
+            }
+        }
+        return new Keys(languageKeys, parameterKeys);
+    }
+
+    private boolean inFamilies(CLDFLanguage language, GlottologTree tree) {
+        if (language.getFamily() != null && families.contains(language.getFamily())) {
+            return true;
+        }
+        for (int node = tree.node(language.getGlottocode()); node >= 0; node = tree.parent(node)) {
+            if (families.contains(tree.name(node))
+                    || tree.glottocode(node) != null && families.contains(tree.glottocode(node))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The IDs of the languages and concepts to keep in one load.
+     */
+    static final class Keys {
+        private final Set<String> languageIDs; // null to keep all
+        private final Set<String> parameterIDs; // null to keep all
+
+        Keys(Set<String> languageIDs, Set<String> parameterIDs) {
+            this.languageIDs = languageIDs;
+            this.parameterIDs = parameterIDs;
+        }
+
+        boolean keepsLanguage(String langID) {
+            return languageIDs == null || languageIDs.contains(langID);
+        }
+
+        boolean restrictsParameters() {
+            return parameterIDs != null;
+        }
+
+        boolean keepsParameter(String paramID) {
+            return parameterIDs == null || parameterIDs.contains(paramID);
+        }
+
+        boolean keepsParameters(List<String> paramIDs) {
+            if (parameterIDs == null) {
+                return true;
+            }
+            for (String paramID : paramIDs) {
+                if (parameterIDs.contains(paramID)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @return the kept languages, in a new map unless all are kept
+         */
+        <T> Map<String, T> languages(Map<String, T> languages) {
+            return languageIDs == null ? languages : retain(languages, languageIDs);
+        }
+
+        /**
+         * @return the kept parameters, in a new map unless all are kept
+         */
+        <T> Map<String, T> parameters(Map<String, T> parameters) {
+            return parameterIDs == null ? parameters : retain(parameters, parameterIDs);
+        }
+
+        /**
+         * @return the cognate sets some kept judgement refers to, in a new map
+         */
+        static Map<String, CLDFCognateSet<String>> cognatesets(Map<String, CLDFCognateSet<String>> cogsets,
+                Map<String, CLDFCognateJudgement<Integer, String, String>> judgements) {
+            Set<String> referenced = new HashSet<>();
+            for (CLDFCognateJudgement<Integer, String, String> judgement : judgements.values()) {
+                referenced.add(judgement.getCognatesetReference());
+            }
+            return retain(cogsets, referenced);
+        }
+
+        /**
+         * @return the rows with one of the keys, leaving the given map as it is,
+         *         since it may be shared, eg. with a previous database
+         */
+        private static <T> Map<String, T> retain(Map<String, T> rows, Set<String> keys) {
+            Map<String, T> kept = new HashMap<>();
+            for (Map.Entry<String, T> row : rows.entrySet()) {
+                if (keys.contains(row.getKey())) {
+                    kept.put(row.getKey(), row.getValue());
+                }
+            }
+            return kept;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "languages " + languageIDs + " glottocodes " + glottocodes + " families " + families + " parameters "
+                + parameterIDs + " concepticon " + concepticonIDs;
+    }
+}
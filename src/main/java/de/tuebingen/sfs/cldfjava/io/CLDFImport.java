@@ -2,36 +2,62 @@ package de.tuebingen.sfs.cldfjava.io;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import de.tuebingen.sfs.cldfjava.data.CLDFCognateJudgement;
 import de.tuebingen.sfs.cldfjava.data.CLDFCognateSet;
 import de.tuebingen.sfs.cldfjava.data.CLDFForm;
+import de.tuebingen.sfs.cldfjava.data.CLDFFormStore;
 import de.tuebingen.sfs.cldfjava.data.CLDFLanguage;
+import de.tuebingen.sfs.cldfjava.data.CLDFLoadReport;
 import de.tuebingen.sfs.cldfjava.data.CLDFParameter;
+import de.tuebingen.sfs.cldfjava.data.CLDFSymbolTable;
+import de.tuebingen.sfs.cldfjava.data.CLDFSymbols;
 import de.tuebingen.sfs.cldfjava.data.CLDFWordlistDatabase;
+import de.tuebingen.sfs.cldfjava.data.GlottologTree;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URLDecoder;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVFormat.Builder;
-import org.apache.commons.csv.CSVParser;
-import org.apache.commons.csv.CSVRecord;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * This class provides functionality to load a CLDF database into a CLDFDatabase
  * object (see structure and interface there).
  * 
+ * An importer object only holds its configuration. Everything collected during
+ * one load lives in a {@link LoadContext} of its own, so one importer can be
+ * shared by many threads loading different databases at the same time.
+ * 
  * The module we want to fully support is described here:
  * https://github.com/cldf/cldf/tree/master/modules/Wordlist Test cases are
  * src/test/resources/lexirumah-2.0 and src/test/resources/northeuralex-0.9. We
@@ -48,13 +74,167 @@ public class CLDFImport {
      *
      */
     interface CellReader {
-        abstract PString translate(CSVRecord r);
+        abstract PString translate(TableRow r);
+    }
+
+    /**
+     * The temporary storage of a single load: what we learn from one table and
+     * need for reading another.
+     */
+    public static class LoadContext {
+        CLDFSymbols symbols = new CLDFSymbols();
+        Map<String, Integer> originalFormIDs = new HashMap<>();
+        // Tables may be read concurrently, and report into the same list.
+        List<String[]> exceptions = Collections.synchronizedList(new ArrayList<>());
+        // The languages and concepts of the forms to keep, or null to keep all.
+        CLDFFilter.Keys keys = null;
+
+        /**
+         * @return the symbol tables of the IDs referenced by the tables read so far
+         */
+        public CLDFSymbols getSymbols() {
+            return symbols;
+        }
+
+        /**
+         * @return a mapping of original form IDs to the consecutive integer IDs
+         */
+        public Map<String, Integer> getOriginalFormIDs() {
+            return originalFormIDs;
+        }
+
+        /**
+         * @return the problems found in the tables read so far, each as {table url,
+         *         column name, cell content, message}
+         */
+        public List<String[]> getExceptions() {
+            return exceptions;
+        }
+    }
+
+    private static volatile GlottologTree glottolog = null;
+
+    private final ForkJoinPool pool;
+    private boolean columnarForms = false;
+    private File snapshotDirectory = null;
+    private CLDFImportListener listener = null;
+    private Set<String> projection = null;
+    private CLDFFilter filter = null;
+
+    /**
+     * The properties that link the tables, which are read whatever the
+     * projection.
+     */
+    static final Set<String> LINK_PROPERTIES = Set.of("id", "languageReference", "parameterReference",
+            "formReference", "cognatesetReference");
+
+    /**
+     * Create an importer that reads the tables of a database one after another.
+     */
+    public CLDFImport() {
+        this(null);
+    }
+
+    /**
+     * Create an importer that reads tables concurrently.
+     * 
+     * The tables are read on the pool as soon as the tables they depend on are
+     * available, and a local FormTable is additionally parsed in parallel chunks.
+     * 
+     * @param pool the pool to read the tables on, or null to read them
+     *             sequentially
+     */
+    public CLDFImport(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Choose how the forms of loaded databases are kept in memory. Set this before
+     * sharing the importer between threads.
+     * 
+     * @param columnarForms true to keep forms in a {@link CLDFFormStore}, which
+     *                      needs far less memory per form but creates CLDFForm
+     *                      objects on every access; false (the default) to keep
+     *                      one CLDFForm object per form
+     */
+    public void setColumnarForms(boolean columnarForms) {
+        this.columnarForms = columnarForms;
+    }
+
+    /**
+     * Cache loaded databases as binary snapshots (see {@link CLDFSnapshot}). A
+     * later load of the same metadata file reads the snapshot instead of the CSV
+     * files, unless the metadata or any table file has changed since. Set this
+     * before sharing the importer between threads.
+     * 
+     * @param snapshotDirectory the directory to keep snapshots in, or null (the
+     *                          default) to always parse the CSV files
+     */
+    public void setSnapshotDirectory(File snapshotDirectory) {
+        this.snapshotDirectory = snapshotDirectory;
+    }
+
+    /**
+     * Report the progress of every load to a listener. Whether or not there is
+     * one, the loaded databases carry a {@link CLDFLoadReport}, and the loads
+     * emit Java Flight Recorder events. Set this before sharing the importer
+     * between threads.
+     * 
+     * @param listener the listener, or null (the default) for none
+     */
+    public void setListener(CLDFImportListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Only read some of the columns of the tables. Columns that are not asked
+     * for are dropped from the table descriptions before any table is read, so
+     * their cells are neither checked against their datatype nor kept, in
+     * fields (eg. the name of a CLDFLanguage) or in property maps. The IDs and
+     * references linking the tables are always read. Set this before sharing the
+     * importer between threads.
+     * 
+     * @param properties CLDF properties such as "form" or "glottocode", or the
+     *                   names of columns without a CLDF property; null (the
+     *                   default) to read all columns
+     */
+    public void setProjection(Collection<String> properties) {
+        this.projection = properties == null ? null : Collections.unmodifiableSet(new TreeSet<>(properties));
+    }
+
+    /**
+     * Only load the forms of some languages and concepts, with the rows of the
+     * LanguageTable, ParameterTable and CognateTable that belong to them, and
+     * the cognate sets they refer to. The rows of other forms are skipped as the
+     * FormTable is parsed, so they take neither time to build nor memory; their
+     * cognate judgements are dropped instead of being left dangling. A filter by
+     * Glottocode, family or Concepticon ID has to wait for the LanguageTable or
+     * ParameterTable before the FormTable can be read. Set this before sharing
+     * the importer between threads.
+     * 
+     * @param filter the languages and concepts to keep, or null (the default) to
+     *               load everything
+     */
+    public void setFilter(CLDFFilter filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * @return whether a change to some tables means the whole database has to be
+     *         loaded again, since the forms to keep depend on them
+     */
+    boolean reloadsAll(Set<String> changed) {
+        return changed.contains("FormTable") || filter != null && filter.needsTables()
+                && (changed.contains("LanguageTable") || changed.contains("ParameterTable"));
     }
 
-    static Set<String> languages;
-    static Set<String> concepts;
-    static Map<String, Integer> originalFormIDs;
-    static List<String[]> exceptions;
+    /**
+     * @return the table description with only the columns of the projection
+     */
+    private JsonNode project(JsonNode table) {
+        return projection == null || table == null ? table
+                : TableSchema.project(table, projection, LINK_PROPERTIES);
+    }
 
     /**
      * Load a word list from a folder, by taking the first JSON metadata file.
@@ -94,112 +274,244 @@ public class CLDFImport {
      */
     public static CLDFWordlistDatabase<Integer, String, String> loadDatabaseMetadata(File json)
             throws IOException, CLDFParseError {
-        // TODO: Using global variables as temporary storage isn't beautiful.
-        exceptions = new ArrayList<>();
-        languages = new HashSet<>();
-        concepts = new HashSet<>();
-        originalFormIDs = new HashMap<>();
+        return new CLDFImport().load(json);
+    }
+
+    /**
+     * Load a word list according to a JSON metadata file, reading tables
+     * concurrently.
+     * 
+     * @see #CLDFImport(ForkJoinPool)
+     * 
+     * @param json the path to a metadata JSON file
+     * @param pool the pool to read the tables on, or null to read them
+     *             sequentially
+     * @return CLDFWordlistDatabase
+     * @throws CLDFParseError
+     * @throws IOException
+     */
+    public static CLDFWordlistDatabase<Integer, String, String> loadDatabaseMetadata(File json, ForkJoinPool pool)
+            throws IOException, CLDFParseError {
+        return new CLDFImport(pool).load(json);
+    }
+
+    /**
+     * Load a word list according to a JSON metadata file.
+     * 
+     * This method may be called from several threads at once.
+     * 
+     * @param json the path to a metadata JSON file
+     * @return CLDFWordlistDatabase
+     * @throws CLDFParseError
+     * @throws IOException
+     */
+    public CLDFWordlistDatabase<Integer, String, String> load(File json) throws IOException, CLDFParseError {
+        return load(json, new LoadContext(), true);
+    }
+
+    /**
+     * Load a word list, collecting what the load learns into a given context.
+     * 
+     * @param useSnapshot whether a snapshot may be read instead of the CSV files;
+     *                    that leaves the context empty
+     */
+    CLDFWordlistDatabase<Integer, String, String> load(File json, LoadContext loadContext, boolean useSnapshot)
+            throws IOException, CLDFParseError {
+        LoadRecorder recorder = new LoadRecorder(json.getPath(), listener, loadContext.exceptions);
 
+        LoadRecorder.Phase metadata = recorder.phase("metadata");
         URL context = json.toURI().toURL();
         byte[] mapData = Files.readAllBytes(Paths.get(json.getAbsolutePath()));
         JsonNode root = new ObjectMapper().readTree(mapData);
         String moduleType = root.get("dc:conformsTo").asText().split("#")[1];
+        metadata.end();
 
         if (!moduleType.equals("Wordlist")) {
             throw new CLDFParseError("Expected Wordlist, found " + root.get("dc:conformsTo").asText());
         }
 
-        // Extract the Wordlist module: Inspect all tables of the module.
-        JsonNode tables = root.get("tables");
-        Map<String, JsonNode> tableTypes = new HashMap<>();
-        for (JsonNode table : tables) {
-            String tableType;
-            if (table.get("dc:conformsTo") == null)
-                tableType = null; // No table type given, who knows what kind of table that is.
-            else {
+        // Use a snapshot of the tables, if there is an up-to-date one.
+        String snapshotKey = null;
+        Path snapshot = null;
+        if (snapshotDirectory != null) {
+            snapshotKey = CLDFSnapshot.key(json, mapData, root);
+            if (snapshotKey != null && projection != null) {
+                // A snapshot holds only the columns that were read.
+                snapshotKey += " " + String.join(",", projection);
+            }
+            if (snapshotKey != null && filter != null) {
+                // And only the rows that were kept.
+                snapshotKey += " " + filter;
+            }
+            if (snapshotKey != null) {
+                // Families and subfamilies the LanguageTable leaves out come from the
+                // classification.
+                snapshotKey += " glottolog " + Long.toHexString(glottolog().fingerprint());
+            }
+            if (snapshotKey != null && useSnapshot) {
+                snapshot = CLDFSnapshot.snapshotFile(snapshotDirectory, json);
+                LoadRecorder.Phase reading = recorder.phase("snapshot");
+                long begin = System.nanoTime();
                 try {
-                    // TODO: Check that the bit before the '#' points to the CLDF spec.
-                    tableType = table.get("dc:conformsTo").asText().split("#")[1];
-                } catch (IndexOutOfBoundsException e) {
-                    // No CLDF table type given, but maybe still useful.
-                    tableType = table.get("dc:conformsTo").asText();
+                    CLDFWordlistDatabase<Integer, String, String> database = CLDFSnapshot.read(snapshot,
+                            snapshotKey, columnarForms);
+                    if (database != null) {
+                        reading.end();
+                        database.currentPath = json.getParent();
+                        recorder.table(new CLDFLoadReport.Table("Snapshot", snapshot.toString(),
+                                Files.size(snapshot), database.getFormsMap().size(), 0, System.nanoTime() - begin));
+                        recorder.finish(database, true);
+                        return database;
+                    }
+                } catch (IOException | RuntimeException e) {
+                    // A broken snapshot is as good as none, parse the CSV files instead.
                 }
             }
-            tableTypes.put(tableType, table);
         }
-        // Retrieve all values we understand from the tables we care about
+
+        Map<String, JsonNode> tableTypes = tableTypes(root);
+        tableTypes.replaceAll((type, table) -> project(table));
+        // Retrieve all values we understand from the tables we care about. Without a
+        // pool, every task runs right here as soon as it is scheduled, so the tables
+        // are read one after another. With a pool, each table is read as soon as
+        // what it depends on is available: Only the fallback language and concept
+        // lists and the resolution of form references in the CognateTable have to
+        // wait for the FormTable.
+        Executor executor = pool == null ? Runnable::run : pool;
+        LoadRecorder.Phase reading = recorder.phase("tables");
+
+        // The LanguageTable and ParameterTable as read, before any filter.
+        CompletableFuture<Map<String, CLDFLanguage>> languageRows = null;
+        JsonNode languageTable = tableTypes.get("LanguageTable");
+        if (languageTable != null) {
+            URL url = new URL(context, languageTable.get("url").asText());
+            languageRows = schedule(executor, recorder.table("LanguageTable", languageTable.get("url").asText(), url,
+                    source -> readLanguageCsv(source.open(), languageTable, loadContext.exceptions), Map::size));
+        }
+        CompletableFuture<Map<String, CLDFParameter>> parameterRows = null;
+        JsonNode parameterTable = tableTypes.get("ParameterTable");
+        if (parameterTable != null) {
+            URL url = new URL(context, parameterTable.get("url").asText());
+            parameterRows = schedule(executor, recorder.table("ParameterTable", parameterTable.get("url").asText(),
+                    url, source -> readParameterCsv(source.open(), parameterTable, loadContext.exceptions),
+                    Map::size));
+        }
 
         // FormTable
-        Map<Integer, CLDFForm<Integer>> idToForm;
         JsonNode formTable = tableTypes.get("FormTable");
-        if (formTable != null) {
-            URL url = new URL(context, formTable.get("url").asText());
-            InputStream table = url.openConnection().getInputStream();
-            idToForm = readFormCsv(table, formTable);
-        } else {
+        if (formTable == null) {
             throw new CLDFParseError("Wordlist had no FormTable.");
         }
+        URL formUrl = new URL(context, formTable.get("url").asText());
+        TableTask<Map<Integer, CLDFForm<Integer>>> formTask = recorder.table("FormTable",
+                formTable.get("url").asText(), formUrl, source -> {
+                    boolean parallel = pool != null && formUrl.getProtocol().equals("file");
+                    if (columnarForms && parallel) {
+                        return readFormStore(source.file(), formTable, pool, loadContext, source.costs).asMap();
+                    } else if (columnarForms) {
+                        return readFormStore(source.open(), formTable, loadContext).asMap();
+                    } else if (parallel) {
+                        return readFormCsv(source.file(), formTable, pool, loadContext, source.costs);
+                    } else {
+                        return readFormCsv(source.open(), formTable, loadContext);
+                    }
+                }, Map::size);
+        CompletableFuture<Map<Integer, CLDFForm<Integer>>> idToForm;
+        if (filter == null) {
+            idToForm = schedule(executor, formTask);
+        } else if (!filter.needsTables()) {
+            loadContext.keys = filter.keys(Collections.emptyMap(), Collections.emptyMap());
+            idToForm = schedule(executor, formTask);
+        } else {
+            // The keys are set before the FormTable task starts, which is the only
+            // one reading them until the forms are there.
+            idToForm = orEmpty(languageRows).thenCombine(orEmpty(parameterRows), (languages, parameters) -> {
+                loadContext.keys = filter.keys(languages, parameters);
+                return languages;
+            }).thenCompose(keys -> schedule(executor, formTask));
+        }
 
         // LanguageTable
-        Map<String, CLDFLanguage> langIDToLang = new HashMap<>();
-        JsonNode languageTable = tableTypes.get("LanguageTable");
-        if (languageTable != null) {
-            URL url = new URL(context, languageTable.get("url").asText());
-            InputStream table = url.openConnection().getInputStream();
-            langIDToLang = readLanguageCsv(table, languageTable);
+        CompletableFuture<Map<String, CLDFLanguage>> langIDToLang;
+        if (languageRows != null) {
+            langIDToLang = filter == null ? languageRows
+                    : languageRows.thenCombine(idToForm, (languages, forms) -> loadContext.keys.languages(languages));
         } else {
             // Sigh, all we know about language IDs are the entries in the FormTable's
             // languageReference. Turn those into minimal CLDFLanguage objects.
             // OR INSTEAD, throw an error and tell the user to create a LanguageTable with
             // lexedata, which can also guess some Glottocodes.
-            for (String language : languages) {
-                langIDToLang.put(language, new CLDFLanguage(language));
-            }
+            langIDToLang = idToForm.thenApply(forms -> {
+                Map<String, CLDFLanguage> minimal = new HashMap<>();
+                for (String language : loadContext.symbols.languages().names()) {
+                    minimal.put(language, new CLDFLanguage(language));
+                }
+                return loadContext.keys == null ? minimal : loadContext.keys.languages(minimal);
+            });
         }
 
         // ParameterTable
-        Map<String, CLDFParameter> paramIDToParam = new HashMap<>();
-        JsonNode parameterTable = tableTypes.get("ParameterTable");
-        if (parameterTable != null) {
-            URL url = new URL(context, parameterTable.get("url").asText());
-            InputStream table = url.openConnection().getInputStream();
-            paramIDToParam = readParameterCsv(table, parameterTable);
+        CompletableFuture<Map<String, CLDFParameter>> paramIDToParam;
+        if (parameterRows != null) {
+            paramIDToParam = filter == null ? parameterRows
+                    : parameterRows.thenCombine(idToForm,
+                            (parameters, forms) -> loadContext.keys.parameters(parameters));
         } else {
             // Sigh, all we know about concepts are the entries in the FormTable's
             // parameterReference. Turn those into minimal CLDFParameter objects.
             // OR INSTEAD, throw an error and tell the user to create a ParameterTable with
             // lexedata, which can also guess some Concepticon connections.
-            for (String concept : concepts) {
-                paramIDToParam.put(concept, new CLDFParameter(concept));
-            }
+            paramIDToParam = idToForm.thenApply(forms -> {
+                Map<String, CLDFParameter> minimal = new HashMap<>();
+                for (String concept : loadContext.symbols.parameters().names()) {
+                    minimal.put(concept, new CLDFParameter(concept));
+                }
+                // A kept form keeps all of its concepts, also those filtered out.
+                return loadContext.keys == null ? minimal : loadContext.keys.parameters(minimal);
+            });
         }
 
         // CognateTable, containing judgements
-        Map<String, CLDFCognateJudgement<Integer, String, String>> cognateIDToCognate = new HashMap<>();
+        CompletableFuture<Map<String, CLDFCognateJudgement<Integer, String, String>>> cognateIDToCognate;
         JsonNode cognateTable = tableTypes.get("CognateTable");
         if (cognateTable != null) {
+            // Parsing does not need the forms, only resolving the form references does.
             URL url = new URL(context, cognateTable.get("url").asText());
-            InputStream table = url.openConnection().getInputStream();
-            cognateIDToCognate = readCognateCsv(table, cognateTable);
+            cognateIDToCognate = schedule(executor, recorder.table("CognateTable", cognateTable.get("url").asText(),
+                    url, source -> readUnresolvedCognates(source.open(), cognateTable, loadContext.exceptions),
+                    cognates -> cognates.judgements.size()))
+                    .thenCombine(idToForm, (cognates, forms) -> {
+                        LoadRecorder.Phase resolving = recorder.phase("form references");
+                        Map<String, CLDFCognateJudgement<Integer, String, String>> resolved = cognates
+                                .resolve(loadContext);
+                        resolving.end();
+                        return resolved;
+                    });
         } else {
             // Populating the judgements map only happens if there is a separate file for
             // that.
             // If there isn't one, do nothing. In particular, do not fall back to reading
             // cognate judgements from the FormTable's cognatesetReference, like it was
             // common in the early days of CLDF.
+            cognateIDToCognate = CompletableFuture.completedFuture(new HashMap<>());
         }
 
         // CognatesetTable
-        Map<String, CLDFCognateSet<String>> cogSetIDToCogset = new HashMap<>();
+        CompletableFuture<Map<String, CLDFCognateSet<String>>> cogSetIDToCogset;
         JsonNode cognateSetTable = tableTypes.get("CognatesetTable");
         if (cognateSetTable != null) {
             URL url = new URL(context, cognateSetTable.get("url").asText());
-            InputStream table = url.openConnection().getInputStream();
-            cogSetIDToCogset = readCognatesetCsv(table, cognateSetTable);
+            cogSetIDToCogset = schedule(executor, recorder.table("CognatesetTable",
+                    cognateSetTable.get("url").asText(), url,
+                    source -> readCognatesetCsv(source.open(), cognateSetTable, loadContext.exceptions), Map::size));
+            if (filter != null) {
+                cogSetIDToCogset = cogSetIDToCogset.thenCombine(cognateIDToCognate, CLDFFilter.Keys::cognatesets);
+            }
         } else {
             // Populating the Cognateset map only happens if there is a separate file for
             // that.
             // This is probably the table we need the least.
+            cogSetIDToCogset = CompletableFuture.completedFuture(new HashMap<>());
         }
 
         // BorrowingTable
@@ -208,14 +520,214 @@ public class CLDFImport {
         // could be useful in Etinen, if we understand the CLDF specs for it and find an
         // example to test with.
 
+        Map<Integer, CLDFForm<Integer>> forms = await(idToForm);
+        Map<String, CLDFLanguage> languages = await(langIDToLang);
+        Map<String, CLDFParameter> parameters = await(paramIDToParam);
+        Map<String, CLDFCognateJudgement<Integer, String, String>> cognates = await(cognateIDToCognate);
+        Map<String, CLDFCognateSet<String>> cognatesets = await(cogSetIDToCogset);
+        reading.end();
+        // The database builds its index right away.
+        LoadRecorder.Phase indexing = recorder.phase("index");
         CLDFWordlistDatabase<Integer, String, String> database = new CLDFWordlistDatabase<Integer, String, String>(
-                idToForm, langIDToLang, paramIDToParam, cognateIDToCognate, cogSetIDToCogset);
+                forms, languages, parameters, cognates, cognatesets, loadContext.symbols);
+        indexing.end();
         database.currentPath = json.getParent();
 
-        database.setExceptions(exceptions);
+        database.setExceptions(loadContext.exceptions);
+
+        if (snapshot != null) {
+            LoadRecorder.Phase writing = recorder.phase("snapshot");
+            try {
+                CLDFSnapshot.write(database, snapshotKey, snapshot);
+            } catch (IOException e) {
+                // Failing to cache the database must not fail the load.
+            }
+            writing.end();
+        }
+        recorder.finish(database, false);
         return database;
     }
 
+    /**
+     * @param url a file: url, as resolved against the location of a metadata file
+     * @return the local file it points to
+     */
+    static Path localFile(URL url) {
+        try {
+            return Paths.get(url.toURI());
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            // A table url with characters a URI has to escape, such as spaces, resolves
+            // to a URL that is no URI; its path is then taken as it is, decoding only
+            // the escapes it does have.
+            return new File(URLDecoder.decode(url.getPath().replace("+", "%2B"), StandardCharsets.UTF_8)).toPath();
+        }
+    }
+
+    /**
+     * Extract the Wordlist module: Inspect all tables of the module.
+     * 
+     * @param root the metadata JSON
+     * @return the description of each table, by CLDF table type
+     */
+    static Map<String, JsonNode> tableTypes(JsonNode root) {
+        JsonNode tables = root.get("tables");
+        Map<String, JsonNode> tableTypes = new HashMap<>();
+        for (JsonNode table : tables) {
+            // A table without a dialect of its own inherits that of the table group.
+            if (root.get("dialect") != null && table.get("dialect") == null) {
+                ((ObjectNode) table).set("dialect", root.get("dialect"));
+            }
+            String tableType;
+            if (table.get("dc:conformsTo") == null)
+                tableType = null; // No table type given, who knows what kind of table that is.
+            else {
+                try {
+                    // TODO: Check that the bit before the '#' points to the CLDF spec.
+                    tableType = table.get("dc:conformsTo").asText().split("#")[1];
+                } catch (IndexOutOfBoundsException e) {
+                    // No CLDF table type given, but maybe still useful.
+                    tableType = table.get("dc:conformsTo").asText();
+                }
+            }
+            tableTypes.put(tableType, table);
+        }
+        return tableTypes;
+    }
+
+    /**
+     * Read some tables of a database again, and derive a database in which they
+     * replace the old ones (see {@link CLDFWordlistDatabase#withTables}). The
+     * forms cannot be read this way, since everything else refers to them.
+     * 
+     * @param previous    the database loaded before
+     * @param json        the metadata JSON file it was loaded from
+     * @param tableTypes  the tables of the metadata, by type
+     * @param changed     the types of the tables to read
+     * @param loadContext the context in which the forms of the previous database
+     *                    were read; the exceptions of the tables read again are
+     *                    replaced in it
+     * @return the derived database
+     */
+    CLDFWordlistDatabase<Integer, String, String> reload(CLDFWordlistDatabase<Integer, String, String> previous,
+            File json, Map<String, JsonNode> tableTypes, Set<String> changed, LoadContext loadContext)
+            throws IOException {
+        if (reloadsAll(changed)) {
+            throw new IllegalArgumentException("The forms cannot be reloaded on their own");
+        }
+        LoadRecorder recorder = new LoadRecorder(json.getPath(), listener, loadContext.exceptions);
+        URL context = json.toURI().toURL();
+        Map<String, JsonNode> tables = new HashMap<>(tableTypes);
+        tables.replaceAll((type, table) -> project(table));
+        CLDFFilter.Keys keys = loadContext.keys;
+        Set<String> toRead = new HashSet<>(changed);
+        if (keys != null && changed.contains("CognateTable") && tables.containsKey("CognatesetTable")) {
+            // The cognate sets that were kept depend on the judgements.
+            toRead.add("CognatesetTable");
+        }
+        synchronized (loadContext.exceptions) {
+            loadContext.exceptions.removeIf(exception -> {
+                for (String type : toRead) {
+                    if (exception[0] != null && exception[0].equals(tables.get(type).get("url").asText())) {
+                        return true;
+                    }
+                }
+                return false;
+            });
+        }
+
+        LoadRecorder.Phase reading = recorder.phase("tables");
+        Map<String, CLDFLanguage> languages = previous.getLanguageMap();
+        if (changed.contains("LanguageTable")) {
+            JsonNode table = tables.get("LanguageTable");
+            String url = table.get("url").asText();
+            languages = recorder.table("LanguageTable", url, new URL(context, url),
+                    source -> readLanguageCsv(source.open(), table, loadContext.exceptions), Map::size).read();
+            if (keys != null) {
+                languages = keys.languages(languages);
+            }
+        }
+        Map<String, CLDFParameter> parameters = previous.getConceptMap();
+        if (changed.contains("ParameterTable")) {
+            JsonNode table = tables.get("ParameterTable");
+            String url = table.get("url").asText();
+            parameters = recorder.table("ParameterTable", url, new URL(context, url),
+                    source -> readParameterCsv(source.open(), table, loadContext.exceptions), Map::size).read();
+            if (keys != null) {
+                parameters = keys.parameters(parameters);
+            }
+        }
+        Map<String, CLDFCognateJudgement<Integer, String, String>> cognates = previous.getCognateJudgementMap();
+        if (changed.contains("CognateTable")) {
+            JsonNode table = tables.get("CognateTable");
+            String url = table.get("url").asText();
+            UnresolvedCognates unresolved = recorder.table("CognateTable", url, new URL(context, url),
+                    source -> readUnresolvedCognates(source.open(), table, loadContext.exceptions),
+                    u -> u.judgements.size()).read();
+            LoadRecorder.Phase resolving = recorder.phase("form references");
+            cognates = unresolved.resolve(loadContext);
+            resolving.end();
+        }
+        Map<String, CLDFCognateSet<String>> cognatesets = previous.getCognatesetMap();
+        if (toRead.contains("CognatesetTable")) {
+            JsonNode table = tables.get("CognatesetTable");
+            String url = table.get("url").asText();
+            cognatesets = recorder.table("CognatesetTable", url, new URL(context, url),
+                    source -> readCognatesetCsv(source.open(), table, loadContext.exceptions), Map::size).read();
+            if (keys != null) {
+                cognatesets = CLDFFilter.Keys.cognatesets(cognatesets, cognates);
+            }
+        }
+        reading.end();
+
+        LoadRecorder.Phase indexing = recorder.phase("index");
+        CLDFWordlistDatabase<Integer, String, String> database = previous.withTables(languages, parameters, cognates,
+                cognatesets);
+        indexing.end();
+        database.setExceptions(loadContext.exceptions);
+        recorder.finish(database, false);
+        return database;
+    }
+
+    /**
+     * Reading a table, which may fail with an IOException.
+     */
+    interface TableTask<T> {
+        T read() throws IOException;
+    }
+
+    /**
+     * @return the rows of a table, or an empty map if there is no such table
+     */
+    private static <T> CompletableFuture<Map<String, T>> orEmpty(CompletableFuture<Map<String, T>> rows) {
+        return rows == null ? CompletableFuture.completedFuture(Collections.emptyMap()) : rows;
+    }
+
+    private static <T> CompletableFuture<T> schedule(Executor executor, TableTask<T> task) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return task.read();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor);
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
     /**
      * Load a single CLDF table into memory as List.
      * 
@@ -226,69 +738,78 @@ public class CLDFImport {
      * @throws IOException
      */
     public static List<Map<String, PString>> readTable(InputStream stream, JsonNode table) throws IOException {
-        Builder dialect = CSVFormat.DEFAULT.builder().setHeader().setSkipHeaderRecord(true);
-        if (table.get("dialect") != null) {
-            // TODO: understand the table dialect, and adjust the format description
-            // accordingly
-        }
-        CSVParser parser = CSVParser.parse(stream, StandardCharsets.UTF_8, dialect.build());
-
-        // Understand the table schema
-        List<String> column_headers = parser.getHeaderNames();
-        Iterator<JsonNode> column_spec = table.get("tableSchema").get("columns").elements();
-        Map<String, CellReader> functions = new HashMap<>();
-        while (column_spec.hasNext()) {
-            JsonNode column = column_spec.next();
-            String name = column.get("name").asText();
-            Integer position = column_headers.indexOf(name);
-            String property = null;
-            try {
-                property = column.get("propertyUrl").asText();
-                property = property.split("#")[1];
-            } catch (IndexOutOfBoundsException e) {
-                // The second line got skipped. This is okay.
-            } catch (NullPointerException e) {
-                property = name;
-            }
-
-            // Parse the data type, and set a value mapper accordingly.
-            JsonNode separator = column.get("separator");
-            String datatype;
-            try {
-                datatype = column.get("datatype").asText();
-            } catch (NullPointerException e) {
-                datatype = "string";
-            }
-            // TODO: If there's a valueUrl, it should be used as string template.
-            // TODO: We could have a virtual column, which would ask for a constant
-            // CellReader.
-            // TODO: Do we need to support integers?
-            if (datatype == "double") {
-                functions.put(property, r -> new PString(r.get(position), false));
-            } else if (separator == null) {
-                functions.put(property, r -> new PString(r.get(position), null));
-            } else {
-                functions.put(property, r -> new PString(r.get(position), separator.asText()));
-            }
+        try (Stream<Map<String, PString>> rows = streamTable(stream, table)) {
+            return rows.collect(Collectors.toList());
         }
+    }
 
-        // Read the individual rows, and map them.
-        List<Map<String, PString>> rows = new ArrayList<>();
-        for (CSVRecord row : parser) {
-            Map<String, PString> processed_row = new HashMap<>();
-            for (String column : functions.keySet()) {
-                processed_row.put(column, functions.get(column).translate(row));
-            }
-            rows.add(processed_row);
+    /**
+     * Read a single CLDF table lazily, one row at a time.
+     * 
+     * Rows are only parsed when the stream is consumed, so arbitrarily large tables
+     * can be processed with constant memory. The underlying parser is released when
+     * the stream is closed, so use it in a try-with-resources block.
+     * 
+     * @param stream the stream to read the table from, eg. from opening a file
+     * @param table  the CLDF table description in JSON
+     * @return a stream of table rows, each mapping properties (falling back to
+     *         column names) to PString.
+     * @throws IOException
+     */
+    public static Stream<Map<String, PString>> streamTable(InputStream stream, JsonNode table) throws IOException {
+        TableReader reader = openTable(stream, table);
+        TableSchema schema = TableSchema.compile(table, reader.header());
+        int[] all = schema.remainder();
+        return reader.stream(row -> schema.properties(row, all));
+    }
+
+    /**
+     * Open a reader for a table in its CSV dialect, positioned after the header.
+     */
+    private static TableReader openTable(InputStream stream, JsonNode table) throws IOException {
+        return TableReader.open(stream, table);
+    }
+
+    private static void close(TableReader reader) {
+        try {
+            reader.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-        return rows;
+    }
+
+    /**
+     * Choose how tables are tokenized: by the byte-level tokenizer wherever it
+     * understands the dialect (the default), or always by commons-csv, which is
+     * slower. Both read the same rows; this is meant for comparing them. It
+     * applies to all importers, so set it before loading anything.
+     */
+    public static void setByteTokenizer(boolean enabled) {
+        TableReader.byteTokenizer = enabled;
+    }
+
+    /**
+     * Choose the Glottolog classification that gives languages without a family
+     * column their family and subfamily, and that filters by family go by. It
+     * applies to all importers, so set it before loading anything.
+     * 
+     * @param tree the classification, or null (the default) for the trees of
+     *             the resource {@value GlottologTree#RESOURCE}, if there is one
+     */
+    public static void setGlottolog(GlottologTree tree) {
+        glottolog = tree;
+    }
+
+    static GlottologTree glottolog() {
+        GlottologTree tree = glottolog;
+        return tree != null ? tree : GlottologTree.glottolog();
     }
 
     /**
      * Load a FormTable into CLDFForm objects.
      * 
-     * Use consecutive integers as IDs. The original ids of forms will be stored in
-     * a temporary mapping.
+     * Use consecutive integers as IDs. The original ids of forms are dropped, use
+     * {@link #readFormCsv(InputStream, JsonNode, LoadContext)} to keep them.
      * 
      * @param stream
      * @param table  The JSON entry describing the table (has key "tableSchema", and
@@ -297,48 +818,323 @@ public class CLDFImport {
      * @throws IOException
      */
     public static Map<Integer, CLDFForm<Integer>> readFormCsv(InputStream stream, JsonNode table) throws IOException {
+        return readFormCsv(stream, table, new LoadContext());
+    }
+
+    /**
+     * Load a FormTable into CLDFForm objects, and record the original form IDs in
+     * the given context. The language and parameter IDs of the forms are encoded
+     * in the symbol tables of the context.
+     * 
+     * @param stream
+     * @param table       The JSON entry describing the table (has key
+     *                    "tableSchema", and maybe others.)
+     * @param loadContext the context of the load this table is part of
+     * @return a mapping of INTEGERS (not Form IDs!) to CLDFForms
+     * @throws IOException
+     */
+    public static Map<Integer, CLDFForm<Integer>> readFormCsv(InputStream stream, JsonNode table,
+            LoadContext loadContext) throws IOException {
         Map<Integer, CLDFForm<Integer>> formTable = new HashMap<>();
-        int i = -1;
-        for (Map<String, PString> row : readTable(stream, table)) {
-            originalFormIDs.put(row.remove("id").toString(), ++i);
+        try (Stream<CLDFForm<Integer>> forms = streamFormCsv(stream, table, loadContext.symbols, loadContext.exceptions,
+                loadContext.keys,
+                (originalID, formEntry) -> loadContext.originalFormIDs.put(originalID, formEntry.getId()))) {
+            // mapping object and its id
+            forms.forEach(formEntry -> formTable.put(formEntry.getId(), formEntry));
+        }
+        return formTable;
+    }
+
+    /**
+     * Load a FormTable from a local file into CLDFForm objects, parsing chunks of
+     * the file in parallel.
+     * 
+     * The result, including the consecutive integer IDs, is the same as that of
+     * {@link #readFormCsv(InputStream, JsonNode)} on the same file.
+     * 
+     * @param file        the FormTable CSV file
+     * @param table       The JSON entry describing the table (has key
+     *                    "tableSchema", and maybe others.)
+     * @param pool        the pool to parse the chunks on
+     * @param loadContext the context of the load this table is part of
+     * @return a mapping of INTEGERS (not Form IDs!) to CLDFForms
+     * @throws IOException
+     */
+    public static Map<Integer, CLDFForm<Integer>> readFormCsv(File file, JsonNode table, ForkJoinPool pool,
+            LoadContext loadContext) throws IOException {
+        return readFormCsv(file, table, pool, loadContext, null);
+    }
 
-            CLDFForm<Integer> formEntry = new CLDFForm<Integer>(i, row.remove("languageReference").toString(),
-                    row.remove("parameterReference").toStringList(), row.remove("form").toString());
+    /**
+     * @param costs what to add the costs of reading the chunks to, or null
+     */
+    static Map<Integer, CLDFForm<Integer>> readFormCsv(File file, JsonNode table, ForkJoinPool pool,
+            LoadContext loadContext, TableReader.Costs costs) throws IOException {
+        List<ParallelFormReader.Chunk> chunks = new ParallelFormReader(file.toPath(), table, loadContext.symbols,
+                loadContext.exceptions, pool).filter(loadContext.keys).measure(costs).read();
+        Map<Integer, CLDFForm<Integer>> formTable = new HashMap<>(2 * countForms(chunks));
+        mergeChunks(chunks, loadContext, formEntry -> formTable.put(formEntry.getId(), formEntry));
+        return formTable;
+    }
 
-            // settings fields that aren't required by checking whether they exist
-            try {
-                formEntry.setOrigValue(row.remove("value").toString());
-            } catch (NullPointerException e) {
+    /**
+     * Load a FormTable into a columnar form store. The row numbers of the store
+     * are the consecutive integer IDs {@link #readFormCsv} would assign.
+     * 
+     * @param stream
+     * @param table       The JSON entry describing the table (has key
+     *                    "tableSchema", and maybe others.)
+     * @param loadContext the context of the load this table is part of
+     * @return the forms, in table order
+     * @throws IOException
+     */
+    public static CLDFFormStore readFormStore(InputStream stream, JsonNode table, LoadContext loadContext)
+            throws IOException {
+        CLDFFormStore store = new CLDFFormStore(loadContext.symbols);
+        try (Stream<CLDFForm<Integer>> forms = streamFormCsv(stream, table, loadContext.symbols, loadContext.exceptions,
+                loadContext.keys,
+                (originalID, formEntry) -> loadContext.originalFormIDs.put(originalID, formEntry.getId()))) {
+            // Each form object only lives until it is copied into the store.
+            forms.forEach(store::add);
+        }
+        return store;
+    }
+
+    /**
+     * Load a FormTable from a local file into a columnar form store, parsing
+     * chunks of the file in parallel.
+     * 
+     * @param file        the FormTable CSV file
+     * @param table       The JSON entry describing the table (has key
+     *                    "tableSchema", and maybe others.)
+     * @param pool        the pool to parse the chunks on
+     * @param loadContext the context of the load this table is part of
+     * @return the forms, in table order
+     * @throws IOException
+     */
+    public static CLDFFormStore readFormStore(File file, JsonNode table, ForkJoinPool pool, LoadContext loadContext)
+            throws IOException {
+        return readFormStore(file, table, pool, loadContext, null);
+    }
+
+    /**
+     * @param costs what to add the costs of reading the chunks to, or null
+     */
+    static CLDFFormStore readFormStore(File file, JsonNode table, ForkJoinPool pool, LoadContext loadContext,
+            TableReader.Costs costs) throws IOException {
+        List<ParallelFormReader.Chunk> chunks = new ParallelFormReader(file.toPath(), table, loadContext.symbols,
+                loadContext.exceptions, pool).filter(loadContext.keys).measure(costs).read();
+        CLDFFormStore store = new CLDFFormStore(loadContext.symbols, countForms(chunks));
+        mergeChunks(chunks, loadContext, store::add);
+        return store;
+    }
+
+    private static int countForms(List<ParallelFormReader.Chunk> chunks) {
+        int total = 0;
+        for (ParallelFormReader.Chunk chunk : chunks) {
+            total += chunk.forms.size();
+        }
+        return total;
+    }
+
+    /**
+     * Renumber the forms of consecutive chunks, so that IDs continue where the
+     * previous chunk stopped, and hand them to the sink in that order. The
+     * symbols of each chunk are merged into those of the load in the same order,
+     * so the codes are handed out in order of first occurrence in the file.
+     */
+    static void mergeChunks(List<ParallelFormReader.Chunk> chunks, LoadContext loadContext,
+            Consumer<CLDFForm<Integer>> sink) {
+        int offset = 0;
+        for (ParallelFormReader.Chunk chunk : chunks) {
+            loadContext.symbols.merge(chunk.symbols, chunk.forms);
+            for (int i = 0; i < chunk.forms.size(); i++) {
+                CLDFForm<Integer> formEntry = chunk.forms.get(i);
+                formEntry.setId(offset + i);
+                loadContext.originalFormIDs.put(chunk.originalIDs.get(i), formEntry.getId());
+                sink.accept(formEntry);
             }
-            try {
-                formEntry.setComment(row.remove("comment").toString());
-            } catch (NullPointerException e) {
+            offset += chunk.forms.size();
+        }
+    }
+
+    /**
+     * Read a FormTable lazily, building each CLDFForm only when it is requested.
+     * 
+     * Forms get consecutive integers as IDs, in the order of the table rows, just
+     * like in {@link #readFormCsv(InputStream, JsonNode)}. Nothing is retained
+     * between rows, so aggregations over the stream run in constant memory. Close
+     * the stream when done to release the underlying parser.
+     * 
+     * @param stream
+     * @param table  The JSON entry describing the table (has key "tableSchema", and
+     *               maybe others.)
+     * @return a stream of CLDFForms with consecutive INTEGER IDs
+     * @throws IOException
+     */
+    public static Stream<CLDFForm<Integer>> streamFormCsv(InputStream stream, JsonNode table) throws IOException {
+        return streamFormCsv(stream, table, new CLDFSymbols(), null, null, (originalID, formEntry) -> {
+        });
+    }
+
+    /**
+     * Read a FormTable lazily, and report the original ID of each form as it is
+     * built.
+     * 
+     * @param symbols the symbol tables to encode language and parameter IDs in
+     * @param errors  the list to report cells that do not fit their datatype to,
+     *                or null
+     * @param keys    the languages and concepts of the forms to keep, or null to
+     *                keep all; rows of other forms are skipped and not numbered
+     * @param onForm  called with the original form ID and the new form, in table
+     *                order, before the form is handed on down the stream
+     */
+    static Stream<CLDFForm<Integer>> streamFormCsv(InputStream stream, JsonNode table, CLDFSymbols symbols,
+            List<String[]> errors, CLDFFilter.Keys keys, BiConsumer<String, CLDFForm<Integer>> onForm)
+            throws IOException {
+        TableReader reader = openTable(stream, table);
+        FormBinder binder = new FormBinder(TableSchema.compile(table, reader.header(), errors), symbols,
+                keys);
+        Iterator<TableRow> rows = reader.iterator();
+        // The numbering happens in the iterator, not in a mapping stage, so that IDs
+        // stay in table order even if the caller makes the stream parallel.
+        Iterator<CLDFForm<Integer>> formIterator = new Iterator<CLDFForm<Integer>>() {
+            int i = -1;
+            TableRow next = null;
+            List<String> nextParamIDs = null;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && rows.hasNext()) {
+                    TableRow row = rows.next();
+                    nextParamIDs = binder.accept(row);
+                    if (nextParamIDs != null) {
+                        next = row;
+                    } else {
+                        reader.reject();
+                    }
+                }
+                return next != null;
             }
-            try {
-                formEntry.setSegments(row.remove("segments").toStringList());
-            } catch (NullPointerException e) {
+
+            @Override
+            public CLDFForm<Integer> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                TableRow row = next;
+                next = null;
+                CLDFForm<Integer> formEntry = binder.bind(++i, row, nextParamIDs);
+                onForm.accept(binder.originalID(row), formEntry);
+                return formEntry;
             }
+        };
+        return StreamSupport
+                .stream(Spliterators.spliteratorUnknownSize(formIterator, Spliterator.ORDERED | Spliterator.NONNULL),
+                        false)
+                .onClose(() -> close(reader));
+    }
+
+    /**
+     * Fills CLDFForm objects from the rows of one FormTable, by position.
+     */
+    static class FormBinder {
+        final TableSchema schema;
+        final CLDFSymbols symbols;
+        final int id, languageReference, parameterReference, form, value, comment, segments, orthographic;
+        final int[] rest;
+        final CLDFFilter.Keys keys;
+
+        FormBinder(TableSchema schema, CLDFSymbols symbols) {
+            this(schema, symbols, null);
+        }
+
+        /**
+         * @param keys the languages and concepts of the forms to keep, or null to
+         *             keep all
+         */
+        FormBinder(TableSchema schema, CLDFSymbols symbols, CLDFFilter.Keys keys) {
+            this.schema = schema;
+            this.symbols = symbols;
+            this.keys = keys;
+            id = schema.slot("id");
+            languageReference = schema.slot("languageReference");
+            parameterReference = schema.slot("parameterReference");
+            form = schema.slot("form");
+            value = schema.slot("value");
+            comment = schema.slot("comment");
+            segments = schema.slot("segments");
             // TODO: Orthography is not a standard CLDF column, try more options
-            try {
-                formEntry.setOrthography(row.remove("orthographic").toString());
-            } catch (NullPointerException e) {
+            orthographic = schema.slot("orthographic");
+            rest = schema.remainder(id, languageReference, parameterReference, form, value, comment, segments,
+                    orthographic);
+        }
+
+        String originalID(TableRow row) {
+            return schema.string(row, id);
+        }
+
+        /**
+         * Decide from the raw cells of a row whether its form is kept, before
+         * anything else is built for it.
+         *
+         * @return the parameter IDs of the form, to {@link #bind} it with, or null
+         *         if it is not kept
+         */
+        List<String> accept(TableRow row) {
+            if (keys != null && !keys.keepsLanguage(schema.string(row, languageReference))) {
+                return null;
             }
+            List<String> paramIDs = schema.cell(row, parameterReference).toStringList();
+            return keys == null || keys.keepsParameters(paramIDs) ? paramIDs : null;
+        }
 
-            // for the remaining columns, put them into a property map
-            formEntry.setProperties(row);
-            // mapping object and its id
-            formTable.put(i, formEntry);
+        /**
+         * @param paramIDs the parameter IDs {@link #accept} returned for the row
+         */
+        CLDFForm<Integer> bind(int i, TableRow row, List<String> paramIDs) {
+            CLDFForm<Integer> formEntry = new CLDFForm<Integer>(i, symbols, schema.string(row, languageReference),
+                    paramIDs, schema.string(row, form));
 
-            languages.add(formEntry.getLangID());
-            concepts.addAll(formEntry.getParamID());
+            // settings fields that aren't required if they exist
+            if (value >= 0) {
+                formEntry.setOrigValue(schema.string(row, value));
+            }
+            if (comment >= 0) {
+                formEntry.setComment(schema.string(row, comment));
+            }
+            if (segments >= 0) {
+                formEntry.setSegments(schema.cell(row, segments).toStringList());
+            }
+            if (orthographic >= 0) {
+                formEntry.setOrthography(schema.string(row, orthographic));
+            }
+
+            // for the remaining columns, put them into a property map
+            formEntry.setProperties(schema.properties(row, rest));
+            return formEntry;
         }
-        return formTable;
     }
 
-    private static String familyFromGlottocode(String glottocode) {
-        // TODO Where do we store the Glottolog tree again??
-        InputStream tree = CLDFImport.class.getResourceAsStream("/glottolog/trees.nwk");
-        return "Arawak";
+
+    /**
+     * Fill in the family and subfamily of a language that the LanguageTable
+     * leaves out, from the node of its Glottocode.
+     */
+    private static void classify(CLDFLanguage language, GlottologTree tree) {
+        int node = tree.node(language.getGlottocode());
+        if (node < 0) {
+            return;
+        }
+        if (language.getFamily() == null) {
+            language.setFamily(tree.name(tree.family(node)));
+        }
+        if (language.getSubFamily() == null) {
+            int subfamily = tree.subfamily(node);
+            if (subfamily >= 0) {
+                language.setSubFamily(tree.name(subfamily));
+            }
+        }
     }
 
     /**
@@ -351,47 +1147,58 @@ public class CLDFImport {
      * @throws IOException
      */
     public static Map<String, CLDFLanguage> readLanguageCsv(InputStream stream, JsonNode table) throws IOException {
-        Map<String, CLDFLanguage> languageTable = new HashMap<>();
-        for (Map<String, PString> row : readTable(stream, table)) {
+        return readLanguageCsv(stream, table, null);
+    }
 
-            CLDFLanguage languageEntry = new CLDFLanguage(row.remove("id").toString());
+    /**
+     * Load a LanguageTable, and report cells that do not fit their datatype.
+     */
+    static Map<String, CLDFLanguage> readLanguageCsv(InputStream stream, JsonNode table, List<String[]> errors)
+            throws IOException {
+        Map<String, CLDFLanguage> languageTable = new HashMap<>();
+        try (TableReader reader = openTable(stream, table)) {
+            TableSchema schema = TableSchema.compile(table, reader.header(), errors);
+            int id = schema.slot("id");
+            int iso = schema.slot("iso639P3code");
+            int glottocode = schema.slot("glottocode");
+            int name = schema.slot("name");
+            int longitude = schema.slot("longitude");
+            int latitude = schema.slot("latitude");
+            // "Family" is not a standard CLDF term.
+            int family = schema.slot("family");
+            int[] rest = schema.remainder(id, iso, glottocode, name, longitude, latitude, family);
 
-            // settings fields that aren't required by checking whether they exist
-            try {
-                languageEntry.setIso(row.remove("iso639P3code").toString());
-            } catch (NullPointerException e) {
-            }
+            for (TableRow row : reader) {
+                CLDFLanguage languageEntry = new CLDFLanguage(schema.string(row, id));
 
-            try {
-                languageEntry.setGlottocode(row.remove("glottocode").toString());
-            } catch (NullPointerException e) {
-            }
-            try {
-                languageEntry.setName(row.remove("name").toString());
-            } catch (NullPointerException e) {
-            }
-            try {
-                languageEntry.setLongitude((float) row.remove("longitude").toDouble());
-            } catch (NullPointerException e) {
-            }
-            try {
-                languageEntry.setLatitude((float) row.remove("latitude").toDouble());
-            } catch (NullPointerException e) {
-            }
+                // settings fields that aren't required if they exist
+                if (iso >= 0) {
+                    languageEntry.setIso(schema.string(row, iso));
+                }
+                if (glottocode >= 0) {
+                    languageEntry.setGlottocode(schema.string(row, glottocode));
+                }
+                if (name >= 0) {
+                    languageEntry.setName(schema.string(row, name));
+                }
+                if (longitude >= 0) {
+                    languageEntry.setLongitude((float) schema.cell(row, longitude).toDouble());
+                }
+                if (latitude >= 0) {
+                    languageEntry.setLatitude((float) schema.cell(row, latitude).toDouble());
+                }
+                if (family >= 0) {
+                    languageEntry.setFamily(schema.string(row, family));
+                }
+                if (glottocode >= 0) {
+                    classify(languageEntry, glottolog());
+                }
 
-            // "Family" is not a standard CLDF term.
-            try {
-                languageEntry.setFamily(row.remove("family").toString());
-            } catch (NullPointerException e) {
-            }
-            if (languageEntry.getFamily() == null && languageEntry.getGlottocode() != null) {
-                languageEntry.setFamily(familyFromGlottocode(languageEntry.getGlottocode()));
+                // for the remaining columns, put them into a property map
+                languageEntry.setProperties(schema.properties(row, rest));
+                // mapping object and its id
+                languageTable.put(languageEntry.getLangID(), languageEntry);
             }
-
-            // for the remaining columns, put them into a property map
-            languageEntry.setProperties(row);
-            // mapping object and its id
-            languageTable.put(languageEntry.getLangID(), languageEntry);
         }
         return languageTable;
     }
@@ -407,38 +1214,41 @@ public class CLDFImport {
      * @throws IOException
      */
     public static Map<String, CLDFParameter> readParameterCsv(InputStream stream, JsonNode table) throws IOException {
+        return readParameterCsv(stream, table, null);
+    }
+
+    /**
+     * Load a ParameterTable, and report cells that do not fit their datatype.
+     */
+    static Map<String, CLDFParameter> readParameterCsv(InputStream stream, JsonNode table, List<String[]> errors)
+            throws IOException {
         Map<String, CLDFParameter> parameterTable = new HashMap<>();
-        for (Map<String, PString> row : readTable(stream, table)) {
+        try (TableReader reader = openTable(stream, table)) {
+            TableSchema schema = TableSchema.compile(table, reader.header(), errors);
+            int id = schema.slot("id");
+            int name = schema.slot("name");
+            int concepticonReference = schema.slot("concepticonReference");
+            // TODO: "Concepticon Gloss" and "Semantic Field" are not standard CLDF terms,
+            // find out which columns to read them from. If "Concepticon Gloss" does not
+            // exist, try to derive from Concepticon ID.
+            int[] rest = schema.remainder(id, name, concepticonReference);
 
-            CLDFParameter parameterEntry = new CLDFParameter(row.remove("id").toString());
+            for (TableRow row : reader) {
+                CLDFParameter parameterEntry = new CLDFParameter(schema.string(row, id));
 
-            // settings fields that aren't required by checking whether they exist
-            try {
-                parameterEntry.setName(row.remove("name").toString());
-            } catch (NullPointerException e) {
-            }
-            try {
-                parameterEntry.setConcepticonID(row.remove("concepticonReference").toString());
-            } catch (NullPointerException e) {
-            }
-            // "Concepticon Gloss" is not a standard CLDF term.
-            try {
-                parameterEntry.setConcepticon(row.remove("name").toString());
-                // TODO: if "Concepticon Gloss" does not exist, try to derive from Concepticon
-                // ID.
-            } catch (NullPointerException e) {
-            }
+                // settings fields that aren't required if they exist
+                if (name >= 0) {
+                    parameterEntry.setName(schema.string(row, name));
+                }
+                if (concepticonReference >= 0) {
+                    parameterEntry.setConcepticonID(schema.string(row, concepticonReference));
+                }
 
-            try {
-                // "Semantic Field" is not a standard CLDF term.
-                parameterEntry.setSemanticField(row.remove("name").toString());
-            } catch (NullPointerException e) {
+                // for the remaining columns, put them into a property map
+                parameterEntry.setProperties(schema.properties(row, rest));
+                // mapping object and its id
+                parameterTable.put(parameterEntry.getParamID(), parameterEntry);
             }
-
-            // for the remaining columns, put them into a property map
-            parameterEntry.setProperties(row);
-            // mapping object and its id
-            parameterTable.put(parameterEntry.getParamID(), parameterEntry);
         }
         return parameterTable;
     }
@@ -446,6 +1256,10 @@ public class CLDFImport {
     /**
      * Load a CognateTable into CLDFCognateJudgement objects.
      * 
+     * Without the context of the FormTable, the form references cannot be
+     * resolved and stay null, use
+     * {@link #readCognateCsv(InputStream, JsonNode, LoadContext)} instead.
+     * 
      * @param stream
      * @param table  The JSON entry describing the table (has key "tableSchema", and
      *               maybe others.)
@@ -455,20 +1269,84 @@ public class CLDFImport {
      */
     public static Map<String, CLDFCognateJudgement<Integer, String, String>> readCognateCsv(InputStream stream,
             JsonNode table) throws IOException {
-        Map<String, CLDFCognateJudgement<Integer, String, String>> cognateTable = new HashMap<>();
-        for (Map<String, PString> row : readTable(stream, table)) {
+        return readCognateCsv(stream, table, new LoadContext());
+    }
 
-            CLDFCognateJudgement<Integer, String, String> judgement = new CLDFCognateJudgement<Integer, String, String>(
-                    row.remove("id").toString(),
-                    originalFormIDs.get(row.remove("formReference").toString()),
-                    row.remove("cognatesetReference").toString());
+    /**
+     * Load a CognateTable into CLDFCognateJudgement objects, resolving form
+     * references through the original form IDs recorded in the context.
+     * 
+     * @param stream
+     * @param table       The JSON entry describing the table (has key
+     *                    "tableSchema", and maybe others.)
+     * @param loadContext the context in which the FormTable was read
+     * @return A mapping of Cognate IDs (assumed to be strings) to
+     *         CLDFCognateJudgement objects
+     * @throws IOException
+     */
+    public static Map<String, CLDFCognateJudgement<Integer, String, String>> readCognateCsv(InputStream stream,
+            JsonNode table, LoadContext loadContext) throws IOException {
+        return readUnresolvedCognates(stream, table, loadContext.exceptions).resolve(loadContext);
+    }
 
-            // for the remaining columns, put them into a property map
-            judgement.setProperties(row);
-            // mapping object and its id
-            cognateTable.put(judgement.getCognateID(), judgement);
+    /**
+     * Cognate judgements as read from a CognateTable, whose form references still
+     * point to the original form IDs.
+     */
+    static class UnresolvedCognates {
+        final List<CLDFCognateJudgement<Integer, String, String>> judgements = new ArrayList<>();
+        final List<String> formReferences = new ArrayList<>();
+
+        /**
+         * Point the judgements to the integer IDs of their forms, and share one
+         * string per cognate set ID between all judgements.
+         * 
+         * @param loadContext the context in which the FormTable was read
+         * @return A mapping of Cognate IDs to CLDFCognateJudgement objects
+         */
+        Map<String, CLDFCognateJudgement<Integer, String, String>> resolve(LoadContext loadContext) {
+            Map<String, Integer> formIDs = loadContext.originalFormIDs;
+            CLDFSymbolTable cognatesets = loadContext.symbols.cognatesets();
+            Map<String, CLDFCognateJudgement<Integer, String, String>> cognateTable = new HashMap<>(
+                    2 * judgements.size());
+            for (int i = 0; i < judgements.size(); i++) {
+                CLDFCognateJudgement<Integer, String, String> judgement = judgements.get(i);
+                Integer formID = formIDs.get(formReferences.get(i));
+                if (formID == null && loadContext.keys != null) {
+                    // The form was filtered out, and its judgements with it.
+                    continue;
+                }
+                judgement.setFormReference(formID);
+                judgement.setCognatesetReference(
+                        cognatesets.name(cognatesets.intern(judgement.getCognatesetReference())));
+                // mapping object and its id
+                cognateTable.put(judgement.getCognateID(), judgement);
+            }
+            return cognateTable;
+        }
+    }
+
+    static UnresolvedCognates readUnresolvedCognates(InputStream stream, JsonNode table, List<String[]> errors)
+            throws IOException {
+        UnresolvedCognates cognates = new UnresolvedCognates();
+        try (TableReader reader = openTable(stream, table)) {
+            TableSchema schema = TableSchema.compile(table, reader.header(), errors);
+            int id = schema.slot("id");
+            int formReference = schema.slot("formReference");
+            int cognatesetReference = schema.slot("cognatesetReference");
+            int[] rest = schema.remainder(id, formReference, cognatesetReference);
+
+            for (TableRow row : reader) {
+                CLDFCognateJudgement<Integer, String, String> judgement = new CLDFCognateJudgement<Integer, String, String>(
+                        schema.string(row, id), null, schema.string(row, cognatesetReference));
+
+                // for the remaining columns, put them into a property map
+                judgement.setProperties(schema.properties(row, rest));
+                cognates.judgements.add(judgement);
+                cognates.formReferences.add(schema.string(row, formReference));
+            }
         }
-        return cognateTable;
+        return cognates;
     }
 
     /**
@@ -483,23 +1361,33 @@ public class CLDFImport {
      */
     public static Map<String, CLDFCognateSet<String>> readCognatesetCsv(InputStream stream, JsonNode table)
             throws IOException {
+        return readCognatesetCsv(stream, table, null);
+    }
+
+    /**
+     * Load a CognatesetTable, and report cells that do not fit their datatype.
+     */
+    static Map<String, CLDFCognateSet<String>> readCognatesetCsv(InputStream stream, JsonNode table,
+            List<String[]> errors) throws IOException {
         Map<String, CLDFCognateSet<String>> cogsetTable = new HashMap<>();
-        for (Map<String, PString> row : readTable(stream, table)) {
+        try (TableReader reader = openTable(stream, table)) {
+            TableSchema schema = TableSchema.compile(table, reader.header(), errors);
+            int id = schema.slot("id");
+            int description = schema.slot("description");
+            // TODO: Fill the sources from the "source" column.
+            int[] rest = schema.remainder(id, description);
 
-            CLDFCognateSet<String> cogset = new CLDFCognateSet<String>(row.remove("id").toString());
-            try {
-                cogset.setDescription(row.remove("description").toString());
-            } catch (NullPointerException n) {
-            }
-            try {
-                cogset.setSources(row.remove("description").toStringList());
-            } catch (NullPointerException n) {
-            }
+            for (TableRow row : reader) {
+                CLDFCognateSet<String> cogset = new CLDFCognateSet<String>(schema.string(row, id));
+                if (description >= 0) {
+                    cogset.setDescription(schema.string(row, description));
+                }
 
-            // for the remaining columns, put them into a property map
-            cogset.setProperties(row);
-            // mapping object and its id
-            cogsetTable.put(cogset.getCogsetID(), cogset);
+                // for the remaining columns, put them into a property map
+                cogset.setProperties(schema.properties(row, rest));
+                // mapping object and its id
+                cogsetTable.put(cogset.getCogsetID(), cogset);
+            }
         }
         return cogsetTable;
     }
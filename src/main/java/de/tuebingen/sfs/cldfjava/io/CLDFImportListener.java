@@ -0,0 +1,33 @@
+package de.tuebingen.sfs.cldfjava.io;
+
+import de.tuebingen.sfs.cldfjava.data.CLDFLoadReport;
+
+/**
+ * Is told about the progress of the loads of a {@link CLDFImport}, eg. to log
+ * slow tables while a large database is still loading.
+ *
+ * When the importer reads tables concurrently, or is shared between threads,
+ * the methods are called from several threads at once.
+ */
+public interface CLDFImportListener {
+    /**
+     * A table was read.
+     */
+    default void tableRead(CLDFLoadReport.Table table) {
+    }
+
+    /**
+     * A phase of a load is over.
+     *
+     * @param phase the name of the phase, see {@link CLDFLoadReport}
+     * @param nanos the time the phase took
+     */
+    default void phaseFinished(String phase, long nanos) {
+    }
+
+    /**
+     * A load is over. The same report is available from the loaded database.
+     */
+    default void loadFinished(CLDFLoadReport report) {
+    }
+}
@@ -0,0 +1,207 @@
+package de.tuebingen.sfs.cldfjava.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import de.tuebingen.sfs.cldfjava.data.CLDFWordlistDatabase;
+
+/**
+ * A database that follows the edits to its files, for servers that keep a
+ * dataset loaded while it is being curated.
+ *
+ * {@link #reload()} finds the table files that changed since they were last
+ * read, by size and modification time, confirmed by a hash of the content, and
+ * reads only those tables again. The new database gets copies of the maps of
+ * the untouched tables, with the same row objects, and shares the untouched
+ * parts of the index with the old one until they change (see
+ * {@link CLDFWordlistDatabase#withTables}). It replaces the old database
+ * atomically: readers calling {@link #get()} see either the old or the new
+ * database, never a mix. A database that was handed out is never changed by a
+ * reload, or by an edit of any other database, so readers that need a
+ * consistent view across several calls should keep the result of one
+ * {@link #get()}. Edits of the current database (see
+ * {@link CLDFWordlistDatabase#edit()}) are lost at the next reload of the
+ * tables they touch.
+ *
+ * Only a changed FormTable or metadata file makes the whole database load
+ * again, since everything else refers to the forms; so does a changed
+ * LanguageTable or ParameterTable if the importer filters the forms by
+ * Glottocode or Concepticon ID. To resolve the form
+ * references of a changed CognateTable, the original form IDs are kept for as
+ * long as the database lives. Tables that are not local files are never
+ * considered changed.
+ */
+public class CLDFLiveDatabase {
+    /**
+     * What a table file looked like when it was last read.
+     */
+    private static class TableFile {
+        final long size;
+        final long modified;
+        final byte[] hash;
+
+        TableFile(long size, long modified, byte[] hash) {
+            this.size = size;
+            this.modified = modified;
+            this.hash = hash;
+        }
+    }
+
+    private final CLDFImport importer;
+    private final File json;
+    private final AtomicReference<CLDFWordlistDatabase<Integer, String, String>> current = new AtomicReference<>();
+    // What the current database was read from. Only used by the reloading
+    // thread, which holds the lock of this object.
+    private byte[] metadataHash;
+    private Map<String, JsonNode> tableTypes;
+    private Map<String, TableFile> tableFiles;
+    private CLDFImport.LoadContext loadContext;
+
+    /**
+     * Load a database to follow.
+     *
+     * @param importer the importer to load with; its snapshot directory is not
+     *                 used
+     * @param json     the metadata JSON file of the database
+     */
+    public CLDFLiveDatabase(CLDFImport importer, File json) throws IOException, CLDFParseError {
+        this.importer = importer;
+        this.json = json;
+        loadAll();
+    }
+
+    /**
+     * @return the database as of the last reload
+     */
+    public CLDFWordlistDatabase<Integer, String, String> get() {
+        return current.get();
+    }
+
+    public File getMetadataFile() {
+        return json;
+    }
+
+    /**
+     * Read the tables whose files changed since the last reload again, and swap
+     * the database for one with the new tables. Nothing happens if no file has
+     * changed. If reading fails, the current database stays in place.
+     *
+     * @return the types of the tables that changed, eg. CognateTable, including
+     *         all tables if the whole database was loaded again
+     */
+    public synchronized Set<String> reload() throws IOException, CLDFParseError {
+        if (!Arrays.equals(metadataHash, hash(json.toPath()))) {
+            loadAll();
+            return Collections.unmodifiableSet(new TreeSet<>(tableFiles.keySet()));
+        }
+
+        Set<String> changed = new TreeSet<>();
+        Map<String, TableFile> files = new HashMap<>(tableFiles);
+        for (Map.Entry<String, TableFile> entry : tableFiles.entrySet()) {
+            Path file = localFile(tableTypes.get(entry.getKey()));
+            TableFile before = entry.getValue();
+            long size = Files.size(file);
+            long modified = Files.getLastModifiedTime(file).toMillis();
+            if (size == before.size && modified == before.modified) {
+                continue;
+            }
+            // Take the stamp before hashing, so that an edit during the hashing
+            // shows up at the next reload.
+            TableFile after = new TableFile(size, modified, hash(file));
+            files.put(entry.getKey(), after);
+            if (!Arrays.equals(before.hash, after.hash)) {
+                changed.add(entry.getKey());
+            }
+        }
+
+        if (importer.reloadsAll(changed)) {
+            loadAll();
+        } else if (!changed.isEmpty()) {
+            CLDFImport.LoadContext next = new CLDFImport.LoadContext();
+            next.symbols = loadContext.symbols;
+            next.originalFormIDs = loadContext.originalFormIDs;
+            next.keys = loadContext.keys;
+            next.exceptions.addAll(loadContext.exceptions);
+            current.set(importer.reload(current.get(), json, tableTypes, changed, next));
+            loadContext = next;
+            tableFiles = files;
+        } else {
+            // Only touched, keep the new stamps to not hash the files again.
+            tableFiles = files;
+        }
+        return Collections.unmodifiableSet(changed);
+    }
+
+    private void loadAll() throws IOException, CLDFParseError {
+        // Take the stamps before reading, so that edits during the load show up at
+        // the next reload.
+        byte[] metadata = Files.readAllBytes(json.toPath());
+        Map<String, JsonNode> types = CLDFImport.tableTypes(new ObjectMapper().readTree(metadata));
+        types.remove(null);
+        Map<String, TableFile> files = new HashMap<>();
+        for (Map.Entry<String, JsonNode> entry : types.entrySet()) {
+            Path file = localFile(entry.getValue());
+            if (file != null) {
+                files.put(entry.getKey(), new TableFile(Files.size(file),
+                        Files.getLastModifiedTime(file).toMillis(), hash(file)));
+            }
+        }
+        CLDFImport.LoadContext context = new CLDFImport.LoadContext();
+        CLDFWordlistDatabase<Integer, String, String> database = importer.load(json, context, false);
+
+        metadataHash = digest().digest(metadata);
+        tableTypes = types;
+        tableFiles = files;
+        loadContext = context;
+        current.set(database);
+    }
+
+    /**
+     * @return the file of a table, or null if it is not a local file
+     */
+    private Path localFile(JsonNode table) throws IOException {
+        if (table == null || table.get("url") == null) {
+            return null;
+        }
+        URL url = new URL(json.toURI().toURL(), table.get("url").asText());
+        if (!url.getProtocol().equals("file")) {
+            return null;
+        }
+        return CLDFImport.localFile(url);
+    }
+
+    private static MessageDigest digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Every JVM must support SHA-256", e);
+        }
+    }
+
+    private static byte[] hash(Path file) throws IOException {
+        MessageDigest sha = digest();
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream in = Files.newInputStream(file)) {
+            for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                sha.update(buffer, 0, n);
+            }
+        }
+        return sha.digest();
+    }
+}
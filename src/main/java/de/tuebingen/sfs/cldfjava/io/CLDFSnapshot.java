@@ -0,0 +1,517 @@
+package de.tuebingen.sfs.cldfjava.io;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import de.tuebingen.sfs.cldfjava.data.CLDFCognateJudgement;
+import de.tuebingen.sfs.cldfjava.data.CLDFCognateSet;
+import de.tuebingen.sfs.cldfjava.data.CLDFForm;
+import de.tuebingen.sfs.cldfjava.data.CLDFFormStore;
+import de.tuebingen.sfs.cldfjava.data.CLDFLanguage;
+import de.tuebingen.sfs.cldfjava.data.CLDFParameter;
+import de.tuebingen.sfs.cldfjava.data.CLDFSymbolTable;
+import de.tuebingen.sfs.cldfjava.data.CLDFSymbols;
+import de.tuebingen.sfs.cldfjava.data.CLDFWordlistDatabase;
+
+/**
+ * A compact binary image of a fully loaded CLDFWordlistDatabase, to skip
+ * parsing the CSV files again when they have not changed.
+ *
+ * A snapshot starts with a key computed from the metadata JSON and the sizes
+ * and modification times of all table files. If any of these change, the key
+ * does not match any more and the snapshot is stale. The importer adds what
+ * else shapes the database to the key: the projection, the filter and the
+ * Glottolog classification.
+ *
+ * A snapshot is a binary cache, not a view of the data: the file is mapped into
+ * memory only to be decoded, and reading it builds the whole database on the
+ * heap, as a load from CSV would, just without tokenizing and parsing. Strings
+ * are length-prefixed UTF-8, and lists are count-prefixed, with -1 standing for
+ * null.
+ */
+public class CLDFSnapshot {
+    private static final int MAGIC = 0x434C4446; // "CLDF"
+    private static final int VERSION = 3;
+
+    /**
+     * The file under which the snapshot of a metadata file is kept.
+     *
+     * @param directory the snapshot cache directory
+     * @param json      the metadata JSON file
+     */
+    static Path snapshotFile(File directory, File json) {
+        String name = hex(digest(json.getAbsolutePath().getBytes(StandardCharsets.UTF_8))).substring(0, 32);
+        return directory.toPath().resolve(name + ".cldfsnap");
+    }
+
+    /**
+     * Compute the key of a database: a hash of the metadata, and the size and
+     * modification time of each table.
+     *
+     * @param json     the metadata JSON file
+     * @param metadata its raw content
+     * @param root     its parsed content
+     * @return the key, or null if some table is not a local file, so that no
+     *         snapshot can be used
+     */
+    static String key(File json, byte[] metadata, JsonNode root) throws IOException {
+        MessageDigest sha = sha256();
+        sha.update(metadata);
+        URL context = json.toURI().toURL();
+        for (JsonNode table : root.get("tables")) {
+            URL url = new URL(context, table.get("url").asText());
+            if (!url.getProtocol().equals("file")) {
+                return null;
+            }
+            Path file = CLDFImport.localFile(url);
+            if (!Files.exists(file)) {
+                return null;
+            }
+            String stamp = url + "\t" + Files.size(file) + "\t" + Files.getLastModifiedTime(file).toMillis() + "\n";
+            sha.update(stamp.getBytes(StandardCharsets.UTF_8));
+        }
+        return hex(sha.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Every JVM must support SHA-256", e);
+        }
+    }
+
+    private static byte[] digest(byte[] content) {
+        return sha256().digest(content);
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder result = new StringBuilder(2 * bytes.length);
+        for (byte b : bytes) {
+            result.append(String.format("%02x", b));
+        }
+        return result.toString();
+    }
+
+    /**
+     * Write the snapshot of a database. The snapshot is first written to a
+     * temporary file and then moved into place, so readers never see a partial
+     * snapshot.
+     */
+    static void write(CLDFWordlistDatabase<Integer, String, String> database, String key, Path file)
+            throws IOException {
+        Files.createDirectories(file.getParent());
+        Path temporary = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temporary), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                writeString(out, key);
+                writeDatabase(out, database);
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Read a snapshot, if it exists and has the expected key.
+     *
+     * @param file     the snapshot file
+     * @param key      the key of the current state of the tables
+     * @param columnar whether to load the forms into a CLDFFormStore
+     * @return the database, or null if there is no snapshot with that key
+     */
+    static CLDFWordlistDatabase<Integer, String, String> read(Path file, String key, boolean columnar)
+            throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                return null;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            Reader in = new Reader(buffer);
+            if (buffer.remaining() < 8 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return null;
+            }
+            if (!key.equals(in.string())) {
+                return null;
+            }
+            return readDatabase(in, columnar);
+        }
+    }
+
+    private static void writeDatabase(DataOutputStream out, CLDFWordlistDatabase<Integer, String, String> database)
+            throws IOException {
+        CLDFSymbols symbols = database.getSymbols();
+        Map<Integer, CLDFForm<Integer>> forms = database.getFormsMap();
+        for (CLDFForm<Integer> form : forms.values()) {
+            // Forms built outside the database need codes in its symbol tables,
+            // before those are written.
+            if (form.getSymbols() != symbols) {
+                symbols.languages().intern(form.getLangID());
+                symbols.parameters().intern(form.getParamID());
+                if (form.getSegments() != null) {
+                    symbols.segments().intern(Arrays.asList(form.getSegments()));
+                }
+            }
+        }
+        writeSymbols(out, symbols.languages());
+        writeSymbols(out, symbols.parameters());
+        writeSymbols(out, symbols.cognatesets());
+        writeSymbols(out, symbols.segments());
+
+        out.writeInt(forms.size());
+        for (Map.Entry<Integer, CLDFForm<Integer>> entry : forms.entrySet()) {
+            CLDFForm<Integer> form = entry.getValue();
+            out.writeInt(entry.getKey());
+            out.writeInt(symbols.languages().code(form.getLangID()));
+            int[] paramCodes = form.getSymbols() == symbols ? form.getParamCodes()
+                    : symbols.parameters().intern(form.getParamID());
+            out.writeInt(paramCodes.length);
+            for (int code : paramCodes) {
+                out.writeInt(code);
+            }
+            writeString(out, form.getForm());
+            writeString(out, form.getOrigValue());
+            writeString(out, form.getComment());
+            writeString(out, form.getOrthography());
+            int[] segmentCodes = form.getSymbols() == symbols ? form.getSegmentCodes()
+                    : form.getSegments() == null ? null : symbols.segments().intern(Arrays.asList(form.getSegments()));
+            out.writeInt(segmentCodes == null ? -1 : segmentCodes.length);
+            if (segmentCodes != null) {
+                for (int code : segmentCodes) {
+                    out.writeInt(code);
+                }
+            }
+            writeProperties(out, form.getProperties());
+        }
+
+        out.writeInt(database.getLanguageMap().size());
+        for (CLDFLanguage language : database.getLanguageMap().values()) {
+            writeString(out, language.getLangID());
+            writeString(out, language.getIso());
+            writeString(out, language.getGlottocode());
+            writeString(out, language.getName());
+            writeString(out, language.getFamily());
+            writeString(out, language.getSubFamily());
+            out.writeFloat(language.getLatitude());
+            out.writeFloat(language.getLongitude());
+            writeProperties(out, language.getProperties());
+        }
+
+        out.writeInt(database.getConceptMap().size());
+        for (CLDFParameter parameter : database.getConceptMap().values()) {
+            writeString(out, parameter.getParamID());
+            writeString(out, parameter.getName());
+            writeString(out, parameter.getConcepticonID());
+            writeString(out, parameter.getConcepticon());
+            writeString(out, parameter.getSemanticField());
+            writeProperties(out, parameter.getProperties());
+        }
+
+        out.writeInt(database.getCognateJudgementMap().size());
+        for (CLDFCognateJudgement<Integer, String, String> judgement : database.getCognateJudgementMap().values()) {
+            writeString(out, judgement.getCognateID());
+            out.writeInt(judgement.getFormReference() == null ? -1 : judgement.getFormReference());
+            writeString(out, judgement.getCognatesetReference());
+            writeProperties(out, judgement.getProperties());
+        }
+
+        Map<String, CLDFCognateSet<String>> cogsets = database.getCognatesetMap();
+        out.writeInt(cogsets == null ? 0 : cogsets.size());
+        if (cogsets != null) {
+            for (CLDFCognateSet<String> cogset : cogsets.values()) {
+                writeString(out, cogset.getCogsetID());
+                writeString(out, cogset.getDescription());
+                writeStrings(out, cogset.getSources());
+                writeProperties(out, cogset.getProperties());
+            }
+        }
+
+        List<String[]> exceptions = database.getExceptions();
+        out.writeInt(exceptions == null ? -1 : exceptions.size());
+        if (exceptions != null) {
+            for (String[] exception : exceptions) {
+                writeStrings(out, Arrays.asList(exception));
+            }
+        }
+    }
+
+    private static CLDFWordlistDatabase<Integer, String, String> readDatabase(Reader in, boolean columnar) {
+        CLDFSymbols symbols = new CLDFSymbols();
+        readSymbols(in, symbols.languages());
+        readSymbols(in, symbols.parameters());
+        readSymbols(in, symbols.cognatesets());
+        readSymbols(in, symbols.segments());
+
+        int nForms = in.buffer.getInt();
+        Map<Integer, CLDFForm<Integer>> idToForm;
+        CLDFFormStore store = columnar ? new CLDFFormStore(symbols, nForms) : null;
+        idToForm = columnar ? null : new HashMap<>(2 * nForms);
+        for (int i = 0; i < nForms; i++) {
+            int id = in.buffer.getInt();
+            int langCode = in.buffer.getInt();
+            int[] paramCodes = new int[in.buffer.getInt()];
+            for (int p = 0; p < paramCodes.length; p++) {
+                paramCodes[p] = in.buffer.getInt();
+            }
+            String form = in.string();
+            String origValue = in.string();
+            String comment = in.string();
+            String orthography = in.string();
+            int nSegments = in.buffer.getInt();
+            int[] segments = nSegments < 0 ? null : new int[nSegments];
+            for (int s = 0; s < nSegments; s++) {
+                segments[s] = in.buffer.getInt();
+            }
+            Map<String, PString> properties = in.properties();
+            if (store != null && id == store.size()) {
+                store.add(langCode, paramCodes, form, origValue, comment, orthography, segments, properties);
+                continue;
+            } else if (store != null) {
+                // Form IDs with gaps cannot be store rows, fall back to objects.
+                idToForm = new HashMap<>(store.asMap());
+                store = null;
+            }
+            CLDFForm<Integer> formEntry = new CLDFForm<Integer>(id, symbols, langCode, paramCodes, form);
+            formEntry.setOrigValue(origValue);
+            formEntry.setComment(comment);
+            formEntry.setOrthography(orthography);
+            formEntry.setSegmentCodes(segments);
+            formEntry.setProperties(properties);
+            idToForm.put(id, formEntry);
+        }
+        if (store != null) {
+            idToForm = store.asMap();
+        }
+
+        int nLanguages = in.buffer.getInt();
+        Map<String, CLDFLanguage> languages = new HashMap<>(2 * nLanguages);
+        for (int i = 0; i < nLanguages; i++) {
+            CLDFLanguage language = new CLDFLanguage(in.string());
+            language.setIso(in.string());
+            language.setGlottocode(in.string());
+            language.setName(in.string());
+            language.setFamily(in.string());
+            language.setSubFamily(in.string());
+            language.setLatitude(in.buffer.getFloat());
+            language.setLongitude(in.buffer.getFloat());
+            language.setProperties(in.properties());
+            languages.put(language.getLangID(), language);
+        }
+
+        int nParameters = in.buffer.getInt();
+        Map<String, CLDFParameter> parameters = new HashMap<>(2 * nParameters);
+        for (int i = 0; i < nParameters; i++) {
+            CLDFParameter parameter = new CLDFParameter(in.string());
+            parameter.setName(in.string());
+            parameter.setConcepticonID(in.string());
+            parameter.setConcepticon(in.string());
+            parameter.setSemanticField(in.string());
+            parameter.setProperties(in.properties());
+            parameters.put(parameter.getParamID(), parameter);
+        }
+
+        int nJudgements = in.buffer.getInt();
+        Map<String, CLDFCognateJudgement<Integer, String, String>> judgements = new HashMap<>(2 * nJudgements);
+        for (int i = 0; i < nJudgements; i++) {
+            String id = in.string();
+            int formReference = in.buffer.getInt();
+            String cogset = symbols.cognatesets().name(symbols.cognatesets().intern(in.string()));
+            CLDFCognateJudgement<Integer, String, String> judgement = new CLDFCognateJudgement<Integer, String, String>(
+                    id, formReference < 0 ? null : formReference, cogset);
+            judgement.setProperties(in.properties());
+            judgements.put(id, judgement);
+        }
+
+        int nCogsets = in.buffer.getInt();
+        Map<String, CLDFCognateSet<String>> cogsets = new HashMap<>(2 * nCogsets);
+        for (int i = 0; i < nCogsets; i++) {
+            CLDFCognateSet<String> cogset = new CLDFCognateSet<String>(in.string());
+            cogset.setDescription(in.string());
+            cogset.setSources(in.strings());
+            cogset.setProperties(in.properties());
+            cogsets.put(cogset.getCogsetID(), cogset);
+        }
+
+        int nExceptions = in.buffer.getInt();
+        List<String[]> exceptions = nExceptions < 0 ? null : new ArrayList<>(nExceptions);
+        for (int i = 0; i < nExceptions; i++) {
+            exceptions.add(in.strings().toArray(new String[0]));
+        }
+
+        CLDFWordlistDatabase<Integer, String, String> database = new CLDFWordlistDatabase<Integer, String, String>(
+                idToForm, languages, parameters, judgements, cogsets, symbols);
+        database.setExceptions(exceptions);
+        return database;
+    }
+
+    private static void writeSymbols(DataOutputStream out, CLDFSymbolTable table) throws IOException {
+        writeStrings(out, table.names());
+    }
+
+    private static void readSymbols(Reader in, CLDFSymbolTable table) {
+        for (String name : in.strings()) {
+            table.intern(name);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        if (string == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeStrings(DataOutputStream out, List<String> strings) throws IOException {
+        if (strings == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(strings.size());
+        for (String string : strings) {
+            writeString(out, string);
+        }
+    }
+
+    private static void writeProperties(DataOutputStream out, Map<String, PString> properties) throws IOException {
+        if (properties == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(properties.size());
+        for (Map.Entry<String, PString> property : properties.entrySet()) {
+            writeString(out, property.getKey());
+            writeCell(out, property.getValue());
+        }
+    }
+
+    /**
+     * Write a cell in its parsed state, so that reading it back does not parse
+     * again: 0 for null, else 1 + its datatype, then the content, the separator,
+     * validity, and the value or list items.
+     */
+    private static void writeCell(DataOutputStream out, PString cell) throws IOException {
+        if (cell == null) {
+            out.writeByte(0);
+            return;
+        }
+        out.writeByte(1 + cell.getDatatype().ordinal());
+        writeString(out, cell.toString());
+        writeString(out, cell.getSeparator());
+        out.writeBoolean(cell.isValid());
+        String[] items = cell.items();
+        if (items == null) {
+            out.writeLong(cell.value());
+            return;
+        }
+        out.writeInt(items.length);
+        long[] values = cell.values();
+        for (int i = 0; i < items.length; i++) {
+            writeString(out, items[i]);
+            if (values != null) {
+                out.writeLong(values[i]);
+            }
+        }
+    }
+
+    /**
+     * Decodes the primitives of a snapshot from a buffer.
+     */
+    private static class Reader {
+        final ByteBuffer buffer;
+        private byte[] scratch = new byte[256];
+
+        Reader(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        String string() {
+            int length = buffer.getInt();
+            if (length < 0) {
+                return null;
+            }
+            if (length > scratch.length) {
+                scratch = new byte[Math.max(length, 2 * scratch.length)];
+            }
+            buffer.get(scratch, 0, length);
+            return new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+
+        List<String> strings() {
+            int count = buffer.getInt();
+            if (count < 0) {
+                return null;
+            }
+            List<String> strings = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                strings.add(string());
+            }
+            return strings;
+        }
+
+        Map<String, PString> properties() {
+            int count = buffer.getInt();
+            if (count < 0) {
+                return null;
+            }
+            Map<String, PString> properties = new HashMap<>(Math.max(2 * count, 1));
+            for (int i = 0; i < count; i++) {
+                String key = string();
+                properties.put(key, cell());
+            }
+            return properties;
+        }
+
+        PString cell() {
+            byte kind = buffer.get();
+            if (kind == 0) {
+                return null;
+            }
+            PString.Datatype datatype = PString.Datatype.values()[kind - 1];
+            String content = string();
+            String separator = string();
+            boolean valid = buffer.get() != 0;
+            if (separator == null) {
+                return new PString(content, null, datatype, null, null, buffer.getLong(), valid);
+            }
+            String[] items = new String[buffer.getInt()];
+            long[] values = datatype == PString.Datatype.STRING ? null : new long[items.length];
+            for (int i = 0; i < items.length; i++) {
+                items[i] = string();
+                if (values != null) {
+                    values[i] = buffer.getLong();
+                }
+            }
+            return new PString(content, separator, datatype, items, values, 0, valid);
+        }
+    }
+}
@@ -0,0 +1,341 @@
+package de.tuebingen.sfs.cldfjava.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+/**
+ * Writes synthetic CLDF wordlists of any size, for tests and benchmarks.
+ *
+ * A wordlist has a metadata JSON file, a FormTable with segments, and a
+ * LanguageTable, ParameterTable, CognateTable and CognatesetTable. The data is
+ * skewed roughly like real wordlists: a few languages and concepts have many
+ * more forms than the rest (by a Zipf distribution), some languages have
+ * synonyms for a concept, and the forms of a concept fall into a few large and
+ * many small cognate sets (by a Chinese restaurant process). The forms of one
+ * cognate set are variants of a common form.
+ *
+ * The same settings and seed always give the same files.
+ */
+public class CLDFWordlistGenerator {
+    static final String TERMS = "http://cldf.clld.org/v1.0/terms.rdf#";
+    static final String[] CONSONANTS = { "p", "t", "k", "b", "d", "g", "m", "n", "\u014b", "s", "\u0283", "x", "h",
+            "l", "r", "w", "j", "t\u0283", "ts", "p\u02b0" };
+    static final String[] VOWELS = { "a", "e", "i", "o", "u", "\u0259", "\u025b", "\u0254", "a\u02d0", "i\u02d0" };
+
+    private final int forms;
+    private int languages;
+    private int concepts;
+    private long seed = 1;
+    private double languageSkew = 0.7;
+    private double conceptSkew = 1.0;
+    private double synonymRate = 0.2;
+    private double cognateConcentration = 3;
+
+    /**
+     * @param forms the number of forms to write; the number of languages and
+     *              concepts grows with it, up to 2000 languages and 1000
+     *              concepts
+     */
+    public CLDFWordlistGenerator(int forms) {
+        this.forms = forms;
+        this.languages = Math.max(10, Math.min(2000, forms / 1000));
+        this.concepts = Math.max(100, Math.min(1000, forms / 100));
+    }
+
+    public void setLanguages(int languages) {
+        this.languages = languages;
+    }
+
+    public void setConcepts(int concepts) {
+        this.concepts = concepts;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * @param languageSkew the Zipf exponent of the number of forms per language; 0
+     *                     gives every language the same share
+     */
+    public void setLanguageSkew(double languageSkew) {
+        this.languageSkew = languageSkew;
+    }
+
+    /**
+     * @param conceptSkew the Zipf exponent of the number of forms per concept
+     */
+    public void setConceptSkew(double conceptSkew) {
+        this.conceptSkew = conceptSkew;
+    }
+
+    /**
+     * @param synonymRate the chance that a language has one more form for a
+     *                    concept, after each form
+     */
+    public void setSynonymRate(double synonymRate) {
+        this.synonymRate = synonymRate;
+    }
+
+    /**
+     * @param cognateConcentration how readily a form starts a new cognate set
+     *                             rather than joining one of its concept; the
+     *                             number of cognate sets of a concept grows with
+     *                             this times the log of its number of forms
+     */
+    public void setCognateConcentration(double cognateConcentration) {
+        this.cognateConcentration = cognateConcentration;
+    }
+
+    public int getForms() {
+        return forms;
+    }
+
+    public int getLanguages() {
+        return languages;
+    }
+
+    public int getConcepts() {
+        return concepts;
+    }
+
+    /**
+     * Write the wordlist into a directory.
+     *
+     * @return the metadata file, which is written last
+     */
+    public File write(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        SplittableRandom random = new SplittableRandom(seed);
+        writeLanguages(dir, random.split());
+        writeParameters(dir);
+        int cogsets = writeForms(dir, random.split());
+        writeCognatesets(dir, cogsets);
+        Path json = dir.resolve("Wordlist-metadata.json");
+        Files.write(json, metadata().getBytes(StandardCharsets.UTF_8));
+        return json.toFile();
+    }
+
+    private static Writer open(Path dir, String name) throws IOException {
+        return Files.newBufferedWriter(dir.resolve(name), StandardCharsets.UTF_8);
+    }
+
+    private void writeLanguages(Path dir, SplittableRandom random) throws IOException {
+        try (Writer out = open(dir, "languages.csv")) {
+            out.write("ID,Name,Glottocode,ISO639P3code,Latitude,Longitude\n");
+            for (int l = 0; l < languages; l++) {
+                out.write(String.format(Locale.ROOT, "lang%d,Language %d,%s,%s,%.4f,%.4f\n", l, l, glottocode(l), iso(l),
+                        random.nextDouble(-60, 70), random.nextDouble(-180, 180)));
+            }
+        }
+    }
+
+    /**
+     * The Glottocode the LanguageTable gives a language, for classifications to
+     * place the generated languages in.
+     *
+     * @param language the number of the language, from 0
+     * @return a unique code of four letters and four digits
+     */
+    public static String glottocode(int language) {
+        StringBuilder code = new StringBuilder();
+        int letters = language / 10000;
+        for (int i = 0; i < 4; i++) {
+            code.insert(0, (char) ('a' + letters % 26));
+            letters /= 26;
+        }
+        return code.append(String.format(Locale.ROOT, "%04d", language % 10000)).toString();
+    }
+
+    /**
+     * @return a code of three letters, unique for up to 17576 languages
+     */
+    static String iso(int language) {
+        return new String(new char[] { (char) ('a' + language / 676 % 26), (char) ('a' + language / 26 % 26),
+                (char) ('a' + language % 26) });
+    }
+
+    private void writeParameters(Path dir) throws IOException {
+        try (Writer out = open(dir, "parameters.csv")) {
+            out.write("ID,Name,Concepticon_ID\n");
+            for (int c = 0; c < concepts; c++) {
+                out.write("concept" + c + ",Concept " + c + "," + (c + 1) + "\n");
+            }
+        }
+    }
+
+    /**
+     * The cognate sets of one concept: their sizes, and the segments every
+     * member is a variant of.
+     */
+    private static class Cogsets {
+        int count = 0;
+        int members = 0;
+        int[] ids = new int[4];
+        int[] sizes = new int[4];
+        String[][] segments = new String[4][];
+
+        int add(int id, String[] base) {
+            if (count == ids.length) {
+                ids = Arrays.copyOf(ids, 2 * count);
+                sizes = Arrays.copyOf(sizes, 2 * count);
+                segments = Arrays.copyOf(segments, 2 * count);
+            }
+            ids[count] = id;
+            segments[count] = base;
+            return count++;
+        }
+    }
+
+    /**
+     * Write forms.csv and cognates.csv.
+     *
+     * @return the number of cognate sets
+     */
+    private int writeForms(Path dir, SplittableRandom random) throws IOException {
+        double[] languageWeights = zipf(languages, languageSkew);
+        double[] conceptWeights = zipf(concepts, conceptSkew);
+        Cogsets[] cogsets = new Cogsets[concepts];
+        int cogsetCount = 0;
+        try (Writer formsOut = open(dir, "forms.csv"); Writer cognatesOut = open(dir, "cognates.csv")) {
+            formsOut.write("ID,Language_ID,Parameter_ID,Form,Segments\n");
+            cognatesOut.write("ID,Form_ID,Cognateset_ID\n");
+            StringBuilder form = new StringBuilder();
+            StringBuilder segments = new StringBuilder();
+            int id = 0;
+            while (id < forms) {
+                int language = sample(languageWeights, random);
+                int concept = sample(conceptWeights, random);
+                Cogsets sets = cogsets[concept];
+                if (sets == null) {
+                    sets = cogsets[concept] = new Cogsets();
+                }
+                do {
+                    // Join a set with a chance by its size, or start a new one.
+                    int set;
+                    double draw = random.nextDouble() * (sets.members + cognateConcentration);
+                    if (draw >= sets.members) {
+                        set = sets.add(cogsetCount++, word(random));
+                    } else {
+                        set = 0;
+                        for (int seen = sets.sizes[0]; seen <= draw; seen += sets.sizes[set]) {
+                            set++;
+                        }
+                    }
+                    sets.sizes[set]++;
+                    sets.members++;
+
+                    form.setLength(0);
+                    segments.setLength(0);
+                    for (String segment : sets.segments[set]) {
+                        if (random.nextDouble() < 0.15) {
+                            segment = mutate(segment, random);
+                        }
+                        form.append(segment);
+                        segments.append(segments.length() == 0 ? "" : " ").append(segment);
+                    }
+                    formsOut.write("f" + id + ",lang" + language + ",concept" + concept + "," + form + "," + segments
+                            + "\n");
+                    cognatesOut.write("j" + id + ",f" + id + ",cogset" + sets.ids[set] + "\n");
+                    id++;
+                } while (id < forms && random.nextDouble() < synonymRate);
+            }
+        }
+        return cogsetCount;
+    }
+
+    private void writeCognatesets(Path dir, int cogsets) throws IOException {
+        try (Writer out = open(dir, "cognatesets.csv")) {
+            out.write("ID,Description\n");
+            for (int c = 0; c < cogsets; c++) {
+                out.write("cogset" + c + ",Cognate set " + c + "\n");
+            }
+        }
+    }
+
+    /**
+     * @return the cumulative weights of n ranks, with weight 1/rank^skew
+     */
+    static double[] zipf(int n, double skew) {
+        double[] cumulative = new double[n];
+        double total = 0;
+        for (int i = 0; i < n; i++) {
+            total += Math.pow(i + 1, -skew);
+            cumulative[i] = total;
+        }
+        return cumulative;
+    }
+
+    static int sample(double[] cumulative, SplittableRandom random) {
+        int found = Arrays.binarySearch(cumulative, random.nextDouble() * cumulative[cumulative.length - 1]);
+        return Math.min(cumulative.length - 1, found < 0 ? -found - 1 : found);
+    }
+
+    /**
+     * @return a random word of one to four syllables
+     */
+    static String[] word(SplittableRandom random) {
+        int syllables = 1 + random.nextInt(3) + (random.nextInt(4) == 0 ? 1 : 0);
+        String[] segments = new String[2 * syllables + (random.nextBoolean() ? 1 : 0)];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = i % 2 == 0 ? CONSONANTS[random.nextInt(CONSONANTS.length)]
+                    : VOWELS[random.nextInt(VOWELS.length)];
+        }
+        return segments;
+    }
+
+    /**
+     * @return a random segment of the same kind
+     */
+    static String mutate(String segment, SplittableRandom random) {
+        for (String vowel : VOWELS) {
+            if (vowel.equals(segment)) {
+                return VOWELS[random.nextInt(VOWELS.length)];
+            }
+        }
+        return CONSONANTS[random.nextInt(CONSONANTS.length)];
+    }
+
+    private String metadata() {
+        return "{\"dc:conformsTo\": \"" + TERMS + "Wordlist\",\n \"tables\": [\n"
+                + table("forms.csv", "FormTable", "ID:id", "Language_ID:languageReference",
+                        "Parameter_ID:parameterReference", "Form:form", "Segments:segments: ")
+                + ",\n"
+                + table("languages.csv", "LanguageTable", "ID:id", "Name:name", "Glottocode:glottocode",
+                        "ISO639P3code:iso639P3code", "Latitude:latitude", "Longitude:longitude")
+                + ",\n"
+                + table("parameters.csv", "ParameterTable", "ID:id", "Name:name",
+                        "Concepticon_ID:concepticonReference")
+                + ",\n"
+                + table("cognates.csv", "CognateTable", "ID:id", "Form_ID:formReference",
+                        "Cognateset_ID:cognatesetReference")
+                + ",\n"
+                + table("cognatesets.csv", "CognatesetTable", "ID:id", "Description:description")
+                + "\n]}\n";
+    }
+
+    /**
+     * @param columns each "name:term", or "name:term:separator"
+     */
+    private static String table(String url, String type, String... columns) {
+        StringBuilder json = new StringBuilder("  {\"url\": \"" + url + "\", \"dc:conformsTo\": \"" + TERMS + type
+                + "\",\n   \"tableSchema\": {\"columns\": [");
+        for (int c = 0; c < columns.length; c++) {
+            String[] column = columns[c].split(":", 3);
+            json.append(c == 0 ? "\n    " : ",\n    ");
+            json.append("{\"name\": \"" + column[0] + "\", \"propertyUrl\": \"" + TERMS + column[1] + "\"");
+            if (column.length > 2) {
+                json.append(", \"separator\": \"" + column[2] + "\"");
+            }
+            json.append("}");
+        }
+        return json.append("]}}").toString();
+    }
+}
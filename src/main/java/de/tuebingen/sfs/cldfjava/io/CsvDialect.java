@@ -0,0 +1,153 @@
+package de.tuebingen.sfs.cldfjava.io;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.csv.CSVFormat;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * The CSV dialect of a table, as described by the "dialect" of its CSVW
+ * description (https://www.w3.org/TR/tabular-metadata/#dialect-descriptions).
+ *
+ * Understood are delimiter, quoteChar, doubleQuote, encoding, header,
+ * headerRowCount, skipRows, trim and commentPrefix. A table without a dialect
+ * is read the way CLDF data is written: comma separated UTF-8 with one header
+ * row, quotes escaped by doubling, no comments, and cells kept as they are. A
+ * dialect that is given falls back to the CSVW defaults for what it leaves out,
+ * which differ from that in trimming cells and in skipping lines that start
+ * with "#".
+ */
+final class CsvDialect {
+    /**
+     * Which ends of a cell to strip whitespace from.
+     */
+    enum Trim {
+        NONE, START, END, BOTH
+    }
+
+    static final CsvDialect DEFAULT = new CsvDialect(",", '"', true, StandardCharsets.UTF_8, 1, 0, Trim.NONE, null);
+
+    final String delimiter;
+    final Character quoteChar; // null if cells are never quoted
+    final boolean doubleQuote; // if not, quotes are escaped by a backslash
+    final Charset encoding;
+    final int headerRowCount;
+    final int skipRows;
+    final Trim trim;
+    final String commentPrefix; // null if there are no comment lines
+
+    CsvDialect(String delimiter, Character quoteChar, boolean doubleQuote, Charset encoding, int headerRowCount,
+            int skipRows, Trim trim, String commentPrefix) {
+        this.delimiter = delimiter;
+        this.quoteChar = quoteChar;
+        this.doubleQuote = doubleQuote;
+        this.encoding = encoding;
+        this.headerRowCount = headerRowCount;
+        this.skipRows = skipRows;
+        this.trim = trim;
+        this.commentPrefix = commentPrefix;
+    }
+
+    /**
+     * @param table the CLDF table description in JSON
+     * @return the dialect of the table
+     */
+    static CsvDialect of(JsonNode table) {
+        JsonNode dialect = table.get("dialect");
+        if (dialect == null || !dialect.isObject()) {
+            return DEFAULT;
+        }
+        String delimiter = text(dialect, "delimiter", ",");
+        Character quoteChar = '"';
+        if (dialect.has("quoteChar")) {
+            String quote = dialect.get("quoteChar").isNull() ? "" : dialect.get("quoteChar").asText();
+            quoteChar = quote.isEmpty() ? null : quote.charAt(0);
+        }
+        boolean doubleQuote = !dialect.has("doubleQuote") || dialect.get("doubleQuote").asBoolean();
+        Charset encoding = Charset.forName(text(dialect, "encoding", "utf-8"));
+        boolean header = !dialect.has("header") || dialect.get("header").asBoolean();
+        int headerRowCount = dialect.has("headerRowCount") ? dialect.get("headerRowCount").asInt()
+                : header ? 1 : 0;
+        int skipRows = dialect.has("skipRows") ? dialect.get("skipRows").asInt() : 0;
+        Trim trim = Trim.BOTH;
+        if (dialect.has("trim")) {
+            String value = dialect.get("trim").asText();
+            trim = value.equals("start") ? Trim.START
+                    : value.equals("end") ? Trim.END : value.equals("false") ? Trim.NONE : Trim.BOTH;
+        }
+        String commentPrefix = "#";
+        if (dialect.has("commentPrefix")) {
+            commentPrefix = dialect.get("commentPrefix").isNull() ? "" : dialect.get("commentPrefix").asText();
+        }
+        return new CsvDialect(delimiter, quoteChar, doubleQuote, encoding, headerRowCount, skipRows, trim,
+                commentPrefix.isEmpty() ? null : commentPrefix);
+    }
+
+    private static String text(JsonNode dialect, String key, String fallback) {
+        JsonNode value = dialect.get(key);
+        return value == null || value.isNull() ? fallback : value.asText();
+    }
+
+    /**
+     * @return whether the byte-level tokenizer can read this dialect: an
+     *         encoding in which ASCII characters are single bytes that never
+     *         occur within other characters, and a delimiter, quote character and
+     *         comment prefix from ASCII
+     */
+    boolean bytewise() {
+        return asciiCompatible(encoding) && delimiter.length() == 1 && ascii(delimiter.charAt(0))
+                && (quoteChar == null || ascii(quoteChar)) && (commentPrefix == null || commentPrefix.chars()
+                        .allMatch(c -> ascii((char) c)));
+    }
+
+    private static boolean asciiCompatible(Charset encoding) {
+        if (encoding.equals(StandardCharsets.UTF_8)) {
+            return true;
+        }
+        if (encoding.newEncoder().maxBytesPerChar() != 1) {
+            return false;
+        }
+        byte[] ascii = new byte[0x80];
+        for (int c = 0; c < ascii.length; c++) {
+            ascii[c] = (byte) c;
+        }
+        return new String(ascii, encoding).equals(new String(ascii, StandardCharsets.US_ASCII));
+    }
+
+    private static boolean ascii(char c) {
+        return c < 0x80 && c != '\n' && c != '\r';
+    }
+
+    /**
+     * @return the format for commons-csv, without header handling, which the
+     *         table readers do themselves
+     */
+    CSVFormat format() {
+        CSVFormat.Builder format = CSVFormat.DEFAULT.builder().setDelimiter(delimiter).setQuote(quoteChar);
+        if (!doubleQuote) {
+            format.setEscape('\\');
+        }
+        if (commentPrefix != null && commentPrefix.length() == 1) {
+            format.setCommentMarker(commentPrefix.charAt(0));
+        }
+        return format.build();
+    }
+
+    /**
+     * @return the cell with whitespace stripped as the dialect asks
+     */
+    String trim(String cell) {
+        switch (trim) {
+        case BOTH:
+            return cell.strip();
+        case START:
+            return cell.stripLeading();
+        case END:
+            return cell.stripTrailing();
+        default:
+            return cell;
+        }
+    }
+}
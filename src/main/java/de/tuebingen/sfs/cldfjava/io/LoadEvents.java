@@ -0,0 +1,69 @@
+package de.tuebingen.sfs.cldfjava.io;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * The Java Flight Recorder events of loading a database. They cost nothing
+ * unless a recording is running, and then show the tables and phases of each
+ * load on the timeline of its threads.
+ */
+final class LoadEvents {
+    private LoadEvents() {
+    }
+
+    @Name("de.tuebingen.sfs.cldfjava.TableRead")
+    @Label("CLDF Table Read")
+    @Category("CLDF")
+    static class TableRead extends Event {
+        @Label("Type")
+        String type;
+        @Label("URL")
+        String url;
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+        @Label("Rows")
+        int rows;
+        @Label("Invalid Cells")
+        int invalidCells;
+        @Label("Rejected Rows")
+        long rejectedRows;
+        @Label("Tokenizing")
+        @Timespan
+        long tokenizeNanos;
+        @Label("Building")
+        @Timespan
+        long buildNanos;
+    }
+
+    @Name("de.tuebingen.sfs.cldfjava.LoadPhase")
+    @Label("CLDF Load Phase")
+    @Category("CLDF")
+    static class Phase extends Event {
+        @Label("Phase")
+        String phase;
+        @Label("Path")
+        String path;
+    }
+
+    @Name("de.tuebingen.sfs.cldfjava.Load")
+    @Label("CLDF Load")
+    @Category("CLDF")
+    static class Load extends Event {
+        @Label("Path")
+        String path;
+        @Label("From Snapshot")
+        boolean fromSnapshot;
+        @Label("Bytes Read")
+        @DataAmount
+        long bytes;
+        @Label("Estimated Heap")
+        @DataAmount
+        long estimatedHeap;
+    }
+}
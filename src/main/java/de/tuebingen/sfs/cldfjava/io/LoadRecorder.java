@@ -0,0 +1,290 @@
+package de.tuebingen.sfs.cldfjava.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+import de.tuebingen.sfs.cldfjava.data.CLDFLoadReport;
+import de.tuebingen.sfs.cldfjava.data.CLDFWordlistDatabase;
+
+/**
+ * Measures one load: times its phases and tables, counts the bytes read, tells
+ * the listener, emits the JFR events, and finally puts it all into a
+ * {@link CLDFLoadReport}.
+ */
+final class LoadRecorder {
+    // Rough retained sizes per row, on top of the text of the cells it keeps: a CLDFForm
+    // with its map entry, boxed ID and property map; a form in a CLDFFormStore;
+    // the other row objects; and the index entries of a form.
+    static final long FORM_OBJECT_BYTES = 240;
+    static final long FORM_COLUMNS_BYTES = 48;
+    static final long ROW_OBJECT_BYTES = 160;
+    static final long INDEX_BYTES_PER_FORM = 16;
+
+    private final String path;
+    private final CLDFImportListener listener;
+    private final List<String[]> exceptions;
+    private final long start = System.nanoTime();
+    private final List<CLDFLoadReport.Table> tables = Collections.synchronizedList(new ArrayList<>());
+    private final Map<String, Long> phases = new LinkedHashMap<>();
+    private final LoadEvents.Load event = new LoadEvents.Load();
+
+    /**
+     * @param exceptions the problems found by the load, to count the invalid
+     *                   cells of each table in
+     */
+    LoadRecorder(String path, CLDFImportListener listener, List<String[]> exceptions) {
+        this.path = path;
+        this.listener = listener;
+        this.exceptions = exceptions;
+        event.begin();
+    }
+
+    /**
+     * A phase of the load, from its creation until {@link #end()}.
+     */
+    class Phase {
+        private final String name;
+        private final long begin = System.nanoTime();
+        private final LoadEvents.Phase event = new LoadEvents.Phase();
+
+        Phase(String name) {
+            this.name = name;
+            // Enter the phase now, so phases are reported in the order they
+            // started, also those that end within others.
+            synchronized (phases) {
+                phases.putIfAbsent(name, 0L);
+            }
+            event.begin();
+        }
+
+        void end() {
+            long nanos = System.nanoTime() - begin;
+            synchronized (phases) {
+                phases.merge(name, nanos, Long::sum);
+            }
+            event.end();
+            if (event.shouldCommit()) {
+                event.phase = name;
+                event.path = path;
+                event.commit();
+            }
+            if (listener != null) {
+                listener.phaseFinished(name, nanos);
+            }
+        }
+    }
+
+    Phase phase(String name) {
+        return new Phase(name);
+    }
+
+    /**
+     * Reads a table from its source.
+     */
+    interface SourceReader<T> {
+        T read(TableSource source) throws IOException;
+    }
+
+    /**
+     * Where a table is read from, which keeps track of how many bytes were read,
+     * and of what reading them cost.
+     */
+    static class TableSource {
+        final URL url;
+        final TableReader.Costs costs = new TableReader.Costs();
+        private CountingInputStream stream = null;
+        private long fileBytes = 0;
+
+        TableSource(URL url) {
+            this.url = url;
+        }
+
+        /**
+         * @return the table as a stream; a FileInputStream for a file: url, which
+         *         the table readers map into memory instead of reading through it
+         */
+        InputStream open() throws IOException {
+            if (url.getProtocol().equals("file")) {
+                return new MeasuredFileInputStream(file(), costs);
+            }
+            stream = new CountingInputStream(url.openConnection().getInputStream(), costs);
+            return stream;
+        }
+
+        /**
+         * @return the local file of a file: url, read as a whole
+         */
+        File file() {
+            File file = CLDFImport.localFile(url).toFile();
+            fileBytes = file.length();
+            return file;
+        }
+
+        long bytes() {
+            return stream != null ? stream.count : fileBytes;
+        }
+    }
+
+    private static class MeasuredFileInputStream extends FileInputStream implements TableReader.Measured {
+        private final TableReader.Costs costs;
+
+        MeasuredFileInputStream(File file, TableReader.Costs costs) throws IOException {
+            super(file);
+            this.costs = costs;
+        }
+
+        @Override
+        public TableReader.Costs costs() {
+            return costs;
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream implements TableReader.Measured {
+        private final TableReader.Costs costs;
+        volatile long count = 0;
+
+        CountingInputStream(InputStream in, TableReader.Costs costs) {
+            super(in);
+            this.costs = costs;
+        }
+
+        @Override
+        public TableReader.Costs costs() {
+            return costs;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+
+    /**
+     * Wrap the reading of a table, to measure it.
+     *
+     * @param type   the CLDF type of the table
+     * @param url    the url of the table, as in the metadata
+     * @param source where to read the table from
+     * @param rows   the number of rows of what the reader returns
+     */
+    <T> CLDFImport.TableTask<T> table(String type, String url, URL source, SourceReader<T> reader,
+            ToIntFunction<T> rows) {
+        return () -> {
+            LoadEvents.TableRead event = new LoadEvents.TableRead();
+            event.begin();
+            long begin = System.nanoTime();
+            TableSource tableSource = new TableSource(source);
+            T result = reader.read(tableSource);
+            long nanos = System.nanoTime() - begin;
+            event.end();
+            TableReader.Costs costs = tableSource.costs;
+            CLDFLoadReport.Table table = new CLDFLoadReport.Table(type, url, tableSource.bytes(),
+                    rows.applyAsInt(result), invalidCells(url), nanos, costs.tokenizeNanos.sum(),
+                    costs.buildNanos.sum(), costs.cellBytes.sum(), costs.rejectedRows.sum());
+            tables.add(table);
+            if (event.shouldCommit()) {
+                event.type = type;
+                event.url = url;
+                event.bytes = table.getBytes();
+                event.rows = table.getRows();
+                event.invalidCells = table.getInvalidCells();
+                event.rejectedRows = table.getRejectedRows();
+                event.tokenizeNanos = table.getTokenizeNanos();
+                event.buildNanos = table.getBuildNanos();
+                event.commit();
+            }
+            if (listener != null) {
+                listener.tableRead(table);
+            }
+            return result;
+        };
+    }
+
+    /**
+     * Record a table that was not read through {@link #table}, such as a
+     * snapshot.
+     */
+    void table(CLDFLoadReport.Table table) {
+        tables.add(table);
+        if (listener != null) {
+            listener.tableRead(table);
+        }
+    }
+
+    private int invalidCells(String url) {
+        int count = 0;
+        synchronized (exceptions) {
+            for (String[] exception : exceptions) {
+                if (url.equals(exception[0])) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Finish the load of a database, and attach the report to it.
+     */
+    CLDFLoadReport finish(CLDFWordlistDatabase<?, ?, ?> database, boolean fromSnapshot) {
+        long forms = database.getFormsMap().size();
+        long heap = forms * (database.getFormStore() != null ? FORM_COLUMNS_BYTES : FORM_OBJECT_BYTES)
+                + forms * INDEX_BYTES_PER_FORM
+                + ROW_OBJECT_BYTES * ((long) database.getLanguageMap().size() + database.getConceptMap().size()
+                        + database.getCognateJudgementMap().size() + database.getCognatesetMap().size());
+        List<CLDFLoadReport.Table> read;
+        synchronized (tables) {
+            read = new ArrayList<>(tables);
+        }
+        for (CLDFLoadReport.Table table : read) {
+            heap += table.getCellBytes();
+        }
+        CLDFLoadReport report;
+        synchronized (phases) {
+            report = new CLDFLoadReport(path, fromSnapshot, read, phases, System.nanoTime() - start, heap);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.path = path;
+            event.fromSnapshot = fromSnapshot;
+            event.bytes = report.getBytesRead();
+            event.estimatedHeap = heap;
+            event.commit();
+        }
+        database.setLoadReport(report);
+        if (listener != null) {
+            listener.loadFinished(report);
+        }
+        return report;
+    }
+}
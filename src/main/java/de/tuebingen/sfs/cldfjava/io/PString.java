@@ -1,59 +1,462 @@
 package de.tuebingen.sfs.cldfjava.io;
 
-import java.util.Arrays;
+import java.util.AbstractList;
+import java.util.Collections;
 import java.util.List;
 
+import com.fasterxml.jackson.databind.JsonNode;
+
 /**
  * @author anaphory
  *
  */
 public class PString {
+    /**
+     * The CSVW datatypes a cell can have, by the primitive they are parsed into.
+     */
+    public enum Datatype {
+        STRING, INTEGER, DECIMAL, DOUBLE, BOOLEAN;
+
+        /**
+         * Map the name of a CSVW datatype to the primitive it is stored as. Derived
+         * integer types (int, nonNegativeInteger, ...) are all INTEGER, float is
+         * DOUBLE, and any type we do not know is read as STRING.
+         */
+        public static Datatype of(String name) {
+            if (name == null) {
+                return STRING;
+            }
+            switch (name) {
+            case "integer":
+            case "int":
+            case "long":
+            case "short":
+            case "byte":
+            case "nonNegativeInteger":
+            case "nonPositiveInteger":
+            case "positiveInteger":
+            case "negativeInteger":
+            case "unsignedLong":
+            case "unsignedInt":
+            case "unsignedShort":
+            case "unsignedByte":
+                return INTEGER;
+            case "decimal":
+                return DECIMAL;
+            case "double":
+            case "float":
+            case "number":
+                return DOUBLE;
+            case "boolean":
+                return BOOLEAN;
+            default:
+                return STRING;
+            }
+        }
+    }
+
+    private static final String[] NO_ITEMS = new String[0];
+    private static final String[] BOOLEAN_FORMAT = { "true|1", "false|0" };
+
     /**
      * The PSTring class contains a CLDF cell value.
-     * 
-     * Technically, this should somehow map onto CSVW's anyAtomicType (see
-     * https://w3c.github.io/csvw/metadata/#built-in-datatypes), but for now it
-     * supports only the types we have seen used in CLDF wordlists, namely string,
-     * lists of string (when a separator is given), and double (which is used for
-     * geocoordinates).
-     * 
-     */
-    private String separator;
-    private boolean isNumeric;
-    private String rawContent;
+     *
+     * It maps the cell onto CSVW's built-in datatypes (see
+     * https://w3c.github.io/csvw/metadata/#built-in-datatypes), as far as CLDF
+     * wordlists use them: strings, integers, decimals, doubles and booleans, and
+     * lists of those when the column has a separator. Cells are parsed once, when
+     * they are read, into primitive values; the accessors never parse again.
+     *
+     * A cell whose content does not fit its datatype keeps its raw content, and
+     * is marked as not valid. Empty cells are null in CSVW, so they are valid, and
+     * empty lists if the column has a separator.
+     *
+     */
+    private final String separator;
+    private final Datatype datatype;
+    private final String rawContent;
+    private final String[] items; // the split content of list cells, null otherwise
+    private final long[] values; // the parsed items of typed list cells, like value
+    private final long value; // a long, the bits of a double, or 1/0 for a boolean
+    private final boolean valid;
 
     public PString(String s) {
-        separator = null;
-        rawContent = s;
+        this(s, null);
     }
 
     public PString(String s, String sep) {
-        separator = sep;
-        rawContent = s;
+        this(s, sep, Datatype.STRING, null);
     }
 
     public PString(String s, boolean isInteger) {
-        isNumeric = true;
-        rawContent = s;
+        this(s, null, Datatype.DOUBLE, null);
+    }
+
+    /**
+     * Parse a cell.
+     *
+     * @param s             the raw content of the cell
+     * @param sep           the list separator, a literal string, or null
+     * @param datatype      the datatype of the cell, or of its items
+     * @param booleanFormat for booleans, the true and the false values, each a
+     *                      list of alternatives separated by "|"; null for the
+     *                      CSVW default
+     */
+    PString(String s, String sep, Datatype datatype, String[] booleanFormat) {
+        this.rawContent = s;
+        this.separator = sep;
+        this.datatype = datatype;
+        if (sep == null) {
+            this.items = null;
+            this.values = null;
+            long parsed = 0;
+            boolean ok = true;
+            if (datatype != Datatype.STRING && s != null && !s.isEmpty()) {
+                try {
+                    parsed = parse(s, datatype, booleanFormat);
+                } catch (NumberFormatException e) {
+                    parsed = invalid(datatype);
+                    ok = false;
+                }
+            }
+            this.value = parsed;
+            this.valid = ok;
+            return;
+        }
+        this.value = 0;
+        this.items = split(s, sep);
+        if (datatype == Datatype.STRING) {
+            this.values = null;
+            this.valid = true;
+            return;
+        }
+        this.values = new long[items.length];
+        boolean ok = true;
+        for (int i = 0; i < items.length; i++) {
+            try {
+                values[i] = parse(items[i], datatype, booleanFormat);
+            } catch (NumberFormatException e) {
+                values[i] = invalid(datatype);
+                ok = false;
+            }
+        }
+        this.valid = ok;
+    }
+
+    /**
+     * Restore a cell from its parsed state, as written by {@link CLDFSnapshot}.
+     */
+    PString(String s, String sep, Datatype datatype, String[] items, long[] values, long value, boolean valid) {
+        this.rawContent = s;
+        this.separator = sep;
+        this.datatype = datatype;
+        this.items = items;
+        this.values = values;
+        this.value = value;
+        this.valid = valid;
+    }
+
+    /**
+     * Create the parser for the cells of a column, from its description in the
+     * tableSchema.
+     */
+    static Parser parser(JsonNode column) {
+        JsonNode separatorNode = column.get("separator");
+        String separator = separatorNode == null || separatorNode.isNull() ? null : separatorNode.asText();
+        JsonNode datatypeNode = column.get("datatype");
+        String base = null;
+        String format = null;
+        if (datatypeNode != null && datatypeNode.isObject()) {
+            JsonNode baseNode = datatypeNode.get("base");
+            base = baseNode == null ? null : baseNode.asText();
+            JsonNode formatNode = datatypeNode.get("format");
+            format = formatNode == null || !formatNode.isTextual() ? null : formatNode.asText();
+        } else if (datatypeNode != null) {
+            base = datatypeNode.asText();
+        }
+        Datatype datatype = Datatype.of(base);
+        String[] booleanFormat = null;
+        if (datatype == Datatype.BOOLEAN && format != null) {
+            // The CSVW format of a boolean is "true-value|false-value".
+            int bar = format.indexOf('|');
+            if (bar > 0) {
+                booleanFormat = new String[] { format.substring(0, bar), format.substring(bar + 1) };
+            }
+        }
+        return new Parser(datatype, separator, booleanFormat);
+    }
+
+    /**
+     * Parses the cells of one column.
+     */
+    static class Parser {
+        final Datatype datatype;
+        final String separator;
+        final String[] booleanFormat;
+
+        Parser(Datatype datatype, String separator, String[] booleanFormat) {
+            this.datatype = datatype;
+            this.separator = separator;
+            this.booleanFormat = booleanFormat;
+        }
+
+        PString parse(String s) {
+            return new PString(s, separator, datatype, booleanFormat);
+        }
+    }
+
+    /**
+     * Split a list cell at a literal separator. An empty cell is an empty list.
+     */
+    private static String[] split(String s, String sep) {
+        if (s == null || s.isEmpty()) {
+            return NO_ITEMS;
+        }
+        if (sep.isEmpty()) {
+            return new String[] { s };
+        }
+        int count = 1;
+        for (int at = s.indexOf(sep); at >= 0; at = s.indexOf(sep, at + sep.length())) {
+            count++;
+        }
+        String[] result = new String[count];
+        int start = 0;
+        for (int i = 0; i < count - 1; i++) {
+            int end = s.indexOf(sep, start);
+            result[i] = s.substring(start, end);
+            start = end + sep.length();
+        }
+        result[count - 1] = s.substring(start);
+        return result;
+    }
+
+    /**
+     * Parse one atomic value of a datatype other than STRING.
+     *
+     * @return the value, as stored in {@link #value}
+     * @throws NumberFormatException if the value does not fit the datatype
+     */
+    private static long parse(String s, Datatype datatype, String[] booleanFormat) {
+        switch (datatype) {
+        case INTEGER:
+            return Long.parseLong(s.trim());
+        case DECIMAL:
+        case DOUBLE:
+            return Double.doubleToRawLongBits(parseDouble(s.trim(), datatype));
+        case BOOLEAN:
+            String[] format = booleanFormat == null ? BOOLEAN_FORMAT : booleanFormat;
+            if (matches(s, format[0])) {
+                return 1;
+            } else if (matches(s, format[1])) {
+                return 0;
+            }
+            throw new NumberFormatException(s);
+        default:
+            return 0;
+        }
+    }
+
+    private static long invalid(Datatype datatype) {
+        return datatype == Datatype.INTEGER || datatype == Datatype.BOOLEAN ? 0
+                : Double.doubleToRawLongBits(Double.NaN);
+    }
+
+    private static double parseDouble(String s, Datatype datatype) {
+        if (datatype == Datatype.DOUBLE) {
+            // The XSD spellings of the special values, which Java does not know.
+            switch (s) {
+            case "INF":
+                return Double.POSITIVE_INFINITY;
+            case "-INF":
+                return Double.NEGATIVE_INFINITY;
+            case "NaN":
+                return Double.NaN;
+            }
+        }
+        for (int c = 0; c < s.length(); c++) {
+            char ch = s.charAt(c);
+            // Double.parseDouble also takes "Infinity", hex floats and a type suffix.
+            if (!(ch >= '0' && ch <= '9' || ch == '.' || ch == '-' || ch == '+'
+                    || datatype == Datatype.DOUBLE && (ch == 'e' || ch == 'E'))) {
+                throw new NumberFormatException(s);
+            }
+        }
+        return Double.parseDouble(s);
+    }
+
+    private static boolean matches(String s, String alternatives) {
+        int start = 0;
+        while (start <= alternatives.length()) {
+            int end = alternatives.indexOf('|', start);
+            if (end < 0) {
+                end = alternatives.length();
+            }
+            if (s.length() == end - start && alternatives.startsWith(s, start)) {
+                return true;
+            }
+            start = end + 1;
+        }
+        return false;
     }
 
     public String toString() {
         return rawContent;
     }
 
+    /**
+     * @return the list separator of this cell, or null if it is not a list
+     */
+    String getSeparator() {
+        return separator;
+    }
+
+    public Datatype getDatatype() {
+        return datatype;
+    }
+
+    /**
+     * @return false if the content, or any list item, does not fit the datatype
+     */
+    public boolean isValid() {
+        return valid;
+    }
+
+    public boolean isList() {
+        return items != null;
+    }
+
+    /**
+     * @return the number of list items, or 1 for a cell that is not a list
+     */
+    public int size() {
+        return items == null ? 1 : items.length;
+    }
+
+    /**
+     * @return the i-th list item, or the content for i = 0 if the cell is not a
+     *         list
+     */
+    public String get(int i) {
+        if (items == null) {
+            if (i != 0) {
+                throw new IndexOutOfBoundsException(i);
+            }
+            return rawContent;
+        }
+        return items[i];
+    }
+
+    /**
+     * @return the list items, or the content as only element if the cell is not a
+     *         list, as a read-only list backed by this cell
+     */
     public List<String> toStringList() {
-        if (separator == null) {
-            return Arrays.asList(new String[] { rawContent });
-        } else {
-            return Arrays.asList(rawContent.split(separator));
+        if (items == null) {
+            return Collections.singletonList(rawContent);
         }
+        return new AbstractList<String>() {
+            @Override
+            public String get(int index) {
+                return items[index];
+            }
+
+            @Override
+            public int size() {
+                return items.length;
+            }
+        };
     }
 
+    /**
+     * @return the numeric value, or NaN if the cell is not a number, empty or
+     *         invalid
+     */
     public double toDouble() {
-        if (isNumeric) {
-            return Double.valueOf(rawContent);
-        } else {
+        if (items != null || rawContent == null || rawContent.isEmpty()) {
+            return Double.NaN;
+        }
+        return asDouble(value);
+    }
+
+    /**
+     * @return the numeric value of the i-th list item, or NaN
+     */
+    public double toDouble(int i) {
+        if (items == null) {
+            if (i != 0) {
+                throw new IndexOutOfBoundsException(i);
+            }
+            return toDouble();
+        }
+        if (values == null) {
+            return Double.NaN;
+        }
+        return asDouble(values[i]);
+    }
+
+    private double asDouble(long bits) {
+        switch (datatype) {
+        case INTEGER:
+            return valid ? bits : Double.NaN;
+        case DECIMAL:
+        case DOUBLE:
+            return Double.longBitsToDouble(bits);
+        default:
             return Double.NaN;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * @return the value of an integer cell
+     * @throws IllegalStateException if the cell is not a valid, non-empty integer
+     */
+    public long toLong() {
+        if (datatype != Datatype.INTEGER || items != null || !valid || rawContent == null || rawContent.isEmpty()) {
+            throw new IllegalStateException("Not an integer: " + rawContent);
+        }
+        return value;
+    }
+
+    /**
+     * @return the value of the i-th item of an integer list
+     * @throws IllegalStateException if the cell is not an integer list
+     */
+    public long toLong(int i) {
+        if (items == null) {
+            if (i != 0) {
+                throw new IndexOutOfBoundsException(i);
+            }
+            return toLong();
+        }
+        if (datatype != Datatype.INTEGER) {
+            throw new IllegalStateException("Not an integer list: " + rawContent);
+        }
+        return values[i];
+    }
+
+    /**
+     * @return the value of a boolean cell
+     * @throws IllegalStateException if the cell is not a valid, non-empty boolean
+     */
+    public boolean toBoolean() {
+        if (datatype != Datatype.BOOLEAN || items != null || !valid || rawContent == null || rawContent.isEmpty()) {
+            throw new IllegalStateException("Not a boolean: " + rawContent);
+        }
+        return value != 0;
+    }
+
+    /**
+     * The parsed state, for {@link CLDFSnapshot}.
+     */
+    String[] items() {
+        return items;
+    }
+
+    long[] values() {
+        return values;
+    }
+
+    long value() {
+        return value;
+    }
+}
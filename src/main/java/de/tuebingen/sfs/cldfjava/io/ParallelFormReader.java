@@ -0,0 +1,295 @@
+package de.tuebingen.sfs.cldfjava.io;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import de.tuebingen.sfs.cldfjava.data.CLDFForm;
+import de.tuebingen.sfs.cldfjava.data.CLDFSymbols;
+
+/**
+ * Reads a FormTable from a local file in several chunks at once.
+ *
+ * The file is cut into byte ranges that start and end on record boundaries. To
+ * find those, a single cheap pass over the raw bytes tracks whether we are
+ * inside a quoted cell or a comment line, so that newlines inside quotes never
+ * split a record. The chunks are then mapped into memory and tokenized
+ * independently by a {@link ByteTableReader} on a ForkJoinPool, each numbering
+ * its forms from 0 and interning their language, parameter and segment IDs in
+ * symbol tables of its own. {@link CLDFImport#mergeChunks} finally renumbers
+ * the forms and merges the symbol tables in file order, so that both the form
+ * IDs and the codes are exactly those a sequential
+ * {@link CLDFImport#readFormCsv} would assign.
+ *
+ * Only dialects the byte-level tokenizer reads, with quotes escaped by doubling
+ * and comment prefixes of at most one character, can be cut into chunks; other
+ * tables are read in one piece.
+ */
+class ParallelFormReader {
+    static final int MIN_CHUNK_SIZE = 1 << 20;
+    static final int MAX_CHUNK_SIZE = 1 << 26;
+    private static final int SCAN_BUFFER_SIZE = 1 << 16;
+
+    // The states of the boundary scan.
+    private static final int CELL_START = 0;
+    private static final int UNQUOTED = 1;
+    private static final int QUOTED = 2;
+    private static final int QUOTE_IN_QUOTED = 3;
+    private static final int COMMENT = 4;
+
+    private final Path file;
+    private final JsonNode table;
+    private final CLDFSymbols symbols;
+    private final List<String[]> errors;
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+    private CLDFFilter.Keys keys = null;
+    private TableReader.Costs costs = null;
+
+    /**
+     * The forms parsed from one chunk, with IDs local to the chunk.
+     */
+    static class Chunk {
+        final List<CLDFForm<Integer>> forms = new ArrayList<>();
+        final List<String> originalIDs = new ArrayList<>();
+        // The symbols the codes of the forms refer to.
+        final CLDFSymbols symbols;
+
+        Chunk(CLDFSymbols symbols) {
+            this.symbols = symbols;
+        }
+    }
+
+    /**
+     * @param errors the list to report cells that do not fit their datatype to,
+     *               which must be safe to add to from several threads, or null
+     */
+    ParallelFormReader(Path file, JsonNode table, CLDFSymbols symbols, List<String[]> errors, ForkJoinPool pool)
+            throws IOException {
+        this(file, table, symbols, errors, pool, defaultChunkSize(file, pool));
+    }
+
+    ParallelFormReader(Path file, JsonNode table, CLDFSymbols symbols, List<String[]> errors, ForkJoinPool pool,
+            int chunkSize) {
+        this.file = file;
+        this.table = table;
+        this.symbols = symbols;
+        this.errors = errors;
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Only keep the forms of some languages and concepts, skipping the other rows
+     * before anything is built for them.
+     *
+     * @param keys the languages and concepts to keep, or null to keep all
+     */
+    ParallelFormReader filter(CLDFFilter.Keys keys) {
+        this.keys = keys;
+        return this;
+    }
+
+    /**
+     * Measure what reading the chunks costs, see {@link TableReader.Costs}.
+     *
+     * @param costs the costs to add to, or null
+     */
+    ParallelFormReader measure(TableReader.Costs costs) {
+        this.costs = costs;
+        return this;
+    }
+
+    private static int defaultChunkSize(Path file, ForkJoinPool pool) throws IOException {
+        // A few chunks per worker, to even out rows of different lengths.
+        long perTask = Files.size(file) / (4L * pool.getParallelism());
+        return (int) Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, perTask));
+    }
+
+    /**
+     * @return whether a table in this dialect can be cut into chunks
+     */
+    static boolean supports(CsvDialect dialect) {
+        return TableReader.byteTokenizer && dialect.bytewise() && dialect.doubleQuote
+                && (dialect.commentPrefix == null || dialect.commentPrefix.length() == 1);
+    }
+
+    /**
+     * Parse all chunks and return them in file order.
+     */
+    List<Chunk> read() throws IOException {
+        CsvDialect dialect = CsvDialect.of(table);
+        if (!supports(dialect)) {
+            try (TableReader reader = TableReader.open(new FileInputStream(file.toFile()), table)) {
+                CLDFImport.FormBinder binder = new CLDFImport.FormBinder(
+                        TableSchema.compile(table, reader.header(), errors), symbols, keys);
+                reader.measure(costs);
+                return List.of(parseRows(reader, binder));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // The skipped rows and the header are read like in any table, up to
+            // where the records start.
+            List<String> header;
+            long data;
+            try (ByteTableReader reader = new ByteTableReader(FileChannel.open(file, StandardOpenOption.READ),
+                    dialect)) {
+                reader.readHeader(table, dialect);
+                header = reader.header();
+                data = reader.offset();
+            }
+            long[] bounds = recordBoundaries(channel, data, chunkSize, dialect);
+            // All chunks share the compiled, immutable schema and the thread-safe
+            // error list, but each interns IDs in symbol tables of its own.
+            TableSchema schema = TableSchema.compile(table, header, errors);
+
+            List<ForkJoinTask<Chunk>> tasks = new ArrayList<>();
+            for (int c = 0; c + 1 < bounds.length; c++) {
+                long start = bounds[c];
+                long end = bounds[c + 1];
+                CLDFImport.FormBinder binder = new CLDFImport.FormBinder(schema, new CLDFSymbols(), keys);
+                tasks.add(pool.submit(() -> parseChunk(channel, start, end, dialect, header, binder, costs)));
+            }
+            List<Chunk> chunks = new ArrayList<>(tasks.size());
+            for (ForkJoinTask<Chunk> task : tasks) {
+                chunks.add(task.join());
+            }
+            return chunks;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Find record boundaries roughly every chunkSize bytes.
+     *
+     * @param start the offset at which the records start, after the header
+     * @return the start, the chosen boundaries, and the size of the file, in
+     *         increasing order
+     */
+    static long[] recordBoundaries(FileChannel channel, long start, int chunkSize, CsvDialect dialect)
+            throws IOException {
+        List<Long> bounds = new ArrayList<>();
+        long size = channel.size();
+        bounds.add(start);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(SCAN_BUFFER_SIZE);
+        byte delimiter = (byte) dialect.delimiter.charAt(0);
+        boolean quoting = dialect.quoteChar != null;
+        byte quote = quoting ? (byte) dialect.quoteChar.charValue() : 0;
+        boolean commenting = dialect.commentPrefix != null;
+        byte comment = commenting ? (byte) dialect.commentPrefix.charAt(0) : 0;
+        int state = CELL_START;
+        boolean recordStart = true;
+        long next = start + chunkSize; // the first offset at which we may cut again
+        long position = start;
+        while (position < size) {
+            buffer.clear();
+            int n = channel.read(buffer, position);
+            if (n < 0) {
+                break;
+            }
+            buffer.flip();
+            for (int i = 0; i < n; i++) {
+                byte b = buffer.get(i);
+                switch (state) {
+                case COMMENT:
+                    // Quotes in a comment line are not quotes.
+                    if (b == '\n') {
+                        state = CELL_START;
+                        recordStart = true;
+                    }
+                    continue;
+                case QUOTED:
+                    if (b == quote) {
+                        state = QUOTE_IN_QUOTED;
+                    }
+                    continue;
+                case QUOTE_IN_QUOTED:
+                    if (b == quote) {
+                        // An escaped quote.
+                        state = QUOTED;
+                        continue;
+                    }
+                    // The quote closed the cell, and this byte follows it.
+                    state = UNQUOTED;
+                    break;
+                default:
+                    break;
+                }
+                if (state == CELL_START && recordStart && commenting && b == comment) {
+                    state = COMMENT;
+                } else if (state == CELL_START && quoting && b == quote) {
+                    // Like the tokenizer, a quote only opens a quoted cell at its start;
+                    // anywhere else in an unquoted cell it is literal.
+                    state = QUOTED;
+                    recordStart = false;
+                } else if (b == delimiter) {
+                    state = CELL_START;
+                    recordStart = false;
+                } else if (b == '\n' || b == '\r') {
+                    state = CELL_START;
+                    recordStart = true;
+                    long boundary = position + i + 1;
+                    if (b == '\n' && boundary >= next && boundary < size) {
+                        bounds.add(boundary);
+                        next = boundary + chunkSize;
+                    }
+                } else {
+                    state = UNQUOTED;
+                    recordStart = false;
+                }
+            }
+            position += n;
+        }
+        bounds.add(size);
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+
+    private static ByteBuffer mapRange(FileChannel channel, long start, long end) {
+        try {
+            return channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Chunk parseChunk(FileChannel channel, long start, long end, CsvDialect dialect,
+            List<String> header, CLDFImport.FormBinder binder, TableReader.Costs costs) {
+        ByteTableReader reader = new ByteTableReader(mapRange(channel, start, end), dialect);
+        reader.setHeader(header);
+        reader.measure(costs);
+        return parseRows(reader, binder);
+    }
+
+    private static Chunk parseRows(TableReader reader, CLDFImport.FormBinder binder) {
+        Chunk chunk = new Chunk(binder.symbols);
+        int i = -1;
+        for (TableRow row : reader) {
+            List<String> paramIDs = binder.accept(row);
+            if (paramIDs == null) {
+                reader.reject();
+                continue;
+            }
+            chunk.forms.add(binder.bind(++i, row, paramIDs));
+            chunk.originalIDs.add(binder.originalID(row));
+        }
+        return chunk;
+    }
+}
@@ -0,0 +1,355 @@
+package de.tuebingen.sfs.cldfjava.io;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Reads the records of a CSV table in its dialect (see {@link CsvDialect}),
+ * positioned after the skipped rows and the header.
+ *
+ * Dialects the byte-level tokenizer understands are read by a
+ * {@link ByteTableReader}, all others by commons-csv. The header gives the
+ * column names, from the first header row if there are several; a table
+ * without a header row has the columns of its tableSchema, in order.
+ *
+ * Iterating hands out rows that may be reused, see {@link TableRow}. Use
+ * {@link #stream(Function)} to turn each row into something to keep.
+ *
+ * A reader can measure what reading its table costs (see {@link Costs}): the
+ * time spent tokenizing records, the time spent between handing out a record
+ * and being asked for the next one, which is what turning the record into
+ * objects takes, the bytes of the cells that were actually decoded, and the
+ * records the caller rejected.
+ */
+abstract class TableReader implements Iterable<TableRow>, Closeable {
+    // Only to compare the two tokenizers, see CLDFImport.setByteTokenizer.
+    static volatile boolean byteTokenizer = true;
+
+    private List<String> header = Collections.emptyList();
+    private TableRow next = null;
+    private boolean started = false;
+
+    /**
+     * What reading tables costs, added up over all readers measured into it, which
+     * may run on different threads.
+     */
+    static final class Costs {
+        final LongAdder tokenizeNanos = new LongAdder();
+        final LongAdder buildNanos = new LongAdder();
+        final LongAdder cellBytes = new LongAdder();
+        final LongAdder rejectedRows = new LongAdder();
+    }
+
+    /**
+     * A stream whose tables are measured, see {@link LoadRecorder.TableSource}.
+     */
+    interface Measured {
+        Costs costs();
+    }
+
+    private Costs costs = null;
+    // The costs so far, kept here and only added to the shared ones at the end.
+    private long tokenizeNanos = 0;
+    private long buildNanos = 0;
+    private long handedOut = 0;
+    private long rejectedRows = 0;
+    private boolean building = false;
+    /**
+     * The bytes (or for decoded input, characters) of the cells decoded so far,
+     * which subclasses count.
+     */
+    long cellBytes = 0;
+
+    /**
+     * Open a table for reading, and read its header.
+     *
+     * @param stream the stream to read the table from, which is closed with the
+     *               reader; a FileInputStream is memory-mapped
+     * @param table  the CLDF table description in JSON
+     */
+    static TableReader open(InputStream stream, JsonNode table) throws IOException {
+        CsvDialect dialect = CsvDialect.of(table);
+        TableReader reader;
+        if (!byteTokenizer || !dialect.bytewise()) {
+            reader = new CommonsReader(stream, dialect);
+        } else if (stream instanceof FileInputStream) {
+            // A local file is mapped instead of read, from where the stream is on.
+            reader = new ByteTableReader(((FileInputStream) stream).getChannel(), dialect);
+        } else {
+            reader = new ByteTableReader(stream, dialect);
+        }
+        if (stream instanceof Measured) {
+            reader.measure(((Measured) stream).costs());
+        }
+        try {
+            reader.readHeader(table, dialect);
+        } catch (IOException | RuntimeException e) {
+            reader.close();
+            throw e;
+        }
+        return reader;
+    }
+
+    void readHeader(JsonNode table, CsvDialect dialect) throws IOException {
+        try {
+            readHeaderRows(table, dialect);
+        } finally {
+            // The header is no part of the database.
+            cellBytes = 0;
+        }
+    }
+
+    private void readHeaderRows(JsonNode table, CsvDialect dialect) throws IOException {
+        for (int i = 0; i < dialect.skipRows; i++) {
+            if (!skipLine()) {
+                break;
+            }
+        }
+        if (dialect.headerRowCount == 0) {
+            List<String> columns = new ArrayList<>();
+            for (JsonNode column : table.get("tableSchema").get("columns")) {
+                if (!column.path("virtual").asBoolean()) {
+                    columns.add(column.get("name").asText());
+                }
+            }
+            header = columns;
+            return;
+        }
+        for (int i = 0; i < dialect.headerRowCount; i++) {
+            TableRow row = nextRow();
+            if (row == null) {
+                break;
+            }
+            if (i == 0) {
+                List<String> names = new ArrayList<>(row.size());
+                for (int column = 0; column < row.size(); column++) {
+                    names.add(row.get(column));
+                }
+                header = names;
+            }
+        }
+    }
+
+    /**
+     * Measure the records read from now on into some costs.
+     *
+     * @param costs the costs to add to, or null to stop measuring
+     */
+    void measure(Costs costs) {
+        this.costs = costs;
+    }
+
+    /**
+     * Count the record last handed out as one that is not kept, such as a form a
+     * filter skips.
+     */
+    void reject() {
+        rejectedRows++;
+    }
+
+    /**
+     * Add the costs measured so far to the shared ones.
+     */
+    private void report() {
+        if (costs != null) {
+            costs.tokenizeNanos.add(tokenizeNanos);
+            costs.buildNanos.add(buildNanos);
+            costs.cellBytes.add(cellBytes);
+            costs.rejectedRows.add(rejectedRows);
+        }
+        rejectedRows = 0;
+        tokenizeNanos = 0;
+        buildNanos = 0;
+        cellBytes = 0;
+        building = false;
+    }
+
+    /**
+     * @return the column names, in the order of the cells in each row
+     */
+    List<String> header() {
+        return header;
+    }
+
+    void setHeader(List<String> header) {
+        this.header = header;
+    }
+
+    /**
+     * Skip a line of the input as it is, ignoring quotes.
+     *
+     * @return false if there was no line left
+     */
+    abstract boolean skipLine() throws IOException;
+
+    /**
+     * @return the next record, or null at the end of the table
+     */
+    abstract TableRow nextRow() throws IOException;
+
+    @Override
+    public Iterator<TableRow> iterator() {
+        return new Iterator<TableRow>() {
+            @Override
+            public boolean hasNext() {
+                if (!started) {
+                    long begin = costs == null ? 0 : System.nanoTime();
+                    try {
+                        next = nextRow();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    started = true;
+                    if (costs != null) {
+                        long end = System.nanoTime();
+                        tokenizeNanos += end - begin;
+                        if (building) {
+                            buildNanos += begin - handedOut;
+                        }
+                        handedOut = end;
+                        building = true;
+                        if (next == null) {
+                            report();
+                        }
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public TableRow next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                started = false;
+                return next;
+            }
+        };
+    }
+
+    /**
+     * Stream what each row turns into. Rows are turned as they are read, so the
+     * stream may be made parallel.
+     */
+    <T> Stream<T> stream(Function<TableRow, T> turn) {
+        Iterator<TableRow> rows = iterator();
+        Iterator<T> turned = new Iterator<T>() {
+            @Override
+            public boolean hasNext() {
+                return rows.hasNext();
+            }
+
+            @Override
+            public T next() {
+                return turn.apply(rows.next());
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(turned, Spliterator.ORDERED), false)
+                .onClose(() -> {
+                    try {
+                        close();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+
+    /**
+     * Reads any dialect with commons-csv.
+     */
+    private static class CommonsReader extends TableReader {
+        private final BufferedReader input;
+        private final CsvDialect dialect;
+        private Iterator<CSVRecord> records = null;
+        private CSVParser parser = null;
+        private boolean begun = false;
+
+        CommonsReader(InputStream stream, CsvDialect dialect) {
+            this.input = new BufferedReader(new InputStreamReader(stream, dialect.encoding));
+            this.dialect = dialect;
+        }
+
+        /**
+         * Skip the byte order mark a UTF-8 file may start with; decoders of other
+         * Unicode encodings drop it themselves.
+         */
+        private void begin() throws IOException {
+            if (begun) {
+                return;
+            }
+            begun = true;
+            input.mark(1);
+            if (input.read() != '\uFEFF') {
+                input.reset();
+            }
+        }
+
+        @Override
+        boolean skipLine() throws IOException {
+            begin();
+            // The parser buffers its input, so lines can only be skipped before it
+            // starts.
+            return records == null && input.readLine() != null;
+        }
+
+        @Override
+        TableRow nextRow() throws IOException {
+            if (records == null) {
+                begin();
+                parser = CSVParser.parse(input, dialect.format());
+                records = parser.iterator();
+            }
+            while (records.hasNext()) {
+                CSVRecord record = records.next();
+                // commons-csv only knows comment markers of one character.
+                if (dialect.commentPrefix != null && dialect.commentPrefix.length() > 1
+                        && record.get(0).startsWith(dialect.commentPrefix)) {
+                    continue;
+                }
+                return new TableRow() {
+                    @Override
+                    public int size() {
+                        return record.size();
+                    }
+
+                    @Override
+                    public String get(int column) {
+                        String cell = record.get(column);
+                        cellBytes += cell.length();
+                        return dialect.trim(cell);
+                    }
+                };
+            }
+            return null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (parser != null) {
+                parser.close();
+            }
+            input.close();
+        }
+    }
+}
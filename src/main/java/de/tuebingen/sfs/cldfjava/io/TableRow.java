@@ -0,0 +1,19 @@
+package de.tuebingen.sfs.cldfjava.io;
+
+/**
+ * One record of a CSV table, as handed out by a {@link TableReader}. A row may
+ * be reused by its reader, so it is only valid until the next row is read.
+ */
+interface TableRow {
+    /**
+     * @return the number of cells in the record
+     */
+    int size();
+
+    /**
+     * @param column the position of a cell in the record
+     * @return the cell, trimmed as the dialect asks
+     * @throws IndexOutOfBoundsException if the record has no such cell
+     */
+    String get(int column);
+}
@@ -0,0 +1,236 @@
+package de.tuebingen.sfs.cldfjava.io;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import de.tuebingen.sfs.cldfjava.io.CLDFImport.CellReader;
+
+/**
+ * The tableSchema of a CLDF table, compiled against the header of one CSV file.
+ *
+ * Every declared column gets a fixed slot, which knows the position of the
+ * column in the CSV records and how to turn a cell into a PString. The table
+ * readers look up the slots of the properties they understand once, and then
+ * read every row by position, without building an intermediate map per row.
+ */
+class TableSchema {
+    private final String[] properties; // the property (or column name) of each slot
+    private final int[] positions; // the CSV column of each slot, -1 if the file lacks it
+    private final CellReader[] readers;
+    private final Map<String, Integer> slots;
+
+    private TableSchema(List<String> properties, List<Integer> positions, List<CellReader> readers) {
+        this.properties = properties.toArray(new String[0]);
+        this.positions = new int[positions.size()];
+        for (int i = 0; i < this.positions.length; i++) {
+            this.positions[i] = positions.get(i);
+        }
+        this.readers = readers.toArray(new CellReader[0]);
+        this.slots = new HashMap<>();
+        for (int i = 0; i < this.properties.length; i++) {
+            this.slots.put(this.properties[i], i);
+        }
+    }
+
+    /**
+     * Compile the "tableSchema" of a table description against the actual header
+     * of the CSV file.
+     *
+     * @param table          the CLDF table description in JSON
+     * @param column_headers the column names in the order found in the CSV file
+     * @return the compiled schema
+     */
+    static TableSchema compile(JsonNode table, List<String> column_headers) {
+        return compile(table, column_headers, null);
+    }
+
+    /**
+     * Compile the "tableSchema" of a table description against the actual header
+     * of the CSV file, reporting cells that do not fit their datatype.
+     *
+     * @param table          the CLDF table description in JSON
+     * @param column_headers the column names in the order found in the CSV file
+     * @param errors         the list to add invalid cells to, as {table url,
+     *                       column name, cell content, message}; must be safe to
+     *                       add to from several threads. May be null.
+     * @return the compiled schema
+     */
+    static TableSchema compile(JsonNode table, List<String> column_headers, List<String[]> errors) {
+        List<String> properties = new ArrayList<>();
+        List<Integer> positions = new ArrayList<>();
+        List<CellReader> readers = new ArrayList<>();
+        JsonNode urlNode = table.get("url");
+        String url = urlNode == null ? null : urlNode.asText();
+
+        Iterator<JsonNode> column_spec = table.get("tableSchema").get("columns").elements();
+        while (column_spec.hasNext()) {
+            JsonNode column = column_spec.next();
+            String name = column.get("name").asText();
+            int position = column_headers.indexOf(name);
+            String property = property(column);
+
+            // Parse the data type, and set a value mapper accordingly.
+            PString.Parser parser = PString.parser(column);
+            // TODO: If there's a valueUrl, it should be used as string template.
+            // TODO: We could have a virtual column, which would ask for a constant
+            // CellReader.
+            CellReader reader;
+            if (position < 0) {
+                // Declared, but not present in the file.
+                reader = r -> null;
+            } else if (parser.datatype == PString.Datatype.STRING || errors == null) {
+                reader = r -> parser.parse(r.get(position));
+            } else {
+                String message = "not a valid " + parser.datatype.name().toLowerCase();
+                reader = r -> {
+                    PString cell = parser.parse(r.get(position));
+                    if (!cell.isValid()) {
+                        errors.add(new String[] { url, name, cell.toString(), message });
+                    }
+                    return cell;
+                };
+            }
+
+            // A later column declaring the same property replaces the earlier one.
+            int existing = properties.indexOf(property);
+            if (existing >= 0) {
+                positions.set(existing, position);
+                readers.set(existing, reader);
+            } else {
+                properties.add(property);
+                positions.add(position);
+                readers.add(reader);
+            }
+        }
+        return new TableSchema(properties, positions, readers);
+    }
+
+    /**
+     * @param column the description of a column in a tableSchema
+     * @return the CLDF property of the column, eg. "form", or its name if it has
+     *         no propertyUrl
+     */
+    static String property(JsonNode column) {
+        JsonNode propertyUrl = column.get("propertyUrl");
+        if (propertyUrl == null) {
+            return column.get("name").asText();
+        }
+        String property = propertyUrl.asText();
+        int hash = property.indexOf('#');
+        return hash >= 0 ? property.substring(hash + 1) : property;
+    }
+
+    /**
+     * Keep only some columns of a table description, so that the others are not
+     * read, as if they were not declared.
+     *
+     * @param table  the CLDF table description in JSON
+     * @param keep   the properties or column names of the columns to keep
+     * @param always the properties to keep in any case
+     * @return a copy of the description with fewer columns
+     */
+    static JsonNode project(JsonNode table, Set<String> keep, Set<String> always) {
+        ObjectNode projected = table.deepCopy();
+        ArrayNode columns = (ArrayNode) projected.get("tableSchema").get("columns");
+        Iterator<JsonNode> column = columns.elements();
+        while (column.hasNext()) {
+            JsonNode spec = column.next();
+            String property = property(spec);
+            if (!keep.contains(property) && !always.contains(property) && !keep.contains(spec.get("name").asText())) {
+                column.remove();
+            }
+        }
+        return projected;
+    }
+
+    /**
+     * @return the number of slots, ie. distinct properties declared in the schema
+     */
+    int size() {
+        return properties.length;
+    }
+
+    /**
+     * @param property a CLDF property (or column name)
+     * @return the slot of that property, or -1 if the table has no such column
+     */
+    int slot(String property) {
+        Integer slot = slots.get(property);
+        if (slot == null || positions[slot] < 0) {
+            return -1;
+        }
+        return slot;
+    }
+
+    String property(int slot) {
+        return properties[slot];
+    }
+
+    /**
+     * @return the cell of the given slot, or null if the slot is -1
+     */
+    PString cell(TableRow row, int slot) {
+        if (slot < 0) {
+            return null;
+        }
+        return readers[slot].translate(row);
+    }
+
+    /**
+     * @return the raw string in the given slot, or null if the slot is -1
+     */
+    String string(TableRow row, int slot) {
+        if (slot < 0) {
+            return null;
+        }
+        return row.get(positions[slot]);
+    }
+
+    /**
+     * Compute the slots that are not in the given list of bound slots, ie. the
+     * ones that need to go into a property map. Declared columns missing from the
+     * file are left out.
+     *
+     * @param bound slots already read into dedicated fields, -1 entries are ignored
+     * @return the remaining slots in schema order
+     */
+    int[] remainder(int... bound) {
+        boolean[] taken = new boolean[properties.length];
+        for (int slot : bound) {
+            if (slot >= 0) {
+                taken[slot] = true;
+            }
+        }
+        int[] rest = new int[properties.length];
+        int n = 0;
+        for (int slot = 0; slot < properties.length; slot++) {
+            if (!taken[slot] && positions[slot] >= 0) {
+                rest[n++] = slot;
+            }
+        }
+        int[] result = new int[n];
+        System.arraycopy(rest, 0, result, 0, n);
+        return result;
+    }
+
+    /**
+     * Collect the given slots of a row into a property map. Every cell of these
+     * slots is decoded and parsed now, whether or not the property is ever read,
+     * because the map outlives the row and its buffer.
+     */
+    Map<String, PString> properties(TableRow row, int[] slots) {
+        Map<String, PString> map = new HashMap<>(Math.max(2 * slots.length, 1));
+        for (int slot : slots) {
+            map.put(properties[slot], readers[slot].translate(row));
+        }
+        return map;
+    }
+}
@@ -0,0 +1,95 @@
+package de.tuebingen.sfs.cldfjava.analysis;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import de.tuebingen.sfs.cldfjava.data.CLDFWordlistDatabase;
+import de.tuebingen.sfs.cldfjava.io.CLDFImport;
+
+class TestCorrespondenceCounter {
+
+    /**
+     * Collect all counts, by language and segment names.
+     */
+    static Map<String, Long> counts(SoundCorrespondences correspondences) {
+        Map<String, Long> counts = new HashMap<>();
+        correspondences.forEach((langA, langB, segmentA, segmentB, count) -> {
+            String key = correspondences.getSymbols().languages().name(langA) + ":"
+                    + correspondences.getSymbols().languages().name(langB) + ":"
+                    + correspondences.getSymbols().segments().name(segmentA) + ":"
+                    + correspondences.getSymbols().segments().name(segmentB);
+            assertNull(counts.put(key, count));
+        });
+        return counts;
+    }
+
+    @Test
+    void testCountsOfAlignedCognates(@TempDir Path dir) throws Exception {
+        Files.write(dir.resolve("forms.csv"), """
+                ID,Language_ID,Parameter_ID,Form,Segments
+                1,a,two,ta,t a
+                2,b,two,da,d a
+                3,c,two,tan,t a n
+                4,a,two,ta,t a
+                5,b,three,dri,d r i
+                6,b,three,ti,t i""".getBytes(StandardCharsets.UTF_8));
+        Files.write(dir.resolve("cognates.csv"), """
+                ID,Form_ID,Cognateset_ID
+                j1,1,x
+                j2,2,x
+                j3,3,x
+                j4,4,y
+                j5,5,z
+                j6,6,z""".getBytes(StandardCharsets.UTF_8));
+        File json = TestFormDistanceEngine.writeMetadata(dir);
+        CLDFImport importer = new CLDFImport();
+        for (boolean columnar : new boolean[] { false, true }) {
+            importer.setColumnarForms(columnar);
+            CLDFWordlistDatabase<Integer, String, String> database = importer.load(json);
+            SoundCorrespondences correspondences = new CorrespondenceCounter(database, SegmentCosts.unit()).count();
+            Map<String, Long> expected = new HashMap<>();
+            expected.put("a:b:t:d", 1L);
+            expected.put("a:b:a:a", 1L);
+            expected.put("a:c:t:t", 1L);
+            expected.put("a:c:a:a", 1L);
+            expected.put("a:c:null:n", 1L);
+            expected.put("b:c:d:t", 1L);
+            expected.put("b:c:a:a", 1L);
+            expected.put("b:c:null:n", 1L);
+            assertEquals(expected, counts(correspondences));
+            assertEquals(1, correspondences.count("c", "b", "n", null));
+            assertEquals(0, correspondences.count("b", "c", "n", null));
+            assertEquals(0, correspondences.count("a", "b", "x", "d"));
+        }
+    }
+
+    @Test
+    void testParallelCountsMatchSequential(@TempDir Path dir) throws Exception {
+        File json = TestFormDistanceEngine.writeSegmentedDataset(dir, 3000);
+        CLDFImport importer = new CLDFImport();
+        CLDFWordlistDatabase<Integer, String, String> objects = importer.load(json);
+        importer.setColumnarForms(true);
+        CLDFWordlistDatabase<Integer, String, String> columns = importer.load(json);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            SegmentCosts costs = SegmentCosts.bySoundClass(objects.getSymbols().segments(), 0.5);
+            Map<String, Long> sequential = counts(new CorrespondenceCounter(objects, costs).count());
+            assertFalse(sequential.isEmpty());
+            assertEquals(sequential, counts(new CorrespondenceCounter(objects, costs).count(pool)));
+            SegmentCosts columnCosts = SegmentCosts.bySoundClass(columns.getSymbols().segments(), 0.5);
+            assertEquals(sequential, counts(new CorrespondenceCounter(columns, columnCosts).count(pool)));
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package de.tuebingen.sfs.cldfjava.analysis;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import de.tuebingen.sfs.cldfjava.data.CLDFForm;
+import de.tuebingen.sfs.cldfjava.data.CLDFIndex;
+import de.tuebingen.sfs.cldfjava.data.CLDFWordlistDatabase;
+import de.tuebingen.sfs.cldfjava.io.CLDFImport;
+
+class TestFormDistanceEngine {
+    static final String[] SEGMENTS = { "p", "t", "k", "m", "n", "s", "a", "e", "i", "o", "u" };
+
+    /**
+     * Write a wordlist of random segmented forms, with a few forms per language
+     * and concept, and two cognate sets per concept.
+     */
+    static File writeSegmentedDataset(Path dir, int forms) throws IOException {
+        Random random = new Random(1);
+        StringBuilder formCsv = new StringBuilder("ID,Language_ID,Parameter_ID,Form,Segments\n");
+        StringBuilder cognateCsv = new StringBuilder("ID,Form_ID,Cognateset_ID\n");
+        for (int i = 0; i < forms; i++) {
+            StringBuilder segments = new StringBuilder();
+            int length = 1 + random.nextInt(8);
+            for (int s = 0; s < length; s++) {
+                segments.append(s == 0 ? "" : " ").append(SEGMENTS[random.nextInt(SEGMENTS.length)]);
+            }
+            formCsv.append(i + ",lang" + (i % 7) + ",concept" + (i % 11) + ","
+                    + segments.toString().replace(" ", "") + "," + segments + "\n");
+            cognateCsv.append("j" + i + "," + i + ",concept" + (i % 11) + "-" + (i % 2) + "\n");
+        }
+        Files.write(dir.resolve("forms.csv"), formCsv.toString().getBytes(StandardCharsets.UTF_8));
+        Files.write(dir.resolve("cognates.csv"), cognateCsv.toString().getBytes(StandardCharsets.UTF_8));
+        return writeMetadata(dir);
+    }
+
+    /**
+     * Write the metadata of a wordlist with a segmented forms.csv and a
+     * cognates.csv.
+     */
+    static File writeMetadata(Path dir) throws IOException {
+        Path json = dir.resolve("Wordlist-metadata.json");
+        Files.write(json, """
+                {"dc:conformsTo": "http://cldf.clld.org/v1.0/terms.rdf#Wordlist",
+                 "tables": [
+                  {"url": "forms.csv", "dc:conformsTo": "http://cldf.clld.org/v1.0/terms.rdf#FormTable",
+                   "tableSchema": {"columns": [
+                    {"name": "ID", "propertyUrl": "http://cldf.clld.org/v1.0/terms.rdf#id"},
+                    {"name": "Language_ID", "propertyUrl": "http://cldf.clld.org/v1.0/terms.rdf#languageReference"},
+                    {"name": "Parameter_ID", "propertyUrl": "http://cldf.clld.org/v1.0/terms.rdf#parameterReference"},
+                    {"name": "Form", "propertyUrl": "http://cldf.clld.org/v1.0/terms.rdf#form"},
+                    {"name": "Segments", "propertyUrl": "http://cldf.clld.org/v1.0/terms.rdf#segments",
+                     "separator": " "}]}},
+                  {"url": "cognates.csv", "dc:conformsTo": "http://cldf.clld.org/v1.0/terms.rdf#CognateTable",
+                   "tableSchema": {"columns": [
+                    {"name": "ID", "propertyUrl": "http://cldf.clld.org/v1.0/terms.rdf#id"},
+                    {"name": "Form_ID", "propertyUrl": "http://cldf.clld.org/v1.0/terms.rdf#formReference"},
+                    {"name": "Cognateset_ID", "propertyUrl": "http://cldf.clld.org/v1.0/terms.rdf#cognatesetReference"}]}}
+                 ]}""".getBytes(StandardCharsets.UTF_8));
+        return json.toFile();
+    }
+
+    static int levenshtein(String[] a, String[] b) {
+        int[][] d = new int[a.length + 1][b.length + 1];
+        for (int i = 0; i <= a.length; i++) {
+            for (int j = 0; j <= b.length; j++) {
+                if (i == 0 || j == 0) {
+                    d[i][j] = i + j;
+                } else {
+                    d[i][j] = Math.min(d[i - 1][j - 1] + (a[i - 1].equals(b[j - 1]) ? 0 : 1),
+                            Math.min(d[i - 1][j], d[i][j - 1]) + 1);
+                }
+            }
+        }
+        return d[a.length][b.length];
+    }
+
+    /**
+     * Run the engine on a pool, and collect the distances by pair of form IDs.
+     */
+    static Map<String, Double> distances(CLDFWordlistDatabase<Integer, String, String> database,
+            FormDistanceEngine engine, ForkJoinPool pool) {
+        CLDFIndex<Integer, String> index = database.getIndex();
+        Map<String, Double> distances = new ConcurrentHashMap<>();
+        engine.compareAll(pool, (paramCode, rowA, rowB, distance) -> {
+            assertNull(distances.put(index.formID(rowA) + "-" + index.formID(rowB), distance));
+        });
+        return distances;
+    }
+
+    @Test
+    void testDistancesMatchLevenshtein(@TempDir Path dir) throws Exception {
+        File json = writeSegmentedDataset(dir, 700);
+        CLDFImport importer = new CLDFImport();
+        CLDFWordlistDatabase<Integer, String, String> objects = importer.load(json);
+        importer.setColumnarForms(true);
+        CLDFWordlistDatabase<Integer, String, String> columns = importer.load(json);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Map<String, Double> all = distances(objects, new FormDistanceEngine(objects, SegmentCosts.unit()), pool);
+            // 11 concepts with 63 or 64 forms, of which 9 or 10 in each of 7 languages
+            int pairs = 0;
+            Map<Integer, CLDFForm<Integer>> forms = objects.getFormsMap();
+            for (CLDFForm<Integer> a : forms.values()) {
+                for (CLDFForm<Integer> b : forms.values()) {
+                    if (a.getId() < b.getId() && a.getParamID().equals(b.getParamID())
+                            && !a.getLangID().equals(b.getLangID())) {
+                        pairs++;
+                        Double distance = all.getOrDefault(a.getId() + "-" + b.getId(),
+                                all.get(b.getId() + "-" + a.getId()));
+                        assertEquals(levenshtein(a.getSegments(), b.getSegments()), distance, 0);
+                    }
+                }
+            }
+            assertEquals(pairs, all.size());
+            assertEquals(all, distances(columns, new FormDistanceEngine(columns, SegmentCosts.unit()), pool));
+
+            FormDistanceEngine close = new FormDistanceEngine(columns, SegmentCosts.unit());
+            close.setCutoff(2);
+            Map<String, Double> within = distances(columns, close, pool);
+            all.values().removeIf(distance -> distance > 2);
+            assertEquals(all, within);
+
+            Map<String, Double> sequential = new ConcurrentHashMap<>();
+            close.setNormalized(true);
+            close.setCutoff(0.5);
+            CLDFIndex<Integer, String> index = columns.getIndex();
+            for (int paramCode = 0; paramCode < columns.getSymbols().parameters().size(); paramCode++) {
+                close.compare(paramCode, (param, rowA, rowB, distance) -> {
+                    assertTrue(distance <= 0.5);
+                    sequential.put(index.formID(rowA) + "-" + index.formID(rowB), distance);
+                });
+            }
+            assertEquals(sequential, distances(columns, close, pool));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testNormalizedDistancesOfEmptyForms(@TempDir Path dir) throws Exception {
+        // Two forms with empty Segments cells, which normalizing must not divide by
+        // zero, and which still pair with each other and with the third form.
+        Files.write(dir.resolve("forms.csv"), ("ID,Language_ID,Parameter_ID,Form,Segments\n" + "0,lang0,concept0,,\n"
+                + "1,lang1,concept0,,\n" + "2,lang2,concept0,pa,p a\n").getBytes(StandardCharsets.UTF_8));
+        Files.write(dir.resolve("cognates.csv"), "ID,Form_ID,Cognateset_ID\n".getBytes(StandardCharsets.UTF_8));
+        CLDFWordlistDatabase<Integer, String, String> database = new CLDFImport().load(writeMetadata(dir));
+        FormDistanceEngine engine = new FormDistanceEngine(database, SegmentCosts.unit());
+        engine.setNormalized(true);
+        Map<String, Double> distances = new ConcurrentHashMap<>();
+        CLDFIndex<Integer, String> index = database.getIndex();
+        engine.compare(0, (param, rowA, rowB, distance) -> distances.put(
+                Math.min(index.formID(rowA), index.formID(rowB)) + "-" + Math.max(index.formID(rowA), index.formID(rowB)),
+                distance));
+        assertEquals(Map.of("0-1", 0.0, "0-2", 1.0, "1-2", 1.0), distances);
+    }
+
+    @Test
+    void testSoundClassCosts(@TempDir Path dir) throws Exception {
+        CLDFWordlistDatabase<Integer, String, String> database = new CLDFImport()
+                .load(writeSegmentedDataset(dir, 100));
+        SegmentCosts costs = SegmentCosts.bySoundClass(database.getSymbols().segments(), 0.5);
+        assertEquals(SegmentCosts.VOWEL, SegmentCosts.soundClass("\u00e3"));
+        assertEquals(SegmentCosts.CONSONANT, SegmentCosts.soundClass("t\u02b0"));
+        assertEquals(SegmentCosts.OTHER, SegmentCosts.soundClass("+"));
+
+        FormDistanceEngine unit = new FormDistanceEngine(database, SegmentCosts.unit());
+        FormDistanceEngine weighted = new FormDistanceEngine(database, costs);
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            Map<String, Double> plain = distances(database, unit, pool);
+            Map<String, Double> classes = distances(database, weighted, pool);
+            assertEquals(plain.keySet(), classes.keySet());
+            boolean cheaper = false;
+            for (Map.Entry<String, Double> pair : plain.entrySet()) {
+                assertTrue(classes.get(pair.getKey()) <= pair.getValue());
+                cheaper |= classes.get(pair.getKey()) < pair.getValue();
+            }
+            assertTrue(cheaper);
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
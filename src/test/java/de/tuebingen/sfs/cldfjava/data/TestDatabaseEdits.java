@@ -0,0 +1,329 @@
+package de.tuebingen.sfs.cldfjava.data;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import de.tuebingen.sfs.cldfjava.io.CLDFImport;
+import de.tuebingen.sfs.cldfjava.io.CLDFWordlistGenerator;
+
+class TestDatabaseEdits {
+    /**
+     * Check that the index of an edited database answers like one built from
+     * scratch over the same maps.
+     */
+    static void assertIndexed(CLDFWordlistDatabase<Integer, String, String> edited) {
+        CLDFWordlistDatabase<Integer, String, String> built = new CLDFWordlistDatabase<>(
+                new HashMap<>(edited.getFormsMap()), new HashMap<>(edited.getLanguageMap()),
+                new HashMap<>(edited.getConceptMap()), new HashMap<>(edited.getCognateJudgementMap()),
+                new HashMap<>(edited.getCognatesetMap()));
+        assertEquals(built.getCogsetToCognates(), edited.getCogsetToCognates());
+        CLDFIndex<Integer, String> index = edited.getIndex();
+        assertEquals(edited.getFormsMap().size(), index.rowCount());
+        Set<Integer> rows = new HashSet<>();
+        for (int row = 0; row < index.rowCount(); row++) {
+            assertEquals(edited.getFormsMap().get(index.formID(row)).toString(), index.form(row).toString());
+            assertEquals(row, index.row(index.formID(row)));
+            rows.add(index.formID(row));
+        }
+        assertEquals(edited.getFormsMap().keySet(), rows);
+        for (String langID : built.getLangIDs()) {
+            assertEquals(new HashSet<>(built.listFormIdsForLangId(langID)),
+                    new HashSet<>(edited.listFormIdsForLangId(langID)), langID);
+            CLDFLanguage language = built.getLanguageMap().get(langID);
+            assertEquals(langID, edited.searchLangIdForGlottocode(language.getGlottocode()));
+        }
+        assertEquals(groups(built), groups(edited));
+        for (String paramID : built.getConceptMap().keySet()) {
+            assertEquals(ids(built.getFormsByParamID(paramID)), ids(edited.getFormsByParamID(paramID)), paramID);
+        }
+    }
+
+    static Set<Integer> ids(List<CLDFForm<Integer>> forms) {
+        Set<Integer> ids = new HashSet<>();
+        forms.forEach(form -> ids.add(form.getId()));
+        return ids;
+    }
+
+    static Map<String, Map<String, Set<Integer>>> groups(CLDFWordlistDatabase<Integer, String, String> database) {
+        Map<String, Map<String, Set<Integer>>> groups = new HashMap<>();
+        for (String paramID : database.getConceptMap().keySet()) {
+            Map<String, List<CLDFForm<Integer>>> byLanguage = database.getFormsByLanguageByParamID(paramID);
+            if (byLanguage != null) {
+                Map<String, Set<Integer>> sets = new HashMap<>();
+                byLanguage.forEach((langID, forms) -> sets.put(langID, ids(forms)));
+                groups.put(paramID, sets);
+            }
+        }
+        return groups;
+    }
+
+    @Test
+    void testEditsKeepIndexUpToDate(@TempDir Path dir) throws Exception {
+        CLDFWordlistDatabase<Integer, String, String> database = new CLDFImport()
+                .load(new CLDFWordlistGenerator(2000).write(dir));
+        database.cacheFormsByLanguage();
+        groups(database);
+        Random random = new Random(7);
+        List<String> langIDs = new ArrayList<>(database.getLangIDs());
+        List<String> paramIDs = new ArrayList<>(database.getConceptMap().keySet());
+        List<String> cogsetIDs = new ArrayList<>(database.getCogsetToCognates().keySet());
+        int nextForm = 100000;
+        int nextJudgement = 0;
+
+        for (int batch = 0; batch < 40; batch++) {
+            CLDFEdit<Integer, String, String> edit = database.edit();
+            List<Integer> formIDs = new ArrayList<>(database.getFormsMap().keySet());
+            List<String> judgementIDs = new ArrayList<>(database.getCognateJudgementMap().keySet());
+            for (int i = 0; i < 1 + random.nextInt(30); i++) {
+                switch (random.nextInt(6)) {
+                case 0:
+                    edit.removeForm(formIDs.get(random.nextInt(formIDs.size())));
+                    break;
+                case 1:
+                    // Sometimes a new language or concept, sometimes an ID that was removed.
+                    String langID = random.nextInt(10) == 0 ? "new" + batch
+                            : langIDs.get(random.nextInt(langIDs.size()));
+                    String paramID = random.nextInt(10) == 0 ? "new" + batch
+                            : paramIDs.get(random.nextInt(paramIDs.size()));
+                    int formID = random.nextBoolean() ? nextForm++ : random.nextInt(2000);
+                    edit.addForm(new CLDFForm<>(formID, database.getSymbols(), langID, Arrays.asList(paramID),
+                            "form" + formID));
+                    break;
+                case 2:
+                    edit.removeJudgement(judgementIDs.get(random.nextInt(judgementIDs.size())));
+                    break;
+                case 3:
+                    String cogsetID = random.nextInt(10) == 0 ? "newset" + batch
+                            : cogsetIDs.get(random.nextInt(cogsetIDs.size()));
+                    edit.addJudgement(new CLDFCognateJudgement<>("edit" + nextJudgement++,
+                            formIDs.get(random.nextInt(formIDs.size())), cogsetID));
+                    break;
+                case 4:
+                    String changed = langIDs.get(random.nextInt(langIDs.size()));
+                    CLDFLanguage language = new CLDFLanguage(changed);
+                    language.setGlottocode("edit" + batch + changed);
+                    edit.putLanguage(language);
+                    break;
+                default:
+                    edit.addCognateset(new CLDFCognateSet<>("newset" + batch));
+                    edit.removeCognateset(cogsetIDs.get(random.nextInt(cogsetIDs.size())));
+                }
+            }
+            edit.apply();
+            assertEquals(0, edit.size());
+            assertIndexed(database);
+        }
+    }
+
+    /**
+     * @return everything the maps and index of a database answer, as plain
+     *         collections that do not follow later edits
+     */
+    static List<Object> state(CLDFWordlistDatabase<Integer, String, String> database) {
+        Map<Integer, String> forms = new HashMap<>();
+        database.getFormsMap().forEach((id, form) -> forms.put(id, form.toString()));
+        Map<String, Set<Integer>> byLanguage = new HashMap<>();
+        for (String langID : database.getLangIDs()) {
+            byLanguage.put(langID, new HashSet<>(database.listFormIdsForLangId(langID)));
+        }
+        Map<String, Set<Integer>> cogsets = new HashMap<>();
+        database.getCogsetToCognates().forEach((id, members) -> cogsets.put(id, new HashSet<>(members)));
+        return List.of(forms, byLanguage, groups(database), cogsets, database.getIndex().rowCount(),
+                new HashSet<>(database.getCognateJudgementMap().keySet()));
+    }
+
+    @Test
+    void testStreamsOfSmallEdits(@TempDir Path dir) throws Exception {
+        CLDFWordlistDatabase<Integer, String, String> database = new CLDFImport()
+                .load(new CLDFWordlistGenerator(5000).write(dir));
+        List<String> langIDs = database.getLangIDs();
+        List<String> paramIDs = new ArrayList<>(database.getConceptMap().keySet());
+        List<CLDFIndex<Integer, String>> indexes = new ArrayList<>();
+        List<Integer> rowCounts = new ArrayList<>();
+        Random random = new Random(5);
+        for (int i = 0; i < 2000; i++) {
+            int formID = 5000 + i;
+            CLDFEdit<Integer, String, String> edit = database.edit()
+                    .addForm(new CLDFForm<>(formID, database.getSymbols(), langIDs.get(random.nextInt(langIDs.size())),
+                            Arrays.asList(paramIDs.get(random.nextInt(paramIDs.size()))), "form" + i))
+                    .addJudgement(new CLDFCognateJudgement<>("stream" + i, formID, "set" + random.nextInt(100)));
+            if (i % 3 == 0) {
+                edit.removeForm(random.nextInt(formID));
+            }
+            edit.apply();
+            if (i % 500 == 0) {
+                indexes.add(database.getIndex());
+                rowCounts.add(database.getIndex().rowCount());
+            }
+        }
+        assertIndexed(database);
+        // The indexes the stream went through kept their rows.
+        for (int i = 0; i < indexes.size(); i++) {
+            assertEquals(rowCounts.get(i).intValue(), indexes.get(i).rowCount());
+            for (int row = 0; row < indexes.get(i).rowCount(); row++) {
+                assertEquals(row, indexes.get(i).row(indexes.get(i).formID(row)));
+            }
+        }
+    }
+
+    @Test
+    void testDatabasesAdoptFormsWithoutSymbols(@TempDir Path dir) throws Exception {
+        CLDFWordlistDatabase<Integer, String, String> database = new CLDFImport()
+                .load(new CLDFWordlistGenerator(100).write(dir));
+        String langID = database.getLangIDs().get(0);
+        String paramID = database.getConceptMap().keySet().iterator().next();
+        CLDFForm<Integer> form = new CLDFForm<>(100, langID, Arrays.asList(paramID, "new concept"), "new");
+        form.setSegments(Arrays.asList("n", "e", "w"));
+        assertNull(form.getSymbols());
+        assertEquals(langID, form.getLangID());
+        assertEquals(Arrays.asList(paramID, "new concept"), form.getParamID());
+        assertArrayEquals(new String[] { "n", "e", "w" }, form.getSegments());
+
+        database.edit().addForm(form).apply();
+        assertSame(database.getSymbols(), form.getSymbols());
+        assertEquals(database.getSymbols().languages().code(langID), form.getLangCode());
+        assertEquals(Arrays.asList(paramID, "new concept"), form.getParamID());
+        assertArrayEquals(new String[] { "n", "e", "w" }, form.getSegments());
+        assertTrue(database.listFormIdsForLangId(langID).contains(100));
+        assertIndexed(database);
+    }
+
+    @Test
+    void testEditsStayInTheirDatabase(@TempDir Path dir) throws Exception {
+        for (boolean columnar : new boolean[] { false, true }) {
+            CLDFImport importer = new CLDFImport();
+            importer.setColumnarForms(columnar);
+            CLDFWordlistDatabase<Integer, String, String> database = importer
+                    .load(new CLDFWordlistGenerator(500).write(dir.resolve("data" + columnar)));
+            database.cacheFormsByLanguage();
+            groups(database);
+            // One database derived with all tables kept, one with new languages.
+            CLDFWordlistDatabase<Integer, String, String> same = database.withTables(database.getLanguageMap(),
+                    database.getConceptMap(), database.getCognateJudgementMap(), database.getCognatesetMap());
+            CLDFWordlistDatabase<Integer, String, String> relabelled = database.withTables(
+                    new HashMap<>(database.getLanguageMap()), database.getConceptMap(),
+                    database.getCognateJudgementMap(), database.getCognatesetMap());
+            String langID = database.getLangIDs().get(0);
+            String paramID = database.getConceptMap().keySet().iterator().next();
+            List<CLDFForm<Integer>> view = same.getIndex().formsOfLanguage(langID);
+            int viewSize = view.size();
+
+            List<Object> before = state(database);
+            List<Object> relabelledBefore = state(relabelled);
+            CLDFEdit<Integer, String, String> edit = same.edit()
+                    .addForm(new CLDFForm<>(500, same.getSymbols(), langID, Arrays.asList(paramID), "new"))
+                    .addJudgement(new CLDFCognateJudgement<>("new", 500, "newset"))
+                    .removeJudgement(same.getCognateJudgementMap().keySet().iterator().next());
+            if (!columnar) {
+                edit.removeForm(3).removeForm(17);
+            }
+            edit.apply();
+            assertIndexed(same);
+            assertNotEquals(before, state(same));
+            assertEquals(before, state(database));
+            assertEquals(relabelledBefore, state(relabelled));
+            // A view handed out before the edit does not follow it.
+            assertEquals(viewSize, view.size());
+            int removed = columnar ? 0 : countRemoved(database, langID, 3, 17);
+            assertEquals(viewSize + 1 - removed, same.getIndex().formsOfLanguage(langID).size());
+
+            List<Object> sameBefore = state(same);
+            database.edit()
+                    .addForm(new CLDFForm<>(500, database.getSymbols(), langID, Arrays.asList(paramID), "other"))
+                    .apply();
+            assertIndexed(database);
+            assertEquals(sameBefore, state(same));
+            assertEquals(relabelledBefore, state(relabelled));
+        }
+    }
+
+    private static int countRemoved(CLDFWordlistDatabase<Integer, String, String> database, String langID,
+            int... formIDs) {
+        int count = 0;
+        for (int formID : formIDs) {
+            if (langID.equals(database.getFormsMap().get(formID).getLangID())) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Test
+    void testColumnarFormsCanOnlyBeAppended(@TempDir Path dir) throws Exception {
+        CLDFImport importer = new CLDFImport();
+        importer.setColumnarForms(true);
+        CLDFWordlistDatabase<Integer, String, String> database = importer
+                .load(new CLDFWordlistGenerator(500).write(dir));
+        String langID = database.getLangIDs().get(0);
+        String paramID = database.getConceptMap().keySet().iterator().next();
+        int before = database.listFormIdsForLangId(langID).size();
+
+        database.edit().addForm(new CLDFForm<>(500, database.getSymbols(), langID, Arrays.asList(paramID), "new"))
+                .addJudgement(new CLDFCognateJudgement<>("new", 500, "newset")).apply();
+        assertEquals(501, database.getFormsMap().size());
+        assertEquals("new", database.getFormsMap().get(500).getForm());
+        assertEquals(before + 1, database.listFormIdsForLangId(langID).size());
+        assertEquals(Set.of(500), database.getCogsetToCognates().get("newset"));
+        assertIndexed(database);
+
+        CLDFEdit<Integer, String, String> removal = database.edit().removeForm(3);
+        assertThrows(UnsupportedOperationException.class, removal::apply);
+        CLDFEdit<Integer, String, String> gap = database.edit()
+                .addForm(new CLDFForm<>(600, database.getSymbols(), langID, Arrays.asList(paramID), "gap"));
+        assertThrows(UnsupportedOperationException.class, gap::apply);
+        assertEquals(501, database.getFormsMap().size());
+    }
+
+    @Test
+    void testColumnarEditsLeaveOldViewsAlone(@TempDir Path dir) throws Exception {
+        CLDFImport importer = new CLDFImport();
+        importer.setColumnarForms(true);
+        CLDFWordlistDatabase<Integer, String, String> database = importer
+                .load(new CLDFWordlistGenerator(500).write(dir));
+        String langID = database.getLangIDs().get(0);
+        String paramID = database.getConceptMap().keySet().iterator().next();
+        Map<Integer, CLDFForm<Integer>> forms = database.getFormsMap();
+        CLDFFormStore store = database.getFormStore();
+        CLDFIndex<Integer, String> index = database.getIndex();
+        String last = forms.get(499).toString();
+
+        // Enough batches for the arrays of the store to grow.
+        for (int formID = 500; formID < 3000; formID += 100) {
+            CLDFEdit<Integer, String, String> edit = database.edit();
+            for (int i = formID; i < formID + 100; i++) {
+                edit.addForm(new CLDFForm<>(i, database.getSymbols(), langID, Arrays.asList(paramID), "new" + i));
+            }
+            edit.apply();
+        }
+        assertEquals(3000, database.getFormsMap().size());
+        assertEquals(500, forms.size());
+        assertFalse(forms.containsKey(500));
+        assertEquals(500, forms.entrySet().stream().count());
+        assertEquals(500, store.size());
+        assertEquals(500, index.rowCount());
+        assertEquals(last, forms.get(499).toString());
+        assertIndexed(database);
+
+        // A second database over the old forms appends its own form 500.
+        CLDFWordlistDatabase<Integer, String, String> other = new CLDFWordlistDatabase<>(forms,
+                new HashMap<>(database.getLanguageMap()), new HashMap<>(database.getConceptMap()),
+                new HashMap<>(), new HashMap<>(), database.getSymbols());
+        other.edit().addForm(new CLDFForm<>(500, other.getSymbols(), langID, Arrays.asList(paramID), "other"))
+                .apply();
+        assertEquals("other", other.getFormsMap().get(500).getForm());
+        assertEquals("new500", database.getFormsMap().get(500).getForm());
+        assertEquals(500, forms.size());
+    }
+}
@@ -0,0 +1,96 @@
+package de.tuebingen.sfs.cldfjava.data;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import de.tuebingen.sfs.cldfjava.io.CLDFImport;
+import de.tuebingen.sfs.cldfjava.io.TestConcurrentImport;
+
+class TestDatabaseIndex {
+
+    /**
+     * Compare the indexed lookups with scans over the maps of the database.
+     */
+    static void checkIndex(CLDFWordlistDatabase<Integer, String, String> database) {
+        Map<String, Set<Integer>> byLanguage = new HashMap<>();
+        Map<String, Map<String, Set<Integer>>> byParameter = new HashMap<>();
+        for (CLDFForm<Integer> form : database.getFormsMap().values()) {
+            byLanguage.computeIfAbsent(form.getLangID(), l -> new HashSet<>()).add(form.getId());
+            for (String paramID : form.getParamID()) {
+                byParameter.computeIfAbsent(paramID, p -> new HashMap<>())
+                        .computeIfAbsent(form.getLangID(), l -> new HashSet<>()).add(form.getId());
+            }
+        }
+        Map<String, Set<Integer>> byCogset = new HashMap<>();
+        for (CLDFCognateJudgement<Integer, String, String> judgement : database.getCognateJudgementMap().values()) {
+            byCogset.computeIfAbsent(judgement.getCognatesetReference(), c -> new HashSet<>())
+                    .add(judgement.getFormReference());
+        }
+
+        for (Map.Entry<String, Set<Integer>> language : byLanguage.entrySet()) {
+            assertEquals(language.getValue(), new HashSet<>(database.listFormIdsForLangId(language.getKey())));
+        }
+        assertTrue(database.listFormIdsForLangId("nowhere").isEmpty());
+        for (Map.Entry<String, Map<String, Set<Integer>>> parameter : byParameter.entrySet()) {
+            Map<String, List<CLDFForm<Integer>>> forms = database.getFormsByLanguageByParamID(parameter.getKey());
+            assertEquals(parameter.getValue().keySet(), forms.keySet());
+            for (Map.Entry<String, Set<Integer>> language : parameter.getValue().entrySet()) {
+                Set<Integer> ids = new HashSet<>();
+                forms.get(language.getKey()).forEach(form -> ids.add(form.getId()));
+                assertEquals(language.getValue(), ids);
+            }
+        }
+        assertEquals(byCogset, database.getCogsetToCognates());
+    }
+
+    @Test
+    void testIndexMatchesScans(@TempDir Path dir) throws Exception {
+        File json = TestConcurrentImport.writeDataset(dir, "idx", 3000);
+        CLDFImport importer = new CLDFImport();
+        checkIndex(importer.load(json));
+        importer.setColumnarForms(true);
+        checkIndex(importer.load(json));
+    }
+
+    @Test
+    void testSamplerIsReproducible(@TempDir Path dir) throws Exception {
+        File json = TestConcurrentImport.writeDataset(dir, "sample", 3000);
+        CLDFImport importer = new CLDFImport();
+        CLDFWordlistDatabase<Integer, String, String> objects = importer.load(json);
+        importer.setColumnarForms(true);
+        CLDFWordlistDatabase<Integer, String, String> columns = importer.load(json);
+
+        int[] first = new int[1000];
+        int[] second = new int[1000];
+        assertEquals(1000, objects.sampler(42).sampleLanguage("sample-lang3", first, 0, 1000));
+        columns.sampler(42).sampleLanguage("sample-lang3", second, 0, 1000);
+        for (int i = 0; i < first.length; i++) {
+            assertEquals("sample-lang3", objects.getIndex().form(first[i]).getLangID());
+            assertEquals(objects.getIndex().formID(first[i]), columns.getIndex().formID(second[i]));
+        }
+        assertEquals(0, objects.sampler(42).sampleLanguage("nowhere", first, 0, 1000));
+
+        CLDFSampler<Integer> sampler = objects.sampler(7);
+        CLDFSampler.Strata strata = sampler.strata(CLDFSampler.Stratification.CONCEPT);
+        assertEquals(17, strata.size());
+        int[] sequential = new int[17 * 100];
+        int[] parallel = new int[17 * 100];
+        sampler.sampleStratified(strata, 100, sequential, false);
+        objects.sampler(7).sampleStratified(strata, 100, parallel, true);
+        assertArrayEquals(sequential, parallel);
+        for (int i = 0; i < sequential.length; i++) {
+            assertEquals(Arrays.asList(strata.name(i / 100)), objects.getIndex().form(sequential[i]).getParamID());
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package de.tuebingen.sfs.cldfjava.data;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import de.tuebingen.sfs.cldfjava.io.CLDFFilter;
+import de.tuebingen.sfs.cldfjava.io.CLDFImport;
+import de.tuebingen.sfs.cldfjava.io.CLDFWordlistGenerator;
+
+class TestGlottologTree {
+    static String label(String name, int language, String level) {
+        return "'" + name + " [" + CLDFWordlistGenerator.glottocode(language) + "]" + level + "':1";
+    }
+
+    /**
+     * Languages 0 to 2 in one family, 0 and 1 in a subgroup of it, 3 and 4 in
+     * another family, and 5 an isolate.
+     */
+    static GlottologTree tree() throws IOException {
+        String newick = "((" + label("Zero", 0, "-l-") + ",(" + label("One North", 1001, "-d-") + ")"
+                + label("One", 1, "-l-") + ")'Central [cent1234]-f-':1," + label("Two", 2, "-l-")
+                + ")'Alpha [alph1234]-f-':1;\n" + "(" + label("Three", 3, "-l-") + "," + label("Four", 4, "-l-")
+                + ")'Beta [beta1234]-f-':1;\n" + label("Five", 5, "-l-") + ";\n";
+        return GlottologTree.parse(new StringReader(newick));
+    }
+
+    @AfterEach
+    void restoreGlottolog() {
+        CLDFImport.setGlottolog(null);
+    }
+
+    @Test
+    void testQueries() throws IOException {
+        GlottologTree tree = tree();
+        assertEquals(10, tree.size());
+        int one = tree.node(CLDFWordlistGenerator.glottocode(1));
+        int north = tree.node(CLDFWordlistGenerator.glottocode(1001));
+        int two = tree.node(CLDFWordlistGenerator.glottocode(2));
+        assertEquals("One", tree.name(one));
+        assertEquals(one, tree.parent(north));
+        assertEquals(3, tree.depth(north));
+        assertEquals(-1, tree.node("nope1234"));
+        assertEquals(-1, tree.node("short"));
+
+        assertEquals("Alpha", tree.family(CLDFWordlistGenerator.glottocode(1001)));
+        assertEquals("Central", tree.subfamily(CLDFWordlistGenerator.glottocode(1001)));
+        // Languages right below their family, and isolates, have no subfamily.
+        assertNull(tree.subfamily(CLDFWordlistGenerator.glottocode(2)));
+        assertEquals("Five", tree.family(CLDFWordlistGenerator.glottocode(5)));
+        assertNull(tree.subfamily(CLDFWordlistGenerator.glottocode(5)));
+
+        int[] path = new int[8];
+        assertEquals(4, tree.path(north, path));
+        assertEquals("alph1234", tree.glottocode(path[0]));
+        assertEquals("cent1234", tree.glottocode(path[1]));
+        assertEquals(one, path[2]);
+        assertEquals(north, path[3]);
+
+        assertEquals(tree.node("alph1234"), tree.lowestCommonAncestor(north, two));
+        assertEquals(one, tree.lowestCommonAncestor(north, one));
+        assertEquals(-1, tree.lowestCommonAncestor(north, tree.node(CLDFWordlistGenerator.glottocode(3))));
+        assertTrue(tree.contains(tree.node("cent1234"), north));
+        assertFalse(tree.contains(tree.node("cent1234"), two));
+    }
+
+    @Test
+    void testNewickSyntax() throws IOException {
+        GlottologTree tree = GlottologTree.parse(new StringReader(
+                "( 'O''Brien [obri1234][obr]-l-' : 0.5 , plain_leaf , (  ) ) root ;"));
+        assertEquals("O'Brien", tree.name(tree.node("obri1234")));
+        assertEquals(4, tree.size());
+        assertEquals("root", tree.name(0));
+        assertEquals("plain_leaf", tree.name(2));
+        assertNull(tree.glottocode(2));
+        assertNull(tree.name(3));
+
+        for (String malformed : new String[] { "(a,b;", "a);", "('open;", "(a)b c;" }) {
+            assertThrows(IOException.class, () -> GlottologTree.parse(new StringReader(malformed)), malformed);
+        }
+    }
+
+    @Test
+    void testClassifyAndFilterByFamily(@TempDir Path dir) throws Exception {
+        CLDFWordlistGenerator generator = new CLDFWordlistGenerator(600);
+        generator.setLanguages(6);
+        generator.setConcepts(10);
+        File json = generator.write(dir.resolve("data"));
+        CLDFImport.setGlottolog(tree());
+
+        CLDFWordlistDatabase<Integer, String, String> full = new CLDFImport().load(json);
+        Map<String, CLDFLanguage> languages = full.getLanguageMap();
+        assertEquals("Alpha", languages.get("lang1").getFamily());
+        assertEquals("Central", languages.get("lang1").getSubFamily());
+        assertEquals("Alpha", languages.get("lang2").getFamily());
+        assertNull(languages.get("lang2").getSubFamily());
+        assertEquals("Beta", languages.get("lang4").getFamily());
+        assertEquals("Five", languages.get("lang5").getFamily());
+
+        // By the name of a subgroup and the Glottocode of a family.
+        CLDFImport importer = new CLDFImport();
+        importer.setFilter(new CLDFFilter().families("Central", "beta1234"));
+        CLDFWordlistDatabase<Integer, String, String> filtered = importer.load(json);
+        assertEquals(Set.of("lang0", "lang1", "lang3", "lang4"), filtered.getLanguageMap().keySet());
+        Set<String> formLanguages = new HashSet<>();
+        for (CLDFForm<Integer> form : filtered.getFormsMap().values()) {
+            formLanguages.add(form.getLangID());
+        }
+        assertEquals(filtered.getLanguageMap().keySet(), formLanguages);
+    }
+
+    @Test
+    void testSnapshotsKeepTheirClassification(@TempDir Path dir) throws Exception {
+        CLDFWordlistGenerator generator = new CLDFWordlistGenerator(600);
+        generator.setLanguages(6);
+        generator.setConcepts(10);
+        File json = generator.write(dir.resolve("data"));
+        CLDFImport importer = new CLDFImport();
+        importer.setSnapshotDirectory(dir.resolve("snapshots").toFile());
+        CLDFImport.setGlottolog(tree());
+        importer.load(json);
+        assertTrue(importer.load(json).getLoadReport().isFromSnapshot());
+        assertEquals(tree().fingerprint(), tree().fingerprint());
+
+        // Another classification must not be served from the snapshot of the first.
+        CLDFImport.setGlottolog(GlottologTree.parse(new StringReader(
+                "(" + label("Zero", 0, "-l-") + "," + label("One", 1, "-l-") + ")'Gamma [gamm1234]-f-':1;")));
+        CLDFWordlistDatabase<Integer, String, String> reclassified = importer.load(json);
+        assertFalse(reclassified.getLoadReport().isFromSnapshot());
+        assertEquals("Gamma", reclassified.getLanguageMap().get("lang1").getFamily());
+        assertNull(reclassified.getLanguageMap().get("lang1").getSubFamily());
+    }
+}
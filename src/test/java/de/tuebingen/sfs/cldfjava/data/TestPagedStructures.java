@@ -0,0 +1,84 @@
+package de.tuebingen.sfs.cldfjava.data;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+class TestPagedStructures {
+    private static int[] list(IntPostings postings, int key) {
+        int[] values = new int[postings.size(key)];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = postings.get(key, i);
+        }
+        return values;
+    }
+
+    @Test
+    void testCopiesOfPostingsAppendApart() {
+        IntPostings original = new IntPostings();
+        for (int i = 0; i < 3; i++) {
+            original.add(7, i);
+        }
+        IntPostings first = new IntPostings(original);
+        IntPostings second = new IntPostings(original);
+        // The first copy appends in place, the second finds the slot taken.
+        first.add(7, 10);
+        second.add(7, 20);
+        second.add(7, 21);
+        first.add(7, 11);
+        assertArrayEquals(new int[] { 0, 1, 2 }, list(original, 7));
+        assertArrayEquals(new int[] { 0, 1, 2, 10, 11 }, list(first, 7));
+        assertArrayEquals(new int[] { 0, 1, 2, 20, 21 }, list(second, 7));
+
+        IntPostings third = new IntPostings(first);
+        third.remove(7, 1);
+        third.replace(7, 10, 12);
+        third.move(7, 5000);
+        third.add(7, 30);
+        assertArrayEquals(new int[] { 0, 1, 2, 10, 11 }, list(first, 7));
+        assertArrayEquals(new int[] { 0, 2, 12, 11 }, list(third, 5000));
+        assertArrayEquals(new int[] { 30 }, list(third, 7));
+        assertEquals(0, first.size(5000));
+        assertEquals(5001, third.keys());
+    }
+
+    @Test
+    void testCopiesOfMapsKeepTheirEntries() {
+        ObjectIntMap<String> original = new ObjectIntMap<>(16);
+        for (int i = 0; i < 5000; i++) {
+            original.put("key" + i, i);
+        }
+        ObjectIntMap<String> copy = new ObjectIntMap<>(original);
+        assertEquals(17, copy.remove("key17"));
+        copy.put("key5000", 5000);
+        copy.put("key3", 33);
+        assertEquals(-1, copy.get("key17"));
+        assertEquals(17, original.get("key17"));
+        assertEquals(-1, original.get("key5000"));
+        assertEquals(3, original.get("key3"));
+        assertEquals(33, copy.get("key3"));
+        assertEquals(5000, original.size());
+        assertEquals(5000, copy.size());
+        copy.put("key17", 1);
+        assertEquals(1, copy.get("key17"));
+        assertEquals(-1, copy.get(null));
+
+        LongIntMap pairs = new LongIntMap();
+        for (int i = 0; i < 5000; i++) {
+            pairs.put(LongIntMap.pair(i, -i), i);
+        }
+        LongIntMap pairCopy = new LongIntMap(pairs);
+        for (int i = 0; i < 5000; i += 2) {
+            pairCopy.put(LongIntMap.pair(i, -i), 0);
+        }
+        for (int i = 5000; i < 10000; i++) {
+            pairCopy.put(LongIntMap.pair(i, -i), i);
+        }
+        for (int i = 0; i < 5000; i++) {
+            assertEquals(i, pairs.get(LongIntMap.pair(i, -i)));
+            assertEquals(i % 2 == 0 ? 0 : i, pairCopy.get(LongIntMap.pair(i, -i)));
+        }
+        assertEquals(-1, pairs.get(LongIntMap.pair(5000, -5000)));
+        assertEquals(10000, pairCopy.size());
+    }
+}
@@ -0,0 +1,51 @@
+package de.tuebingen.sfs.cldfjava.io;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import de.tuebingen.sfs.cldfjava.data.CLDFWordlistDatabase;
+
+class TestCLDFSnapshot {
+
+    @Test
+    void testSnapshotRoundTripAndStaleness(@TempDir Path dir) throws Exception {
+        File json = TestConcurrentImport.writeDataset(dir, "snap", 500);
+        File cache = dir.resolve("cache").toFile();
+        CLDFImport importer = new CLDFImport();
+        importer.setSnapshotDirectory(cache);
+
+        CLDFWordlistDatabase<Integer, String, String> parsed = importer.load(json);
+        Path snapshot = CLDFSnapshot.snapshotFile(cache, json);
+        assertTrue(Files.isRegularFile(snapshot));
+
+        CLDFWordlistDatabase<Integer, String, String> cached = importer.load(json);
+        assertEquals(parsed.getFormsMap().size(), cached.getFormsMap().size());
+        for (Integer id : parsed.getFormsMap().keySet()) {
+            assertEquals(parsed.getFormsMap().get(id).toString(), cached.getFormsMap().get(id).toString());
+        }
+        assertEquals(parsed.getCogsetToCognates(), cached.getCogsetToCognates());
+        assertEquals(parsed.getLanguageMap().keySet(), cached.getLanguageMap().keySet());
+        assertEquals(parsed.getCurrentPath(), cached.getCurrentPath());
+
+        // Editing a table makes the snapshot stale, and the edit must show up.
+        Path forms = json.toPath().resolveSibling("forms.csv");
+        Files.write(forms, "ID,Language_ID,Parameter_ID,Form\nx,snap-lang0,concept0,new\n"
+                .getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(forms, FileTime.fromMillis(System.currentTimeMillis() + 10000));
+        CLDFWordlistDatabase<Integer, String, String> reloaded = importer.load(json);
+        assertEquals(1, reloaded.getFormsMap().size());
+        assertEquals("new", reloaded.getFormsMap().get(0).getForm());
+
+        // A corrupt snapshot is ignored.
+        Files.write(snapshot, new byte[] { 1, 2, 3 });
+        assertEquals(1, importer.load(json).getFormsMap().size());
+    }
+}
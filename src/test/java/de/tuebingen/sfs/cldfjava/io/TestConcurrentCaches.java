@@ -0,0 +1,83 @@
+package de.tuebingen.sfs.cldfjava.io;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import de.tuebingen.sfs.cldfjava.data.CLDFForm;
+import de.tuebingen.sfs.cldfjava.data.CLDFSampler;
+import de.tuebingen.sfs.cldfjava.data.CLDFWordlistDatabase;
+
+class TestConcurrentCaches {
+    static final int THREADS = 16;
+    static final int ROUNDS = 200;
+
+    /**
+     * Many threads hit the lazily built groupings of a database at the same
+     * moment, right after they were dropped, and check everything they see.
+     */
+    @Test
+    void testLazyCachesUnderContention(@TempDir Path dir) throws Exception {
+        File json = TestConcurrentImport.writeDataset(dir, "race", 3000);
+        CLDFWordlistDatabase<Integer, String, String> database = new CLDFImport().load(json);
+        // 3000 forms over 5 languages and 17 concepts.
+        int[] perConcept = new int[17];
+        for (int i = 0; i < 3000; i++) {
+            perConcept[i % 17]++;
+        }
+
+        CyclicBarrier barrier = new CyclicBarrier(THREADS, database::rebuildIndex);
+        ExecutorService threads = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Integer>> workers = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                int worker = t;
+                workers.add(threads.submit(() -> {
+                    CLDFSampler<Integer> sampler = database.sampler(worker);
+                    int[] drawn = new int[1];
+                    int checks = 0;
+                    for (int round = 0; round < ROUNDS; round++) {
+                        barrier.await();
+                        int concept = (worker + round) % 17;
+                        Map<String, List<CLDFForm<Integer>>> byLanguage = database
+                                .getFormsByLanguageByParamID("concept" + concept);
+                        int forms = 0;
+                        for (Map.Entry<String, List<CLDFForm<Integer>>> language : byLanguage.entrySet()) {
+                            for (CLDFForm<Integer> form : language.getValue()) {
+                                assertEquals(language.getKey(), form.getLangID());
+                                forms++;
+                            }
+                        }
+                        assertEquals(perConcept[concept], forms);
+
+                        String langID = "race-lang" + (worker % 5);
+                        assertEquals(1, sampler.sampleLanguage(langID, drawn, 0, 1));
+                        CLDFForm<Integer> random = database.getFormsMap().get(sampler.getIndex().formID(drawn[0]));
+                        assertNotNull(random);
+                        assertEquals(langID, random.getLangID());
+                        assertEquals(600, database.listFormIdsForLangId(langID).size());
+                        assertEquals(17 * 3, database.getCogsetToCognates().size());
+                        checks++;
+                    }
+                    return checks;
+                }));
+            }
+            for (Future<Integer> worker : workers) {
+                assertEquals(ROUNDS, worker.get());
+            }
+        } finally {
+            threads.shutdownNow();
+        }
+    }
+}
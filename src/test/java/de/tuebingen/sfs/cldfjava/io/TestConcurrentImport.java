@@ -0,0 +1,169 @@
+package de.tuebingen.sfs.cldfjava.io;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import de.tuebingen.sfs.cldfjava.data.CLDFCognateJudgement;
+import de.tuebingen.sfs.cldfjava.data.CLDFForm;
+import de.tuebingen.sfs.cldfjava.data.CLDFWordlistDatabase;
+
+public class TestConcurrentImport {
+    static final int DATASETS = 24;
+    static final int THREADS = 8;
+
+    /**
+     * Write a small wordlist whose languages are all prefixed with the dataset
+     * name, and which has a different number of forms than its neighbours.
+     */
+    public static File writeDataset(Path dir, String name, int forms) throws IOException {
+        Path dataset = Files.createDirectories(dir.resolve(name));
+        StringBuilder formCsv = new StringBuilder("ID,Language_ID,Parameter_ID,Form\n");
+        StringBuilder cognateCsv = new StringBuilder("ID,Form_ID,Cognateset_ID\n");
+        for (int i = 0; i < forms; i++) {
+            formCsv.append(name + "-" + i + "," + name + "-lang" + (i % 5) + ",concept" + (i % 17) + ",form" + i + "\n");
+            cognateCsv.append("j" + i + "," + name + "-" + i + ",concept" + (i % 17) + "-" + (i % 3) + "\n");
+        }
+        Files.write(dataset.resolve("forms.csv"), formCsv.toString().getBytes(StandardCharsets.UTF_8));
+        Files.write(dataset.resolve("cognates.csv"), cognateCsv.toString().getBytes(StandardCharsets.UTF_8));
+        Path json = dataset.resolve("Wordlist-metadata.json");
+        Files.write(json, """
+                {"dc:conformsTo": "http://cldf.clld.org/v1.0/terms.rdf#Wordlist",
+                 "tables": [
+                  {"url": "forms.csv", "dc:conformsTo": "http://cldf.clld.org/v1.0/terms.rdf#FormTable",
+                   "tableSchema": {"columns": [
+                    {"name": "ID", "propertyUrl": "http://cldf.clld.org/v1.0/terms.rdf#id"},
+                    {"name": "Language_ID", "propertyUrl": "http://cldf.clld.org/v1.0/terms.rdf#languageReference"},
+                    {"name": "Parameter_ID", "propertyUrl": "http://cldf.clld.org/v1.0/terms.rdf#parameterReference"},
+                    {"name": "Form", "propertyUrl": "http://cldf.clld.org/v1.0/terms.rdf#form"}]}},
+                  {"url": "cognates.csv", "dc:conformsTo": "http://cldf.clld.org/v1.0/terms.rdf#CognateTable",
+                   "tableSchema": {"columns": [
+                    {"name": "ID", "propertyUrl": "http://cldf.clld.org/v1.0/terms.rdf#id"},
+                    {"name": "Form_ID", "propertyUrl": "http://cldf.clld.org/v1.0/terms.rdf#formReference"},
+                    {"name": "Cognateset_ID", "propertyUrl": "http://cldf.clld.org/v1.0/terms.rdf#cognatesetReference"}]}}
+                 ]}""".getBytes(StandardCharsets.UTF_8));
+        return json.toFile();
+    }
+
+    static void checkDataset(CLDFWordlistDatabase<Integer, String, String> database, String name, int forms) {
+        assertEquals(forms, database.getFormsMap().size());
+        assertEquals(5, database.getLanguageMap().size());
+        for (String langID : database.getLanguageMap().keySet()) {
+            assertTrue(langID.startsWith(name + "-"), langID + " leaked into " + name);
+        }
+        Iterable<CLDFCognateJudgement<Integer, String, String>> judgements = database.getCognateJudgementMap()
+                .values();
+        for (CLDFCognateJudgement<Integer, String, String> judgement : judgements) {
+            CLDFForm<Integer> form = database.getFormsMap().get(judgement.getFormReference());
+            assertNotNull(form, "Judgement " + judgement.getCognateID() + " of " + name + " lost its form");
+            assertTrue(form.getLangID().startsWith(name + "-"));
+        }
+    }
+
+    /**
+     * Assert that two loads of the same dataset have the same forms, languages
+     * and cognate judgements.
+     */
+    static void assertSameLoad(CLDFWordlistDatabase<Integer, String, String> expected,
+            CLDFWordlistDatabase<Integer, String, String> actual, String name) {
+        assertEquals(expected.getLanguageMap().keySet(), actual.getLanguageMap().keySet(), name);
+        assertEquals(expected.getFormsMap().keySet(), actual.getFormsMap().keySet(), name);
+        for (Integer id : expected.getFormsMap().keySet()) {
+            assertEquals(expected.getFormsMap().get(id).toString(), actual.getFormsMap().get(id).toString(), name);
+        }
+        assertEquals(expected.getCognateJudgementMap().keySet(), actual.getCognateJudgementMap().keySet(), name);
+        for (String id : expected.getCognateJudgementMap().keySet()) {
+            CLDFCognateJudgement<Integer, String, String> judgement = actual.getCognateJudgementMap().get(id);
+            assertEquals(expected.getCognateJudgementMap().get(id).getFormReference(), judgement.getFormReference(),
+                    name);
+            assertEquals(expected.getCognateJudgementMap().get(id).getCognatesetReference(),
+                    judgement.getCognatesetReference(), name);
+        }
+    }
+
+    @Test
+    void testConcurrentLoadsMatchSequentialLoads(@TempDir Path dir) throws Exception {
+        File[] datasets = new File[DATASETS];
+        for (int d = 0; d < DATASETS; d++) {
+            datasets[d] = writeDataset(dir, "ds" + d, 2000 + 97 * d);
+        }
+        CLDFImport importer = new CLDFImport();
+
+        List<CLDFWordlistDatabase<Integer, String, String>> sequential = new ArrayList<>();
+        for (int d = 0; d < DATASETS; d++) {
+            sequential.add(importer.load(datasets[d]));
+            checkDataset(sequential.get(d), "ds" + d, 2000 + 97 * d);
+        }
+
+        ExecutorService threads = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<CLDFWordlistDatabase<Integer, String, String>>> loads = new ArrayList<>();
+            for (int d = 0; d < DATASETS; d++) {
+                File json = datasets[d];
+                loads.add(threads.submit(() -> importer.load(json)));
+            }
+            for (int d = 0; d < DATASETS; d++) {
+                CLDFWordlistDatabase<Integer, String, String> concurrent = loads.get(d).get();
+                checkDataset(concurrent, "ds" + d, 2000 + 97 * d);
+                assertSameLoad(sequential.get(d), concurrent, "ds" + d);
+            }
+        } finally {
+            threads.shutdown();
+        }
+    }
+
+    @Test
+    void testPoolLoadMatchesSequentialLoad(@TempDir Path dir) throws Exception {
+        File json = new CLDFWordlistGenerator(20000).write(dir);
+        CLDFWordlistDatabase<Integer, String, String> sequential = new CLDFImport().load(json);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (boolean columnar : new boolean[] { false, true }) {
+                CLDFImport importer = new CLDFImport(pool);
+                importer.setColumnarForms(columnar);
+                CLDFWordlistDatabase<Integer, String, String> concurrent = importer.load(json);
+                assertSameLoad(sequential, concurrent, "columnar " + columnar);
+                assertEquals(sequential.getConceptMap().keySet(), concurrent.getConceptMap().keySet());
+                assertEquals(sequential.getCognatesetMap().keySet(), concurrent.getCognatesetMap().keySet());
+                assertEquals(sequential.getCogsetToCognates(), concurrent.getCogsetToCognates());
+                assertEquals(sequential.getExceptions().size(), concurrent.getExceptions().size());
+                assertEquals(sequential.getSymbols().languages().names(), concurrent.getSymbols().languages().names());
+                assertEquals(sequential.getSymbols().parameters().names(),
+                        concurrent.getSymbols().parameters().names());
+                assertEquals(sequential.getSymbols().segments().names(), concurrent.getSymbols().segments().names());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testPoolLoadPropagatesTableErrors(@TempDir Path dir) throws Exception {
+        File json = new CLDFWordlistGenerator(5000).write(dir);
+        // The LanguageTable is read alongside the FormTable, so its error has to
+        // reach the caller from another thread.
+        Files.delete(dir.resolve("languages.csv"));
+        IOException expected = assertThrows(IOException.class, () -> new CLDFImport().load(json));
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            IOException actual = assertThrows(IOException.class, () -> new CLDFImport(pool).load(json));
+            assertEquals(expected.getClass(), actual.getClass());
+            assertEquals(expected.getMessage(), actual.getMessage());
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
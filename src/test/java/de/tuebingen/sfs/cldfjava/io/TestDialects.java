@@ -0,0 +1,204 @@
+package de.tuebingen.sfs.cldfjava.io;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import de.tuebingen.sfs.cldfjava.data.CLDFForm;
+
+class TestDialects {
+    static final String COLUMNS = """
+            "tableSchema": {"columns": [
+            {"name": "ID", "propertyUrl": "id"},
+            {"name": "Language_ID", "propertyUrl": "languageReference"},
+            {"name": "Parameter_ID", "propertyUrl": "parameterReference"},
+            {"name": "Form", "propertyUrl": "form"},
+            {"name": "Comment", "propertyUrl": "comment"}
+            ]}""";
+
+    static JsonNode table(String dialect) throws IOException {
+        return new ObjectMapper()
+                .readTree("{\"url\": \"forms.csv\", " + (dialect == null ? "" : "\"dialect\": " + dialect + ", ")
+                        + COLUMNS + "}");
+    }
+
+    /**
+     * @return each row of a table, as read by both tokenizers, which must agree
+     */
+    static List<String> rows(String content, Charset encoding, JsonNode table) throws IOException {
+        List<List<String>> results = new ArrayList<>();
+        for (boolean bytewise : new boolean[] { true, false }) {
+            CLDFImport.setByteTokenizer(bytewise);
+            List<String> rows = new ArrayList<>();
+            for (Map<String, PString> row : CLDFImport.readTable(new ByteArrayInputStream(content.getBytes(encoding)),
+                    table)) {
+                rows.add(row.get("id") + "|" + row.get("languageReference") + "|" + row.get("parameterReference")
+                        + "|" + row.get("form") + "|" + row.get("comment"));
+            }
+            results.add(rows);
+        }
+        assertEquals(results.get(1), results.get(0));
+        return results.get(0);
+    }
+
+    @AfterEach
+    void restoreTokenizer() {
+        CLDFImport.setByteTokenizer(true);
+    }
+
+    @Test
+    void testTabSeparatedWithComments() throws IOException {
+        JsonNode table = table("""
+                {"delimiter": "\\t", "skipRows": 1, "headerRowCount": 2}""");
+        String tsv = "a title line, skipped\n# a comment\nID\tLanguage_ID\tParameter_ID\tForm\tComment\n"
+                + "id\tlang\tconcept\tform\tcomment\n1\tfra\tone\t un \t\"quoted\ttab\"\n# 2\tdeu\tone\teins\t\n"
+                + "3\tdeu\ttwo\tzwei\t\r\n";
+        // Cells are trimmed, and lines starting with # skipped, by default.
+        assertEquals(List.of("1|fra|one|un|quoted\ttab", "3|deu|two|zwei|"),
+                rows(tsv, StandardCharsets.UTF_8, table));
+    }
+
+    @Test
+    void testDialectSettings() throws IOException {
+        // No header row: the columns are those of the schema, in order.
+        assertEquals(List.of("1|fra|one|un|#c", "2|deu|one| eins |"), rows("1;fra;one;un;#c\n2;deu;one;' eins ';\n",
+                StandardCharsets.UTF_8, table("""
+                        {"delimiter": ";", "quoteChar": "'", "header": false, "trim": false,
+                         "commentPrefix": ""}""")));
+        // Backslash escapes instead of doubled quotes.
+        assertEquals(List.of("1|fra|one|\"un\"|a\\b"), rows("ID,Language_ID,Parameter_ID,Form,Comment\n"
+                + "1,fra,one,\"\\\"un\\\"\",\"a\\\\b\"\n", StandardCharsets.UTF_8, table("""
+                        {"doubleQuote": false}""")));
+        // An encoding the byte-level tokenizer cannot read, and a comment prefix of
+        // several characters.
+        assertEquals(List.of("1|fra|one|\u00e9t\u00e9|"), rows("ID,Language_ID,Parameter_ID,Form,Comment\n"
+                + "//,skip,this,line,\n1,fra,one,\u00e9t\u00e9,\n", StandardCharsets.UTF_16, table("""
+                        {"encoding": "utf-16", "commentPrefix": "//"}""")));
+        assertEquals(List.of("1|fra|one|\u00e9t\u00e9|"), rows("ID,Language_ID,Parameter_ID,Form,Comment\n"
+                + "1,fra,one,\u00e9t\u00e9,\n", StandardCharsets.ISO_8859_1, table("""
+                        {"encoding": "iso-8859-1"}""")));
+    }
+
+    @Test
+    void testTokenizersAgree() throws IOException {
+        Random random = new Random(3);
+        String[] pieces = { "a", "bc", "\u00e4\u00f6", "\u4e2d", " ", "\"", ",", "\n", "\r\n", "'", "#", "\t" };
+        JsonNode table = table(null);
+        for (int round = 0; round < 200; round++) {
+            StringBuilder csv = new StringBuilder(round % 2 == 0 ? "\ufeff" : "")
+                    .append("ID,Language_ID,Parameter_ID,Form,Comment\n");
+            for (int r = 0; r < 1 + random.nextInt(20); r++) {
+                for (int c = 0; c < 5; c++) {
+                    StringBuilder cell = new StringBuilder();
+                    for (int k = random.nextInt(4); k > 0; k--) {
+                        cell.append(pieces[random.nextInt(pieces.length)]);
+                    }
+                    String text = cell.toString();
+                    if (c > 0) {
+                        csv.append(',');
+                    }
+                    if (text.matches("(?s).*[\",\r\n].*") || c == 0 && text.isEmpty()) {
+                        csv.append('"').append(text.replace("\"", "\"\"")).append('"');
+                    } else {
+                        csv.append(text);
+                    }
+                }
+                csv.append(random.nextBoolean() ? "\n" : "\r\n");
+            }
+            if (random.nextBoolean()) {
+                csv.setLength(csv.length() - 1);
+            }
+            rows(csv.toString(), StandardCharsets.UTF_8, table);
+        }
+    }
+
+    @Test
+    void testMappedWindows(@TempDir Path dir) throws IOException {
+        StringBuilder csv = new StringBuilder("\ufeffID,Language_ID,Parameter_ID,Form,Comment\n");
+        for (int i = 0; i < 200; i++) {
+            csv.append("f" + i + ",lang,c,\u00e4" + "x".repeat(i % 50) + ",\"a \"\"long\"\"\n" + "y".repeat(i)
+                    + "\"\r\n");
+        }
+        Path file = dir.resolve("forms.csv");
+        Files.write(file, csv.toString().getBytes(StandardCharsets.UTF_8));
+        JsonNode table = table(null);
+        List<String> expected = rows(csv.toString(), StandardCharsets.UTF_8, table);
+        assertEquals(200, expected.size());
+
+        // Windows much shorter than the records, so that they are remapped and grown
+        // in the middle of cells.
+        CsvDialect dialect = CsvDialect.of(table);
+        for (int window : new int[] { 7, 64, 1000 }) {
+            try (TableReader reader = new ByteTableReader(FileChannel.open(file), dialect, window)) {
+                reader.readHeader(table, dialect);
+                assertEquals("ID", reader.header().get(0));
+                List<String> mapped = new ArrayList<>();
+                for (TableRow row : reader) {
+                    mapped.add(row.get(0) + "|" + row.get(1) + "|" + row.get(2) + "|" + row.get(3) + "|" + row.get(4));
+                }
+                assertEquals(expected, mapped);
+            }
+        }
+        // Opening a FileInputStream maps the file as well.
+        List<String> opened = new ArrayList<>();
+        for (Map<String, PString> row : CLDFImport.readTable(new FileInputStream(file.toFile()), table)) {
+            opened.add(row.get("id") + "|" + row.get("languageReference") + "|" + row.get("parameterReference") + "|"
+                    + row.get("form") + "|" + row.get("comment"));
+        }
+        assertEquals(expected, opened);
+    }
+
+    @Test
+    void testParallelReaderFollowsDialect(@TempDir Path dir) throws IOException {
+        StringBuilder tsv = new StringBuilder("skipped\nID\tLanguage_ID\tParameter_ID\tForm\tComment\n");
+        for (int i = 0; i < 500; i++) {
+            tsv.append("f" + i + "\tlang" + (i % 7) + "\tc" + (i % 13) + "\tform" + i + "\t'a ''comment''\nover lines'\n");
+            // Quotes in comment lines must not confuse the search for boundaries.
+            tsv.append("# don't\n");
+        }
+        Path file = dir.resolve("forms.csv");
+        Files.write(file, tsv.toString().getBytes(StandardCharsets.UTF_8));
+        JsonNode table = table("""
+                {"delimiter": "\\t", "quoteChar": "'", "skipRows": 1}""");
+
+        CLDFImport.LoadContext sequentialContext = new CLDFImport.LoadContext();
+        Map<Integer, CLDFForm<Integer>> sequential = CLDFImport.readFormCsv(Files.newInputStream(file), table,
+                sequentialContext);
+        assertEquals(500, sequential.size());
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            CLDFImport.LoadContext parallelContext = new CLDFImport.LoadContext();
+            List<ParallelFormReader.Chunk> chunks = new ParallelFormReader(file, table, parallelContext.symbols, null,
+                    pool, 1000).read();
+            assertTrue(chunks.size() > 1);
+            List<CLDFForm<Integer>> parallel = new ArrayList<>();
+            CLDFImport.mergeChunks(chunks, parallelContext, parallel::add);
+            assertEquals(sequentialContext.originalFormIDs, parallelContext.originalFormIDs);
+            for (CLDFForm<Integer> form : parallel) {
+                assertEquals(sequential.get(form.getId()).toString(), form.toString());
+                assertEquals("a 'comment'\nover lines", form.getComment());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
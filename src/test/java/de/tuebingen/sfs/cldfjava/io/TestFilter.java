@@ -0,0 +1,116 @@
+package de.tuebingen.sfs.cldfjava.io;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import de.tuebingen.sfs.cldfjava.data.CLDFCognateJudgement;
+import de.tuebingen.sfs.cldfjava.data.CLDFForm;
+import de.tuebingen.sfs.cldfjava.data.CLDFWordlistDatabase;
+
+class TestFilter {
+    /**
+     * @return the language, concepts and form of each form, in the order of the
+     *         form IDs
+     */
+    static List<String> rows(Map<Integer, CLDFForm<Integer>> forms) {
+        List<String> rows = new ArrayList<>();
+        new TreeMap<>(forms).values()
+                .forEach(form -> rows.add(form.getLangID() + " " + form.getParamID() + " " + form.getForm()));
+        return rows;
+    }
+
+    /**
+     * @return the cognate set of each judgement, with the form it refers to
+     */
+    static Map<String, String> judgements(CLDFWordlistDatabase<Integer, String, String> database) {
+        Map<String, String> judgements = new HashMap<>();
+        for (CLDFCognateJudgement<Integer, String, String> judgement : database.getCognateJudgementMap().values()) {
+            CLDFForm<Integer> form = database.getFormsMap().get(judgement.getFormReference());
+            judgements.put(judgement.getCognateID(),
+                    judgement.getCognatesetReference() + " " + form.getLangID() + " " + form.getForm());
+        }
+        return judgements;
+    }
+
+    @Test
+    void testFilteredLoadMatchesFilteredDatabase(@TempDir Path dir) throws Exception {
+        CLDFWordlistGenerator generator = new CLDFWordlistGenerator(3000);
+        generator.setLanguages(20);
+        generator.setConcepts(30);
+        File json = generator.write(dir.resolve("data"));
+        CLDFWordlistDatabase<Integer, String, String> full = new CLDFImport().load(json);
+        Set<String> langIDs = Set.of("lang1", "lang3", "lang5");
+        Set<String> paramIDs = Set.of("concept0", "concept2", "concept7");
+
+        Map<Integer, CLDFForm<Integer>> kept = new HashMap<>();
+        for (CLDFForm<Integer> form : full.getFormsMap().values()) {
+            if (langIDs.contains(form.getLangID()) && paramIDs.contains(form.getParamID().get(0))) {
+                kept.put(form.getId(), form);
+            }
+        }
+        Map<String, String> keptJudgements = judgements(full);
+        for (CLDFCognateJudgement<Integer, String, String> judgement : full.getCognateJudgementMap().values()) {
+            if (!kept.containsKey(judgement.getFormReference())) {
+                keptJudgements.remove(judgement.getCognateID());
+            }
+        }
+        assertFalse(kept.isEmpty());
+
+        for (ForkJoinPool pool : new ForkJoinPool[] { null, ForkJoinPool.commonPool() }) {
+            for (boolean columnar : new boolean[] { false, true }) {
+                CLDFImport importer = new CLDFImport(pool);
+                importer.setColumnarForms(columnar);
+                // By ID and Glottocode, by ID and Concepticon ID.
+                importer.setFilter(new CLDFFilter().languages("lang1", "lang3")
+                        .glottocodes(CLDFWordlistGenerator.glottocode(5)).parameters("concept7")
+                        .concepticonIDs("1", "3"));
+                CLDFWordlistDatabase<Integer, String, String> filtered = importer.load(json);
+
+                assertEquals(rows(kept), rows(filtered.getFormsMap()));
+                assertEquals(langIDs, filtered.getLanguageMap().keySet());
+                assertEquals(paramIDs, filtered.getConceptMap().keySet());
+                assertEquals(keptJudgements, judgements(filtered));
+                assertEquals(filtered.getCogsetToCognates().keySet(), filtered.getCognatesetMap().keySet());
+                assertEquals(kept.size(), filtered.getLoadReport().getTable("FormTable").getRows());
+                assertEquals(full.getFormsMap().size() - kept.size(),
+                        filtered.getLoadReport().getTable("FormTable").getRejectedRows());
+            }
+        }
+    }
+
+    @Test
+    void testFilterByIDsAlone(@TempDir Path dir) throws Exception {
+        File json = new CLDFWordlistGenerator(1000).write(dir.resolve("data"));
+        CLDFWordlistDatabase<Integer, String, String> full = new CLDFImport().load(json);
+        CLDFImport importer = new CLDFImport();
+        importer.setFilter(new CLDFFilter().languages("lang0"));
+        CLDFWordlistDatabase<Integer, String, String> filtered = importer.load(json);
+
+        assertEquals(full.listFormIdsForLangId("lang0").size(), filtered.getFormsMap().size());
+        assertEquals(Set.of("lang0"), filtered.getLanguageMap().keySet());
+        assertEquals(full.getConceptMap().keySet(), filtered.getConceptMap().keySet());
+    }
+
+    @Test
+    void testKeysLeaveTheirInputAlone() {
+        CLDFFilter.Keys keys = new CLDFFilter.Keys(Set.of("a"), Set.of("x"));
+        Map<String, Integer> languages = new HashMap<>(Map.of("a", 1, "b", 2));
+        Map<String, Integer> parameters = new HashMap<>(Map.of("x", 1, "y", 2));
+        assertEquals(Map.of("a", 1), keys.languages(languages));
+        assertEquals(Map.of("x", 1), keys.parameters(parameters));
+        assertEquals(Map.of("a", 1, "b", 2), languages);
+        assertEquals(Map.of("x", 1, "y", 2), parameters);
+    }
+}
@@ -4,27 +4,31 @@ import static org.junit.jupiter.api.Assertions.*;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import de.tuebingen.sfs.cldfjava.data.CLDFForm;
+import de.tuebingen.sfs.cldfjava.data.CLDFFormStore;
 
 class TestFormTableReader {
 
     @Test
     void testReadFormTable() throws IOException {
-        CLDFImport.exceptions = new ArrayList<>();
-        CLDFImport.languages = new HashSet<>();
-        CLDFImport.concepts = new HashSet<>();
-        CLDFImport.originalFormIDs = new HashMap<>();
+        CLDFImport.LoadContext loadContext = new CLDFImport.LoadContext();
 
         Map<Integer, CLDFForm<Integer>> result = CLDFImport.readFormCsv(new ByteArrayInputStream("""
                 ID,Language_ID,Parameter_ID,Form
@@ -34,16 +38,240 @@ class TestFormTableReader {
                 {"name": "Language_ID", "propertyUrl": "languageReference"},
                 {"name": "Parameter_ID", "propertyUrl": "parameterReference"},
                 {"name": "Form", "propertyUrl": "form"}
-                ]}}"""));
+                ]}}"""), loadContext);
 
-        assertEquals(1, CLDFImport.originalFormIDs.size());
+        assertEquals(1, loadContext.originalFormIDs.size());
         assertEquals(
                 Collections.singletonMap("1", 0),
-                CLDFImport.originalFormIDs);
+                loadContext.originalFormIDs);
         assertEquals(1, result.size());
         assertEquals(0, result.get(0).getId());
         assertEquals("un", result.get(0).getForm());
         assertEquals("fra", result.get(0).getLangID());
         assertEquals(Arrays.asList(new String[] { "one" }), result.get(0).getParamID());
     }
+
+    @Test
+    void testStreamFormTable() throws IOException {
+        try (Stream<CLDFForm<Integer>> forms = CLDFImport.streamFormCsv(new ByteArrayInputStream("""
+                ID,Language_ID,Parameter_ID,Form
+                1,fra,one,un
+                2,fra,two,deux
+                3,deu,one,eins""".getBytes()), new ObjectMapper().readTree("""
+                {"tableSchema": {"columns": [
+                {"name": "ID", "propertyUrl": "id"},
+                {"name": "Language_ID", "propertyUrl": "languageReference"},
+                {"name": "Parameter_ID", "propertyUrl": "parameterReference"},
+                {"name": "Form", "propertyUrl": "form"}
+                ]}}"""))) {
+            Map<String, Long> formsPerLanguage = forms
+                    .collect(Collectors.groupingBy(CLDFForm::getLangID, Collectors.counting()));
+            assertEquals(2L, formsPerLanguage.get("fra"));
+            assertEquals(1L, formsPerLanguage.get("deu"));
+        }
+    }
+
+    @Test
+    void testParallelFormTableMatchesSequential(@TempDir Path dir) throws IOException {
+        StringBuilder csv = new StringBuilder("ID,Language_ID,Parameter_ID,Form,Comment\n");
+        for (int i = 0; i < 500; i++) {
+            // Quoted cells with newlines and escaped quotes must not split records.
+            csv.append("f" + i + ",lang" + (i % 7) + ",c" + (i % 13) + ",form" + i + ",\"a \"\"comment\"\"\nover lines\"\n");
+        }
+        for (CLDFForm<Integer> form : readInParallel(dir, csv.toString()).values()) {
+            assertEquals("a \"comment\"\nover lines", form.getComment());
+        }
+    }
+
+    @Test
+    void testParallelReaderTakesStrayQuotesLiterally(@TempDir Path dir) throws IOException {
+        StringBuilder csv = new StringBuilder("ID,Language_ID,Parameter_ID,Form,Comment\n");
+        for (int i = 0; i < 500; i++) {
+            // A quote inside an unquoted cell is literal and must not make the scan
+            // believe the newlines of a later quoted cell end records.
+            csv.append("f" + i + ",lang" + (i % 7) + ",c" + (i % 13) + ",ab\"c" + i + ",");
+            csv.append(i % 3 == 0 ? "\"quoted\nover\nlines\"\n" : "plain\n");
+        }
+        Map<Integer, CLDFForm<Integer>> parallel = readInParallel(dir, csv.toString());
+        for (CLDFForm<Integer> form : parallel.values()) {
+            assertTrue(form.getForm().startsWith("ab\"c"), form.getForm());
+        }
+    }
+
+    @Test
+    void testParallelReaderHandsOutSequentialCodes(@TempDir Path dir) throws IOException {
+        StringBuilder csv = new StringBuilder("ID,Language_ID,Parameter_ID,Form,Segments\n");
+        for (int i = 0; i < 2000; i++) {
+            // New languages, concepts and segments keep turning up in later chunks.
+            csv.append("f" + i + ",lang" + (i * 37 % 211) + ",c" + (i * 13 % 307) + ";c" + (i % 5) + ",form" + i
+                    + ",s" + (i % 3) + " s" + (i * 7 % 401) + "\n");
+        }
+        JsonNode table = new ObjectMapper().readTree("""
+                {"tableSchema": {"columns": [
+                {"name": "ID", "propertyUrl": "id"},
+                {"name": "Language_ID", "propertyUrl": "languageReference"},
+                {"name": "Parameter_ID", "propertyUrl": "parameterReference", "separator": ";"},
+                {"name": "Form", "propertyUrl": "form"},
+                {"name": "Segments", "propertyUrl": "segments", "separator": " "}
+                ]}}""");
+        Map<Integer, CLDFForm<Integer>> parallel = readInParallel(dir, csv.toString(), table);
+        assertEquals("lang37", parallel.get(1).getSymbols().languages().name(1));
+        assertEquals(Arrays.asList("s0", "s1", "s7"), parallel.get(0).getSymbols().segments().names().subList(0, 3));
+    }
+
+    /**
+     * Read a FormTable both sequentially and in small chunks, and check that both
+     * give the same forms.
+     *
+     * @return the forms read in chunks
+     */
+    private static Map<Integer, CLDFForm<Integer>> readInParallel(Path dir, String csv) throws IOException {
+        return readInParallel(dir, csv, new ObjectMapper().readTree("""
+                {"tableSchema": {"columns": [
+                {"name": "ID", "propertyUrl": "id"},
+                {"name": "Language_ID", "propertyUrl": "languageReference"},
+                {"name": "Parameter_ID", "propertyUrl": "parameterReference"},
+                {"name": "Form", "propertyUrl": "form"},
+                {"name": "Comment", "propertyUrl": "comment"}
+                ]}}"""));
+    }
+
+    /**
+     * Read a FormTable both sequentially and in small chunks, and check that both
+     * give the same forms, with the same symbol codes.
+     *
+     * @return the forms read in chunks
+     */
+    private static Map<Integer, CLDFForm<Integer>> readInParallel(Path dir, String csv, JsonNode table)
+            throws IOException {
+        Path file = dir.resolve("forms.csv");
+        Files.write(file, csv.getBytes(StandardCharsets.UTF_8));
+
+        CLDFImport.LoadContext sequentialContext = new CLDFImport.LoadContext();
+        Map<Integer, CLDFForm<Integer>> sequential = CLDFImport.readFormCsv(Files.newInputStream(file), table,
+                sequentialContext);
+
+        CLDFImport.LoadContext parallelContext = new CLDFImport.LoadContext();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Map<Integer, CLDFForm<Integer>> parallel = new HashMap<>();
+            CLDFImport.mergeChunks(new ParallelFormReader(file, table, parallelContext.symbols, null, pool, 1000).read(),
+                    parallelContext, formEntry -> parallel.put(formEntry.getId(), formEntry));
+            assertEquals(sequentialContext.originalFormIDs, parallelContext.originalFormIDs);
+            assertEquals(sequential.size(), parallel.size());
+            for (Integer id : sequential.keySet()) {
+                CLDFForm<Integer> expected = sequential.get(id);
+                CLDFForm<Integer> actual = parallel.get(id);
+                assertEquals(expected.toString(), actual.toString());
+                assertSame(parallelContext.symbols, actual.getSymbols());
+                assertEquals(expected.getLangCode(), actual.getLangCode());
+                assertArrayEquals(expected.getParamCodes(), actual.getParamCodes());
+                assertArrayEquals(expected.getSegmentCodes(), actual.getSegmentCodes());
+            }
+            assertEquals(sequentialContext.symbols.languages().names(), parallelContext.symbols.languages().names());
+            assertEquals(sequentialContext.symbols.parameters().names(), parallelContext.symbols.parameters().names());
+            assertEquals(sequentialContext.symbols.segments().names(), parallelContext.symbols.segments().names());
+            return parallel;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testFormStoreMatchesFormObjects() throws IOException {
+        String csv = """
+                ID,Language_ID,Parameter_ID,Form,Segments,Loan,Count
+                1,fra,one,un,u n,,1
+                2,fra,two;deux,deux,d o,yes,2
+                3,deu,one,eins,a i n s,,many""";
+        JsonNode table = new ObjectMapper().readTree("""
+                {"tableSchema": {"columns": [
+                {"name": "ID", "propertyUrl": "id"},
+                {"name": "Language_ID", "propertyUrl": "languageReference"},
+                {"name": "Parameter_ID", "propertyUrl": "parameterReference", "separator": ";"},
+                {"name": "Form", "propertyUrl": "form"},
+                {"name": "Segments", "propertyUrl": "segments", "separator": " "},
+                {"name": "Loan"},
+                {"name": "Count", "datatype": "integer"}
+                ]}}""");
+        Map<Integer, CLDFForm<Integer>> objects = CLDFImport
+                .readFormCsv(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), table);
+        CLDFFormStore store = CLDFImport.readFormStore(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)),
+                table, new CLDFImport.LoadContext());
+
+        assertEquals(objects.size(), store.size());
+        for (int id = 0; id < store.size(); id++) {
+            CLDFForm<Integer> expected = objects.get(id);
+            CLDFForm<Integer> actual = store.asMap().get(id);
+            assertEquals(expected.getLangID(), actual.getLangID());
+            assertEquals(expected.getParamID(), actual.getParamID());
+            assertEquals(expected.getForm(), actual.getForm());
+            assertArrayEquals(expected.getSegments(), actual.getSegments());
+            assertEquals(expected.getProperties().get("Loan").toString(),
+                    actual.getProperties().get("Loan").toString());
+            PString count = actual.getProperties().get("Count");
+            assertEquals(expected.getProperties().get("Count").isValid(), count.isValid());
+            assertEquals(PString.Datatype.INTEGER, count.getDatatype());
+            if (count.isValid()) {
+                assertEquals(id + 1, count.toLong());
+            }
+        }
+        assertEquals(Arrays.asList("two", "deux"), store.asMap().get(1).getParamID());
+
+        // "n" is shared between two forms, and is one sound of the inventory.
+        assertEquals(7, store.getSymbols().segments().size());
+        int n = store.getSymbols().segments().code("n");
+        assertEquals(n, store.getSegmentCode(0, 1));
+        assertEquals(n, store.getSegmentCode(2, 2));
+        assertEquals(4, store.getSegmentCount(2));
+    }
+
+    @Test
+    void testTypedCells() throws IOException {
+        CLDFImport.LoadContext loadContext = new CLDFImport.LoadContext();
+        Map<Integer, CLDFForm<Integer>> result = CLDFImport.readFormCsv(new ByteArrayInputStream("""
+                ID,Language_ID,Parameter_ID,Form,Segments,Count,Weight,Loan,Tags
+                1,fra,one,un,oe~,3,0.5,no,a|b
+                2,fra,two,deux,d o,many,1e3,yes,
+                3,deu,one,eins,,,-2.25,maybe,c""".getBytes()), new ObjectMapper().readTree("""
+                {"url": "forms.csv", "tableSchema": {"columns": [
+                {"name": "ID", "propertyUrl": "id"},
+                {"name": "Language_ID", "propertyUrl": "languageReference"},
+                {"name": "Parameter_ID", "propertyUrl": "parameterReference"},
+                {"name": "Form", "propertyUrl": "form"},
+                {"name": "Segments", "propertyUrl": "segments", "separator": " "},
+                {"name": "Count", "datatype": "integer"},
+                {"name": "Weight", "datatype": "decimal"},
+                {"name": "Loan", "datatype": {"base": "boolean", "format": "yes|no"}},
+                {"name": "Tags", "separator": "|"}
+                ]}}"""), loadContext);
+
+        PString count = result.get(0).getProperties().get("Count");
+        assertEquals(PString.Datatype.INTEGER, count.getDatatype());
+        assertEquals(3, count.toLong());
+        assertEquals(3.0, count.toDouble());
+        assertFalse(result.get(1).getProperties().get("Count").isValid());
+        assertTrue(result.get(2).getProperties().get("Count").isValid());
+        assertTrue(Double.isNaN(result.get(2).getProperties().get("Count").toDouble()));
+
+        assertEquals(0.5, result.get(0).getProperties().get("Weight").toDouble());
+        assertFalse(result.get(1).getProperties().get("Weight").isValid());
+        assertEquals(-2.25, result.get(2).getProperties().get("Weight").toDouble());
+
+        assertFalse(result.get(0).getProperties().get("Loan").toBoolean());
+        assertTrue(result.get(1).getProperties().get("Loan").toBoolean());
+        assertFalse(result.get(2).getProperties().get("Loan").isValid());
+
+        // The separator is literal, not a regular expression.
+        assertEquals(Arrays.asList("a", "b"), result.get(0).getProperties().get("Tags").toStringList());
+        assertEquals(Collections.emptyList(), result.get(1).getProperties().get("Tags").toStringList());
+        assertArrayEquals(new String[] { "d", "o" }, result.get(1).getSegments());
+        assertArrayEquals(new String[0], result.get(2).getSegments());
+
+        assertEquals(3, loadContext.getExceptions().size());
+        for (String[] exception : loadContext.getExceptions()) {
+            assertEquals("forms.csv", exception[0]);
+        }
+        assertEquals("many", loadContext.getExceptions().get(0)[2]);
+    }
 }
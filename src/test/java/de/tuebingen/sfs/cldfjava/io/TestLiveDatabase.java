@@ -0,0 +1,93 @@
+package de.tuebingen.sfs.cldfjava.io;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import de.tuebingen.sfs.cldfjava.data.CLDFWordlistDatabase;
+
+class TestLiveDatabase {
+    /**
+     * Edit a file, and make sure its modification time moves on even on file
+     * systems with coarse timestamps.
+     */
+    static void edit(Path file, int line, String content) throws Exception {
+        FileTime before = Files.getLastModifiedTime(file);
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        lines.set(line, content);
+        Files.write(file, lines, StandardCharsets.UTF_8);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(before.toMillis() + 2000));
+    }
+
+    @Test
+    void testReloadChangedTablesOnly(@TempDir Path dir) throws Exception {
+        File json = new CLDFWordlistGenerator(1000).write(dir);
+        CLDFLiveDatabase live = new CLDFLiveDatabase(new CLDFImport(), json);
+        CLDFWordlistDatabase<Integer, String, String> first = live.get();
+        assertEquals(Collections.emptySet(), live.reload());
+        assertSame(first, live.get());
+
+        // Move the first judgement to a new cognate set.
+        Path cognates = dir.resolve("cognates.csv");
+        String[] judgement = Files.readAllLines(cognates, StandardCharsets.UTF_8).get(1).split(",");
+        String oldCogset = first.getCognateJudgementMap().get(judgement[0]).getCognatesetReference();
+        int formID = first.getCognateJudgementMap().get(judgement[0]).getFormReference();
+        edit(cognates, 1, judgement[0] + "," + judgement[1] + ",edited");
+        assertEquals(Collections.singleton("CognateTable"), live.reload());
+        CLDFWordlistDatabase<Integer, String, String> second = live.get();
+        assertNotSame(first, second);
+        // Maps of their own, with the same rows.
+        assertNotSame(first.getFormsMap(), second.getFormsMap());
+        assertEquals(first.getFormsMap(), second.getFormsMap());
+        assertSame(first.getFormsMap().get(formID), second.getFormsMap().get(formID));
+        assertNotSame(first.getLanguageMap(), second.getLanguageMap());
+        assertEquals(first.getLanguageMap(), second.getLanguageMap());
+        assertEquals(Collections.singleton(formID), second.getCogsetToCognates().get("edited"));
+        assertFalse(second.getCogsetToCognates().getOrDefault(oldCogset, Collections.emptySet()).contains(formID));
+        assertTrue(first.getCogsetToCognates().get(oldCogset).contains(formID));
+        assertFalse(first.getCogsetToCognates().containsKey("edited"));
+        assertEquals(new CLDFImport().load(json).getCogsetToCognates(), second.getCogsetToCognates());
+        assertEquals(1, second.getLoadReport().getTables().size());
+        assertEquals(1000, second.getLoadReport().getTable("CognateTable").getRows());
+
+        // A file that is only touched is not read again.
+        Path forms = dir.resolve("forms.csv");
+        Files.setLastModifiedTime(forms, FileTime.fromMillis(Files.getLastModifiedTime(forms).toMillis() + 2000));
+        assertEquals(Collections.emptySet(), live.reload());
+        assertSame(second, live.get());
+
+        Path languages = dir.resolve("languages.csv");
+        String[] language = Files.readAllLines(languages, StandardCharsets.UTF_8).get(1).split(",");
+        language[2] = "abcd1234";
+        edit(languages, 1, String.join(",", language));
+        assertEquals(Collections.singleton("LanguageTable"), live.reload());
+        CLDFWordlistDatabase<Integer, String, String> third = live.get();
+        assertEquals(language[0], third.searchLangIdForGlottocode("abcd1234"));
+        assertNull(second.searchLangIdForGlottocode("abcd1234"));
+        assertNotSame(second.getCognateJudgementMap(), third.getCognateJudgementMap());
+        assertEquals(second.getCognateJudgementMap(), third.getCognateJudgementMap());
+        assertEquals(second.getCogsetToCognates(), third.getCogsetToCognates());
+        assertEquals(second.listFormIdsForLangId(language[0]), third.listFormIdsForLangId(language[0]));
+
+        // A new form makes the whole database load again.
+        String[] form = Files.readAllLines(forms, StandardCharsets.UTF_8).get(1).split(",");
+        form[3] = "edited";
+        edit(forms, 1, String.join(",", form));
+        Set<String> changed = live.reload();
+        assertTrue(changed.contains("FormTable"));
+        CLDFWordlistDatabase<Integer, String, String> fourth = live.get();
+        assertNotSame(third.getFormsMap(), fourth.getFormsMap());
+        assertEquals(new CLDFImport().load(json).getFormsMap().toString(), fourth.getFormsMap().toString());
+        assertEquals("abcd1234", fourth.getLanguageMap().get(language[0]).getGlottocode());
+    }
+}
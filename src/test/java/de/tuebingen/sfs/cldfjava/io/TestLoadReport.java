@@ -0,0 +1,166 @@
+package de.tuebingen.sfs.cldfjava.io;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import de.tuebingen.sfs.cldfjava.data.CLDFLoadReport;
+import de.tuebingen.sfs.cldfjava.data.CLDFWordlistDatabase;
+
+class TestLoadReport {
+    static class Recording implements CLDFImportListener {
+        final List<CLDFLoadReport.Table> tables = Collections.synchronizedList(new ArrayList<>());
+        final Map<String, Long> phases = new ConcurrentHashMap<>();
+        final List<CLDFLoadReport> reports = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void tableRead(CLDFLoadReport.Table table) {
+            tables.add(table);
+        }
+
+        @Override
+        public void phaseFinished(String phase, long nanos) {
+            phases.merge(phase, nanos, Long::sum);
+        }
+
+        @Override
+        public void loadFinished(CLDFLoadReport report) {
+            reports.add(report);
+        }
+    }
+
+    @Test
+    void testReportOfCsvLoad(@TempDir Path dir) throws Exception {
+        File json = new CLDFWordlistGenerator(2000).write(dir);
+        // Make the latitudes decimals, and break one of them.
+        String metadata = new String(Files.readAllBytes(json.toPath()), StandardCharsets.UTF_8);
+        Files.write(json.toPath(), metadata.replace("#latitude\"", "#latitude\", \"datatype\": \"decimal\"")
+                .getBytes(StandardCharsets.UTF_8));
+        Path languages = dir.resolve("languages.csv");
+        List<String> lines = new ArrayList<>(Files.readAllLines(languages, StandardCharsets.UTF_8));
+        String[] cells = lines.get(1).split(",");
+        cells[4] = "north";
+        lines.set(1, String.join(",", cells));
+        Files.write(languages, lines, StandardCharsets.UTF_8);
+
+        for (ForkJoinPool pool : new ForkJoinPool[] { null, ForkJoinPool.commonPool() }) {
+            Recording listener = new Recording();
+            CLDFImport importer = new CLDFImport(pool);
+            importer.setListener(listener);
+            CLDFWordlistDatabase<Integer, String, String> database = importer.load(json);
+
+            CLDFLoadReport report = database.getLoadReport();
+            assertNotNull(report);
+            assertEquals(Collections.singletonList(report), listener.reports);
+            assertFalse(report.isFromSnapshot());
+            assertEquals(5, report.getTables().size());
+            assertEquals(report.getTables().size(), listener.tables.size());
+            assertEquals(2000, report.getTable("FormTable").getRows());
+            assertEquals(2000, report.getTable("CognateTable").getRows());
+            assertEquals(database.getLanguageMap().size(), report.getTable("LanguageTable").getRows());
+            assertEquals(database.getConceptMap().size(), report.getTable("ParameterTable").getRows());
+            assertEquals(database.getCognatesetMap().size(), report.getTable("CognatesetTable").getRows());
+            long bytes = 0;
+            for (CLDFLoadReport.Table table : report.getTables()) {
+                assertEquals(Files.size(dir.resolve(table.getUrl())), table.getBytes(), table.getType());
+                bytes += table.getBytes();
+                assertTrue(table.getTokenizeNanos() > 0, table.toString());
+                assertTrue(table.getBuildNanos() > 0, table.toString());
+                if (pool == null) {
+                    assertTrue(table.getTokenizeNanos() + table.getBuildNanos() <= table.getNanos(), table.toString());
+                }
+                // Without the header, delimiters and line ends.
+                assertTrue(table.getCellBytes() > 0 && table.getCellBytes() < table.getBytes(), table.toString());
+            }
+            assertEquals(bytes, report.getBytesRead());
+
+            assertEquals(1, report.getTable("LanguageTable").getInvalidCells());
+            assertEquals(1, report.getInvalidCells());
+            assertEquals(database.getExceptions().size(), report.getInvalidCells());
+
+            long phases = 0;
+            for (String phase : new String[] { "metadata", "tables", "index" }) {
+                assertTrue(report.getPhaseNanos().containsKey(phase), phase);
+                assertEquals(listener.phases.get(phase), report.getPhaseNanos(phase));
+                phases += report.getPhaseNanos(phase);
+            }
+            assertTrue(report.getTotalNanos() >= phases);
+            // Form references are resolved within the tables phase, which ends later.
+            assertEquals(List.of("metadata", "tables", "form references", "index"),
+                    new ArrayList<>(report.getPhaseNanos().keySet()));
+            assertTrue(report.getEstimatedHeapBytes() > bytes);
+        }
+    }
+
+    @Test
+    void testHeapEstimateLeavesOutDroppedColumns(@TempDir Path dir) throws Exception {
+        File json = new CLDFWordlistGenerator(2000).write(dir);
+        CLDFLoadReport full = new CLDFImport().load(json).getLoadReport();
+        CLDFImport projecting = new CLDFImport();
+        projecting.setProjection(Arrays.asList("form"));
+        CLDFLoadReport projected = projecting.load(json).getLoadReport();
+
+        CLDFLoadReport.Table fullForms = full.getTable("FormTable");
+        CLDFLoadReport.Table projectedForms = projected.getTable("FormTable");
+        assertEquals(fullForms.getBytes(), projectedForms.getBytes());
+        assertTrue(projectedForms.getCellBytes() < fullForms.getCellBytes(), projectedForms.toString());
+        assertTrue(projected.getEstimatedHeapBytes() < full.getEstimatedHeapBytes());
+    }
+
+    @Test
+    void testReportOfSnapshotLoad(@TempDir Path dir) throws Exception {
+        File json = new CLDFWordlistGenerator(1000).write(dir.resolve("data"));
+        CLDFImport importer = new CLDFImport();
+        importer.setSnapshotDirectory(dir.resolve("snapshots").toFile());
+        CLDFLoadReport written = importer.load(json).getLoadReport();
+        assertFalse(written.isFromSnapshot());
+        assertTrue(written.getPhaseNanos().containsKey("snapshot"));
+
+        Recording listener = new Recording();
+        importer.setListener(listener);
+        CLDFLoadReport read = importer.load(json).getLoadReport();
+        assertTrue(read.isFromSnapshot());
+        assertEquals(Collections.singletonList(read), listener.reports);
+        assertEquals(1, read.getTables().size());
+        assertEquals(1000, read.getTable("Snapshot").getRows());
+        assertTrue(read.getBytesRead() > 0);
+        assertTrue(read.getPhaseNanos().containsKey("metadata"));
+        assertTrue(read.getPhaseNanos().containsKey("snapshot"));
+        assertFalse(read.getPhaseNanos().containsKey("tables"));
+    }
+
+    @Test
+    void testTableUrlsWithSpaces(@TempDir Path dir) throws Exception {
+        Path data = dir.resolve("with space");
+        File json = new CLDFWordlistGenerator(1000).write(data);
+        // A table url with a space, which the metadata does not escape.
+        Files.move(data.resolve("forms.csv"), data.resolve("my forms.csv"));
+        String metadata = new String(Files.readAllBytes(json.toPath()), StandardCharsets.UTF_8);
+        Files.write(json.toPath(), metadata.replace("\"forms.csv\"", "\"my forms.csv\"")
+                .getBytes(StandardCharsets.UTF_8));
+
+        CLDFImport importer = new CLDFImport(ForkJoinPool.commonPool());
+        importer.setSnapshotDirectory(dir.resolve("snapshots").toFile());
+        CLDFLoadReport report = importer.load(json).getLoadReport();
+        assertEquals(1000, report.getTable("FormTable").getRows());
+        assertEquals(Files.size(data.resolve("my forms.csv")), report.getTable("FormTable").getBytes());
+        assertTrue(importer.load(json).getLoadReport().isFromSnapshot());
+
+        CLDFLiveDatabase live = new CLDFLiveDatabase(new CLDFImport(), json);
+        assertEquals(1000, live.get().getFormsMap().size());
+        assertTrue(live.reload().isEmpty());
+    }
+}
@@ -0,0 +1,75 @@
+package de.tuebingen.sfs.cldfjava.io;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import de.tuebingen.sfs.cldfjava.data.CLDFForm;
+import de.tuebingen.sfs.cldfjava.data.CLDFLanguage;
+import de.tuebingen.sfs.cldfjava.data.CLDFParameter;
+import de.tuebingen.sfs.cldfjava.data.CLDFWordlistDatabase;
+
+class TestProjection {
+    @Test
+    void testOnlyRequestedColumnsAreRead(@TempDir Path dir) throws Exception {
+        File json = new CLDFWordlistGenerator(1000).write(dir.resolve("data"));
+        CLDFWordlistDatabase<Integer, String, String> full = new CLDFImport().load(json);
+
+        for (ForkJoinPool pool : new ForkJoinPool[] { null, ForkJoinPool.commonPool() }) {
+            for (boolean columnar : new boolean[] { false, true }) {
+                CLDFImport importer = new CLDFImport(pool);
+                importer.setColumnarForms(columnar);
+                importer.setProjection(Arrays.asList("form", "Glottocode"));
+                CLDFWordlistDatabase<Integer, String, String> projected = importer.load(json);
+
+                assertEquals(full.getFormsMap().size(), projected.getFormsMap().size());
+                for (CLDFForm<Integer> form : projected.getFormsMap().values()) {
+                    CLDFForm<Integer> original = full.getFormsMap().get(form.getId());
+                    assertEquals(original.getForm(), form.getForm());
+                    assertEquals(original.getLangID(), form.getLangID());
+                    assertEquals(original.getParamID(), form.getParamID());
+                    assertNull(form.getSegments());
+                    assertTrue(form.getProperties().isEmpty());
+                }
+                for (CLDFLanguage language : projected.getLanguageMap().values()) {
+                    CLDFLanguage original = full.getLanguageMap().get(language.getLangID());
+                    assertEquals(original.getGlottocode(), language.getGlottocode());
+                    CLDFLanguage unread = new CLDFLanguage(language.getLangID());
+                    assertEquals(unread.getName(), language.getName());
+                    assertEquals(unread.getIso(), language.getIso());
+                    assertTrue(language.getProperties().isEmpty());
+                }
+                projected.getConceptMap().values().forEach(
+                        concept -> assertEquals(new CLDFParameter(concept.getParamID()).getName(), concept.getName()));
+                assertEquals(full.getCogsetToCognates(), projected.getCogsetToCognates());
+            }
+        }
+    }
+
+    @Test
+    void testSnapshotsKeepTheirProjection(@TempDir Path dir) throws Exception {
+        File json = new CLDFWordlistGenerator(500).write(dir.resolve("data"));
+        File snapshots = dir.resolve("snapshots").toFile();
+        CLDFImport importer = new CLDFImport();
+        importer.setSnapshotDirectory(snapshots);
+        importer.load(json);
+        assertTrue(importer.load(json).getLoadReport().isFromSnapshot());
+
+        CLDFImport projecting = new CLDFImport();
+        projecting.setSnapshotDirectory(snapshots);
+        projecting.setProjection(Arrays.asList("form"));
+        CLDFWordlistDatabase<Integer, String, String> projected = projecting.load(json);
+        assertFalse(projected.getLoadReport().isFromSnapshot());
+        assertNull(projected.getFormsMap().get(0).getSegments());
+        projected = projecting.load(json);
+        assertTrue(projected.getLoadReport().isFromSnapshot());
+        assertNull(projected.getFormsMap().get(0).getSegments());
+        assertNotNull(importer.load(json).getFormsMap().get(0).getSegments());
+    }
+}
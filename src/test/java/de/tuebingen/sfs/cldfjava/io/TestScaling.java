@@ -0,0 +1,151 @@
+package de.tuebingen.sfs.cldfjava.io;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import de.tuebingen.sfs.cldfjava.data.CLDFForm;
+import de.tuebingen.sfs.cldfjava.data.CLDFFormStore;
+import de.tuebingen.sfs.cldfjava.data.CLDFWordlistDatabase;
+
+/**
+ * Loads generated wordlists of growing size, and checks that the time and heap
+ * per form stay about the same. The budgets are generous, since they only have
+ * to catch loads that grow quadratically, not small slowdowns.
+ */
+class TestScaling {
+    static final int[] SIZES = { 5000, 20000, 80000 };
+    // Going from the smallest to the largest size may make each form this much
+    // slower to load; a quadratic load would be 16 times slower.
+    static final double TIME_GROWTH = 4;
+    static final long NANOS_PER_FORM = 100_000;
+    static final long BYTES_PER_FORM = 4096;
+    // The columnar store takes well under half the heap of the form objects;
+    // the cells of the Form column are strings either way, and take a good part
+    // of what the store needs.
+    static final double COLUMNAR_SHARE = 0.5;
+
+    @Test
+    void testGeneratedWordlistIsComplete(@TempDir Path dir) throws Exception {
+        CLDFWordlistGenerator generator = new CLDFWordlistGenerator(3000);
+        CLDFWordlistDatabase<Integer, String, String> database = new CLDFImport().load(generator.write(dir));
+        assertTrue(database.getExceptions().isEmpty());
+        assertEquals(3000, database.getFormsMap().size());
+        assertEquals(3000, database.getCognateJudgementMap().size());
+        assertEquals(generator.getLanguages(), database.getLanguageMap().size());
+        assertEquals(generator.getConcepts(), database.getConceptMap().size());
+        assertEquals(database.getCognatesetMap().keySet(), database.getCogsetToCognates().keySet());
+        Set<String> glottocodes = new HashSet<>();
+        database.getLanguageMap().values().forEach(language -> glottocodes.add(language.getGlottocode()));
+        assertEquals(generator.getLanguages(), glottocodes.size());
+        for (CLDFForm<Integer> form : database.getFormsMap().values()) {
+            assertTrue(form.getSegments().length > 0);
+            assertEquals(form.getForm(), String.join("", form.getSegments()));
+        }
+        // The largest language has far more forms than the average.
+        int largest = 0;
+        for (String langID : database.getLangIDs()) {
+            largest = Math.max(largest, database.listFormIdsForLangId(langID).size());
+        }
+        assertTrue(largest > 2 * 3000 / generator.getLanguages());
+
+        CLDFWordlistGenerator again = new CLDFWordlistGenerator(3000);
+        File json = again.write(dir.resolve("again"));
+        assertEquals(database.getFormsMap().toString(), new CLDFImport().load(json).getFormsMap().toString());
+    }
+
+    static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        // The heap a collection frees does not always show at once, so pause
+        // after each, and collect until the heap stops shrinking.
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 10; i++) {
+            System.gc();
+            Thread.sleep(50);
+            long now = runtime.totalMemory() - runtime.freeMemory();
+            if (now >= used) {
+                return now;
+            }
+            used = now;
+        }
+        return used;
+    }
+
+    @Test
+    void testLoadScalesLinearly(@TempDir Path dir) throws Exception {
+        File[] datasets = new File[SIZES.length];
+        for (int s = 0; s < SIZES.length; s++) {
+            datasets[s] = new CLDFWordlistGenerator(SIZES[s]).write(dir.resolve("forms-" + SIZES[s]));
+        }
+        CLDFImport importer = new CLDFImport();
+        // Warm up, so that the smallest load is not measured in the interpreter.
+        for (int i = 0; i < 3; i++) {
+            importer.load(datasets[SIZES.length - 1]);
+        }
+
+        double[] nanosPerForm = new double[SIZES.length];
+        // The time and heap per form of each size so far, for the failure messages.
+        StringBuilder figures = new StringBuilder();
+        for (int s = 0; s < SIZES.length; s++) {
+            long best = Long.MAX_VALUE;
+            for (int i = 0; i < 3; i++) {
+                long start = System.nanoTime();
+                importer.load(datasets[s]);
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            nanosPerForm[s] = (double) best / SIZES[s];
+
+            long before = usedHeap();
+            CLDFWordlistDatabase<Integer, String, String> database = importer.load(datasets[s]);
+            database.cacheFormsByLanguage();
+            long bytesPerForm = (usedHeap() - before) / SIZES[s];
+            figures.append(figures.length() == 0 ? "" : "; ").append(SIZES[s]).append(" forms: ")
+                    .append(Math.round(nanosPerForm[s])).append(" ns and ").append(bytesPerForm)
+                    .append(" bytes per form");
+            assertEquals(SIZES[s], database.getFormsMap().size());
+            assertTrue(nanosPerForm[s] < NANOS_PER_FORM, figures.toString());
+            assertTrue(bytesPerForm < BYTES_PER_FORM, figures.toString());
+        }
+        assertTrue(nanosPerForm[SIZES.length - 1] < TIME_GROWTH * nanosPerForm[0],
+                "Time per form grew more than " + TIME_GROWTH + " times: " + figures);
+    }
+
+    @Test
+    void testColumnarFormsTakeLessHeap(@TempDir Path dir) throws Exception {
+        int forms = 80000;
+        File json = new CLDFWordlistGenerator(forms).write(dir);
+        JsonNode table = new ObjectMapper().readTree(json).get("tables").get(0);
+        Path csv = dir.resolve(table.get("url").asText());
+
+        long before = usedHeap();
+        Map<Integer, CLDFForm<Integer>> objects;
+        try (InputStream stream = Files.newInputStream(csv)) {
+            objects = CLDFImport.readFormCsv(stream, table, new CLDFImport.LoadContext());
+        }
+        long objectBytes = (usedHeap() - before) / forms;
+        assertEquals(forms, objects.size());
+        objects = null;
+
+        before = usedHeap();
+        CLDFFormStore store;
+        try (InputStream stream = Files.newInputStream(csv)) {
+            store = CLDFImport.readFormStore(stream, table, new CLDFImport.LoadContext());
+        }
+        long columnarBytes = (usedHeap() - before) / forms;
+        assertEquals(forms, store.size());
+        assertTrue(columnarBytes < COLUMNAR_SHARE * objectBytes,
+                columnarBytes + " bytes per form in a store, " + objectBytes + " as objects");
+    }
+}